@@ -0,0 +1,15 @@
+package edu.progdist.connection.direct;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Variante de {@link MessageHandler} cuja resposta pode ficar pronta depois, sem prender a thread que a chamou.
+ */
+@FunctionalInterface
+public interface AsyncMessageHandler {
+    CompletableFuture<Message> handle(Message message);
+
+    static AsyncMessageHandler of(MessageHandler handler) {
+        return message -> CompletableFuture.completedFuture(handler.handle(message));
+    }
+}
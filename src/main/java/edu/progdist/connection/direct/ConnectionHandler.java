@@ -0,0 +1,22 @@
+package edu.progdist.connection.direct;
+
+/**
+ * {@link AsyncMessageHandler} com estado de uma conexão de cliente: o servidor cria uma instância por conexão e a
+ * avisa quando a conexão é encerrada.
+ * <p>
+ * As mensagens de uma mesma conexão são tratadas uma por vez, mas não necessariamente pela mesma thread.
+ */
+@FunctionalInterface
+public interface ConnectionHandler extends AsyncMessageHandler {
+
+    /**
+     * Chamado uma única vez, antes da primeira mensagem, com o canal para enviar mensagens ao cliente por iniciativa
+     * do servidor. Não deve bloquear.
+     */
+    default void opened(MessageSink sink) {}
+
+    /**
+     * Chamado uma única vez quando a conexão do cliente é encerrada. Não deve bloquear.
+     */
+    default void closed() {}
+}
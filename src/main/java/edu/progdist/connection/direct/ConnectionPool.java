@@ -0,0 +1,403 @@
+package edu.progdist.connection.direct;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Pool limitado de conexões com um mesmo destino, para conexões que atendem várias requisições ao mesmo tempo, como
+ * {@link MultiplexedConnection}.
+ * <p>
+ * Nenhuma conexão é emprestada com exclusividade: {@link #execute(Function)} faz a requisição pela conexão aberta
+ * com menos requisições em andamento, e o pool conta cada uma até a resposta chegar. Uma conexão aceita até
+ * {@code maxPending} requisições; quando todas estão cheias o pool abre outra, até {@code maxSize}, e depois disso
+ * quem pede espera até {@code borrowTimeoutMillis} por uma resposta que libere espaço. Uma tarefa de manutenção
+ * valida as conexões, substitui as quebradas, fecha as ociosas há mais de {@code idleTimeoutMillis} além de
+ * {@code minSize} e reabre conexões até o mínimo.
+ */
+public final class ConnectionPool<C extends Connection> implements AutoCloseable {
+
+    /**
+     * Abre uma nova conexão com o destino do pool.
+     */
+    @FunctionalInterface
+    public interface Factory<C extends Connection> {
+        C open() throws IOException;
+    }
+
+    /**
+     * Parâmetros de dimensionamento do pool.
+     *
+     * @param minSize                  conexões mantidas abertas mesmo ociosas
+     * @param maxSize                  limite de conexões abertas
+     * @param maxPending               requisições em andamento por conexão antes de abrir outra ou esperar
+     * @param borrowTimeoutMillis      espera máxima por espaço com todas as conexões cheias
+     * @param idleTimeoutMillis        tempo sem requisições depois do qual uma conexão além do mínimo é fechada
+     * @param validationIntervalMillis intervalo entre as rodadas de manutenção
+     */
+    public record Settings(int minSize, int maxSize, int maxPending, long borrowTimeoutMillis, long idleTimeoutMillis,
+                           long validationIntervalMillis) {
+        public Settings {
+            if (minSize < 0 || maxSize < 1 || minSize > maxSize || maxPending < 1 || borrowTimeoutMillis < 0
+                || idleTimeoutMillis < 1 || validationIntervalMillis < 1) {
+                throw new IllegalArgumentException("Parâmetros de pool inválidos: min=" + minSize + ", max=" + maxSize
+                    + ", max-pending=" + maxPending + ", borrow-timeout-ms=" + borrowTimeoutMillis
+                    + ", idle-timeout-ms=" + idleTimeoutMillis
+                    + ", validation-interval-ms=" + validationIntervalMillis);
+            }
+        }
+
+        /**
+         * Lê os parâmetros de {@code <prefix>.min}, {@code .max}, {@code .max-pending}, {@code .borrow-timeout-ms},
+         * {@code .idle-timeout-ms} e {@code .validation-interval-ms}, usando os valores padrão para os ausentes.
+         */
+        public static Settings fromProperties(String prefix) {
+            return new Settings(
+                Integer.getInteger(prefix + ".min", 1),
+                Integer.getInteger(prefix + ".max", 4),
+                Integer.getInteger(prefix + ".max-pending", 256),
+                Long.getLong(prefix + ".borrow-timeout-ms", 2000),
+                Long.getLong(prefix + ".idle-timeout-ms", 60_000),
+                Long.getLong(prefix + ".validation-interval-ms", 5000));
+        }
+    }
+
+    /**
+     * Retrato das métricas do pool: conexões abertas, com e sem requisições em andamento, threads esperando espaço,
+     * requisições em andamento, pedidos atendidos e recusados por prazo, conexões abertas e descartadas desde a
+     * criação e espera média e máxima por espaço, em milissegundos.
+     */
+    public record Stats(int open, int active, int idle, int waiting, int pending, long borrows, long timeouts,
+                        long created, long destroyed, double averageWaitMillis, double maxWaitMillis) {}
+
+    // uma conexão aberta e as requisições do pool em andamento nela
+    private static final class Slot<C> {
+        static final int RETIRED = Integer.MIN_VALUE / 2;   // fechada pela manutenção; não aceita requisições
+
+        final C connection;
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile long lastUsed = System.nanoTime();
+
+        Slot(C connection) {
+            this.connection = connection;
+        }
+
+        // false se a conexão está cheia ou foi retirada
+        boolean tryBorrow(int maxPending) {
+            int current;
+            do {
+                current = inFlight.get();
+                if (current < 0 || current >= maxPending) return false;
+            } while (!inFlight.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release() {
+            lastUsed = System.nanoTime();
+            inFlight.decrementAndGet();
+        }
+
+        // só uma conexão sem requisições pode ser retirada; depois disso tryBorrow sempre falha
+        boolean retire() {
+            return inFlight.compareAndSet(0, RETIRED);
+        }
+    }
+
+    private final Factory<C> factory;
+    private final Predicate<C> validator;
+    private final Settings settings;
+    private final AtomicReferenceArray<Slot<C>> slots;     // null enquanto a posição não tem conexão
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean isClosed = false;
+
+    // espera por espaço: releases muda a cada resposta, para que quem vai esperar não perca um aviso
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final AtomicLong releases = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    // métricas
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Cria o pool e abre as {@code minSize} conexões iniciais.
+     *
+     * @param validator testa se uma conexão ainda pode ser usada; é chamado pela manutenção e pode fazer E/S
+     * @throws IOException se as conexões iniciais não puderem ser abertas
+     */
+    public ConnectionPool(Factory<C> factory, Predicate<C> validator, Settings settings) throws IOException {
+        this.factory = factory;
+        this.validator = validator;
+        this.settings = settings;
+        this.slots = new AtomicReferenceArray<>(settings.maxSize());
+
+        try {
+            for (int i = 0; i < settings.minSize(); i++) {
+                slots.set(i, new Slot<>(factory.open()));
+                created.incrementAndGet();
+            }
+        } catch (IOException e) {
+            closeAll();
+            throw e;
+        }
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain,
+            settings.validationIntervalMillis(), settings.validationIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Faz uma requisição pela conexão menos ocupada e a conta como em andamento até o futuro devolvido completar.
+     * Com todas as conexões cheias, a thread chamadora espera por espaço até {@code borrowTimeoutMillis}.
+     *
+     * @return o futuro de {@code request}, ou um futuro falho com {@link IOException} se o pool estiver fechado, se
+     *         nenhuma conexão puder ser aberta ou se o prazo de espera acabar
+     */
+    public <T> CompletableFuture<T> execute(Function<? super C, CompletableFuture<T>> request) {
+        Slot<C> slot;
+        try {
+            slot = borrow();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<T> response;
+        try {
+            response = request.apply(slot.connection);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((result, error) -> release(slot));
+        return response;
+    }
+
+    private Slot<C> borrow() throws IOException {
+        if (isClosed) throw new IOException("Pool de conexões fechado.");
+        borrows.incrementAndGet();
+
+        Slot<C> slot = tryBorrow();
+        if (slot != null) return slot;
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(settings.borrowTimeoutMillis());
+        waiting.incrementAndGet();
+        try {
+            while (true) {
+                long seen = releases.get();
+                slot = tryBorrow();
+                if (slot != null) return slot;
+
+                long remaining = deadline - System.nanoTime();
+                if (isClosed) throw new IOException("Pool de conexões fechado.");
+                if (remaining <= 0) {
+                    timeouts.incrementAndGet();
+                    throw new IOException("Nenhuma conexão com espaço em " + settings.borrowTimeoutMillis() + " ms.");
+                }
+
+                lock.lock();
+                try {
+                    if (releases.get() == seen) available.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrompido esperando conexão do pool.", e);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            waiting.decrementAndGet();
+            long waited = System.nanoTime() - start;
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+    }
+
+    private void release(Slot<C> slot) {
+        slot.release();
+        releases.incrementAndGet();
+        if (waiting.get() > 0) signalWaiters();
+    }
+
+    private void signalWaiters() {
+        lock.lock();
+        try {
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // conexão menos ocupada com espaço, ou uma nova se todas estiverem cheias e houver posição livre
+    private Slot<C> tryBorrow() throws IOException {
+        Slot<C> slot = leastLoaded();
+        if (slot != null) return slot;
+
+        try {
+            return grow();
+        } catch (IOException e) {
+            if (openCount() == 0) throw e;
+            return null;    // as abertas continuam servindo; quem pediu espera por espaço nelas
+        }
+    }
+
+    // null se nenhuma conexão aberta tiver espaço; as fechadas encontradas no caminho são descartadas
+    private Slot<C> leastLoaded() {
+        while (true) {
+            Slot<C> best = null;
+            int bestLoad = Integer.MAX_VALUE;
+            for (int i = 0; i < slots.length(); i++) {
+                Slot<C> slot = slots.get(i);
+                if (slot == null) continue;
+                if (slot.connection.isClosed()) {
+                    discard(i, slot);
+                    continue;
+                }
+
+                int load = slot.inFlight.get();
+                if (load >= 0 && load < settings.maxPending() && load < bestLoad) {
+                    best = slot;
+                    bestLoad = load;
+                }
+            }
+            if (best == null) return null;
+            if (best.tryBorrow(settings.maxPending())) return best;
+            // outra thread ocupou o espaço entre a leitura e a reserva: procura de novo
+        }
+    }
+
+    // uma thread por vez abre conexões; a nova já sai reservada para quem a abriu
+    private synchronized Slot<C> grow() throws IOException {
+        Slot<C> slot = leastLoaded();   // outra thread pode ter aberto uma enquanto esta esperava
+        if (slot != null || isClosed) return slot;
+
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) continue;
+
+            slot = new Slot<>(factory.open());
+            created.incrementAndGet();
+            slot.inFlight.set(1);
+            slots.set(i, slot);
+            if (isClosed) {
+                discard(i, slot);       // close() pode ter passado por esta posição enquanto abria
+                throw new IOException("Pool de conexões fechado.");
+            }
+            return slot;
+        }
+        return null;
+    }
+
+    // reabre conexões até o mínimo; falhas são tentadas de novo na próxima manutenção
+    private synchronized void refill() {
+        for (int i = 0; i < slots.length() && openCount() < settings.minSize() && !isClosed; i++) {
+            if (slots.get(i) != null) continue;
+
+            Slot<C> slot;
+            try {
+                slot = new Slot<>(factory.open());
+            } catch (IOException e) {
+                System.err.println("Erro ao reabrir conexão do pool: " + e.getMessage());
+                return;
+            }
+            created.incrementAndGet();
+            slots.set(i, slot);
+            if (isClosed) discard(i, slot);
+        }
+        if (waiting.get() > 0) signalWaiters();
+    }
+
+    // esvazia a posição se ainda guarda a conexão; false se outra thread já a descartou
+    private boolean discard(int index, Slot<C> slot) {
+        if (!slots.compareAndSet(index, slot, null)) return false;
+        destroyed.incrementAndGet();
+        try {
+            slot.connection.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar conexão do pool: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Fecha as conexões ociosas além do mínimo, descarta as que falham na validação e reabre até o mínimo.
+     */
+    private void maintain() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(settings.idleTimeoutMillis());
+
+        for (int i = 0; i < slots.length() && !isClosed; i++) {
+            Slot<C> slot = slots.get(i);
+            if (slot == null) continue;
+
+            if (now - slot.lastUsed > idleNanos && openCount() > settings.minSize() && slot.retire()) {
+                discard(i, slot);
+            } else if (!validator.test(slot.connection)) {
+                System.err.println("Conexão inválida descartada pelo pool.");
+                discard(i, slot);
+            }
+        }
+        refill();
+    }
+
+    private int openCount() {
+        int open = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) open++;
+        }
+        return open;
+    }
+
+    public Stats getStats() {
+        int open = 0;
+        int active = 0;
+        int pending = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            Slot<C> slot = slots.get(i);
+            if (slot == null || slot.connection.isClosed()) continue;
+            int load = Math.max(0, slot.inFlight.get());
+            open++;
+            if (load > 0) active++;
+            pending += load;
+        }
+        long count = borrows.get();
+        return new Stats(open, active, open - active, waiting.get(), pending, count, timeouts.get(),
+            created.get(), destroyed.get(), count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count,
+            maxWaitNanos.get() / 1e6);
+    }
+
+    /**
+     * Fecha todas as conexões; requisições ainda pendentes nelas falham e quem espera por espaço desiste.
+     */
+    @Override
+    public void close() {
+        if (isClosed) return;
+        isClosed = true;
+        maintenance.shutdownNow();
+        closeAll();
+        signalWaiters();
+    }
+
+    private void closeAll() {
+        for (int i = 0; i < slots.length(); i++) {
+            Slot<C> slot = slots.get(i);
+            if (slot != null) discard(i, slot);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package edu.progdist.connection.direct;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Codificação binária de {@link Message} com prefixo de tamanho.
+ * <p>
+ * Layout do frame: {@code int} com o tamanho do restante, um byte com o código do tipo e os bytes UTF-8 do payload.
+ * Tipos conhecidos viajam só como código e são decodificados para a mesma instância de {@link String}; tipos
+ * desconhecidos usam o código {@code 0} seguido de um {@code short} com o tamanho e os bytes do nome. Em mensagens
+ * com ID de correlação ({@link Message#correlationId()}) o bit mais alto do código é ligado e o ID segue o tipo como
+ * {@code long}.
+ * <p>
+ * O modo binário é negociado na conexão: o cliente envia {@link #PREFACE} e o servidor que entende o formato
+ * responde com o mesmo preâmbulo. Servidores antigos respondem com uma linha de erro, e o cliente volta ao texto.
+ */
+public final class FrameCodec {
+    public static final String FRAMING_PROPERTY = "connection.framing";
+
+    /** Preâmbulo de negociação; o primeiro byte nunca inicia uma mensagem textual. */
+    static final byte[] PREFACE = { (byte) 0xB1, 'W', 'D', '1', '\n' };
+    public static final byte PREFACE_START = PREFACE[0];
+
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private static final String[] TYPES = {
+        null,   // código 0: tipo literal
+        "",
+        "USER_REQUEST",
+        "DATA_REQUEST",
+        "DATA_RESPONSE",
+        "GET_DATA",
+        "GET_RESPONSE",
+        "SAVE_DATA",
+        "DRONE_REQUEST",
+        "DATACENTER_REQUEST",
+        "DATACENTER_RESPONSE",
+        "DATACENTER_ERROR",
+        "DATASERVER_ERROR",
+        "DATABASE_ERROR",
+        "SERVER_RESPONSE",
+        "SERVER_BUSY",
+        "DRONE_RESPONSE",
+        "GET_VERSION",
+        "VERSION_RESPONSE",
+        "DELTA_RESPONSE",
+        "SUBSCRIBE",
+        "DATA_PUSH",
+        "SAVE_BATCH",
+        "SAVE_RESPONSE",
+    };
+    private static final Map<String, Byte> CODES = new HashMap<>();
+    private static final int CORRELATED = 0x80;
+
+    static {
+        for (int i = 1; i < TYPES.length; i++) {
+            CODES.put(TYPES[i], (byte) i);
+        }
+    }
+
+    private FrameCodec() {}
+
+    /**
+     * Indica se as conexões de cliente devem negociar o modo binário ({@code -Dconnection.framing=binary}).
+     */
+    public static boolean isBinaryPreferred() {
+        return "binary".equalsIgnoreCase(System.getProperty(FRAMING_PROPERTY, "text"));
+    }
+
+    /**
+     * Preâmbulo pronto para escrita.
+     */
+    public static ByteBuffer preface() {
+        return ByteBuffer.wrap(PREFACE).asReadOnlyBuffer();
+    }
+
+    /**
+     * Consome e valida o preâmbulo no início de {@code in}.
+     *
+     * @return {@code false} se o preâmbulo ainda não chegou por inteiro (a posição não é alterada)
+     * @throws IOException se os bytes não forem o preâmbulo
+     */
+    public static boolean readPreface(ByteBuffer in) throws IOException {
+        if (in.remaining() < PREFACE.length) return false;
+
+        for (byte expected : PREFACE) {
+            if (in.get() != expected) throw new IOException("Preâmbulo binário inválido.");
+        }
+        return true;
+    }
+
+    /**
+     * Codifica a mensagem em um buffer pronto para escrita.
+     */
+    public static ByteBuffer encode(Message message) {
+        byte[] payload = message.payload().getBytes(StandardCharsets.UTF_8);
+        long correlationId = message.correlationId();
+        Byte code = CODES.get(message.type());
+
+        byte[] type = code == null ? message.type().getBytes(StandardCharsets.UTF_8) : null;
+        int typeSize = (type != null ? 1 + 2 + type.length : 1) + (correlationId >= 0 ? 8 : 0);
+        int bodySize = typeSize + payload.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+        buffer.putInt(bodySize);
+        putType(buffer, code, correlationId, type);
+        buffer.put(payload);
+        return buffer.flip();
+    }
+
+    /**
+     * Cabeçalho de um frame cujo payload será escrito à parte (por exemplo, a partir de um snapshot).
+     * Só aceita tipos conhecidos, com ou sem ID de correlação.
+     */
+    public static ByteBuffer header(Message typeOnly, int payloadLength) {
+        long correlationId = typeOnly.correlationId();
+        Byte code = CODES.get(typeOnly.type());
+        if (code == null) throw new IllegalArgumentException("Tipo sem código: " + typeOnly.type());
+
+        int typeSize = correlationId >= 0 ? 1 + 8 : 1;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + typeSize).putInt(typeSize + payloadLength);
+        putType(buffer, code, correlationId, null);
+        return buffer.flip();
+    }
+
+    private static void putType(ByteBuffer buffer, Byte code, long correlationId, byte[] literalType) {
+        int flag = correlationId >= 0 ? CORRELATED : 0;
+        if (literalType != null) {
+            buffer.put((byte) flag).putShort((short) literalType.length).put(literalType);
+        } else {
+            buffer.put((byte) (code | flag));
+        }
+        if (correlationId >= 0) buffer.putLong(correlationId);
+    }
+
+    /**
+     * Decodifica um frame completo a partir da posição atual de {@code in}.
+     *
+     * @return a mensagem, ou {@code null} se o frame ainda não chegou por inteiro (a posição não é alterada)
+     * @throws IOException se o frame for inválido; nesse caso a posição fica indefinida
+     */
+    public static Message decode(ByteBuffer in) throws IOException {
+        if (in.remaining() < HEADER_SIZE) return null;
+
+        int start = in.position();
+        int bodySize = in.getInt(start);
+        checkSize(bodySize);
+        if (in.remaining() < HEADER_SIZE + bodySize) return null;
+
+        // a leitura fica presa ao corpo deste frame e nunca alcança os bytes do próximo
+        Message message = decodeBody(in.slice(start + HEADER_SIZE, bodySize));
+        in.position(start + HEADER_SIZE + bodySize);
+        return message;
+    }
+
+    /**
+     * Lê um frame de um fluxo bloqueante.
+     */
+    public static Message read(DataInputStream in) throws IOException {
+        int bodySize = in.readInt();
+        checkSize(bodySize);
+
+        byte[] body = new byte[bodySize];
+        in.readFully(body);
+        return decodeBody(ByteBuffer.wrap(body));
+    }
+
+    // corpo inteiro do frame em body, do código do tipo ao fim do payload
+    private static Message decodeBody(ByteBuffer body) throws IOException {
+        int code = body.get() & 0xFF;
+        String type = readType(body, code);
+        long correlationId = -1;
+        if ((code & CORRELATED) != 0) {
+            if (body.remaining() < Long.BYTES) throw new IOException("Frame curto demais para o ID de correlação.");
+            correlationId = body.getLong();
+        }
+        return new Message(type, readUtf8(body, body.remaining()), correlationId);
+    }
+
+    private static void checkSize(int bodySize) throws IOException {
+        if (bodySize < 1 || bodySize > MAX_FRAME_SIZE) {
+            throw new IOException("Tamanho de frame inválido: " + bodySize);
+        }
+    }
+
+    // tipos conhecidos voltam como a instância da tabela, sem alocar
+    private static String readType(ByteBuffer in, int code) throws IOException {
+        int base = code & ~CORRELATED;
+        if (base != 0) {
+            if (base >= TYPES.length) throw new IOException("Código de tipo desconhecido: " + code);
+            return TYPES[base];
+        }
+        if (in.remaining() < Short.BYTES) throw new IOException("Frame curto demais para o tipo literal.");
+        int length = in.getShort() & 0xFFFF;
+        if (length > in.remaining()) {
+            throw new IOException("Tipo literal de " + length + " bytes excede o frame.");
+        }
+        return readUtf8(in, length);
+    }
+
+    private static String readUtf8(ByteBuffer in, int length) {
+        if (length == 0) return "";
+
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(in.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+}
@@ -1,26 +1,74 @@
 package edu.progdist.connection.direct;
 
-public record Message(String type, String payload) {
+/**
+ * Mensagem trocada entre os módulos: um tipo, um payload e, opcionalmente, um ID de correlação.
+ *
+ * @param correlationId ID usado para casar respostas com requisições, ou {@code -1} se não houver; no texto viaja
+ *                      junto do tipo, como em {@code GET_DATA#42|...}
+ */
+public record Message(String type, String payload, long correlationId) {
+    // separa o tipo do ID de correlação no formato textual
+    public static final char CORRELATION_SEPARATOR = '#';
+    private static final int MAX_ID_DIGITS = 18;    // cabe em um long sem overflow
+
+    public Message(String type, String payload) {
+        this(type, payload, -1);
+    }
+
+    // o texto é percorrido uma vez: até o '|' e, a partir dele, de volta sobre os dígitos do ID
     public Message(String raw) {
-        this(getTypeFromRaw(raw), getPayloadFromRaw(raw));
+        this(raw, typeEnd(raw));
+    }
+
+    private Message(String raw, int typeEnd) {
+        this(raw, typeEnd, idStart(raw, typeEnd));
+    }
+
+    private Message(String raw, int typeEnd, int idStart) {
+        this(raw.substring(0, idStart < 0 ? typeEnd : idStart - 1),
+            typeEnd < raw.length() ? raw.substring(typeEnd + 1) : "",
+            idStart < 0 ? -1 : Long.parseLong(raw, idStart, typeEnd, 10));
     }
 
     public static String encode(String type, String payload) {
         return type + "|" + payload;
     }
 
-    private static String getTypeFromRaw(String raw) {
-        String[] parts = raw.split("\\|", 2);
-        return parts.length > 0 ? parts[0] : "";
+    // posição do '|' que separa o tipo do payload, ou o fim do texto se não houver payload
+    private static int typeEnd(String raw) {
+        int separator = raw.indexOf('|');
+        return separator >= 0 ? separator : raw.length();
+    }
+
+    // primeiro dígito do ID quando o tipo termina em "#<id>" e o ID cabe em um long, ou -1
+    private static int idStart(String raw, int typeEnd) {
+        int i = typeEnd;
+        while (i > 0 && typeEnd - i < MAX_ID_DIGITS && isDigit(raw.charAt(i - 1))) i--;
+        return i < typeEnd && i > 0 && raw.charAt(i - 1) == CORRELATION_SEPARATOR ? i : -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Cópia da mensagem marcada com um ID de correlação, usado para casar respostas com requisições.
+     */
+    public Message withCorrelation(long correlationId) {
+        return new Message(type, payload, correlationId);
     }
 
-    private static String getPayloadFromRaw(String raw) {
-        String[] parts = raw.split("\\|", 2);
-        return parts.length > 1 ? parts[1] : "";
+    /**
+     * Cópia da mensagem sem o ID de correlação.
+     */
+    public Message withoutCorrelation() {
+        return correlationId < 0 ? this : new Message(type, payload);
     }
 
     @Override
     public String toString() {
-        return encode(type, payload);
+        return correlationId < 0
+            ? encode(type, payload)
+            : encode(type + CORRELATION_SEPARATOR + correlationId, payload);
     }
 }
@@ -0,0 +1,16 @@
+package edu.progdist.connection.direct;
+
+import java.io.IOException;
+
+/**
+ * Envio de mensagens a um cliente conectado fora do ciclo requisição/resposta, como notificações do servidor.
+ * Pode ser usado por qualquer thread; as mensagens de um mesmo sink chegam na ordem de envio.
+ */
+@FunctionalInterface
+public interface MessageSink {
+
+    /**
+     * @throws IOException se a conexão com o cliente estiver encerrada
+     */
+    void send(Message message) throws IOException;
+}
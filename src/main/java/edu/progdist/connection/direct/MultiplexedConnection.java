@@ -0,0 +1,144 @@
+package edu.progdist.connection.direct;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cliente que permite várias requisições simultâneas sobre uma única conexão.
+ * <p>
+ * Cada requisição recebe um ID de correlação ({@link Message#withCorrelation}) e um {@link CompletableFuture} que é
+ * completado quando a resposta com o mesmo ID chega. Uma única thread lê as respostas; os envios são serializados
+ * para que mensagens de threads diferentes não se misturem no fluxo. Mensagens sem ID de correlação, enviadas pelo
+ * servidor por conta própria, ficam disponíveis em {@link #receive()}.
+ */
+public class MultiplexedConnection implements Connection {
+    private static final int MAX_UNSOLICITED = 1024;   // mensagens sem correlação aguardando receive()
+    private static final Message CLOSED = new Message("", "");  // avisa receive() de que a conexão acabou
+
+    private final Connection connection;
+    private final Map<Long, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<Message> unsolicited = new LinkedBlockingQueue<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Object sendLock = new Object();
+    private final long timeoutMillis;
+    private final Thread reader;
+    private volatile boolean isClosed = false;
+
+    public MultiplexedConnection(Connection connection, long timeoutMillis) {
+        this.connection = connection;
+        this.timeoutMillis = timeoutMillis;
+        this.reader = new Thread(this::readResponses, "multiplexed-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Envia uma requisição e devolve a resposta correspondente, já sem o ID de correlação.
+     * O futuro falha com {@link java.util.concurrent.TimeoutException} se a resposta não chegar no prazo.
+     */
+    public CompletableFuture<Message> request(Message message) {
+        if (isClosed) {
+            return CompletableFuture.failedFuture(new IOException("Conexão multiplexada fechada."));
+        }
+
+        long id = nextId.getAndIncrement();
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        pending.put(id, future);
+        future.whenComplete((response, error) -> pending.remove(id));
+
+        try {
+            send(message.withCorrelation(id));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Envia uma mensagem sem esperar resposta.
+     */
+    @Override
+    public void send(Message message) throws IOException {
+        synchronized (sendLock) {
+            connection.send(message);
+        }
+    }
+
+    /**
+     * Espera a próxima mensagem sem ID de correlação; as respostas de {@link #request(Message)} não passam por aqui.
+     *
+     * @throws IOException se a conexão foi fechada ou perdida
+     */
+    @Override
+    public Message receive() throws IOException {
+        Message message;
+        try {
+            message = unsolicited.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrompido aguardando mensagem.");
+        }
+        if (message == CLOSED) {
+            unsolicited.add(CLOSED);    // para as demais threads em receive()
+            throw new IOException("Conexão multiplexada fechada.");
+        }
+        return message;
+    }
+
+    private void readResponses() {
+        try {
+            while (!isClosed) {
+                Message response = connection.receive();
+                long id = response.correlationId();
+                CompletableFuture<Message> future = id >= 0 ? pending.get(id) : null;
+
+                if (future != null) {
+                    future.complete(response.withoutCorrelation());
+                } else if (id >= 0) {
+                    System.err.println("Resposta sem requisição correspondente: " + response.type());
+                } else if (unsolicited.size() < MAX_UNSOLICITED) {
+                    unsolicited.add(response);
+                } else {
+                    // descarta em vez de bloquear, para não atrasar as respostas das requisições
+                    System.err.println("Mensagem descartada, ninguém está recebendo: " + response.type());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failPending(e);
+        }
+        isClosed = true;
+        unsolicited.add(CLOSED);
+    }
+
+    private void failPending(Throwable cause) {
+        IOException error = new IOException("Conexão perdida: " + cause.getMessage(), cause);
+        for (CompletableFuture<Message> future : pending.values()) {
+            future.completeExceptionally(error);
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        connection.close();
+        failPending(new IOException("Conexão fechada."));
+        unsolicited.add(CLOSED);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed || connection.isClosed();
+    }
+}
@@ -0,0 +1,520 @@
+package edu.progdist.connection.direct;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Servidor TCP não bloqueante que multiplexa todos os clientes em poucas threads de {@link Selector}.
+ * <p>
+ * Usa os mesmos protocolos de {@link TcpConnection}: linhas de texto ou frames de {@link FrameCodec}, conforme o
+ * primeiro byte de cada cliente. As chamadas ao {@link MessageHandler} são executadas em um pool de workers limitado,
+ * uma mensagem por vez por cliente para preservar a ordem das respostas; um cliente com muitas mensagens aguardando
+ * deixa de ser lido até o handler alcançá-lo, e o controle de fluxo do TCP segura o resto. Cada thread de selector
+ * reaproveita um buffer direto de leitura e um de escrita, tratando leituras e escritas parciais.
+ */
+public class NioTcpConnection implements Closeable {
+    public static final String SELECTORS_PROPERTY = "server.io.selectors";
+    public static final String WORKERS_PROPERTY = "server.io.workers";
+    public static final String QUEUE_PROPERTY = "server.io.queue";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int MAX_OUTBOX = 1024;    // mensagens enviadas pelo servidor ainda não escritas
+    private static final int MAX_INBOX = 256;      // mensagens recebidas aguardando o handler; acima disso, pausa
+
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final ThreadPoolExecutor workers;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile Supplier<? extends ConnectionHandler> handlers;
+    private volatile boolean isClosed = false;
+
+    /**
+     * Cria o servidor com a configuração das propriedades {@value #SELECTORS_PROPERTY},
+     * {@value #WORKERS_PROPERTY} e {@value #QUEUE_PROPERTY}.
+     */
+    public NioTcpConnection(int port) throws IOException {
+        this(port,
+            Integer.getInteger(SELECTORS_PROPERTY, 2),
+            Integer.getInteger(WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors() * 2),
+            Integer.getInteger(QUEUE_PROPERTY, 1024));
+    }
+
+    public NioTcpConnection(int port, int selectors, int workerThreads, int queueCapacity) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            serverChannel.configureBlocking(false);
+
+            this.loops = new EventLoop[Math.max(1, selectors)];
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(i);
+            }
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "nio-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Começa a aceitar clientes, repassando cada mensagem recebida ao {@code handler}.
+     */
+    public void serve(MessageHandler handler) {
+        serveAsync(AsyncMessageHandler.of(handler));
+    }
+
+    /**
+     * Como {@link #serve(MessageHandler)}, mas a resposta é escrita quando o futuro completar, liberando o worker
+     * enquanto o handler espera por outros serviços.
+     */
+    public void serveAsync(AsyncMessageHandler handler) {
+        serveConnections(() -> handler::handle);
+    }
+
+    /**
+     * Como {@link #serveAsync(AsyncMessageHandler)}, com um handler criado por {@code handlers} para cada cliente e
+     * avisado quando o cliente desconecta.
+     */
+    public void serveConnections(Supplier<? extends ConnectionHandler> handlers) {
+        this.handlers = handlers;
+        loops[0].register(serverChannel, SelectionKey.OP_ACCEPT);
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed) return;
+        isClosed = true;
+        serverChannel.close();
+        for (EventLoop loop : loops) {
+            loop.close();
+        }
+        workers.shutdownNow();
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    public int getActiveWorkers() {
+        return workers.getActiveCount();
+    }
+
+    public int getQueuedRequests() {
+        return workers.getQueue().size();
+    }
+
+    private enum Framing { UNKNOWN, TEXT, HANDSHAKE, BINARY }
+
+    // estado de um cliente; acessado somente pela thread do seu selector
+    private static final class Session {
+        final SelectionKey key;
+        final ConnectionHandler handler;
+        Framing framing = Framing.UNKNOWN;                  // definido pelo primeiro byte recebido
+        byte[] line = new byte[256];
+        int lineLength;
+        ByteBuffer frames;                                  // bytes recebidos ainda não interpretados
+        final Queue<Message> inbox = new ArrayDeque<>();    // mensagens aguardando o handler, até MAX_INBOX
+        final Queue<ByteBuffer> outbox = new ArrayDeque<>(); // respostas aguardando escrita
+        boolean busy;                                       // há uma mensagem no worker
+        boolean paused;                                     // OP_READ desligado porque a inbox encheu
+
+        Session(SelectionKey key, ConnectionHandler handler) {
+            this.key = key;
+            this.handler = handler;
+        }
+
+        boolean isInboxFull() {
+            return inbox.size() >= MAX_INBOX;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "nio-selector-" + index);
+        }
+
+        // executa uma tarefa na thread deste selector
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SelectableChannel channel, int ops) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, ops);
+                    if (ops == SelectionKey.OP_READ) {
+                        Session session = new Session(key, handlers.get());
+                        key.attach(session);
+                        session.handler.opened(message -> {
+                            if (!key.isValid()) throw new IOException("Conexão com o cliente encerrada.");
+                            execute(() -> push(session, message));
+                        });
+                    }
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            while (!isClosed) {
+                try {
+                    selector.select();
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        try {
+                            if (!key.isValid()) continue;
+                            if (key.isAcceptable()) accept();
+                            if (key.isValid() && key.isReadable()) read((Session) key.attachment());
+                            if (key.isValid() && key.isWritable()) write((Session) key.attachment());
+                        } catch (IOException e) {
+                            closeSession(key);
+                        } catch (RuntimeException e) {
+                            // um cliente com dados inesperados não pode derrubar o selector dos demais
+                            System.err.println("Erro inesperado em uma conexão; desconectando: " + e);
+                            closeSession(key);
+                        }
+                    }
+                } catch (ClosedSelectorException e) {
+                    return;
+                } catch (IOException e) {
+                    System.err.println("Erro no selector: " + e.getMessage());
+                }
+            }
+            shutdown();
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                // distribui os clientes entre os selectors em rodízio
+                loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)]
+                    .register(channel, SelectionKey.OP_READ);
+            }
+        }
+
+        private void read(Session session) throws IOException {
+            SocketChannel channel = (SocketChannel) session.key.channel();
+
+            // o buffer é compartilhado pelos clientes do selector e pode ter ficado pela metade após um erro
+            readBuffer.clear();
+            int read = 0;
+            while (!session.isInboxFull() && (read = channel.read(readBuffer)) > 0) {
+                readBuffer.flip();
+                if (session.framing == Framing.UNKNOWN) {
+                    session.framing = readBuffer.get(readBuffer.position()) == FrameCodec.PREFACE_START
+                        ? Framing.HANDSHAKE : Framing.TEXT;
+                }
+                if (session.framing != Framing.TEXT) {
+                    appendToFrames(session, readBuffer);
+                    parseFrames(session);
+                } else {
+                    readLines(session, readBuffer);
+                    // a inbox encheu no meio do bloco: o resto espera em frames até o handler alcançar
+                    if (readBuffer.hasRemaining()) appendToFrames(session, readBuffer);
+                }
+                readBuffer.clear();
+            }
+
+            if (read < 0) {
+                closeSession(session.key);
+            } else if (session.isInboxFull()) {
+                session.paused = true;
+                session.key.interestOps(session.key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        // volta a ler o cliente pausado quando metade da inbox foi consumida, começando pelos bytes já recebidos
+        private void resume(Session session) throws IOException {
+            if (!session.paused || session.inbox.size() > MAX_INBOX / 2) return;
+
+            session.paused = false;
+            if (session.framing != Framing.TEXT) {
+                parseFrames(session);
+            } else if (session.frames != null) {
+                ByteBuffer pending = session.frames.flip();
+                readLines(session, pending);
+                pending.compact();
+            }
+
+            if (session.isInboxFull()) {
+                session.paused = true;
+            } else {
+                session.key.interestOps(session.key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        private void readLines(Session session, ByteBuffer source) throws IOException {
+            while (source.hasRemaining() && !session.isInboxFull()) {
+                byte b = source.get();
+                if (b == '\n') {
+                    onMessage(session, new Message(new String(session.line, 0, session.lineLength,
+                        StandardCharsets.UTF_8)));
+                    session.lineLength = 0;
+                } else if (b != '\r') {
+                    appendToLine(session, b);
+                }
+            }
+        }
+
+        private void appendToFrames(Session session, ByteBuffer source) throws IOException {
+            ByteBuffer frames = session.frames;
+            if (frames == null) {
+                frames = session.frames = ByteBuffer.allocate(BUFFER_SIZE);
+            } else if (frames.remaining() < source.remaining()) {
+                int needed = frames.position() + source.remaining();
+                if (needed > FrameCodec.MAX_FRAME_SIZE + FrameCodec.HEADER_SIZE + BUFFER_SIZE) {
+                    throw new IOException("Frame excede o tamanho máximo.");
+                }
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(needed, frames.capacity() * 2));
+                frames = session.frames = grown.put(frames.flip());
+            }
+            frames.put(source);
+        }
+
+        // interpreta os frames completos em session.frames até a inbox encher; o resto fica para depois
+        private void parseFrames(Session session) throws IOException {
+            ByteBuffer frames = session.frames.flip();
+
+            if (session.framing == Framing.HANDSHAKE) {
+                if (!FrameCodec.readPreface(frames)) {
+                    frames.compact();
+                    return;
+                }
+                session.framing = Framing.BINARY;
+                session.outbox.add(FrameCodec.preface());
+                write(session);
+            }
+
+            Message message;
+            while (!session.isInboxFull() && (message = FrameCodec.decode(frames)) != null) {
+                onMessage(session, message);
+            }
+            frames.compact();
+        }
+
+        private void appendToLine(Session session, byte b) throws IOException {
+            if (session.lineLength == session.line.length) {
+                if (session.lineLength >= MAX_LINE_LENGTH) {
+                    throw new IOException("Linha excede o tamanho máximo.");
+                }
+                session.line = Arrays.copyOf(session.line, session.lineLength * 2);
+            }
+            session.line[session.lineLength++] = b;
+        }
+
+        private void onMessage(Session session, Message message) {
+            session.inbox.add(message);
+            if (!session.busy) {
+                session.busy = true;
+                dispatchNext(session);
+            }
+        }
+
+        // entrega a próxima mensagem da inbox ao pool; as recusadas são respondidas na hora, em sequência
+        private void dispatchNext(Session session) {
+            while (session.key.isValid()) {
+                try {
+                    resume(session);
+                } catch (IOException e) {
+                    closeSession(session.key);
+                    return;
+                }
+
+                Message message = session.inbox.poll();
+                if (message == null) {
+                    session.busy = false;
+                    return;
+                }
+                try {
+                    workers.execute(() -> handle(session, message));
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // pool saturado: responde na hora em vez de bloquear o selector
+                    if (!send(session, new Message("SERVER_BUSY", "Servidor sobrecarregado, tente novamente."))) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        // executado por um worker
+        private void handle(Session session, Message message) {
+            CompletableFuture<Message> response;
+            try {
+                response = session.handler.handle(message);
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            response.whenComplete((result, error) -> {
+                if (error != null) {
+                    System.err.println("Erro ao tratar mensagem " + message.type() + ": " + error.getMessage());
+                    execute(() -> closeSession(session.key));
+                } else {
+                    execute(() -> complete(session, result));
+                }
+            });
+        }
+
+        private void complete(Session session, Message response) {
+            if (!session.key.isValid()) return;
+            if (response != null && !send(session, response)) return;
+            dispatchNext(session);
+        }
+
+        // false se a sessão foi encerrada
+        private boolean send(Session session, Message message) {
+            session.outbox.add(session.framing == Framing.BINARY
+                ? FrameCodec.encode(message)
+                : ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8)));
+            try {
+                write(session);
+                return true;
+            } catch (IOException e) {
+                closeSession(session.key);
+                return false;
+            }
+        }
+
+        // mensagem enviada pelo servidor; um cliente que não consome as mensagens é desconectado
+        private void push(Session session, Message message) {
+            if (!session.key.isValid()) return;
+            if (session.outbox.size() >= MAX_OUTBOX) {
+                System.err.println("Cliente não acompanha as mensagens enviadas; desconectando.");
+                closeSession(session.key);
+                return;
+            }
+            send(session, message);
+        }
+
+        private void write(Session session) throws IOException {
+            SocketChannel channel = (SocketChannel) session.key.channel();
+
+            while (!session.outbox.isEmpty()) {
+                // copia o que couber das respostas pendentes para o buffer direto compartilhado
+                writeBuffer.clear();
+                for (ByteBuffer pending : session.outbox) {
+                    if (!writeBuffer.hasRemaining()) break;
+                    ByteBuffer slice = pending.duplicate();
+                    if (slice.remaining() > writeBuffer.remaining()) {
+                        slice.limit(slice.position() + writeBuffer.remaining());
+                    }
+                    writeBuffer.put(slice);
+                }
+                writeBuffer.flip();
+
+                int written = channel.write(writeBuffer);
+                consume(session.outbox, written);
+
+                if (writeBuffer.hasRemaining()) {
+                    // escrita parcial: aguarda o socket ficar disponível
+                    session.key.interestOps(session.key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            session.key.interestOps(session.key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        private void consume(Queue<ByteBuffer> outbox, int bytes) {
+            while (bytes > 0) {
+                ByteBuffer head = outbox.peek();
+                int step = Math.min(bytes, head.remaining());
+                head.position(head.position() + step);
+                bytes -= step;
+                if (!head.hasRemaining()) outbox.poll();
+            }
+        }
+
+        private void closeSession(SelectionKey key) {
+            if (!key.isValid()) return;     // já encerrada
+            key.cancel();
+            closeQuietly(key.channel());
+            if (key.attachment() instanceof Session session) notifyClosed(session);
+        }
+
+        private void notifyClosed(Session session) {
+            try {
+                session.handler.closed();
+            } catch (RuntimeException e) {
+                System.err.println("Erro ao encerrar sessão: " + e.getMessage());
+            }
+        }
+
+        void close() {
+            if (thread.isAlive()) {
+                selector.wakeup();      // a própria thread do selector faz o encerramento
+            } else {
+                shutdown();
+            }
+        }
+
+        private void shutdown() {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+                if (key.attachment() instanceof Session session) notifyClosed(session);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+}
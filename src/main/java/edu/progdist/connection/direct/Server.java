@@ -1,7 +1,11 @@
 package edu.progdist.connection.direct;
 
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
 
 /**
  * Abstração de um servidor que gerencia conexões TCP e multicast.
@@ -28,11 +32,99 @@ public abstract class Server {
         }
     }
 
+    // modo de E/S do servidor TCP: "blocking" (uma thread por cliente, padrão) ou "nio"; -Dserver.io=nio
+    public static final String IO_MODE_PROPERTY = "server.io";
+
     protected TcpConnection tcpConnection;                  // trata socket TCP
+    protected NioTcpConnection nioConnection;               // servidor TCP não bloqueante, quando configurado
     protected MulticastConnection multicastConnection;      // trata socket multicast
     protected ExecutorService executor;                     // executor para gerenciar threads
     protected ScheduledExecutorService scheduler;           // scheduler para tarefas periódicas
 
+    protected static boolean isNioMode() {
+        return "nio".equalsIgnoreCase(System.getProperty(IO_MODE_PROPERTY, "blocking"));
+    }
+
+    /**
+     * Abre o servidor TCP no modo configurado em {@value #IO_MODE_PROPERTY}.
+     */
+    protected void openTcpServer(int port) throws IOException {
+        if (isNioMode()) {
+            nioConnection = new NioTcpConnection(port);
+        } else {
+            tcpConnection = new TcpConnection(port);
+        }
+    }
+
+    /**
+     * Atende os clientes TCP com o {@code handler}: no modo NIO pelos selectors, senão com uma tarefa por cliente.
+     */
+    protected void serveTcp(MessageHandler handler) {
+        serveTcpAsync(AsyncMessageHandler.of(handler));
+    }
+
+    /**
+     * Como {@link #serveTcp(MessageHandler)}; no modo bloqueante a thread do cliente espera cada resposta.
+     */
+    protected void serveTcpAsync(AsyncMessageHandler handler) {
+        serveTcpConnections(() -> handler::handle);
+    }
+
+    /**
+     * Como {@link #serveTcpAsync(AsyncMessageHandler)}, com um handler criado por {@code handlers} para cada cliente e
+     * avisado quando o cliente desconecta.
+     */
+    protected void serveTcpConnections(Supplier<? extends ConnectionHandler> handlers) {
+        if (nioConnection != null) {
+            nioConnection.serveConnections(() -> correlated(handlers.get()));
+            return;
+        }
+
+        executor.submit(() -> {
+            while (!tcpConnection.isClosed()) {
+                // aceita conexões de clientes
+                Socket clientSocket = tcpConnection.accept();
+
+                if (clientSocket == null) break;
+
+                // cria uma nova tarefa para lidar com o cliente
+                executor.submit(() -> {
+                    ConnectionHandler handler = correlated(handlers.get());
+                    try {
+                        tcpConnection.handleClient(clientSocket, message -> handler.handle(message).join(),
+                            handler::opened);
+                    } finally {
+                        handler.closed();
+                    }
+                });
+            }
+        });
+    }
+
+    // o handler vê o tipo sem o ID de correlação, e a resposta volta com o mesmo ID da requisição
+    private static ConnectionHandler correlated(ConnectionHandler handler) {
+        return new ConnectionHandler() {
+            @Override
+            public CompletableFuture<Message> handle(Message message) {
+                long correlationId = message.correlationId();
+                if (correlationId < 0) return handler.handle(message);
+
+                return handler.handle(message.withoutCorrelation())
+                    .thenApply(response -> response.withCorrelation(correlationId));
+            }
+
+            @Override
+            public void opened(MessageSink sink) {
+                handler.opened(sink);
+            }
+
+            @Override
+            public void closed() {
+                handler.closed();
+            }
+        };
+    }
+
     public abstract void start(int port);
     protected abstract void run();
     public abstract void stop();
@@ -1,17 +1,29 @@
 package edu.progdist.connection.direct;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
 public class TcpConnection implements Connection {
     private Socket socket;
     private ServerSocket serverSocket;
     private BufferedReader in;
     private PrintWriter out;
+    private DataInputStream binaryIn;       // usados quando o modo binário foi negociado
+    private DataOutputStream binaryOut;
+    private boolean binary = false;
     private boolean isClosed = false;
 
     public TcpConnection(int port) throws IOException {
@@ -19,18 +31,29 @@ public class TcpConnection implements Connection {
     }
 
     public TcpConnection(String host, int port) throws IOException {
-        this.socket = new Socket(host, port);
-        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.out = new PrintWriter(socket.getOutputStream(), true);
+        open(host, port);
     }
 
     @Override
-    public void send(Message message) {
-        out.println(message);
+    public void send(Message message) throws IOException {
+        if (binary) {
+            binaryOut.write(FrameCodec.encode(message).array());
+            binaryOut.flush();
+        } else {
+            out.println(message);
+        }
     }
 
     @Override
     public Message receive() throws IOException {
+        if (binary) {
+            try {
+                return FrameCodec.read(binaryIn);
+            } catch (EOFException e) {
+                throw new IOException("Conexão fechada pelo servidor.");
+            }
+        }
+
         String rawMessage = in.readLine();
         if (rawMessage == null) {
             throw new IOException("Conexão fechada pelo servidor.");
@@ -54,6 +77,10 @@ public class TcpConnection implements Connection {
         return isClosed;
     }
 
+    public boolean isBinary() {
+        return binary;
+    }
+
     public Socket accept() {
         try {
             return serverSocket.accept();
@@ -62,23 +89,123 @@ public class TcpConnection implements Connection {
         }
     }
 
+    /**
+     * Atende um cliente até a conexão ser fechada. O primeiro byte define o protocolo: o preâmbulo binário de
+     * {@link FrameCodec} ativa frames com prefixo de tamanho; qualquer outro valor mantém o protocolo de linhas.
+     */
     public void handleClient(Socket clientSocket, MessageHandler handler) {
+        handleClient(clientSocket, handler, sink -> {});
+    }
+
+    /**
+     * Como {@link #handleClient(Socket, MessageHandler)}, entregando a {@code opened} um {@link MessageSink} para
+     * enviar mensagens ao cliente a partir de outras threads; as escritas são serializadas com as respostas.
+     */
+    public void handleClient(Socket clientSocket, MessageHandler handler, Consumer<MessageSink> opened) {
         try (
-            BufferedReader clientIn = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            PrintWriter clientOut = new PrintWriter(clientSocket.getOutputStream(), true)
+            BufferedInputStream clientIn = new BufferedInputStream(clientSocket.getInputStream());
+            OutputStream clientOut = clientSocket.getOutputStream()
         ) {
+            clientIn.mark(1);
+            if (clientIn.read() == (FrameCodec.PREFACE_START & 0xFF)) {
+                handleBinaryClient(clientIn, clientOut, handler, opened);
+            } else {
+                clientIn.reset();
+                handleTextClient(clientIn, clientOut, handler, opened);
+            }
+        } catch (IOException ignored) {}
+    }
+
+    private void handleTextClient(InputStream rawIn, OutputStream rawOut, MessageHandler handler,
+                                  Consumer<MessageSink> opened) {
+        BufferedReader clientIn = new BufferedReader(new InputStreamReader(rawIn));
+        PrintWriter clientOut = new PrintWriter(rawOut, true);
+        opened.accept(message -> {
+            synchronized (clientOut) {
+                clientOut.println(message);
+                if (clientOut.checkError()) throw new IOException("Conexão com o cliente encerrada.");
+            }
+        });
+        try {
             String message;
             while ((message = clientIn.readLine()) != null) {
                 Message request = new Message(message);
                 Message response = handler.handle(request);
-                clientOut.println(response);
+                synchronized (clientOut) {
+                    clientOut.println(response);
+                }
             }
         } catch (IOException ignored) {}
     }
 
+    private void handleBinaryClient(InputStream rawIn, OutputStream rawOut, MessageHandler handler,
+                                    Consumer<MessageSink> opened) throws IOException {
+        DataInputStream clientIn = new DataInputStream(rawIn);
+        DataOutputStream clientOut = new DataOutputStream(new BufferedOutputStream(rawOut));
+
+        // confirma o restante do preâmbulo e responde com o mesmo preâmbulo
+        byte[] preface = new byte[FrameCodec.PREFACE.length - 1];
+        clientIn.readFully(preface);
+        if (!Arrays.equals(preface, 0, preface.length, FrameCodec.PREFACE, 1, FrameCodec.PREFACE.length)) {
+            throw new IOException("Preâmbulo binário inválido.");
+        }
+        clientOut.write(FrameCodec.PREFACE);
+        clientOut.flush();
+
+        opened.accept(message -> {
+            synchronized (clientOut) {
+                clientOut.write(FrameCodec.encode(message).array());
+                clientOut.flush();
+            }
+        });
+        try {
+            while (true) {
+                Message request = FrameCodec.read(clientIn);
+                Message response = handler.handle(request);
+                if (response != null) {
+                    synchronized (clientOut) {
+                        clientOut.write(FrameCodec.encode(response).array());
+                        clientOut.flush();
+                    }
+                }
+            }
+        } catch (EOFException ignored) {}
+    }
+
     public void connect(String host, int port) throws IOException {
+        open(host, port);
+    }
+
+    private void open(String host, int port) throws IOException {
         socket = new Socket(host, port);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedInputStream rawIn = new BufferedInputStream(socket.getInputStream());
+        binary = FrameCodec.isBinaryPreferred() && negotiateBinary(rawIn);
+
+        if (binary) {
+            binaryIn = new DataInputStream(rawIn);
+            binaryOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        } else {
+            in = new BufferedReader(new InputStreamReader(rawIn));
+            out = new PrintWriter(socket.getOutputStream(), true);
+        }
+    }
+
+    // envia o preâmbulo; um servidor só textual responde com uma linha de erro, que é descartada
+    private boolean negotiateBinary(BufferedInputStream rawIn) throws IOException {
+        OutputStream rawOut = socket.getOutputStream();
+        rawOut.write(FrameCodec.PREFACE);
+        rawOut.flush();
+
+        int first = rawIn.read();
+        if (first == (FrameCodec.PREFACE_START & 0xFF)) {
+            rawIn.readNBytes(FrameCodec.PREFACE.length - 1);
+            return true;
+        }
+
+        int b = first;
+        while (b != '\n' && b != -1) {
+            b = rawIn.read();
+        }
+        return false;
     }
 }
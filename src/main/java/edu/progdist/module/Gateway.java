@@ -1,15 +1,23 @@
 package edu.progdist.module;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import edu.progdist.module.database.Database;
+import edu.progdist.module.drone.Reading;
+import edu.progdist.module.drone.ReadingCodec;
+import edu.progdist.module.drone.Region;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.concurrent.ExecutorService;
+import java.util.UUID;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Gateway que conecta drones a um broker MQTT e RabbitMQ.
@@ -17,7 +25,7 @@ import java.util.concurrent.Executors;
  */
 public class Gateway {
     private static final String PREFIX = "[GATEWAY] ";
-    private final Database database = new Database();
+    private final Database database;
     private final ExecutorService executor = Executors.newCachedThreadPool();
     private MqttClient mqttConsumer;
     private MqttClient mqttProducer;
@@ -29,12 +37,35 @@ public class Gateway {
     private static final String RABBITMQ_EXCHANGE = "weather_data";
     private static final String MQTT_PRODUCER_TOPIC_PREFIX = "data/realtime/";
 
+    // modo persistente do banco: -Dgateway.database.dir=<diretório> [-Dgateway.database.segment-bytes=<bytes>]
+    private static final String DATABASE_DIR_PROPERTY = "gateway.database.dir";
+    private static final String SEGMENT_BYTES_PROPERTY = "gateway.database.segment-bytes";
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    // messageId das publicações no RabbitMQ: <instância>-<sequência>, único entre execuções, para que os
+    // consumidores descartem reentregas
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicLong published = new AtomicLong();
+
     public Gateway(String mqttBroker, String rabbitMqHost) throws Exception {
+        this.database = openDatabase();
         setupMqttConsumer(mqttBroker);
         setupMqttProducer(mqttBroker);
         setupRabbitMQ(rabbitMqHost);
     }
 
+    private static Database openDatabase() throws IOException {
+        String dir = System.getProperty(DATABASE_DIR_PROPERTY);
+        if (dir == null || dir.isBlank()) {
+            return new Database();
+        }
+
+        long segmentBytes = Long.getLong(SEGMENT_BYTES_PROPERTY, DEFAULT_SEGMENT_BYTES);
+        Database db = Database.open(ReadingCodec.Format.GATEWAY, Path.of(dir), segmentBytes);
+        System.out.println(PREFIX + "Banco persistente em " + dir + " com " + db.getTotalCount() + " leituras.");
+        return db;
+    }
+
     private void setupMqttConsumer(String broker) throws MqttException {
         this.mqttConsumer = new MqttClient(broker, "GatewayConsumer_" + System.currentTimeMillis(),
             new MemoryPersistence());
@@ -80,17 +111,21 @@ public class Gateway {
     private void processMessage(String topic, String payload) {
         String region = topic.substring(topic.lastIndexOf("/") + 1);
 
-        String formattedData = formatData(payload);
-        if (formattedData == null) {
+        Reading reading = new Reading();
+        if (!ReadingCodec.parse(payload, reading)) {
             System.err.println(PREFIX + "Formato de dados inválido recebido: " + payload);
             return;
         }
+        String formattedData = ReadingCodec.Format.GATEWAY.format(reading);
 
-        database.saveData(formattedData);
+        database.append(System.currentTimeMillis(), Region.fromKey(region), reading);
         System.out.println(PREFIX + "Recebido do tópico " + topic + ": " + payload + " formatado como: " + formattedData);
 
         try {
-            rabbitChannel.basicPublish(RABBITMQ_EXCHANGE, region, null,
+            AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .messageId(instanceId + "-" + published.incrementAndGet())
+                .build();
+            rabbitChannel.basicPublish(RABBITMQ_EXCHANGE, region, properties,
                 formattedData.getBytes(StandardCharsets.UTF_8));
         } catch (Exception e) {
             System.err.println(PREFIX + "Erro ao publicar no RabbitMQ: " + e.getMessage());
@@ -105,32 +140,12 @@ public class Gateway {
     }
 
     public String formatData(String data) {
-        if (data == null || data.isEmpty()) {
-            return "Error: Invalid Data.";
+        Reading reading = new Reading();
+        if (!ReadingCodec.parse(data, reading)) {
+            return ReadingCodec.INVALID_DATA;
         }
 
-        StringBuilder sb = new StringBuilder(data);
-        char[] array = sb.toString().toCharArray();
-        String[] values = { "", "", "", "" };
-        int j = 0;
-
-        for (int i = 0; i < sb.length(); i++) {
-            if (Character.isDigit(array[i]) || array[i] == '.' || (array[i] == '-' && !Character.isDigit(array[i - 1]))) {
-                values[j] = values[j].concat(String.valueOf(array[i]));
-            } else if (String.valueOf(array[i]).matches("[-,;#]")) {
-                j++;
-            }
-        }
-
-        // Montagem da string formatada
-        sb = new StringBuilder();
-
-        sb.append('[').append(values[2]).append("|")
-            .append(values[3]).append("|")
-            .append(values[0]).append("|")
-            .append(values[1]).append(']');
-
-        return sb.toString();
+        return ReadingCodec.Format.GATEWAY.format(reading);
     }
 
     public void stop() throws Exception {
@@ -149,6 +164,7 @@ public class Gateway {
             rabbitConnection.close();
         }
         executor.shutdownNow();
+        database.close();
         System.out.println(PREFIX + "encerrado.");
     }
 
@@ -0,0 +1,20 @@
+package edu.progdist.module.database;
+
+import edu.progdist.module.drone.Reading;
+
+/**
+ * Bloco de leituras com capacidade fixa, em memória ou mapeado de arquivo.
+ * Há no máximo um escritor por bloco; leituras concorrentes só acessam posições já publicadas.
+ */
+abstract class Block {
+    abstract long timestamp(int i);
+
+    abstract byte region(int i);
+
+    abstract void read(int i, Reading out);
+
+    abstract void write(int i, long timestamp, byte region, Reading reading);
+
+    // garante que o conteúdo escrito seja durável; blocos em memória não fazem nada
+    void force() {}
+}
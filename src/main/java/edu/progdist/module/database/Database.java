@@ -1,24 +1,372 @@
-package edu.progdist.module.database;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-/**
- * Classe que simula um banco de dados simples para armazenar os dados climáticos em memória.
- */
-public class Database {
-    private final List<String> storage = Collections.synchronizedList(new ArrayList<>());
-
-    public void saveData(String data) {
-        storage.add(data);
-    }
-
-    public List<String> getAllData() {
-        return new ArrayList<>(storage);
-    }
-
-    public long getTotalCount() {
-        return storage.size();
-    }
-}
+package edu.progdist.module.database;
+
+import edu.progdist.module.drone.Reading;
+import edu.progdist.module.drone.ReadingCodec;
+import edu.progdist.module.drone.Region;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Classe que simula um banco de dados simples para armazenar os dados climáticos em memória.
+ * <p>
+ * As leituras são guardadas em colunas de tipos primitivos (timestamp, região, pressão, radiação,
+ * temperatura e umidade) divididas em blocos de tamanho fixo, de modo que inserções nunca copiam dados antigos.
+ * Há um único escritor por vez; leitores enxergam sempre um prefixo consistente sem bloquear.
+ * <p>
+ * No modo persistente ({@link #open}) cada bloco é um segmento de arquivo mapeado em memória com registros
+ * binários de largura fixa. Ao reabrir, os segmentos existentes são apenas mapeados, sem decodificar registros,
+ * então o tempo de inicialização depende da quantidade de segmentos e não da quantidade de leituras.
+ */
+public class Database implements AutoCloseable {
+    public static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Recebe as leituras de uma varredura. A instância de {@link Reading} é reaproveitada entre chamadas.
+     */
+    @FunctionalInterface
+    public interface ReadingVisitor {
+        void visit(long sequence, long timestamp, Region region, Reading reading);
+    }
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    // bloco de colunas em memória com capacidade fixa
+    private static final class Chunk extends Block {
+        final long[] timestamps = new long[CHUNK_SIZE];
+        final byte[] regions = new byte[CHUNK_SIZE];
+        final int[] pressures = new int[CHUNK_SIZE];
+        final double[] radiations = new double[CHUNK_SIZE];
+        final int[] temperatures = new int[CHUNK_SIZE];
+        final int[] humidities = new int[CHUNK_SIZE];
+
+        @Override
+        long timestamp(int i) {
+            return timestamps[i];
+        }
+
+        @Override
+        byte region(int i) {
+            return regions[i];
+        }
+
+        @Override
+        void read(int i, Reading out) {
+            out.set(pressures[i], radiations[i], temperatures[i], humidities[i]);
+        }
+
+        @Override
+        void write(int i, long timestamp, byte region, Reading reading) {
+            timestamps[i] = timestamp;
+            regions[i] = region;
+            pressures[i] = reading.pressure();
+            radiations[i] = reading.radiation();
+            temperatures[i] = reading.temperature();
+            humidities[i] = reading.humidity();
+        }
+    }
+
+    private final ReadingCodec.Format format;   // formato usado por saveData e getAllData
+    private final Path directory;               // diretório dos segmentos; null no modo em memória
+    private final int blockCapacity;
+    private final Object writeLock = new Object();
+    private volatile Block[] chunks = new Block[16];
+    private volatile long size;                 // publicado após a escrita das colunas
+
+    public Database() {
+        this(ReadingCodec.Format.GATEWAY);
+    }
+
+    public Database(ReadingCodec.Format format) {
+        this.format = format;
+        this.directory = null;
+        this.blockCapacity = CHUNK_SIZE;
+    }
+
+    private Database(ReadingCodec.Format format, Path directory, int segmentCapacity) {
+        this.format = format;
+        this.directory = directory;
+        this.blockCapacity = segmentCapacity;
+    }
+
+    /**
+     * Abre (ou cria) um banco persistente em {@code directory}, com segmentos de até {@code segmentBytes} bytes.
+     * <p>
+     * Os segmentos existentes são mapeados na ordem; a recuperação para no primeiro segmento incompleto,
+     * descartando registros cortados no meio. Segmentos posteriores a ele são ignorados e serão sobrescritos.
+     */
+    public static Database open(ReadingCodec.Format format, Path directory, long segmentBytes) throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                    && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .sorted()
+                .toList();
+        }
+
+        List<MappedSegment> segments = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (!files.get(i).equals(segmentPath(directory, i))) {
+                System.err.println("Segmento fora de sequência ignorado: " + files.get(i));
+                break;
+            }
+
+            MappedSegment segment = MappedSegment.open(files.get(i));
+            if (!segments.isEmpty() && segment.capacity() != segments.get(0).capacity()) {
+                System.err.println("Segmento com capacidade divergente ignorado: " + segment.path());
+                break;
+            }
+            segments.add(segment);
+
+            if (segment.recovered() < segment.capacity()) {
+                if (i < files.size() - 1) {
+                    System.err.println("Segmento incompleto em " + segment.path() +
+                        "; segmentos posteriores serão descartados.");
+                }
+                break;
+            }
+        }
+
+        int capacity = segments.isEmpty() ? MappedSegment.capacityFor(segmentBytes) : segments.get(0).capacity();
+        Database database = new Database(format, directory, capacity);
+
+        long recovered = 0;
+        Block[] directoryBlocks = new Block[Math.max(16, Integer.highestOneBit(segments.size()) * 2)];
+        for (int i = 0; i < segments.size(); i++) {
+            directoryBlocks[i] = segments.get(i);
+            recovered += segments.get(i).recovered();
+        }
+        database.chunks = directoryBlocks;
+        database.size = recovered;
+        return database;
+    }
+
+    private static Path segmentPath(Path directory, int index) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Adiciona uma leitura e retorna seu número de sequência.
+     */
+    public long append(long timestamp, Region region, Reading reading) {
+        synchronized (writeLock) {
+            long sequence = size;
+            Block block = blockFor(sequence);
+            block.write((int) (sequence % blockCapacity), timestamp, region.id(), reading);
+
+            size = sequence + 1;
+            return sequence;
+        }
+    }
+
+    /**
+     * Adiciona as primeiras {@code count} leituras de uma vez, com o mesmo timestamp, cada uma com a região de mesma
+     * posição em {@code regions}, e retorna o número de sequência da primeira. O lote é publicado de uma só vez:
+     * leitores veem todas as leituras ou nenhuma.
+     */
+    public long appendAll(long timestamp, Region[] regions, Reading[] readings, int count) {
+        synchronized (writeLock) {
+            long first = size;
+            for (int i = 0; i < count; i++) {
+                long sequence = first + i;
+                Block block = blockFor(sequence);
+                block.write((int) (sequence % blockCapacity), timestamp, regions[i].id(), readings[i]);
+            }
+
+            size = first + count;
+            return first;
+        }
+    }
+
+    // obtém (ou cria) o bloco da posição; só é chamado com o lock de escrita
+    private Block blockFor(long sequence) {
+        int index = (int) (sequence / blockCapacity);
+        Block[] blocks = chunks;
+
+        if (index == blocks.length) {
+            // só as referências aos blocos são copiadas, nunca os dados
+            Block[] grown = new Block[blocks.length * 2];
+            System.arraycopy(blocks, 0, grown, 0, blocks.length);
+            chunks = blocks = grown;
+        }
+        if (blocks[index] == null) {
+            blocks[index] = newBlock(index);
+        }
+        return blocks[index];
+    }
+
+    private Block newBlock(int index) {
+        if (directory == null) return new Chunk();
+
+        try {
+            // o segmento anterior está cheio: garante que chegou ao disco antes de rolar
+            if (index > 0) chunks[index - 1].force();
+            return MappedSegment.create(segmentPath(directory, index), blockCapacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao criar segmento " + index, e);
+        }
+    }
+
+    /**
+     * Compatibilidade com o formato textual: decodifica e armazena a leitura.
+     *
+     * @return {@code false} se o texto não estiver no formato deste banco
+     */
+    public boolean saveData(String data) {
+        Reading reading = new Reading();
+        if (!format.parse(data, reading)) return false;
+
+        append(System.currentTimeMillis(), Region.UNKNOWN, reading);
+        return true;
+    }
+
+    /**
+     * Compatibilidade com o formato textual: decodifica um lote de leituras separadas por espaço e armazena as
+     * válidas em uma única escrita. Cada leitura pode vir precedida de {@code regiao/}, como os dados de drone
+     * roteados; sem o prefixo, é armazenada com {@link Region#UNKNOWN}.
+     *
+     * @return quantas leituras do lote estavam no formato deste banco e foram armazenadas
+     */
+    public int saveBatch(String data) {
+        Region[] regions = new Region[16];
+        Reading[] readings = new Reading[16];
+        int count = 0;
+
+        for (int start = 0, n = data.length(); start < n; ) {
+            int end = data.indexOf(' ', start);
+            if (end < 0) end = n;
+            if (end > start) {
+                if (count == readings.length) {
+                    regions = Arrays.copyOf(regions, count * 2);
+                    readings = Arrays.copyOf(readings, count * 2);
+                }
+                Region region = Region.UNKNOWN;
+                int body = start;
+                int slash = data.indexOf('/', start);
+                // as leituras começam por '[', e as barras dentro delas não são prefixo
+                if (data.charAt(start) != '[' && slash > start && slash < end) {
+                    region = Region.fromKey(data.substring(start, slash));
+                    body = slash + 1;
+                }
+                Reading reading = new Reading();
+                if (format.parse(CharBuffer.wrap(data, body, end), reading)) {
+                    regions[count] = region;
+                    readings[count++] = reading;
+                }
+            }
+            start = end + 1;
+        }
+
+        if (count > 0) appendAll(System.currentTimeMillis(), regions, readings, count);
+        return count;
+    }
+
+    /**
+     * Lê a leitura de número {@code sequence} em {@code out}.
+     */
+    public Region get(long sequence, Reading out) {
+        if (sequence < 0 || sequence >= size) {
+            throw new IndexOutOfBoundsException("Sequência inválida: " + sequence);
+        }
+
+        Block block = chunks[(int) (sequence / blockCapacity)];
+        int i = (int) (sequence % blockCapacity);
+        block.read(i, out);
+        return Region.fromId(block.region(i));
+    }
+
+    public void scan(ReadingVisitor visitor) {
+        scan(0, visitor);
+    }
+
+    /**
+     * Percorre as leituras a partir de {@code fromSequence} até o tamanho visível no início da varredura.
+     */
+    public void scan(long fromSequence, ReadingVisitor visitor) {
+        scan(fromSequence, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Percorre as leituras de {@code fromSequence} até antes de {@code toSequence}, sem passar do tamanho visível no
+     * início da varredura.
+     */
+    public void scan(long fromSequence, long toSequence, ReadingVisitor visitor) {
+        long end = Math.min(toSequence, size);     // lê o volátil antes do diretório
+        Block[] blocks = chunks;
+        Reading reading = new Reading();
+
+        for (long sequence = Math.max(fromSequence, 0); sequence < end; ) {
+            Block block = blocks[(int) (sequence / blockCapacity)];
+            int limit = (int) Math.min(blockCapacity, end - sequence + sequence % blockCapacity);
+
+            for (int i = (int) (sequence % blockCapacity); i < limit; i++, sequence++) {
+                block.read(i, reading);
+                visitor.visit(sequence, block.timestamp(i), Region.fromId(block.region(i)), reading);
+            }
+        }
+    }
+
+    /**
+     * Visão textual das leituras existentes no momento da chamada, renderizadas sob demanda.
+     */
+    public List<String> getAllData() {
+        final int count = (int) Math.min(size, Integer.MAX_VALUE);
+
+        return new AbstractList<>() {
+            private final Reading reading = new Reading();
+
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException("Índice inválido: " + index);
+                }
+                synchronized (reading) {
+                    Database.this.get(index, reading);
+                    return format.format(reading);
+                }
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    public long getTotalCount() {
+        return size;
+    }
+
+    public boolean isPersistent() {
+        return directory != null;
+    }
+
+    /**
+     * Força a gravação do segmento ativo no disco. Não faz nada no modo em memória.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            long current = size;
+            if (current > 0) {
+                chunks[(int) ((current - 1) / blockCapacity)].force();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
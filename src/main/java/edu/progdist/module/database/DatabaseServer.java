@@ -0,0 +1,537 @@
+package edu.progdist.module.database;
+
+import edu.progdist.connection.direct.FrameCodec;
+import edu.progdist.connection.direct.Message;
+import edu.progdist.connection.direct.Server;
+import edu.progdist.module.drone.Reading;
+import edu.progdist.module.drone.ReadingCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Servidor do banco de dados que atende os Dataservers pelo protocolo {@code SAVE_DATA} / {@code GET_DATA}, em linhas
+ * de texto ou em frames binários de {@link FrameCodec} negociados na conexão. {@code GET_VERSION} responde apenas o
+ * número de leituras armazenadas, que só cresce, para que o Dataserver saiba se a sua cópia ainda é atual.
+ * {@code GET_DATA since=<n>} responde com {@code DELTA_RESPONSE|<cursor>;<leituras>}: só as leituras de número
+ * {@code n} em diante e o cursor para o próximo pedido. {@code SAVE_BATCH} traz várias leituras separadas por espaço,
+ * cada uma com o prefixo opcional {@code regiao/}, gravadas de uma só vez.
+ * <p>
+ * Todas as conexões são multiplexadas em um único laço de eventos com {@link Selector}. As escritas são enfileiradas
+ * e aplicadas por uma única thread escritora; uma escrita com ID de correlação é confirmada com
+ * {@code SAVE_RESPONSE|<versão>} só depois de aplicada, e as escritas sem ID não têm resposta, como esperam os clientes
+ * antigos. Mensagens que chegam enquanto há escritas pendentes esperam por elas, então uma consulta sempre vê as
+ * escritas recebidas antes dela.
+ * <p>
+ * As leituras de uma resposta são renderizadas direto do banco, {@value #STREAM_CHUNK} por vez, à medida que o socket
+ * aceita os bytes. No modo binário o frame leva o tamanho na frente, então as leituras são medidas antes; um delta é
+ * cortado para caber em um frame, e o cursor devolvido indica até onde foi.
+ */
+public class DatabaseServer extends Server {
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int STREAM_CHUNK = 512;    // leituras renderizadas por vez em uma resposta
+    // maior trecho de leituras em um frame, com folga para o tipo, o ID de correlação e o cursor
+    private static final long MAX_PAYLOAD = FrameCodec.MAX_FRAME_SIZE - 64;
+    private static final byte[] NEWLINE = { '\n' };
+
+    private enum Framing { UNKNOWN, TEXT, HANDSHAKE, BINARY }
+
+    // parte de uma resposta ainda não escrita
+    @FunctionalInterface
+    private interface Output {
+        // bytes a escrever agora, ou null quando a parte acabou
+        ByteBuffer next();
+
+        static Output of(ByteBuffer buffer) {
+            return () -> buffer.hasRemaining() ? buffer : null;
+        }
+    }
+
+    // estado de cada conexão, acessado apenas pela thread do laço de eventos
+    private static final class Client {
+        Framing framing = Framing.UNKNOWN;      // definido pelo primeiro byte recebido
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        byte[] line = new byte[256];
+        int lineLength;
+        final ArrayDeque<Output> pending = new ArrayDeque<>();
+    }
+
+    // escrita enfileirada; valid é preenchido pela thread escritora antes de publicar appliedWrites
+    private static final class Write {
+        final Message message;
+        boolean valid;
+
+        Write(Message message) {
+            this.message = message;
+        }
+    }
+
+    // mensagem que espera as escritas recebidas antes dela: barrier é quantas precisam estar aplicadas
+    private record Deferred(SelectionKey key, Client client, Message message, Write write, long barrier) {}
+
+    // as leituras até antes de end ocupam bytes depois de renderizadas e separadas por espaço
+    private record Extent(long end, long bytes) {}
+
+    private final Database database;
+    private final BlockingQueue<Write> writes = new LinkedBlockingQueue<>();
+    private final ArrayDeque<Deferred> deferred = new ArrayDeque<>();  // acessados só pelo laço de eventos
+    private long enqueuedWrites;
+    private volatile long appliedWrites;        // alterado só pela thread escritora
+    private volatile boolean awaitingWrites;    // há mensagens em deferred; a escritora acorda o selector
+    private final StringBuilder renderBuilder = new StringBuilder(64);
+    private final int[] chunkLengths = new int[STREAM_CHUNK];
+    private long measuredCount;                 // as leituras [0, measuredCount) ocupam measuredBytes
+    private long measuredBytes;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    public DatabaseServer(Database database) {
+        this.database = database;
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    public void start(int port) {
+        // inicia servidor
+        boolean connected = false;
+        while (!connected) {
+            try {
+                selector = Selector.open();
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(port), 1024);
+                serverChannel.configureBlocking(false);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+                connected = true;
+                System.out.println("Banco de dados iniciado na porta " + port);
+            } catch (IOException e) {
+                System.err.println("Erro ao iniciar banco de dados na porta " + port + ": " + e.getMessage());
+                System.err.println("Tentando novamente na porta " + (++port) + "...");
+            }
+        }
+
+        running = true;
+
+        // única thread escritora do banco
+        executor.submit(this::applyWrites);
+
+        Thread loop = new Thread(this::run, "database-event-loop");
+        loop.start();
+    }
+
+    @Override
+    protected void run() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        if (key.isValid() && key.isReadable()) read(key);
+                        if (key.isValid() && key.isWritable()) write(key);
+                    } catch (IOException e) {
+                        closeClient(key);
+                    } catch (RuntimeException e) {
+                        // um cliente com dados inesperados não pode derrubar o laço dos demais
+                        System.err.println("Erro inesperado em uma conexão; desconectando: " + e);
+                        closeClient(key);
+                    }
+                }
+                replyDeferred();
+            } catch (ClosedSelectorException e) {
+                return;     // servidor encerrado
+            } catch (IOException e) {
+                System.err.println("Erro no laço de eventos do banco de dados: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.register(selector, SelectionKey.OP_READ, new Client());
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Client client = (Client) key.attachment();
+        ByteBuffer buffer = client.readBuffer;
+
+        if (!buffer.hasRemaining()) {
+            // frame binário maior que o buffer: cresce até o limite do codec
+            if (buffer.capacity() >= FrameCodec.MAX_FRAME_SIZE + FrameCodec.HEADER_SIZE) {
+                throw new IOException("Frame excede o tamanho máximo.");
+            }
+            client.readBuffer = buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+        }
+
+        int read = channel.read(buffer);
+        if (read < 0) {
+            closeClient(key);
+            return;
+        }
+
+        buffer.flip();
+        if (client.framing == Framing.UNKNOWN && buffer.hasRemaining()) {
+            client.framing = buffer.get(buffer.position()) == FrameCodec.PREFACE_START
+                ? Framing.HANDSHAKE : Framing.TEXT;
+        }
+        if (client.framing != Framing.TEXT) {
+            readFrames(key, client, buffer);
+            return;
+        }
+
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                handleLine(key, client);
+                client.lineLength = 0;
+            } else if (b != '\r') {
+                if (client.lineLength == client.line.length) {
+                    if (client.lineLength >= MAX_LINE_LENGTH) {
+                        throw new IOException("Linha excede o tamanho máximo.");
+                    }
+                    client.line = Arrays.copyOf(client.line, client.lineLength * 2);
+                }
+                client.line[client.lineLength++] = b;
+            }
+        }
+        buffer.clear();
+    }
+
+    private void readFrames(SelectionKey key, Client client, ByteBuffer buffer) throws IOException {
+        if (client.framing == Framing.HANDSHAKE) {
+            if (!FrameCodec.readPreface(buffer)) {
+                buffer.compact();
+                return;
+            }
+            client.framing = Framing.BINARY;
+            enqueue(key, client, Output.of(FrameCodec.preface()));
+        }
+
+        Message message;
+        while ((message = FrameCodec.decode(buffer)) != null) {
+            handleMessage(key, client, message);
+        }
+        buffer.compact();
+    }
+
+    private void handleLine(SelectionKey key, Client client) {
+        handleMessage(key, client,
+            new Message(new String(client.line, 0, client.lineLength, StandardCharsets.UTF_8)));
+    }
+
+    private void handleMessage(SelectionKey key, Client client, Message message) {
+        Write write = null;
+        if (message.type().equals("SAVE_DATA") || message.type().equals("SAVE_BATCH")) {
+            write = new Write(message);
+            writes.add(write);
+            enqueuedWrites++;
+            if (message.correlationId() < 0) return;
+        }
+
+        if (enqueuedWrites > appliedWrites || !deferred.isEmpty()) {
+            deferred.add(new Deferred(key, client, message, write, enqueuedWrites));
+        } else {
+            reply(key, client, message, write);
+        }
+    }
+
+    // responde, na ordem de chegada, as mensagens cujas escritas anteriores já foram aplicadas
+    private void replyDeferred() {
+        if (deferred.isEmpty()) return;
+
+        awaitingWrites = true;      // antes de ler appliedWrites: uma escrita aplicada depois disto acorda o selector
+        long applied = appliedWrites;
+        Deferred next;
+        while ((next = deferred.peek()) != null && next.barrier() <= applied) {
+            deferred.poll();
+            if (next.key().isValid()) reply(next.key(), next.client(), next.message(), next.write());
+        }
+        awaitingWrites = !deferred.isEmpty();
+    }
+
+    // respostas repetem o ID de correlação da requisição, quando houver
+    private void reply(SelectionKey key, Client client, Message message, Write write) {
+        long correlationId = message.correlationId();
+
+        switch (message.type()) {
+            case "SAVE_DATA", "SAVE_BATCH" -> respond(key, client, (write.valid
+                ? new Message("SAVE_RESPONSE", Long.toString(database.getTotalCount()))
+                : new Message("DATABASE_ERROR", "Dados inválidos: " + message.payload()))
+                .withCorrelation(correlationId));
+
+            case "GET_DATA" -> {
+                if (message.payload().startsWith("since=")) {
+                    long since;
+                    try {
+                        since = Long.parseLong(message.payload().substring("since=".length()));
+                    } catch (NumberFormatException e) {
+                        respond(key, client, new Message("DATABASE_ERROR",
+                            "Cursor inválido: " + message.payload(), correlationId));
+                        return;
+                    }
+                    sendDelta(key, client, since, correlationId);
+                } else {
+                    sendData(key, client, correlationId);
+                }
+            }
+
+            case "GET_VERSION" -> respond(key, client,
+                new Message("VERSION_RESPONSE", Long.toString(database.getTotalCount()), correlationId));
+
+            default -> respond(key, client, new Message("DATABASE_ERROR",
+                "Tipo de mensagem desconhecido: " + message.type(), correlationId));
+        }
+    }
+
+    private void sendData(SelectionKey key, Client client, long correlationId) {
+        long total = database.getTotalCount();
+        Message header = new Message("GET_RESPONSE", "", correlationId);
+
+        if (client.framing == Framing.BINARY) {
+            Extent extent = measure(0, total, MAX_PAYLOAD);
+            if (extent.end() < total) {
+                respond(key, client, new Message("DATABASE_ERROR",
+                    "Leituras excedem o tamanho máximo de um frame; use GET_DATA since=<n>.", correlationId));
+                return;
+            }
+            enqueue(key, client, Output.of(FrameCodec.header(header, (int) extent.bytes())),
+                new ReadingStream(0, total));
+        } else {
+            enqueue(key, client, Output.of(ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.UTF_8))),
+                new ReadingStream(0, total), Output.of(ByteBuffer.wrap(NEWLINE)));
+        }
+    }
+
+    private void sendDelta(SelectionKey key, Client client, long since, long correlationId) {
+        long total = database.getTotalCount();
+        long from = Math.min(Math.max(since, 0), total);
+        Message header = new Message("DELTA_RESPONSE", "", correlationId);
+
+        if (client.framing == Framing.BINARY) {
+            Extent extent = measure(from, total, MAX_PAYLOAD);
+            byte[] cursor = (extent.end() + ";").getBytes(StandardCharsets.UTF_8);
+            enqueue(key, client, Output.of(FrameCodec.header(header, cursor.length + (int) extent.bytes())),
+                Output.of(ByteBuffer.wrap(cursor)), new ReadingStream(from, extent.end()));
+        } else {
+            byte[] cursor = (total + ";").getBytes(StandardCharsets.UTF_8);
+            enqueue(key, client, Output.of(ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.UTF_8))),
+                Output.of(ByteBuffer.wrap(cursor)), new ReadingStream(from, total),
+                Output.of(ByteBuffer.wrap(NEWLINE)));
+        }
+    }
+
+    /**
+     * Mede as leituras de {@code from} até antes de {@code to}, parando antes de passar de {@code limit} bytes. O
+     * tamanho do prefixo a partir de 0 é lembrado, então medir a resposta completa só renderiza as leituras novas.
+     */
+    private Extent measure(long from, long to, long limit) {
+        long sequence = from;
+        long bytes = 0;
+        if (from == 0 && measuredCount <= to && measuredBytes <= limit) {
+            sequence = measuredCount;
+            bytes = measuredBytes;
+        }
+
+        while (sequence < to) {
+            long start = sequence;
+            long end = Math.min(to, start + STREAM_CHUNK);
+            database.scan(start, end, (current, timestamp, region, reading) -> {
+                renderBuilder.setLength(0);
+                ReadingCodec.Format.DATASERVER.append(renderBuilder, reading);
+                chunkLengths[(int) (current - start)] = renderBuilder.length();
+            });
+
+            for (; sequence < end; sequence++) {
+                int length = chunkLengths[(int) (sequence - start)] + (sequence > from ? 1 : 0);
+                if (bytes + length > limit) return new Extent(sequence, bytes);
+                bytes += length;
+            }
+        }
+
+        if (from == 0 && to > measuredCount) {
+            measuredCount = to;
+            measuredBytes = bytes;
+        }
+        return new Extent(to, bytes);
+    }
+
+    // leituras de first até antes de end, separadas por espaço e renderizadas aos poucos, conforme o socket aceita
+    private final class ReadingStream implements Output {
+        private final long first;
+        private final long end;
+        private long position;
+        private ByteBuffer buffer;
+
+        ReadingStream(long first, long end) {
+            this.first = first;
+            this.end = end;
+            this.position = first;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (buffer != null && buffer.hasRemaining()) return buffer;
+            if (position >= end) {
+                buffer = null;
+                return null;
+            }
+
+            long stop = Math.min(end, position + STREAM_CHUNK);
+            renderBuilder.setLength(0);
+            database.scan(position, stop, (sequence, timestamp, region, reading) -> {
+                if (sequence > first) renderBuilder.append(' ');
+                ReadingCodec.Format.DATASERVER.append(renderBuilder, reading);
+            });
+            position = stop;
+
+            int length = renderBuilder.length();
+            if (buffer == null || buffer.capacity() < length) buffer = ByteBuffer.allocate(length);
+            buffer.clear();
+            for (int i = 0; i < length; i++) {
+                buffer.put((byte) renderBuilder.charAt(i));     // leituras renderizadas são ASCII puro
+            }
+            return buffer.flip();
+        }
+    }
+
+    private void respond(SelectionKey key, Client client, Message response) {
+        enqueue(key, client, Output.of(client.framing == Framing.BINARY
+            ? FrameCodec.encode(response)
+            : ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private void enqueue(SelectionKey key, Client client, Output... outputs) {
+        client.pending.addAll(Arrays.asList(outputs));
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Client client = (Client) key.attachment();
+
+        Output head;
+        while ((head = client.pending.peek()) != null) {
+            ByteBuffer buffer = head.next();
+            if (buffer == null) {
+                client.pending.poll();
+                continue;
+            }
+            channel.write(buffer);
+            if (buffer.hasRemaining()) return;  // buffer do socket cheio; espera o próximo OP_WRITE
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    private void closeClient(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {}
+    }
+
+    // aplica as escritas em lotes do que estiver na fila e publica quantas já foram aplicadas
+    private void applyWrites() {
+        List<Write> batch = new ArrayList<>();
+        while (running || !writes.isEmpty()) {
+            try {
+                Write first = writes.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                writes.drainTo(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            for (Write write : batch) {
+                applyWrite(write);
+            }
+            appliedWrites = appliedWrites + batch.size();
+            batch.clear();
+            if (awaitingWrites) selector.wakeup();
+        }
+    }
+
+    // um lote é gravado com uma única escrita no banco; registros inválidos do lote são descartados
+    private void applyWrite(Write write) {
+        String data = write.message.payload();
+        if (write.message.type().equals("SAVE_BATCH")) {
+            int records = 0;
+            for (int i = data.indexOf(']'); i >= 0; i = data.indexOf(']', i + 1)) records++;
+            int saved = database.saveBatch(data);
+            if (saved < records) {
+                System.err.println((records - saved) + " leituras inválidas descartadas do lote.");
+            }
+            write.valid = true;
+        } else {
+            write.valid = database.saveData(data);
+            if (!write.valid) System.err.println("Dados inválidos descartados: " + data);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            selector.wakeup();
+            serverChannel.close();
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+            selector.close();
+            database.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar conexões: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.err.println("Erro ao finalizar tarefas: " + e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            // modo persistente quando um diretório é informado
+            Database database = args.length > 0
+                ? Database.open(ReadingCodec.Format.DATASERVER, Path.of(args[0]), 64L * 1024 * 1024)
+                : new Database(ReadingCodec.Format.DATASERVER);
+
+            DatabaseServer server = new DatabaseServer(database);
+            server.start(9000);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } catch (IOException e) {
+            System.err.println("Erro ao abrir o banco de dados: " + e.getMessage());
+        }
+    }
+}
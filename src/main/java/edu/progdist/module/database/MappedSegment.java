@@ -0,0 +1,182 @@
+package edu.progdist.module.database;
+
+import edu.progdist.module.drone.Reading;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Segmento de log mapeado em memória com registros binários de largura fixa.
+ * <p>
+ * Layout do arquivo: cabeçalho de {@value #HEADER_SIZE} bytes (magic, versão, capacidade e quantidade de
+ * registros confirmados) seguido de registros de {@value #RECORD_SIZE} bytes. Cada registro termina com um
+ * byte de confirmação escrito por último, e a quantidade no cabeçalho só é atualizada depois dele, de forma
+ * que a reabertura não precisa percorrer os registros.
+ */
+class MappedSegment extends Block {
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 32;
+
+    static final int CAPACITY_OFFSET = 8;
+    static final int COUNT_OFFSET = 12;
+    // maior capacidade cujos deslocamentos ainda cabem em um int
+    static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private static final int MAGIC = 0x57445347;    // "WDSG"
+    private static final int VERSION = 1;
+
+    // deslocamentos dentro do registro
+    private static final int TIMESTAMP = 0;
+    private static final int RADIATION = 8;
+    private static final int PRESSURE = 16;
+    private static final int TEMPERATURE = 20;
+    private static final int HUMIDITY = 24;
+    private static final int REGION = 28;
+    private static final int COMMITTED = 29;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int recovered;    // registros válidos encontrados ao abrir
+
+    private MappedSegment(Path path, MappedByteBuffer buffer, int capacity, int recovered) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.recovered = recovered;
+    }
+
+    static int capacityFor(long segmentBytes) {
+        long capacity = (segmentBytes - HEADER_SIZE) / RECORD_SIZE;
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Tamanho de segmento inválido: " + segmentBytes);
+        }
+        return (int) capacity;
+    }
+
+    /**
+     * Cria um segmento vazio, sobrescrevendo qualquer arquivo existente no caminho.
+     */
+    static MappedSegment create(Path path, int capacity) throws IOException {
+        MappedByteBuffer buffer = map(path, capacity, true);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(COUNT_OFFSET, 0);
+        return new MappedSegment(path, buffer, capacity, 0);
+    }
+
+    /**
+     * Abre um segmento existente e descobre quantos registros completos ele contém.
+     * Registros cortados por truncamento ou sem o byte de confirmação são descartados.
+     *
+     * @throws IOException se o cabeçalho for desconhecido ou corrompido: capacidade fora do intervalo, arquivo
+     *                     maior do que a capacidade declarada ou quantidade de registros acima dela
+     */
+    static MappedSegment open(Path path) throws IOException {
+        long fileSize = Files.size(path);
+        if (fileSize < HEADER_SIZE) {
+            throw new IOException("Segmento sem cabeçalho: " + path);
+        }
+
+        int capacity;
+        int count;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Segmento com formato desconhecido: " + path);
+            }
+            capacity = header.getInt(CAPACITY_OFFSET);
+            count = header.getInt(COUNT_OFFSET);
+        }
+
+        // o arquivo pode ter sido truncado, mas nunca é maior do que a capacidade declarada no cabeçalho
+        if (capacity <= 0 || capacity > MAX_CAPACITY || fileSize > HEADER_SIZE + (long) capacity * RECORD_SIZE) {
+            throw new IOException("Segmento com capacidade inválida (" + capacity + " registros, " + fileSize
+                + " bytes): " + path);
+        }
+        if (count < 0 || count > capacity) {
+            throw new IOException("Segmento com quantidade de registros inválida (" + count + "): " + path);
+        }
+
+        // só cabem no arquivo os registros inteiros que sobreviveram a um eventual truncamento
+        long complete = (fileSize - HEADER_SIZE) / RECORD_SIZE;
+        count = (int) Math.min(count, complete);
+
+        MappedByteBuffer buffer = map(path, capacity, false);
+        while (count > 0 && buffer.get(offset(count - 1) + COMMITTED) == 0) {
+            count--;
+        }
+        buffer.putInt(COUNT_OFFSET, count);
+
+        return new MappedSegment(path, buffer, capacity, count);
+    }
+
+    private static MappedByteBuffer map(Path path, int capacity, boolean truncate) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        StandardOpenOption[] options = truncate
+            ? new StandardOpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING }
+            : new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE };
+
+        // o mapeamento continua válido depois que o canal é fechado
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static int offset(int i) {
+        return HEADER_SIZE + i * RECORD_SIZE;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int recovered() {
+        return recovered;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    @Override
+    long timestamp(int i) {
+        return buffer.getLong(offset(i) + TIMESTAMP);
+    }
+
+    @Override
+    byte region(int i) {
+        return buffer.get(offset(i) + REGION);
+    }
+
+    @Override
+    void read(int i, Reading out) {
+        int base = offset(i);
+        out.set(buffer.getInt(base + PRESSURE), buffer.getDouble(base + RADIATION),
+            buffer.getInt(base + TEMPERATURE), buffer.getInt(base + HUMIDITY));
+    }
+
+    @Override
+    void write(int i, long timestamp, byte region, Reading reading) {
+        int base = offset(i);
+        buffer.putLong(base + TIMESTAMP, timestamp);
+        buffer.putDouble(base + RADIATION, reading.radiation());
+        buffer.putInt(base + PRESSURE, reading.pressure());
+        buffer.putInt(base + TEMPERATURE, reading.temperature());
+        buffer.putInt(base + HUMIDITY, reading.humidity());
+        buffer.put(base + REGION, region);
+        buffer.put(base + COMMITTED, (byte) 1);
+        buffer.putInt(COUNT_OFFSET, i + 1);
+    }
+
+    @Override
+    void force() {
+        buffer.force();
+    }
+}
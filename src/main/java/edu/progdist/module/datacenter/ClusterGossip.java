@@ -0,0 +1,141 @@
+package edu.progdist.module.datacenter;
+
+import edu.progdist.connection.direct.Server.Host;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estado que um Datacenter troca com os demais do cluster ativo/ativo, independente do transporte: monta as rodadas
+ * de gossip a partir do registro e aplica as recebidas dos pares.
+ * <p>
+ * Cada rodada leva o último relatório conhecido de cada servidor e as concessões que este Datacenter tem pendentes
+ * nele. Como o relatório mais novo pela sequência do Dataserver vence, aplicar uma rodada é idempotente e não depende
+ * da ordem. Servidores removidos deixam uma marca por {@code tombstoneTtlMillis}, para que um gossip atrasado não os
+ * traga de volta, e as concessões de um par sem gossip há mais de {@code peerTimeoutMillis} deixam de contar.
+ */
+final class ClusterGossip {
+
+    // servidor removido por este Datacenter e a sequência do último relatório dele
+    private record Tombstone(long sequence, long removedAt) {}
+
+    private final String datacenterId;
+    private final ServerRegistry registry;
+    private final PhiAccrualFailureDetector failureDetector;
+    private final long peerTimeoutMillis;
+    private final long tombstoneTtlMillis;
+    private final int payloadBytes;
+
+    private final Map<String, Long> peers = new ConcurrentHashMap<>();             // último gossip de cada par
+    private final Map<String, Tombstone> tombstones = new ConcurrentHashMap<>();   // por serverId
+
+    /**
+     * @param payloadBytes tamanho máximo do payload de um pacote; a rodada é dividida em quantos forem precisos
+     */
+    ClusterGossip(String datacenterId, ServerRegistry registry, PhiAccrualFailureDetector failureDetector,
+                  long peerTimeoutMillis, long tombstoneTtlMillis, int payloadBytes) {
+        this.datacenterId = datacenterId;
+        this.registry = registry;
+        this.failureDetector = failureDetector;
+        this.peerTimeoutMillis = peerTimeoutMillis;
+        this.tombstoneTtlMillis = tombstoneTtlMillis;
+        this.payloadBytes = payloadBytes;
+    }
+
+    /**
+     * Payloads de uma rodada: "datacenterId host,relatório,concessões host,relatório,concessões ...". Sem servidores,
+     * o único payload ainda anuncia o Datacenter.
+     */
+    List<String> round() {
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder(datacenterId);
+        for (ServerAddress server : registry.servers()) {
+            if (server.isSuspect()) continue;   // só repassa os servidores que este Datacenter considera vivos
+
+            String entry = server.host().host + "," + LoadReport.of(server).format() + ","
+                + registry.localLeases(server);
+            if (payload.length() + 1 + entry.length() > payloadBytes) {
+                payloads.add(payload.toString());
+                payload.setLength(0);
+                payload.append(datacenterId);
+            }
+            payload.append(' ').append(entry);
+        }
+        payloads.add(payload.toString());
+        return payloads;
+    }
+
+    /**
+     * Aplica o gossip de outro Datacenter: relatórios mais novos que os conhecidos e as concessões dele. O próprio
+     * gossip, devolvido pelo grupo, é ignorado.
+     */
+    void merge(String payload, long now) {
+        String[] entries = payload.split(" ");
+        String origin = entries[0];
+        if (origin.equals(datacenterId)) return;
+
+        if (peers.put(origin, now) == null) {
+            System.out.println("Datacenter entrou no cluster: " + origin);
+        }
+
+        for (int i = 1; i < entries.length; i++) {
+            String[] fields = entries[i].split(",");
+            LoadReport report;
+            int leases;
+            try {
+                if (fields.length != 3) throw new IllegalArgumentException();
+                report = LoadReport.parse(fields[1]);
+                leases = Integer.parseInt(fields[2]);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Gossip inválido de " + origin + ": " + entries[i]);
+                continue;
+            }
+
+            String serverId = report.serverId();
+            Tombstone tombstone = tombstones.get(serverId);
+            if (tombstone != null && report.sequence() <= tombstone.sequence()) continue;
+
+            // relatórios sem sequência (Dataservers antigos) só valem recebidos diretamente
+            ServerAddress known = registry.get(serverId);
+            if (report.sequence() > 0 && (known == null || report.sequence() > known.getReportSequence())) {
+                failureDetector.heartbeat(serverId, now);
+                if (registry.update(serverId, new Host(fields[0] + ":" + report.port()), report)) {
+                    System.out.println("Novo servidor adicionado pelo datacenter " + origin + ": " + serverId);
+                } else if (registry.setSuspect(serverId, false)) {
+                    System.out.println("Servidor voltou a responder (via " + origin + "): " + serverId);
+                }
+            }
+            registry.setRemoteLeases(serverId, origin, leases);
+        }
+    }
+
+    /**
+     * Um relatório recebido diretamente do servidor prova que ele está vivo, mesmo que tenha sido removido.
+     */
+    void reported(String serverId) {
+        tombstones.remove(serverId);
+    }
+
+    /**
+     * Marca o servidor removido por este Datacenter, para ignorar relatórios dele não mais novos que o último.
+     */
+    void removed(ServerAddress server, long now) {
+        tombstones.put(server.serverId(), new Tombstone(server.getReportSequence(), now));
+    }
+
+    /**
+     * Esquece as marcas vencidas e os Datacenters sem gossip recente, cujas concessões deixam de contar.
+     */
+    void expire(long now) {
+        tombstones.values().removeIf(tombstone -> now - tombstone.removedAt() > tombstoneTtlMillis);
+
+        peers.entrySet().removeIf(peer -> {
+            if (now - peer.getValue() <= peerTimeoutMillis) return false;
+            System.out.println("Datacenter saiu do cluster: " + peer.getKey());
+            registry.clearRemoteLeases(peer.getKey());
+            return true;
+        });
+    }
+}
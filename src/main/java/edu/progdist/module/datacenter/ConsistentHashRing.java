@@ -0,0 +1,165 @@
+package edu.progdist.module.datacenter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Roteamento por afinidade de região: anel de hash consistente com nós virtuais e carga limitada.
+ * <p>
+ * Cada servidor roteável ocupa {@code virtualNodes} pontos do anel. A chave (a região) pertence ao primeiro servidor
+ * a partir do seu ponto, de modo que as leituras e escritas de uma região caem sempre no mesmo dono e só cerca de
+ * 1/N das chaves muda de dono quando um servidor entra ou sai. Para que uma região muito procurada não sobrecarregue
+ * o dono, um servidor com {@code loadFactor} vezes a média de conexões ou mais é pulado e a chave transborda para o
+ * próximo servidor do anel.
+ * <p>
+ * O anel é um par de arrays ordenados, refeito apenas quando o conjunto de membros roteáveis do
+ * {@link ServerRegistry} muda; a busca é uma pesquisa binária sem lock.
+ */
+public final class ConsistentHashRing implements LoadBalancingStrategy {
+
+    // anel imutável construído a partir de um conjunto de membros
+    private record Ring(ServerAddress[] members, long[] points, ServerAddress[] owners) {}
+
+    private final int virtualNodes;
+    private final double loadFactor;
+    private volatile Ring ring = new Ring(new ServerAddress[0], new long[0], new ServerAddress[0]);
+
+    /**
+     * @param virtualNodes pontos de cada servidor no anel; mais pontos distribuem as chaves de modo mais uniforme
+     * @param loadFactor   múltiplo da carga média a partir do qual um servidor transborda para o próximo
+     */
+    public ConsistentHashRing(int virtualNodes, double loadFactor) {
+        if (virtualNodes < 1 || loadFactor < 1) {
+            throw new IllegalArgumentException("Parâmetros inválidos: virtualNodes=" + virtualNodes +
+                ", loadFactor=" + loadFactor);
+        }
+        this.virtualNodes = virtualNodes;
+        this.loadFactor = loadFactor;
+    }
+
+    /**
+     * Lê os parâmetros de {@code <prefix>.virtual-nodes} e {@code <prefix>.load-factor}, usando os valores padrão
+     * para os ausentes.
+     */
+    public static ConsistentHashRing fromProperties(String prefix) {
+        return new ConsistentHashRing(
+            Integer.getInteger(prefix + ".virtual-nodes", 160),
+            Double.parseDouble(System.getProperty(prefix + ".load-factor", "1.25")));
+    }
+
+    /**
+     * Sem chave não há afinidade: o usuário vai ao de menos sessões entre dois sorteados.
+     */
+    @Override
+    public ServerRegistry.Lease select(ServerRegistry registry) {
+        return POWER_OF_TWO_CHOICES.select(registry);
+    }
+
+    @Override
+    public ServerRegistry.Lease select(ServerRegistry registry, String key) {
+        if (key == null || key.isEmpty()) return select(registry);
+
+        while (true) {
+            List<ServerAddress> owners = candidates(registry, key, 1);
+            if (owners.isEmpty()) return null;
+
+            ServerRegistry.Lease lease = registry.lease(owners.get(0));
+            if (lease != null) return lease;    // saiu do registro entre a busca e a concessão
+        }
+    }
+
+    /**
+     * Os servidores distintos a partir do ponto da chave no anel, pulando os acima do limite de carga, até
+     * {@code limit}. Se todos estiverem acima do limite, a ordem do anel é mantida sem pular nenhum.
+     */
+    @Override
+    public List<ServerAddress> candidates(ServerRegistry registry, String key, int limit) {
+        if (key == null || key.isEmpty()) return LoadBalancingStrategy.super.candidates(registry, key, limit);
+
+        Ring current = ring(registry);
+        int servers = current.members().length;
+        if (servers == 0) return List.of();
+
+        // limite de Mirrokni et al.: ceil(c * (conexões + 1) / n), sempre acima da média, logo algum servidor cabe
+        long bound = (long) Math.ceil(loadFactor * (registry.routableConnections() + 1) / servers);
+
+        List<ServerAddress> result = new ArrayList<>(Math.min(limit, servers));
+        List<ServerAddress> overloaded = new ArrayList<>();
+        int start = search(current.points(), hash(key));
+        for (int i = 0; i < current.points().length && result.size() < limit; i++) {
+            ServerAddress owner = current.owners()[(start + i) % current.points().length];
+            if (result.contains(owner) || overloaded.contains(owner)) continue;
+
+            if (owner.getConnectionCount() < bound) {
+                result.add(owner);
+            } else {
+                overloaded.add(owner);
+            }
+        }
+
+        // completa com os sobrecarregados, na ordem do anel, para que as tentativas tenham para onde ir
+        for (int i = 0; i < overloaded.size() && result.size() < limit; i++) {
+            result.add(overloaded.get(i));
+        }
+        return result;
+    }
+
+    // refaz o anel se os membros roteáveis mudaram desde a última construção
+    private Ring ring(ServerRegistry registry) {
+        ServerAddress[] members = registry.routableMembers();
+        Ring current = ring;
+        if (current.members() == members) return current;
+
+        synchronized (this) {
+            current = ring;
+            if (current.members() == members) return current;
+
+            long[] entries = new long[members.length * virtualNodes];
+            for (int m = 0; m < members.length; m++) {
+                for (int v = 0; v < virtualNodes; v++) {
+                    entries[m * virtualNodes + v] = hash(members[m].serverId() + "#" + v);
+                }
+            }
+
+            // ordena os pontos levando junto o índice do dono
+            Integer[] indexes = new Integer[entries.length];
+            for (int i = 0; i < indexes.length; i++) indexes[i] = i;
+            Arrays.sort(indexes, (a, b) -> Long.compare(entries[a], entries[b]));
+
+            long[] points = new long[entries.length];
+            ServerAddress[] owners = new ServerAddress[entries.length];
+            for (int i = 0; i < indexes.length; i++) {
+                points[i] = entries[indexes[i]];
+                owners[i] = members[indexes[i] / virtualNodes];
+            }
+
+            current = new Ring(members, points, owners);
+            ring = current;
+            return current;
+        }
+    }
+
+    // primeiro ponto maior ou igual ao hash, voltando ao início do anel
+    private static int search(long[] points, long hash) {
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) index = -index - 1;
+        return index == points.length ? 0 : index;
+    }
+
+    // FNV-1a de 64 bits seguido do finalizador do MurmurHash3, para espalhar chaves curtas e parecidas pelo anel
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -2,85 +2,79 @@ package edu.progdist.module.datacenter;
 
 import edu.progdist.connection.direct.Message;
 import edu.progdist.connection.direct.MulticastConnection;
+import edu.progdist.connection.direct.MultiplexedConnection;
 import edu.progdist.connection.direct.Server;
 import edu.progdist.connection.direct.TcpConnection;
+import edu.progdist.module.drone.Region;
 
 import java.io.IOException;
-import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Servidor que realiza o balanceamento de carga entre múltiplos servidores.
+ * <p>
+ * Vários Datacenters podem atender ao mesmo tempo (ativo/ativo): todos ouvem os relatórios dos Dataservers no grupo
+ * multicast e, a cada rodada de gossip, publicam no mesmo grupo o último relatório que conhecem de cada servidor e as
+ * concessões que têm pendentes nele. Cada relatório leva a sequência do Dataserver, então a junção guarda o mais
+ * recente (último escritor vence) e é comutativa e idempotente: pacotes perdidos, repetidos ou fora de ordem não
+ * impedem a convergência. Servidores removidos ficam marcados por um tempo para que um gossip atrasado não os traga
+ * de volta. As rodadas são montadas e aplicadas por {@link ClusterGossip}.
  */
 public class Datacenter extends Server {
 
-    // record que representa o endereço de um servidor com sua carga de trabalho
-    private static class ServerAddress implements Comparable<ServerAddress> {
-        private final String serverId;  // ID único do servidor
-        private final Host host;      // endereço
-        private int connectionCount;    // número de conexões ativas
-        private double resourceUsage;   // uso de recursos (CPU e RAM)
-        private long lastUpdate;        // timestamp em ms
-
-        public ServerAddress(String serverId, Host host, double resourceUsage) {
-            this.serverId = serverId;
-            this.host = host;
-            this.resourceUsage = resourceUsage;
-            this.connectionCount = 0;
-            this.lastUpdate = System.currentTimeMillis();
-        }
+    // tempo para um usuário encaminhado aparecer no relatório do Dataserver: -Ddatacenter.lease.grace-ms=<ms>
+    private static final long LEASE_GRACE_MS = Long.getLong("datacenter.lease.grace-ms", 1000);
 
-        public void update(double resourceUsage, int connectionCount) {
-            this.resourceUsage = resourceUsage;
-            this.connectionCount = connectionCount;
-            this.lastUpdate = System.currentTimeMillis();
-        }
+    // decaimento da média de pico do tempo de serviço: -Ddatacenter.ewma.decay-ms=<constante de tempo>
+    private static final long SERVICE_TIME_DECAY_MS = Long.getLong("datacenter.ewma.decay-ms", 10_000);
 
-        public long getLastUpdate() {
-            return lastUpdate;
-        }
+    // servidores conhecidos e suas cargas
+    private final ServerRegistry registry = new ServerRegistry(LEASE_GRACE_MS, SERVICE_TIME_DECAY_MS);
 
-        public Host host() {
-            return host;
-        }
+    // escolha do servidor para usuários: -Ddatacenter.selection=least-connections (padrão), p2c, least-resource-usage,
+    // peak-ewma, weighted-least-outstanding ou region-hash (afinidade por região, também para os dados de drone:
+    // -Ddatacenter.ring.virtual-nodes=<pontos por servidor> -Ddatacenter.ring.load-factor=<limite sobre a média>)
+    private static final LoadBalancingStrategy SELECTION =
+        LoadBalancingStrategy.byName(System.getProperty("datacenter.selection", "least-connections"));
 
-        public int getConnectionCount() {
-            return connectionCount;
-        }
+    // conexões persistentes com os Dataservers, por serverId, usadas para encaminhar DRONE_REQUEST
+    private final Map<String, MultiplexedConnection> dataserverLinks = new ConcurrentHashMap<>();
 
-        public void incrementConnectionCount() {
-            connectionCount++;
-        }
+    // encaminhamento direto: -Ddatacenter.dispatch.attempts=<servidores tentados> -Ddatacenter.dispatch.timeout-ms=<ms>
+    private static final int DISPATCH_ATTEMPTS = Integer.getInteger("datacenter.dispatch.attempts", 3);
+    private static final long DISPATCH_TIMEOUT_MS = Long.getLong("datacenter.dispatch.timeout-ms", 3000);
 
-        public double getResourceUsage() {
-            return resourceUsage;
-        }
+    // heartbeats dos Dataservers: -Ddatacenter.heartbeat.interval-ms=<intervalo esperado>
+    // -Ddatacenter.fd.suspect-phi=<suspeito, deixa de receber clientes> -Ddatacenter.fd.dead-phi=<removido>
+    // -Ddatacenter.fd.acceptable-pause-ms=<silêncio tolerado além do intervalo médio>
+    private static final long HEARTBEAT_INTERVAL_MS = Long.getLong("datacenter.heartbeat.interval-ms", 1000);
+    private static final double SUSPECT_PHI = Double.parseDouble(System.getProperty("datacenter.fd.suspect-phi", "3"));
+    private static final double DEAD_PHI = Double.parseDouble(System.getProperty("datacenter.fd.dead-phi", "8"));
+    private static final long ACCEPTABLE_PAUSE_MS =
+        Long.getLong("datacenter.fd.acceptable-pause-ms", 3 * HEARTBEAT_INTERVAL_MS);
 
-        public void setResourceUsage(double resourceUsage) {
-            this.resourceUsage = resourceUsage;
-        }
+    // o multicast perde pacotes em rajadas: tolera alguns heartbeats seguidos perdidos antes de acumular suspeita
+    private final PhiAccrualFailureDetector failureDetector = new PhiAccrualFailureDetector(
+        100, HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS / 4, ACCEPTABLE_PAUSE_MS);
 
-        @Override
-        public boolean equals(Object obj) {
-            return obj instanceof ServerAddress sa && this.serverId.equals(sa.serverId);
-        }
+    // cluster de Datacenters: -Ddatacenter.gossip.interval-ms=<intervalo entre rodadas de gossip>
+    private static final long GOSSIP_INTERVAL_MS = Long.getLong("datacenter.gossip.interval-ms", 1000);
+    private static final long PEER_TIMEOUT_MS = 3 * GOSSIP_INTERVAL_MS; // sem gossip, as concessões do par expiram
+    private static final long TOMBSTONE_TTL_MS = 60_000;
+    private static final int GOSSIP_PAYLOAD_BYTES = 960;    // cabe no buffer de 1024 bytes do MulticastConnection
 
-        @Override
-        public int hashCode() {
-            return serverId.hashCode();
-        }
+    // identifica este Datacenter no gossip e nas concessões que os Dataservers devolvem
+    private final String datacenterId = UUID.randomUUID().toString();
 
-        @Override
-        public int compareTo(ServerAddress other) {
-            return Integer.compare(this.connectionCount, other.connectionCount);
-        }
-    }
-
-    private PriorityQueue<ServerAddress> serverAddresses;   // fila de endereços dos servidores
-    private Map<String, ServerAddress> serverMap; // mapa para acesso rápido aos endereços dos servidores
+    private final ClusterGossip gossip = new ClusterGossip(datacenterId, registry, failureDetector,
+        PEER_TIMEOUT_MS, TOMBSTONE_TTL_MS, GOSSIP_PAYLOAD_BYTES);
 
     public Datacenter() {
         executor = Executors.newCachedThreadPool();
@@ -93,7 +87,7 @@ public class Datacenter extends Server {
         boolean connected = false;
         while (!connected) {
             try {
-                tcpConnection = new TcpConnection(port);
+                openTcpServer(port);
                 connected = true;
                 System.out.println("Servidor TCP iniciado na porta " + port);
             } catch (IOException e) {
@@ -104,13 +98,9 @@ public class Datacenter extends Server {
 
         // envia requisição aos servidores via multicast
         try {
-            // inicializa fila e mapa de endereços dos servidores
-            serverMap = new HashMap<>();
-            serverAddresses = new PriorityQueue<>();
-
             multicastConnection = new MulticastConnection("224.6.7.8", 12345);
 
-            // agenda requisição multicast a cada 30 segundos
+            // agenda requisição multicast a cada 30 segundos; os Dataservers também enviam heartbeats por conta própria
             scheduler.scheduleAtFixedRate(() -> {
                 if (!multicastConnection.isClosed()) {
                     try {
@@ -120,23 +110,18 @@ public class Datacenter extends Server {
                         System.err.println("Falha ao enviar multicast: " + e.getMessage());
                     }
                 }
-            }, 10, 30, TimeUnit.SECONDS);
+            }, 0, 30, TimeUnit.SECONDS);
+
+            // publica o estado do registro aos outros Datacenters
+            scheduler.scheduleAtFixedRate(this::sendGossip, GOSSIP_INTERVAL_MS, GOSSIP_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
         } catch (IOException e) {
             System.err.println("Erro ao conectar ao multicast: " + e.getMessage());
         }
 
-        // remove servidores que não respondem há mais de 1 minuto
-        scheduler.scheduleAtFixedRate(() -> {
-            long now = System.currentTimeMillis();
-            serverAddresses.removeIf(s -> {
-                boolean expired = now - s.getLastUpdate() > 60_000;
-                if (expired) {
-                    System.out.println("Removendo servidor inativo: " + s.serverId);
-                    serverMap.remove(s.serverId);
-                }
-                return expired;
-            });
-        }, 30, 30, TimeUnit.SECONDS);
+        // suspende ou remove servidores conforme o detector de falhas
+        scheduler.scheduleAtFixedRate(this::checkServers,
+            HEARTBEAT_INTERVAL_MS / 2, HEARTBEAT_INTERVAL_MS / 2, TimeUnit.MILLISECONDS);
 
         run();
     }
@@ -144,50 +129,7 @@ public class Datacenter extends Server {
     @Override
     protected void run() {
         // trata conexões tcp
-        executor.submit(() -> {
-            while (!tcpConnection.isClosed()) {
-                // aceita conexões de clientes
-                Socket clientSocket = tcpConnection.accept();
-
-                if (clientSocket == null) break;
-
-                // cria uma nova tarefa para lidar com o cliente
-                executor.submit(() -> tcpConnection.handleClient(clientSocket, (message) -> {
-                    // verifica tipo da mensagem recebida
-                    switch (message.type()) {
-                        case "USER_REQUEST" -> {
-                            // retorna o servidor com menos conexões
-                            ServerAddress target = leastConnections();
-                            String response = (target != null) ? target.host.toString() : "Nenhum servidor disponível.";
-                            return new Message("DATACENTER_RESPONSE", response);
-                        }
-
-                        case "DRONE_REQUEST" -> {
-                            // encaminha a requisição para o servidor com menos uso de recursos via multicast
-                            ServerAddress target = lessResourceUsage();
-                            if (target != null) {
-                                try {
-                                    multicastConnection.send(new Message("DRONE_REQUEST",
-                                        message.payload()));
-                                    return new Message("DATACENTER_RESPONSE",
-                                        "Requisição encaminhada para o servidor: " + target.serverId);
-                                } catch (IOException e) {
-                                    System.err.println("Erro ao enviar requisição multicast: " + e.getMessage());
-                                    return new Message("DATACENTER_ERROR", "Erro ao encaminhar requisição.");
-                                }
-                            } else {
-                                return new Message("DATACENTER_ERROR", "Nenhum servidor disponível.");
-                            }
-                        }
-
-                        default -> {
-                            return new Message("DATACENTER_ERROR",
-                                "Tipo de mensagem desconhecido: " + message.type());
-                        }
-                    }
-                }));
-            }
-        });
+        serveTcpAsync(this::handleTcpMessage);
 
         // trata conexões multicast
         executor.submit(() -> {
@@ -197,40 +139,47 @@ public class Datacenter extends Server {
                     Message message = multicastConnection.receive();    // mensagem com endereço e porta do remetente
                     Message request = new Message(message.payload());   // extrai a mensagem original
 
-                    // processa a mensagem e adiciona o servidor à fila
-                    if (request.type().equals("SERVER_RESPONSE")) { // extrai informações do payload
-                        String[] parts = request.payload().split(";");
-                        if (parts.length < 4) {
+                    // processa a mensagem e adiciona o servidor ao registro
+                    boolean heartbeat = request.type().equals("HEARTBEAT");
+                    if (heartbeat || request.type().equals("SERVER_RESPONSE")) { // extrai informações do payload
+                        LoadReport report;
+                        try {
+                            report = LoadReport.parse(request.payload());
+                        } catch (IllegalArgumentException e) {
                             System.err.println("Payload inválido: " + request.payload());
                             continue;
                         }
 
                         String host = message.toString().split("\\|")[0].split(":")[0]; // endereço do servidor
-                        int workload = Integer.parseInt(parts[0]);  // carga de trabalho do servidor
-                        double resourceUsage = Double.parseDouble(parts[1]); // uso de recursos do servidor
-                        String serverId = parts[2]; // ID do servidor
-                        int port = Integer.parseInt(parts[3]); // porta do servidor
-
-                        // verifica se já existe e atualiza ou adiciona
-                        Optional<ServerAddress> existing =
-                            serverAddresses.stream()
-                                .filter(s -> s.serverId.equals(serverId))
-                                .findFirst();
-
-                        if (existing.isPresent()) {
-                            ServerAddress addr = existing.get();
-                            addr.update(resourceUsage, workload);   // atualiza uso de recursos e carga
-                            System.out.println("Servidor atualizado: " + serverId + " com carga " + workload +
-                                " e uso " + resourceUsage);
-                        } else {
-                            // adiciona novo servidor à fila e ao mapa
-                            ServerAddress addr = new ServerAddress(serverId, new Host(host + ":" + port), resourceUsage);
-                            addr.connectionCount = workload;
-                            serverMap.put(serverId, addr);
-                            serverAddresses.add(addr);
+                        String serverId = report.serverId(); // ID do servidor
+                        int workload = report.sessions();   // carga de trabalho do servidor
+                        double resourceUsage = report.resourceUsage(); // uso de recursos do servidor
+                        boolean draining = report.draining(); // servidor encerrando
+
+                        // atualiza o servidor ou o adiciona ao registro; um relatório direto prova que está vivo
+                        gossip.reported(serverId);
+                        failureDetector.heartbeat(serverId, System.currentTimeMillis());
+                        ServerAddress known = registry.get(serverId);
+                        boolean wasDraining = known != null && known.isDraining();
+                        boolean wasShedding = known != null && known.isShedding();
+                        if (registry.update(serverId, new Host(host + ":" + report.port()), report)) {
                             System.out.println("Novo servidor adicionado: " + serverId + " com carga " + workload +
                                 " e uso " + resourceUsage);
+                        } else if (registry.setSuspect(serverId, false)) {
+                            System.out.println("Servidor voltou a responder: " + serverId);
+                        } else if (draining && !wasDraining) {
+                            System.out.println("Servidor em drenagem: " + serverId + " com " + workload + " sessões");
+                        } else if (report.shedding() != wasShedding) {
+                            System.out.println((report.shedding() ? "Servidor sobrecarregado: " : "Servidor aliviado: ")
+                                + serverId + " com uso " + resourceUsage);
+                        } else if (!heartbeat) {
+                            System.out.println("Servidor atualizado: " + serverId + " com carga " + workload +
+                                " e uso " + resourceUsage);
                         }
+                    } else if (request.type().equals("DATACENTER_GOSSIP")) {
+                        gossip.merge(request.payload(), System.currentTimeMillis());
+                    } else if (request.type().equals("SESSION_END")) {
+                        releaseLease(request.payload());
                     }
                 } catch (IOException e) {
                     System.err.println("Erro ao processar mensagem do multicast: " + e.getMessage());
@@ -239,11 +188,190 @@ public class Datacenter extends Server {
         });
     }
 
+    // SESSION_END|serverId;lease=datacenterId/id: a sessão do usuário encaminhado terminou ou foi recusada; só o
+    // Datacenter que concedeu libera, e os demais deixam de contá-la pelo gossip
+    private void releaseLease(String payload) {
+        int separator = payload.indexOf(";lease=");
+        int slash = payload.lastIndexOf('/');
+        if (separator <= 0 || slash < separator) return;
+        if (!payload.substring(separator + ";lease=".length(), slash).equals(datacenterId)) return;
+
+        try {
+            registry.release(payload.substring(0, separator), Long.parseLong(payload.substring(slash + 1)));
+        } catch (NumberFormatException e) {
+            System.err.println("Payload inválido: " + payload);
+        }
+    }
+
+    // publica uma rodada de gossip, em quantos pacotes forem precisos
+    private void sendGossip() {
+        if (multicastConnection.isClosed()) return;
+
+        for (String payload : gossip.round()) {
+            try {
+                multicastConnection.send(new Message("DATACENTER_GOSSIP", payload));
+            } catch (IOException e) {
+                System.err.println("Falha ao enviar gossip: " + e.getMessage());
+            }
+        }
+    }
+
+    // suspeitos deixam de receber clientes e requisições de drones; mortos saem do registro
+    private void checkServers() {
+        long now = System.currentTimeMillis();
+        for (ServerAddress server : registry.servers()) {
+            String serverId = server.serverId();
+            double phi = failureDetector.phi(serverId, now);
+
+            if (phi >= DEAD_PHI) {
+                if (registry.remove(serverId)) {
+                    System.out.println("Removendo servidor inativo: " + serverId);
+                    gossip.removed(server, now);
+                    failureDetector.remove(serverId);
+                    closeLink(serverId);
+                }
+            } else if (phi >= SUSPECT_PHI && registry.setSuspect(serverId, true)) {
+                System.out.println("Servidor suspeito de falha: " + serverId
+                    + " (phi " + String.format("%.1f", phi) + ")");
+            }
+        }
+
+        // Datacenters sem gossip recente saíram do cluster; as concessões deles deixam de contar
+        gossip.expire(now);
+    }
+
+    // trata mensagens recebidas dos clientes TCP
+    private CompletableFuture<Message> handleTcpMessage(Message message) {
+        // verifica tipo da mensagem recebida
+        switch (message.type()) {
+            case "USER_REQUEST" -> {
+                // retorna o servidor escolhido pela estratégia para a região do usuário (payload, opcional); a
+                // concessão conta o usuário até o servidor informá-lo, e o usuário a leva ao servidor para que ela
+                // seja devolvida no fim da sessão: "host:porta;lease=datacenterId/id"
+                ServerRegistry.Lease lease = SELECTION.select(registry, Region.fromKey(message.payload()).key());
+                String response = (lease != null)
+                    ? lease.server().host() + ";lease=" + datacenterId + "/" + lease.id()
+                    : "Nenhum servidor disponível.";
+                return CompletableFuture.completedFuture(new Message("DATACENTER_RESPONSE", response));
+            }
+
+            case "DRONE_REQUEST" -> {
+                // encaminha a requisição apenas ao primeiro candidato da estratégia, ou ao próximo se ele falhar
+                List<ServerAddress> candidates =
+                    SELECTION.candidates(registry, regionOf(message.payload()).key(), DISPATCH_ATTEMPTS);
+                if (candidates.isEmpty()) {
+                    // servidores sobrecarregados recusam usuários, mas a gravação dos dados tem prioridade
+                    candidates = registry.sheddingServers(DISPATCH_ATTEMPTS);
+                }
+                if (candidates.isEmpty()) {
+                    return CompletableFuture.completedFuture(
+                        new Message("DATACENTER_ERROR", "Nenhum servidor disponível."));
+                }
+                return dispatch(new Message("DRONE_REQUEST", message.payload()), candidates, 0);
+            }
+
+            default -> {
+                return CompletableFuture.completedFuture(new Message("DATACENTER_ERROR",
+                    "Tipo de mensagem desconhecido: " + message.type()));
+            }
+        }
+    }
+
+    // região do prefixo opcional "regiao/" dos dados de drone, o mesmo sufixo dos tópicos MQTT
+    private static Region regionOf(String payload) {
+        int slash = payload.indexOf('/');
+        return slash > 0 ? Region.fromKey(payload.substring(0, slash)) : Region.UNKNOWN;
+    }
+
+    /**
+     * Envia a requisição ao candidato {@code index} pela conexão persistente com ele. Falhas de conexão, prazo
+     * esgotado e {@code SERVER_BUSY} passam a requisição ao próximo candidato; os demais erros voltam ao cliente.
+     * Só uma falha de E/S fecha a conexão: o prazo esgotado é de uma requisição, e as outras que compartilham a
+     * conexão seguem esperando suas respostas.
+     */
+    private CompletableFuture<Message> dispatch(Message request, List<ServerAddress> candidates, int index) {
+        if (index >= candidates.size()) {
+            return CompletableFuture.completedFuture(
+                new Message("DATACENTER_ERROR", "Erro ao encaminhar requisição."));
+        }
+
+        ServerAddress target = candidates.get(index);
+        MultiplexedConnection link;
+        try {
+            link = linkTo(target);
+        } catch (IOException e) {
+            System.err.println("Erro ao conectar ao servidor " + target.serverId() + ": " + e.getMessage());
+            return dispatch(request, candidates, index + 1);
+        }
+
+        return link.request(request).handle((response, error) -> {
+            if (error == null && response.type().equals("DRONE_RESPONSE")) {
+                return CompletableFuture.completedFuture(new Message("DATACENTER_RESPONSE",
+                    "Requisição encaminhada para o servidor: " + target.serverId()));
+            }
+            if (error == null && !response.type().equals("SERVER_BUSY")) {
+                return CompletableFuture.completedFuture(new Message("DATACENTER_ERROR", response.payload()));
+            }
+
+            if (error != null) {
+                Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                    ? error.getCause() : error;
+                if (cause instanceof TimeoutException) {
+                    System.err.println("Prazo esgotado no servidor " + target.serverId());
+                } else {
+                    System.err.println("Erro ao encaminhar para o servidor " + target.serverId() + ": "
+                        + cause.getMessage());
+                    closeLink(target.serverId(), link);
+                }
+            }
+            return dispatch(request, candidates, index + 1);
+        }).thenCompose(next -> next);
+    }
+
+    // conexão persistente com o Dataserver, reaberta se a anterior tiver caído. A conexão é aberta fora do mapa, para
+    // não bloquear os outros servidores durante o connect; se duas threads abrirem juntas, a perdedora fecha a sua
+    private MultiplexedConnection linkTo(ServerAddress target) throws IOException {
+        String serverId = target.serverId();
+        MultiplexedConnection link = dataserverLinks.get(serverId);
+        if (link != null && !link.isClosed()) return link;
+        if (link != null) closeLink(serverId, link);
+
+        MultiplexedConnection opened = new MultiplexedConnection(
+            new TcpConnection(target.host().host, target.host().port), DISPATCH_TIMEOUT_MS);
+        MultiplexedConnection current = dataserverLinks.putIfAbsent(serverId, opened);
+        if (current == null) return opened;
+
+        close(serverId, opened);
+        return current;
+    }
+
+    private void closeLink(String serverId) {
+        MultiplexedConnection link = dataserverLinks.remove(serverId);
+        if (link != null) close(serverId, link);
+    }
+
+    // fecha a conexão só se ainda for a registrada: outra thread pode já tê-la trocado por uma nova
+    private void closeLink(String serverId, MultiplexedConnection link) {
+        if (dataserverLinks.remove(serverId, link)) close(serverId, link);
+    }
+
+    private static void close(String serverId, MultiplexedConnection link) {
+        try {
+            link.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar conexão com o servidor " + serverId + ": " + e.getMessage());
+        }
+    }
+
     @Override
     public void stop() {
         // encerra todas as tarefas e fecha todas as conexões ao encerrar o datacenter
         try {
-            tcpConnection.close();
+            if (tcpConnection != null) tcpConnection.close();
+            if (nioConnection != null) nioConnection.close();
+            for (String serverId : List.copyOf(dataserverLinks.keySet())) {
+                closeLink(serverId);
+            }
             multicastConnection.close();
             executor.shutdown();
             if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -257,26 +385,6 @@ public class Datacenter extends Server {
         }
     }
 
-    private synchronized ServerAddress leastConnections() {
-        if (serverAddresses.isEmpty()) return null;
-
-        return serverAddresses.stream()
-            .min(Comparator.comparingInt(ServerAddress::getConnectionCount))
-            .map(server -> {
-                server.incrementConnectionCount(); // registra nova conexão
-                return server;
-            })
-            .orElse(null);
-    }
-
-    private synchronized ServerAddress lessResourceUsage() {
-        if (serverAddresses.isEmpty()) return null;
-
-        return serverAddresses.stream()
-            .min(Comparator.comparingDouble(ServerAddress::getResourceUsage))
-            .orElse(null);
-    }
-
     public static void main(String[] args) {
         try (ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1)) {
             Datacenter datacenter = new Datacenter();
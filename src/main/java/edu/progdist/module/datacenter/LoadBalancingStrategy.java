@@ -0,0 +1,86 @@
+package edu.progdist.module.datacenter;
+
+import java.util.List;
+
+/**
+ * Política de escolha do Dataserver que recebe um novo usuário.
+ * <p>
+ * A estratégia concede o usuário ao servidor escolhido pelo {@link ServerRegistry}, de modo que a escolha já conte
+ * na carga do servidor até o próximo relatório dele. As estratégias baseadas em tempo de serviço usam duas escolhas
+ * aleatórias em vez de percorrer todos os servidores: a escolha continua O(1) e Datacenters diferentes não mandam
+ * todos os usuários ao mesmo servidor entre dois relatórios.
+ */
+@FunctionalInterface
+public interface LoadBalancingStrategy {
+
+    /**
+     * Escolhe um servidor roteável e concede o usuário a ele.
+     *
+     * @return a concessão, ou {@code null} se não houver servidor roteável
+     */
+    ServerRegistry.Lease select(ServerRegistry registry);
+
+    /**
+     * Escolhe um servidor para um usuário da região {@code key}. As estratégias sem afinidade ignoram a chave.
+     */
+    default ServerRegistry.Lease select(ServerRegistry registry, String key) {
+        return select(registry);
+    }
+
+    /**
+     * Servidores que recebem, em ordem de tentativa, os dados de drone da região {@code key}. Sem afinidade, são os
+     * de menos uso de recursos.
+     */
+    default List<ServerAddress> candidates(ServerRegistry registry, String key, int limit) {
+        return registry.leastResourceUsage(limit);
+    }
+
+    /**
+     * Servidor com menos sessões abertas.
+     */
+    LoadBalancingStrategy LEAST_CONNECTIONS = ServerRegistry::leastConnections;
+
+    /**
+     * O de menos sessões entre dois servidores sorteados.
+     */
+    LoadBalancingStrategy POWER_OF_TWO_CHOICES = ServerRegistry::powerOfTwoChoices;
+
+    /**
+     * Servidor com menos uso de CPU e memória.
+     */
+    LoadBalancingStrategy LEAST_RESOURCE_USAGE = ServerRegistry::leastResourceUsageLease;
+
+    /**
+     * Entre dois sorteados, o de menor tempo de serviço esperado: a média de pico do tempo de atendimento vezes as
+     * sessões que o usuário vai disputar. Um servidor que ficou lento é evitado já no primeiro relatório e só volta
+     * aos poucos, conforme a média decai. O milissegundo somado faz servidores ainda sem medição serem comparados
+     * pelas sessões.
+     */
+    LoadBalancingStrategy PEAK_EWMA = registry -> registry.powerOfTwoChoices(
+        server -> (server.getServiceTime() + 1) * (server.getConnectionCount() + 1));
+
+    /**
+     * Entre dois sorteados, o de menos requisições em andamento (mais usuários ainda não informados) por unidade de
+     * capacidade.
+     */
+    LoadBalancingStrategy WEIGHTED_LEAST_OUTSTANDING = registry -> registry.powerOfTwoChoices(
+        server -> (server.getOutstandingRequests() + server.getConnectionCount() - server.getReportedSessions() + 1)
+            / (double) server.getCapacity());
+
+    /**
+     * Estratégia pelo nome usado em {@code -Ddatacenter.selection}.
+     *
+     * @throws IllegalArgumentException se o nome for desconhecido
+     */
+    static LoadBalancingStrategy byName(String name) {
+        return switch (name.toLowerCase()) {
+            case "least-connections" -> LEAST_CONNECTIONS;
+            case "p2c" -> POWER_OF_TWO_CHOICES;
+            case "least-resource-usage" -> LEAST_RESOURCE_USAGE;
+            case "peak-ewma" -> PEAK_EWMA;
+            case "weighted-least-outstanding" -> WEIGHTED_LEAST_OUTSTANDING;
+            case "region-hash" -> ConsistentHashRing.fromProperties("datacenter.ring");
+            default -> throw new IllegalArgumentException("Estratégia de balanceamento desconhecida: " + name);
+        };
+    }
+}
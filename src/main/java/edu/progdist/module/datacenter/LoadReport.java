@@ -0,0 +1,65 @@
+package edu.progdist.module.datacenter;
+
+/**
+ * Relatório de carga enviado por um Dataserver em {@code HEARTBEAT} e {@code SERVER_RESPONSE}, no formato
+ * {@code sessões;usoDeRecursos;serverId;porta[;drenando[;tempoDeServiço;emAndamento;capacidade[;sequência
+ * [;descartando]]]]}.
+ * <p>
+ * Os campos opcionais permitem que Dataservers de versões anteriores continuem sendo aceitos: sem eles o servidor
+ * não está em drenagem, tem tempo de serviço zero, capacidade um, sequência zero (relatório sempre aceito) e não
+ * está descartando carga.
+ *
+ * @param sessions            sessões de usuário abertas
+ * @param resourceUsage       uso de CPU e memória da máquina
+ * @param draining            se o servidor está encerrando
+ * @param serviceTimeMillis   média móvel do tempo de atendimento de um {@code DATA_REQUEST}, em ms
+ * @param outstandingRequests requisições em atendimento no momento do relatório
+ * @param capacity            peso do servidor: requisições que ele atende em paralelo
+ * @param sequence            número crescente do relatório no servidor, que ordena relatórios repassados por outros
+ *                            Datacenters
+ * @param shedding            se o servidor está sobrecarregado e recusando novos usuários
+ */
+public record LoadReport(String serverId, int port, int sessions, double resourceUsage, boolean draining,
+                         double serviceTimeMillis, int outstandingRequests, int capacity, long sequence,
+                         boolean shedding) {
+
+    /**
+     * O relatório mais recente conhecido do servidor, para repassar a outros Datacenters.
+     */
+    public static LoadReport of(ServerAddress server) {
+        return new LoadReport(server.serverId(), server.host().port, server.getReportedSessions(),
+            server.getResourceUsage(), server.isDraining(), server.getServiceTime(), server.getOutstandingRequests(),
+            server.getCapacity(), server.getReportSequence(), server.isShedding());
+    }
+
+    /**
+     * @throws IllegalArgumentException se o payload não tiver os campos obrigatórios ou algum número for inválido
+     */
+    public static LoadReport parse(String payload) {
+        String[] parts = payload.split(";");
+        if (parts.length < 4) throw new IllegalArgumentException("Payload inválido: " + payload);
+
+        boolean draining = parts.length > 4 && parts[4].equals("1");
+        boolean serviceStats = parts.length > 7;
+        return new LoadReport(
+            parts[2],
+            Integer.parseInt(parts[3]),
+            Integer.parseInt(parts[0]),
+            Double.parseDouble(parts[1]),
+            draining,
+            serviceStats ? Double.parseDouble(parts[5]) : 0,
+            serviceStats ? Integer.parseInt(parts[6]) : 0,
+            serviceStats ? Integer.parseInt(parts[7]) : 1,
+            parts.length > 8 ? Long.parseLong(parts[8]) : 0,
+            parts.length > 9 && parts[9].equals("1"));
+    }
+
+    /**
+     * O payload que {@link #parse(String)} lê.
+     */
+    public String format() {
+        return sessions + ";" + resourceUsage + ";" + serverId + ";" + port + ";" + (draining ? 1 : 0) + ";"
+            + serviceTimeMillis + ";" + outstandingRequests + ";" + capacity + ";" + sequence + ";"
+            + (shedding ? 1 : 0);
+    }
+}
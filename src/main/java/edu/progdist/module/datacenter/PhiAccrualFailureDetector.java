@@ -0,0 +1,122 @@
+package edu.progdist.module.datacenter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detector de falhas adaptativo (phi accrual) para os heartbeats dos Dataservers.
+ * <p>
+ * Para cada servidor guarda uma janela com os últimos intervalos entre heartbeats e calcula o nível de suspeita
+ * {@code phi = -log10(P(o próximo heartbeat chegar depois de agora))}, supondo intervalos com distribuição normal.
+ * Com intervalos regulares, poucos intervalos de silêncio bastam para um phi alto; com uma rede instável a janela
+ * fica mais dispersa e o detector espera mais antes de suspeitar.
+ */
+public final class PhiAccrualFailureDetector {
+
+    // janela circular de intervalos de um servidor
+    private static final class History {
+        final long[] intervals;
+        int count;
+        int next;
+        double sum;
+        double sumOfSquares;
+        long lastArrival;
+
+        History(int windowSize, long firstArrival) {
+            this.intervals = new long[windowSize];
+            this.lastArrival = firstArrival;
+        }
+
+        void add(long interval) {
+            if (count == intervals.length) {
+                long oldest = intervals[next];
+                sum -= oldest;
+                sumOfSquares -= (double) oldest * oldest;
+            } else {
+                count++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % intervals.length;
+            sum += interval;
+            sumOfSquares += (double) interval * interval;
+        }
+    }
+
+    private final Map<String, History> histories = new ConcurrentHashMap<>();
+    private final int windowSize;
+    private final long firstIntervalEstimateMillis;
+    private final long minStdDeviationMillis;
+    private final long acceptablePauseMillis;
+
+    /**
+     * @param windowSize                  quantos intervalos recentes entram na estimativa
+     * @param firstIntervalEstimateMillis intervalo esperado antes do segundo heartbeat (o intervalo configurado)
+     * @param minStdDeviationMillis       desvio padrão mínimo, para que intervalos muito regulares não gerem
+     *                                    suspeitas com qualquer atraso
+     * @param acceptablePauseMillis       atraso tolerado além da média, por exemplo um heartbeat perdido
+     */
+    public PhiAccrualFailureDetector(int windowSize, long firstIntervalEstimateMillis, long minStdDeviationMillis,
+                                     long acceptablePauseMillis) {
+        this.windowSize = windowSize;
+        this.firstIntervalEstimateMillis = firstIntervalEstimateMillis;
+        this.minStdDeviationMillis = minStdDeviationMillis;
+        this.acceptablePauseMillis = acceptablePauseMillis;
+    }
+
+    /**
+     * Registra um heartbeat do servidor recebido em {@code nowMillis}.
+     */
+    public void heartbeat(String serverId, long nowMillis) {
+        History history = histories.get(serverId);
+        if (history == null) {
+            history = histories.putIfAbsent(serverId, new History(windowSize, nowMillis));
+            if (history == null) return;    // primeiro heartbeat: ainda não há intervalo
+        }
+
+        synchronized (history) {
+            long interval = nowMillis - history.lastArrival;
+            if (interval <= 0) return;  // duplicado ou fora de ordem
+            history.add(interval);
+            history.lastArrival = nowMillis;
+        }
+    }
+
+    /**
+     * Nível de suspeita do servidor em {@code nowMillis}; {@code 0} se ele nunca enviou heartbeat.
+     */
+    public double phi(String serverId, long nowMillis) {
+        History history = histories.get(serverId);
+        if (history == null) return 0;
+
+        double mean;
+        double variance;
+        long elapsed;
+        synchronized (history) {
+            elapsed = nowMillis - history.lastArrival;
+            if (history.count == 0) {
+                mean = firstIntervalEstimateMillis;
+                variance = (firstIntervalEstimateMillis / 4.0) * (firstIntervalEstimateMillis / 4.0);
+            } else {
+                mean = history.sum / history.count;
+                variance = history.sumOfSquares / history.count - mean * mean;
+            }
+        }
+
+        double stdDeviation = Math.max(Math.sqrt(Math.max(variance, 0)), minStdDeviationMillis);
+        return phi(elapsed, mean + acceptablePauseMillis, stdDeviation);
+    }
+
+    // aproximação logística da cauda da normal, estável para valores grandes de phi
+    static double phi(double elapsed, double mean, double stdDeviation) {
+        double y = (elapsed - mean) / stdDeviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsed > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    public void remove(String serverId) {
+        histories.remove(serverId);
+    }
+}
@@ -0,0 +1,163 @@
+package edu.progdist.module.datacenter;
+
+import edu.progdist.connection.direct.Server.Host;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Endereço de um Dataserver com sua carga de trabalho, como conhecido pelo {@link ServerRegistry}.
+ * <p>
+ * Os campos mutáveis só são alterados pelo registro, com o monitor da instância, para manter os índices ordenados
+ * consistentes; a leitura pode ser feita de qualquer thread.
+ */
+public final class ServerAddress {
+    private final String serverId;      // ID único do servidor
+    private final Host host;            // endereço
+    private volatile int connectionCount;       // sessões informadas pelo servidor mais concessões pendentes
+    private volatile int reportedSessions;      // sessões abertas segundo o último relatório do servidor
+    private volatile double resourceUsage;      // uso de recursos (CPU e RAM)
+    private volatile long lastUpdate;           // timestamp em ms
+    private volatile boolean suspect;           // suspeito de falha pelo detector
+    private volatile boolean draining;          // servidor encerrando: termina as sessões, mas não recebe novas
+    private volatile boolean shedding;          // sobrecarregado: recusa novos usuários até a carga baixar
+    private volatile double serviceTime;        // média de pico do tempo de serviço informado, em ms
+    private volatile long serviceTimeUpdate;    // instante da última atualização de serviceTime
+    private volatile int outstandingRequests;   // requisições em andamento no último relatório
+    private volatile int capacity = 1;          // peso do servidor (threads de processamento)
+    private volatile long reportSequence;       // sequência do último relatório aplicado
+
+    // concessões pendentes de outros Datacenters, por datacenterId, e sua soma
+    final Map<String, Integer> remoteLeases = new HashMap<>();
+    int remoteLeaseTotal;
+
+    // clientes encaminhados que ainda não aparecem no relatório do servidor, em ordem de concessão
+    final ArrayDeque<ServerRegistry.Lease> leases = new ArrayDeque<>();
+
+    ServerAddress(String serverId, Host host, int reportedSessions, double resourceUsage) {
+        this.serverId = serverId;
+        this.host = host;
+        this.reportedSessions = reportedSessions;
+        this.connectionCount = reportedSessions;
+        this.resourceUsage = resourceUsage;
+        this.lastUpdate = System.currentTimeMillis();
+    }
+
+    public String serverId() {
+        return serverId;
+    }
+
+    public Host host() {
+        return host;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public int getReportedSessions() {
+        return reportedSessions;
+    }
+
+    public double getResourceUsage() {
+        return resourceUsage;
+    }
+
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public double getServiceTime() {
+        return serviceTime;
+    }
+
+    public long getServiceTimeUpdate() {
+        return serviceTimeUpdate;
+    }
+
+    public int getOutstandingRequests() {
+        return outstandingRequests;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getReportSequence() {
+        return reportSequence;
+    }
+
+    public boolean isSuspect() {
+        return suspect;
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public boolean isShedding() {
+        return shedding;
+    }
+
+    /**
+     * Indica se o servidor pode receber novos clientes.
+     */
+    public boolean isRoutable() {
+        return !suspect && !draining && !shedding;
+    }
+
+    void setSuspect(boolean suspect) {
+        this.suspect = suspect;
+    }
+
+    void setDraining(boolean draining) {
+        this.draining = draining;
+    }
+
+    void setShedding(boolean shedding) {
+        this.shedding = shedding;
+    }
+
+    void setReportedSessions(int reportedSessions) {
+        this.reportedSessions = reportedSessions;
+    }
+
+    void setConnectionCount(int connectionCount) {
+        this.connectionCount = connectionCount;
+    }
+
+    void setServiceStats(double serviceTime, int outstandingRequests, int capacity, long now) {
+        this.serviceTime = serviceTime;
+        this.serviceTimeUpdate = now;
+        this.outstandingRequests = outstandingRequests;
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    void setReportSequence(long reportSequence) {
+        this.reportSequence = reportSequence;
+    }
+
+    void setResourceUsage(double resourceUsage) {
+        this.resourceUsage = resourceUsage;
+    }
+
+    void touch() {
+        this.lastUpdate = System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ServerAddress sa && this.serverId.equals(sa.serverId);
+    }
+
+    @Override
+    public int hashCode() {
+        return serverId.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return serverId + "@" + host;
+    }
+}
@@ -0,0 +1,487 @@
+package edu.progdist.module.datacenter;
+
+import edu.progdist.connection.direct.Server.Host;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Registro concorrente dos Dataservers conhecidos pelo Datacenter.
+ * <p>
+ * A busca por {@code serverId} é feita em um {@link ConcurrentHashMap}. Dois índices ordenados em
+ * {@link ConcurrentSkipListMap} (por conexões e por uso de recursos) permitem escolher o servidor menos carregado em
+ * O(log n), sem percorrer a lista. Cada atualização troca a chave do servidor nos índices com o monitor do próprio
+ * {@link ServerAddress}, de modo que atualizações de servidores diferentes não disputam o mesmo lock.
+ * <p>
+ * A contagem de conexões de um servidor é o número de sessões do seu último relatório mais as {@link Lease concessões}
+ * ainda pendentes: clientes encaminhados a ele que o relatório pode ainda não incluir. Uma concessão é liberada
+ * pelo primeiro relatório recebido pelo menos {@code leaseGraceMillis} depois dela, quando o cliente já teve tempo de
+ * se conectar (e foi contado pelo servidor) ou desistiu; ou antes, por {@link #release(String, long)}, quando o
+ * servidor avisa que a sessão do cliente terminou ou foi recusada. Um servidor que entra em drenagem recusa novos
+ * usuários, então as concessões pendentes nele são liberadas pelo relatório que anuncia a drenagem.
+ * <p>
+ * Servidores suspeitos de falha ou em drenagem continuam registrados, mas saem dos índices e do sorteio até voltarem
+ * a ser roteáveis.
+ * <p>
+ * Com vários Datacenters ativos, as concessões pendentes de cada um chegam aos demais por gossip e também contam nas
+ * conexões do servidor, para que os Datacenters não encaminhem todos os usuários ao mesmo servidor.
+ */
+public final class ServerRegistry {
+
+    /**
+     * Cliente encaminhado a um servidor e ainda não confirmado pelo relatório dele. O {@link #id()} acompanha o
+     * cliente até o servidor, que o devolve ao Datacenter quando a sessão termina ou é recusada.
+     */
+    public static final class Lease {
+        private final long id;
+        private final ServerAddress server;
+        private final long issuedAt;
+
+        private Lease(long id, ServerAddress server, long issuedAt) {
+            this.id = id;
+            this.server = server;
+            this.issuedAt = issuedAt;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public ServerAddress server() {
+            return server;
+        }
+    }
+
+    // chaves dos índices; o serverId desempata servidores com a mesma carga
+    private record LoadKey(int connections, String serverId) implements Comparable<LoadKey> {
+        @Override
+        public int compareTo(LoadKey other) {
+            int cmp = Integer.compare(connections, other.connections);
+            return cmp != 0 ? cmp : serverId.compareTo(other.serverId);
+        }
+    }
+
+    private record UsageKey(double resourceUsage, String serverId) implements Comparable<UsageKey> {
+        @Override
+        public int compareTo(UsageKey other) {
+            int cmp = Double.compare(resourceUsage, other.resourceUsage);
+            return cmp != 0 ? cmp : serverId.compareTo(other.serverId);
+        }
+    }
+
+    private final Map<String, ServerAddress> byId = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<LoadKey, ServerAddress> byConnections = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<UsageKey, ServerAddress> byResourceUsage = new ConcurrentSkipListMap<>();
+    private final long leaseGraceMillis;
+    private final long serviceTimeDecayMillis;
+
+    // cópia dos membros roteáveis para sorteio em O(1); só muda quando servidores entram, saem ou são suspensos
+    private final Object membershipLock = new Object();
+    private volatile ServerAddress[] members = new ServerAddress[0];
+    private final AtomicLong routableConnections = new AtomicLong(); // soma das conexões dos membros roteáveis
+    private final AtomicLong leaseIds = new AtomicLong();
+
+    /**
+     * @param leaseGraceMillis       tempo que um cliente encaminhado tem para aparecer no relatório do servidor
+     * @param serviceTimeDecayMillis constante de tempo da média móvel de pico do tempo de serviço
+     */
+    public ServerRegistry(long leaseGraceMillis, long serviceTimeDecayMillis) {
+        this.leaseGraceMillis = leaseGraceMillis;
+        this.serviceTimeDecayMillis = serviceTimeDecayMillis;
+    }
+
+    /**
+     * Registra o servidor ou atualiza sua carga a partir de um relatório, liberando as concessões que o relatório
+     * já cobre.
+     *
+     * @return {@code true} se o servidor era desconhecido
+     */
+    public boolean update(String serverId, Host host, LoadReport report) {
+        while (true) {
+            ServerAddress existing = byId.get(serverId);
+            if (existing == null) {
+                ServerAddress created = new ServerAddress(serverId, host, report.sessions(), report.resourceUsage());
+                synchronized (created) {
+                    existing = byId.putIfAbsent(serverId, created);
+                    if (existing == null) {
+                        created.setDraining(report.draining());
+                        created.setShedding(report.shedding());
+                        created.setServiceStats(report.serviceTimeMillis(), report.outstandingRequests(),
+                            report.capacity(), System.currentTimeMillis());
+                        created.setReportSequence(report.sequence());
+                        if (created.isRoutable()) index(created);
+                        return true;
+                    }
+                }
+            }
+
+            synchronized (existing) {
+                if (byId.get(serverId) != existing) continue;   // removido enquanto esperava o lock
+                if (report.sequence() != 0 && report.sequence() <= existing.getReportSequence()) {
+                    return false;   // relatório repassado mais antigo que o já aplicado
+                }
+
+                long now = System.currentTimeMillis();
+                long reflectedBefore = now - leaseGraceMillis;
+                while (!existing.leases.isEmpty() && existing.leases.peekFirst().issuedAt <= reflectedBefore) {
+                    existing.leases.pollFirst();
+                }
+                if (report.draining()) existing.leases.clear();    // os clientes encaminhados serão recusados
+                existing.setReportedSessions(report.sessions());
+                reindex(existing, connections(existing), report.resourceUsage());
+                setRouting(existing, existing.isSuspect(), report.draining(), report.shedding());
+                existing.setServiceStats(peakEwma(existing, report.serviceTimeMillis(), now),
+                    report.outstandingRequests(), report.capacity(), now);
+                existing.setReportSequence(report.sequence());
+                existing.touch();
+                return false;
+            }
+        }
+    }
+
+    // sobe na hora com um pico e decai exponencialmente com o tempo, para que um servidor lento seja evitado logo
+    private double peakEwma(ServerAddress server, double sample, long now) {
+        double current = server.getServiceTime();
+        if (sample >= current) return sample;
+
+        double weight = Math.exp(-(now - server.getServiceTimeUpdate()) / (double) serviceTimeDecayMillis);
+        return current * weight + sample * (1 - weight);
+    }
+
+    public ServerAddress get(String serverId) {
+        return byId.get(serverId);
+    }
+
+    public boolean remove(String serverId) {
+        ServerAddress server = byId.get(serverId);
+        if (server == null) return false;
+
+        synchronized (server) {
+            if (!byId.remove(serverId, server)) return false;
+            if (server.isRoutable()) unindex(server);
+            server.leases.clear();
+            return true;
+        }
+    }
+
+    /**
+     * Marca ou desmarca o servidor como suspeito de falha.
+     *
+     * @return {@code true} se o estado mudou
+     */
+    public boolean setSuspect(String serverId, boolean suspect) {
+        ServerAddress server = byId.get(serverId);
+        if (server == null) return false;
+
+        synchronized (server) {
+            if (byId.get(serverId) != server || server.isSuspect() == suspect) return false;
+            setRouting(server, suspect, server.isDraining(), server.isShedding());
+            return true;
+        }
+    }
+
+    /**
+     * Todos os servidores registrados, roteáveis ou não.
+     */
+    public Collection<ServerAddress> servers() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    /**
+     * Remove os servidores sem atualização há mais de {@code maxAgeMillis}.
+     *
+     * @return os servidores removidos
+     */
+    public List<ServerAddress> removeExpired(long maxAgeMillis) {
+        long now = System.currentTimeMillis();
+        List<ServerAddress> expired = new ArrayList<>();
+        for (ServerAddress server : byId.values()) {
+            if (now - server.getLastUpdate() > maxAgeMillis && remove(server.serverId())) {
+                expired.add(server);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Concede um cliente ao servidor roteável com menos conexões.
+     */
+    public Lease leastConnections() {
+        while (true) {
+            Map.Entry<LoadKey, ServerAddress> first = byConnections.firstEntry();
+            if (first == null) return null;
+
+            Lease lease = acquire(first.getValue(), first.getKey());
+            if (lease != null) return lease;
+        }
+    }
+
+    /**
+     * Sorteia dois servidores roteáveis e concede o cliente ao de menos conexões. Evita que vários Datacenters (ou
+     * várias threads) mandem todos os clientes ao mesmo servidor entre duas atualizações.
+     */
+    public Lease powerOfTwoChoices() {
+        return powerOfTwoChoices(ServerAddress::getConnectionCount);
+    }
+
+    /**
+     * Sorteia dois servidores roteáveis e concede o cliente ao de menor {@code cost}.
+     */
+    public Lease powerOfTwoChoices(ToDoubleFunction<ServerAddress> cost) {
+        while (true) {
+            ServerAddress[] snapshot = members;
+            if (snapshot.length == 0) return null;
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            ServerAddress server = snapshot[random.nextInt(snapshot.length)];
+            if (snapshot.length > 1) {
+                ServerAddress other = snapshot[random.nextInt(snapshot.length)];
+                if (cost.applyAsDouble(other) < cost.applyAsDouble(server)) server = other;
+            }
+
+            Lease lease = acquire(server, null);
+            if (lease != null) return lease;
+        }
+    }
+
+    /**
+     * Concede um cliente ao servidor roteável com menos uso de recursos.
+     */
+    public Lease leastResourceUsageLease() {
+        while (true) {
+            ServerAddress server = leastResourceUsage();
+            if (server == null) return null;
+
+            Lease lease = acquire(server, null);
+            if (lease != null) return lease;
+        }
+    }
+
+    /**
+     * Servidor roteável com menos uso de recursos.
+     */
+    public ServerAddress leastResourceUsage() {
+        Map.Entry<UsageKey, ServerAddress> first = byResourceUsage.firstEntry();
+        return first != null ? first.getValue() : null;
+    }
+
+    /**
+     * Os servidores roteáveis com menos uso de recursos, do menor para o maior, até o limite.
+     */
+    public List<ServerAddress> leastResourceUsage(int limit) {
+        List<ServerAddress> result = new ArrayList<>(Math.min(limit, byId.size()));
+        for (ServerAddress server : byResourceUsage.values()) {
+            if (result.size() >= limit) break;
+            result.add(server);
+        }
+        return result;
+    }
+
+    /**
+     * Os servidores que estão apenas descartando carga (ativos e fora de drenagem), do menor para o maior uso de
+     * recursos, até o limite. Eles recusam novos usuários, mas ainda gravam os dados dos drones.
+     */
+    public List<ServerAddress> sheddingServers(int limit) {
+        List<ServerAddress> result = new ArrayList<>();
+        for (ServerAddress server : byId.values()) {
+            if (server.isShedding() && !server.isSuspect() && !server.isDraining()) result.add(server);
+        }
+        result.sort(Comparator.comparingDouble(ServerAddress::getResourceUsage));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Concessões deste Datacenter ainda pendentes no servidor, para repassar aos demais.
+     */
+    public int localLeases(ServerAddress server) {
+        synchronized (server) {
+            return server.leases.size();
+        }
+    }
+
+    /**
+     * Substitui as concessões pendentes do Datacenter {@code datacenterId} no servidor, como recebidas por gossip.
+     */
+    public void setRemoteLeases(String serverId, String datacenterId, int count) {
+        ServerAddress server = byId.get(serverId);
+        if (server == null) return;
+
+        synchronized (server) {
+            if (byId.get(serverId) != server) return;
+            Integer previous = count > 0
+                ? server.remoteLeases.put(datacenterId, count) : server.remoteLeases.remove(datacenterId);
+            server.remoteLeaseTotal += count - (previous != null ? previous : 0);
+            reindex(server, connections(server), server.getResourceUsage());
+        }
+    }
+
+    /**
+     * Descarta as concessões de um Datacenter que deixou de responder.
+     */
+    public void clearRemoteLeases(String datacenterId) {
+        for (ServerAddress server : byId.values()) {
+            setRemoteLeases(server.serverId(), datacenterId, 0);
+        }
+    }
+
+    /**
+     * Devolve uma concessão antes do relatório que a liberaria: a sessão do cliente terminou ou foi recusada.
+     *
+     * @return {@code false} se a concessão já tinha sido liberada
+     */
+    public boolean release(Lease lease) {
+        return release(lease.server.serverId(), lease.id);
+    }
+
+    /**
+     * Devolve a concessão {@code leaseId} do servidor, identificada pelo servidor ao avisar o fim da sessão.
+     *
+     * @return {@code false} se o servidor ou a concessão não estão mais registrados
+     */
+    public boolean release(String serverId, long leaseId) {
+        ServerAddress server = byId.get(serverId);
+        if (server == null) return false;
+
+        synchronized (server) {
+            if (byId.get(serverId) != server || !server.leases.removeIf(lease -> lease.id == leaseId)) return false;
+            reindex(server, connections(server), server.getResourceUsage());
+            return true;
+        }
+    }
+
+    /**
+     * Concede um cliente a um servidor escolhido por fora do registro.
+     *
+     * @return a concessão, ou {@code null} se o servidor saiu do registro ou deixou de ser roteável
+     */
+    public Lease lease(ServerAddress server) {
+        return acquire(server, null);
+    }
+
+    /**
+     * Os servidores roteáveis. O array não deve ser alterado; um novo array é publicado a cada mudança, de modo que
+     * a identidade dele indica se o conjunto mudou.
+     */
+    ServerAddress[] routableMembers() {
+        return members;
+    }
+
+    /**
+     * Soma das conexões dos servidores roteáveis, mantida a cada atualização para calcular a carga média em O(1).
+     */
+    public long routableConnections() {
+        return routableConnections.get();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+
+    // concede um cliente ao servidor, se ele ainda estiver registrado e roteável (e com a chave esperada, se informada)
+    private Lease acquire(ServerAddress server, LoadKey expected) {
+        synchronized (server) {
+            if (byId.get(server.serverId()) != server || !server.isRoutable()) return null;
+            if (expected != null && !expected.equals(loadKey(server))) return null;
+
+            Lease lease = new Lease(leaseIds.incrementAndGet(), server, System.currentTimeMillis());
+            server.leases.addLast(lease);
+            reindex(server, server.getConnectionCount() + 1, server.getResourceUsage());
+            return lease;
+        }
+    }
+
+    // os métodos abaixo devem ser chamados com o monitor do servidor
+    private static int connections(ServerAddress server) {
+        return server.getReportedSessions() + server.leases.size() + server.remoteLeaseTotal;
+    }
+
+    private void reindex(ServerAddress server, int connectionCount, double resourceUsage) {
+        boolean indexed = server.isRoutable();
+        if (connectionCount != server.getConnectionCount()) {
+            if (indexed) {
+                byConnections.remove(loadKey(server));
+                routableConnections.addAndGet(connectionCount - server.getConnectionCount());
+            }
+            server.setConnectionCount(connectionCount);
+            if (indexed) byConnections.put(loadKey(server), server);
+        }
+        if (Double.compare(resourceUsage, server.getResourceUsage()) != 0) {
+            if (indexed) byResourceUsage.remove(usageKey(server));
+            server.setResourceUsage(resourceUsage);
+            if (indexed) byResourceUsage.put(usageKey(server), server);
+        }
+    }
+
+    private void setRouting(ServerAddress server, boolean suspect, boolean draining, boolean shedding) {
+        boolean wasRoutable = server.isRoutable();
+        server.setSuspect(suspect);
+        server.setDraining(draining);
+        server.setShedding(shedding);
+
+        if (wasRoutable && !server.isRoutable()) {
+            unindex(server);
+        } else if (!wasRoutable && server.isRoutable()) {
+            index(server);
+        }
+    }
+
+    private void index(ServerAddress server) {
+        byConnections.put(loadKey(server), server);
+        byResourceUsage.put(usageKey(server), server);
+        routableConnections.addAndGet(server.getConnectionCount());
+        addMember(server);
+    }
+
+    private void unindex(ServerAddress server) {
+        byConnections.remove(loadKey(server));
+        byResourceUsage.remove(usageKey(server));
+        routableConnections.addAndGet(-server.getConnectionCount());
+        removeMember(server);
+    }
+
+    private static LoadKey loadKey(ServerAddress server) {
+        return new LoadKey(server.getConnectionCount(), server.serverId());
+    }
+
+    private static UsageKey usageKey(ServerAddress server) {
+        return new UsageKey(server.getResourceUsage(), server.serverId());
+    }
+
+    private void addMember(ServerAddress server) {
+        synchronized (membershipLock) {
+            ServerAddress[] current = members;
+            ServerAddress[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = server;
+            members = next;
+        }
+    }
+
+    private void removeMember(ServerAddress server) {
+        synchronized (membershipLock) {
+            ServerAddress[] current = members;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == server) {
+                    // o último ocupa a posição do removido
+                    ServerAddress[] next = Arrays.copyOf(current, current.length - 1);
+                    if (i < next.length) next[i] = current[current.length - 1];
+                    members = next;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package edu.progdist.module.dataserver;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Controle de admissão do Dataserver: decide, a partir de uma amostra recente de CPU, heap e fila de trabalho, se o
+ * servidor aceita novos usuários e leituras que vão ao banco.
+ * <p>
+ * As consultas aos MXBeans são caras e ficam em {@link #sample()}, chamado periodicamente fora do caminho das
+ * requisições; as decisões só leem a última amostra. O servidor passa a descartar carga quando qualquer medida
+ * ultrapassa sua marca e só volta ao normal quando todas ficam abaixo de {@code recovery} vezes a marca, para que o
+ * estado não oscile a cada amostra. Enquanto descarta carga, recusa novos usuários com uma sugestão de espera e
+ * limita as leituras que consultam o banco; a gravação dos dados dos drones continua sendo aceita.
+ */
+public final class AdmissionController {
+
+    /**
+     * Marcas de sobrecarga.
+     *
+     * @param cpu              uso de CPU da máquina, de 0 a 1
+     * @param heap             fração do heap máximo em uso
+     * @param queueDepth       leituras em atendimento mais gravações na fila
+     * @param recovery         fração das marcas abaixo da qual o servidor volta ao normal
+     * @param retryAfterMillis espera sugerida a quem for recusado; a sugestão varia entre uma e duas vezes este valor
+     */
+    public record Watermarks(double cpu, double heap, int queueDepth, double recovery, long retryAfterMillis) {
+        public Watermarks {
+            if (cpu <= 0 || heap <= 0 || queueDepth < 1 || recovery <= 0 || recovery > 1 || retryAfterMillis < 0) {
+                throw new IllegalArgumentException("Marcas de admissão inválidas: cpu=" + cpu + ", heap=" + heap
+                    + ", queue=" + queueDepth + ", recovery=" + recovery + ", retry-after-ms=" + retryAfterMillis);
+            }
+        }
+
+        /**
+         * Lê as marcas de {@code <prefix>.cpu}, {@code .heap}, {@code .queue}, {@code .recovery} e
+         * {@code .retry-after-ms}, usando os valores padrão para as ausentes.
+         */
+        public static Watermarks fromProperties(String prefix) {
+            return new Watermarks(
+                Double.parseDouble(System.getProperty(prefix + ".cpu", "0.9")),
+                Double.parseDouble(System.getProperty(prefix + ".heap", "0.85")),
+                Integer.getInteger(prefix + ".queue", 2048),
+                Double.parseDouble(System.getProperty(prefix + ".recovery", "0.8")),
+                Long.getLong(prefix + ".retry-after-ms", 1000));
+        }
+    }
+
+    /**
+     * Última amostra: uso de CPU e de memória da máquina e do heap, de 0 a 1, profundidade da fila e se o servidor
+     * está descartando carga.
+     */
+    public record Sample(double cpuLoad, double memoryUsage, double heapUsage, int queueDepth, boolean shedding) {
+        /**
+         * Média de CPU e memória da máquina em porcentagem, o uso de recursos informado aos datacenters.
+         */
+        public double resourceUsage() {
+            return (cpuLoad + memoryUsage) / 2 * 100;
+        }
+    }
+
+    /**
+     * Usuários e leituras recusados e quantas vezes o servidor passou a descartar carga.
+     */
+    public record Stats(long rejectedSessions, long rejectedReads, long sheddingEpisodes) {}
+
+    private final Watermarks watermarks;
+    private final IntSupplier queueDepth;
+    private final OperatingSystemMXBean os =
+        (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private volatile Sample sample = new Sample(0, 0, 0, 0, false);
+
+    private final AtomicLong rejectedSessions = new AtomicLong();
+    private final AtomicLong rejectedReads = new AtomicLong();
+    private final AtomicLong sheddingEpisodes = new AtomicLong();
+
+    /**
+     * @param queueDepth trabalho enfileirado no servidor, lido a cada amostra
+     */
+    public AdmissionController(Watermarks watermarks, IntSupplier queueDepth) {
+        this.watermarks = watermarks;
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Mede a carga e atualiza o estado; chamado por uma única thread.
+     */
+    public void sample() {
+        double cpu = Math.max(os.getCpuLoad(), 0);  // negativo enquanto a medida não está disponível
+        long total = os.getTotalMemorySize();
+        double mem = total > 0 ? (double) (total - os.getFreeMemorySize()) / total : 0;
+
+        MemoryUsage heapUsage = memory.getHeapMemoryUsage();
+        long maxHeap = heapUsage.getMax() > 0 ? heapUsage.getMax() : heapUsage.getCommitted();
+        double heap = (double) heapUsage.getUsed() / maxHeap;
+        int depth = queueDepth.getAsInt();
+
+        boolean shedding = sample.shedding()
+            ? !below(cpu, heap, depth, watermarks.recovery())
+            : !below(cpu, heap, depth, 1);
+        if (shedding && !sample.shedding()) sheddingEpisodes.incrementAndGet();
+
+        sample = new Sample(cpu, mem, heap, depth, shedding);
+    }
+
+    private boolean below(double cpu, double heap, int depth, double fraction) {
+        return cpu < watermarks.cpu() * fraction
+            && heap < watermarks.heap() * fraction
+            && depth < watermarks.queueDepth() * fraction;
+    }
+
+    public Sample current() {
+        return sample;
+    }
+
+    public boolean isShedding() {
+        return sample.shedding();
+    }
+
+    /**
+     * Indica se um novo usuário pode abrir sessão; recusas são contadas.
+     */
+    public boolean admitSession() {
+        if (!sample.shedding()) return true;
+        rejectedSessions.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Indica se uma leitura que consulta o banco pode ser atendida com {@code outstanding} já em andamento: sem
+     * sobrecarga, sempre; descartando carga, só até {@code limit} simultâneas. Recusas são contadas.
+     */
+    public boolean admitRead(int outstanding, int limit) {
+        if (!sample.shedding() || outstanding < limit) return true;
+        rejectedReads.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Espera sugerida a um cliente recusado, com variação aleatória para que as novas tentativas não cheguem juntas.
+     */
+    public long retryAfterMillis() {
+        long base = watermarks.retryAfterMillis();
+        return base + ThreadLocalRandom.current().nextLong(base + 1);
+    }
+
+    public Stats getStats() {
+        return new Stats(rejectedSessions.get(), rejectedReads.get(), sheddingEpisodes.get());
+    }
+}
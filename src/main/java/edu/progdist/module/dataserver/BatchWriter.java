@@ -0,0 +1,237 @@
+package edu.progdist.module.dataserver;
+
+import edu.progdist.connection.direct.AsyncMessageHandler;
+import edu.progdist.connection.direct.Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agrupa leituras já formatadas e as envia ao banco em um único frame {@code SAVE_BATCH}, em vez de um
+ * {@code SAVE_DATA} por leitura.
+ * <p>
+ * Uma thread escritora espera a primeira leitura e junta as que chegarem em seguida, até {@code maxRecords} leituras
+ * ou {@code maxDelayMillis} depois da primeira, o que vier antes. O lote é enviado como requisição, sem esperar pela
+ * resposta, e cada leitura só é dada como gravada quando o banco confirma o lote com {@code SAVE_RESPONSE}, depois de
+ * aplicá-lo. A fila é limitada: quando o banco não acompanha,
+ * {@link #submit} espera até {@code offerTimeoutMillis} por espaço e então recusa a leitura, e quem a enviou recebe
+ * {@code SERVER_BUSY} em vez de a memória crescer sem limite.
+ */
+public final class BatchWriter implements AutoCloseable {
+
+    /**
+     * Parâmetros do agrupamento.
+     *
+     * @param maxRecords         leituras por lote
+     * @param maxDelayMillis     espera máxima de uma leitura antes de o lote ser enviado
+     * @param queueCapacity      leituras aguardando envio
+     * @param offerTimeoutMillis espera por espaço na fila antes de recusar a leitura
+     */
+    public record Settings(int maxRecords, long maxDelayMillis, int queueCapacity, long offerTimeoutMillis) {
+        public Settings {
+            if (maxRecords < 1 || queueCapacity < 1 || maxDelayMillis < 0 || offerTimeoutMillis < 0) {
+                throw new IllegalArgumentException("Parâmetros de lote inválidos: max-records=" + maxRecords
+                    + ", queue=" + queueCapacity + ", max-delay-ms=" + maxDelayMillis
+                    + ", offer-timeout-ms=" + offerTimeoutMillis);
+            }
+        }
+
+        /**
+         * Lê os parâmetros de {@code <prefix>.max-records}, {@code .max-delay-ms}, {@code .queue} e
+         * {@code .offer-timeout-ms}, usando os valores padrão para os ausentes.
+         */
+        public static Settings fromProperties(String prefix) {
+            return new Settings(
+                Integer.getInteger(prefix + ".max-records", 256),
+                Long.getLong(prefix + ".max-delay-ms", 5),
+                Integer.getInteger(prefix + ".queue", 4096),
+                Long.getLong(prefix + ".offer-timeout-ms", 100));
+        }
+    }
+
+    /**
+     * Contadores: leituras e lotes gravados, leituras recusadas por fila cheia e leituras perdidas em envios que
+     * falharam.
+     */
+    public record Stats(long records, long batches, long rejected, long failed) {}
+
+    // leitura aguardando envio e quem espera por ela
+    private record Pending(String record, CompletableFuture<Void> done) {}
+
+    // espera máxima de close() pelo envio das leituras já enfileiradas e pelas confirmações
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+    // lotes enviados aguardando confirmação; acima disso a escritora espera, e a fila passa a recusar leituras
+    private static final int MAX_IN_FLIGHT = 16;
+
+    private final AsyncMessageHandler database;
+    private final Settings settings;
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    private final Set<CompletableFuture<Message>> inFlight = ConcurrentHashMap.newKeySet();  // lotes sem resposta
+    private final Semaphore sendPermits = new Semaphore(MAX_IN_FLIGHT);
+    private volatile boolean running = true;
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param database envia cada lote ao banco e devolve a resposta; é chamado apenas pela thread escritora
+     */
+    public BatchWriter(AsyncMessageHandler database, Settings settings) {
+        this.database = database;
+        this.settings = settings;
+        this.queue = new ArrayBlockingQueue<>(settings.queueCapacity());
+        this.writer = new Thread(this::writeBatches, "batch-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Enfileira uma leitura formatada. O resultado completa quando o banco confirma a gravação do lote que a contém,
+     * ou falha se o envio falhar ou o banco recusar o lote, e com {@link RejectedExecutionException} se a fila
+     * continuar cheia durante toda a espera.
+     */
+    public CompletableFuture<Void> submit(String record) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            if (!running || !queue.offer(new Pending(record, done),
+                    settings.offerTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                done.completeExceptionally(new RejectedExecutionException("Fila de gravação cheia."));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    private void writeBatches() {
+        List<Pending> batch = new ArrayList<>(settings.maxRecords());
+        StringBuilder payload = new StringBuilder();
+        long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(settings.maxDelayMillis());
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // junta o que já está na fila e espera pelo resto até o prazo da primeira leitura
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < settings.maxRecords()) {
+                    queue.drainTo(batch, settings.maxRecords() - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= settings.maxRecords() || remaining <= 0) break;
+
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // close() não interrompe a escritora; se outra coisa o fizer, ela envia o lote atual e para
+                running = false;
+                if (!batch.isEmpty()) flush(batch, payload);
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (!batch.isEmpty()) flush(batch, payload);
+        }
+    }
+
+    private void flush(List<Pending> batch, StringBuilder payload) {
+        payload.setLength(0);
+        for (Pending pending : batch) {
+            if (!payload.isEmpty()) payload.append(' ');
+            payload.append(pending.record());
+        }
+
+        List<Pending> sent = List.copyOf(batch);
+        batch.clear();
+
+        sendPermits.acquireUninterruptibly();
+        CompletableFuture<Message> response = send(new Message("SAVE_BATCH", payload.toString()));
+        inFlight.add(response);
+        response.whenComplete((ack, error) -> {
+            if (error == null && !ack.type().equals("SAVE_RESPONSE")) {
+                error = new IOException("Banco de dados recusou o lote: " + ack);
+            }
+            if (error == null) {
+                records.addAndGet(sent.size());
+                batches.incrementAndGet();
+                for (Pending pending : sent) pending.done().complete(null);
+            } else {
+                failed.addAndGet(sent.size());
+                for (Pending pending : sent) pending.done().completeExceptionally(error);
+            }
+            inFlight.remove(response);
+            sendPermits.release();
+        });
+    }
+
+    private CompletableFuture<Message> send(Message batch) {
+        try {
+            return database.handle(batch);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Leituras aguardando envio.
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public Stats getStats() {
+        return new Stats(records.get(), batches.get(), rejected.get(), failed.get());
+    }
+
+    /**
+     * Recusa novas leituras e espera, por até {@value #CLOSE_TIMEOUT_MILLIS} ms, o envio das que já estão na fila e
+     * as confirmações do banco. A escritora não é interrompida, para que um lote em andamento termine normalmente; as
+     * leituras que não forem enviadas no prazo falham com {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        running = false;    // a escritora sai quando a fila esvazia
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+            CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new))
+                .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // já contabilizado como falha do lote
+        } catch (TimeoutException ignored) {
+            // avisado abaixo
+        }
+        if (writer.isAlive() || !inFlight.isEmpty()) {
+            System.err.println("Gravação em lote não terminou no prazo; pendentes recusadas.");
+        }
+
+        // leituras enfileiradas enquanto a escritora terminava, ou que ela não alcançou no prazo
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            rejected.incrementAndGet();
+            pending.done().completeExceptionally(new RejectedExecutionException("Gravação encerrada."));
+        }
+    }
+}
@@ -1,22 +1,38 @@
 package edu.progdist.module.dataserver;
 
-import com.sun.management.OperatingSystemMXBean;
+import edu.progdist.connection.direct.ConnectionHandler;
+import edu.progdist.connection.direct.ConnectionPool;
 import edu.progdist.connection.direct.Message;
+import edu.progdist.connection.direct.MessageSink;
 import edu.progdist.connection.direct.MulticastConnection;
+import edu.progdist.connection.direct.MultiplexedConnection;
 import edu.progdist.connection.direct.Server;
 import edu.progdist.connection.direct.TcpConnection;
+import edu.progdist.module.drone.Reading;
+import edu.progdist.module.drone.ReadingCodec;
+import edu.progdist.module.drone.Region;
 
 import java.io.IOException;
-import java.lang.management.ManagementFactory;
-import java.net.Socket;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * Servidor que recebe dados dos drones através do datacenter e envia dados para os usuários via multicast.
@@ -24,22 +40,156 @@ import java.util.concurrent.TimeUnit;
 public class Dataserver extends Server {
 
     private final String serverId;
-    private int workload; // carga de trabalho do servidor
+    private final AtomicInteger openSessions = new AtomicInteger();   // sessões de usuário abertas (carga)
+    private final AtomicLong closedSessions = new AtomicLong();       // sessões de usuário já encerradas
+    private volatile boolean draining;  // encerrando: os datacenters deixam de encaminhar novos usuários
+    private final AtomicInteger outstandingRequests = new AtomicInteger(); // DATA_REQUEST em atendimento
+    private double serviceTimeMillis;   // média móvel do tempo de atendimento de DATA_REQUEST; protegida por this
+    private final AtomicLong reportSequence = new AtomicLong();   // ordena os relatórios repassados entre datacenters
     private final DecimalFormat df;
     private final Host databaseHost;
+    private ConnectionPool<MultiplexedConnection> databasePool; // conexões com o banco de dados
+    private VersionedCache<Message> dataCache;  // última resposta de GET_DATA, compartilhada pelos usuários
+    private BatchWriter batchWriter;            // agrupa as leituras dos drones em SAVE_BATCH
+    private final AdmissionController admission;    // recusa usuários e leituras sob sobrecarga
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet(); // usuários em modo push
+    private final AtomicBoolean pushing = new AtomicBoolean();  // rodada de push em andamento
     private int port;
 
+    // prazo de resposta do banco: -Ddataserver.database.timeout-ms=<ms>
+    private static final long DATABASE_TIMEOUT_MS = Long.getLong("dataserver.database.timeout-ms", 5000);
+    // conexões compartilhadas com o banco:
+    // -Ddataserver.database.pool.{min,max,max-pending,borrow-timeout-ms,idle-timeout-ms,validation-interval-ms}
+    private static final String DATABASE_POOL_PREFIX = "dataserver.database.pool";
+    // agrupamento das gravações: -Ddataserver.batch.{max-records,max-delay-ms,queue,offer-timeout-ms}
+    private static final String BATCH_PREFIX = "dataserver.batch";
+    // tempo em que a resposta de GET_DATA é servida sem consultar a versão no banco:
+    // -Ddataserver.cache.max-staleness-ms=<ms>
+    private static final long CACHE_MAX_STALENESS_MS = Long.getLong("dataserver.cache.max-staleness-ms", 500);
+    // intervalo dos heartbeats enviados aos datacenters: -Ddataserver.heartbeat.interval-ms=<ms>
+    private static final long HEARTBEAT_INTERVAL_MS = Long.getLong("dataserver.heartbeat.interval-ms", 1000);
+    // espera máxima pelo fim das sessões ao encerrar: -Ddataserver.drain.timeout-ms=<ms>
+    private static final long DRAIN_TIMEOUT_MS = Long.getLong("dataserver.drain.timeout-ms", 30_000);
+
+    // marcas de sobrecarga: -Ddataserver.admission.{cpu,heap,queue,recovery,retry-after-ms}
+    private static final String ADMISSION_PREFIX = "dataserver.admission";
+    // intervalo entre as medições de carga: -Ddataserver.admission.sample-interval-ms=<ms>
+    private static final long ADMISSION_SAMPLE_INTERVAL_MS =
+        Long.getLong("dataserver.admission.sample-interval-ms", 250);
+
+    // peso informado aos datacenters: -Ddataserver.capacity=<requisições atendidas em paralelo>
+    private static final int CAPACITY =
+        Integer.getInteger("dataserver.capacity", Runtime.getRuntime().availableProcessors());
+
+    // peso de cada nova medição na média do tempo de atendimento
+    private static final double SERVICE_TIME_ALPHA = 0.2;
+
+    // intervalo entre as buscas de leituras novas para os usuários em modo push: -Ddataserver.push.interval-ms=<ms>
+    private static final long PUSH_INTERVAL_MS = Long.getLong("dataserver.push.interval-ms", 500);
+
+    // usuário em modo push e o cursor até onde já recebeu as leituras
+    private static final class Subscriber {
+        final MessageSink sink;
+        volatile long cursor;
+
+        Subscriber(MessageSink sink, long cursor) {
+            this.sink = sink;
+            this.cursor = cursor;
+        }
+    }
+
+    // estado de uma conexão de cliente: a sessão de usuário vai do USER_REQUEST até a desconexão
+    private final class ClientConnection implements ConnectionHandler {
+        private final AtomicBoolean userSession = new AtomicBoolean();
+        private volatile String lease;  // concessão do datacenter que encaminhou o usuário, devolvida no fim da sessão
+        private volatile MessageSink sink;
+        private volatile Subscriber subscriber;
+
+        @Override
+        public void opened(MessageSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public CompletableFuture<Message> handle(Message message) {
+            if (message.type().equals("USER_REQUEST") && !userSession.get()) {
+                // sobrecarregado ou em drenagem: o usuário volta ao datacenter depois da espera sugerida
+                String granted = message.payload().startsWith("lease=") ? message.payload() : null;
+                if (draining || !admission.admitSession()) {
+                    endSession(granted);
+                    return CompletableFuture.completedFuture(busy());
+                }
+                if (userSession.compareAndSet(false, true)) {
+                    lease = granted;
+                    openSessions.incrementAndGet();
+                }
+            }
+            if (message.type().equals("SUBSCRIBE")) {
+                if (!admission.admitRead(outstandingRequests.get(), CAPACITY)) {
+                    return CompletableFuture.completedFuture(busy());
+                }
+                return subscribe(message.payload());
+            }
+            return handleTcpMessage(message);
+        }
+
+        // responde as leituras desde o cursor informado e passa a enviar as novas com DATA_PUSH
+        private CompletableFuture<Message> subscribe(String payload) {
+            long since = parseCursor(payload);
+            if (since < 0) {
+                return CompletableFuture.completedFuture(
+                    new Message("DATASERVER_ERROR", "Cursor inválido: " + payload));
+            }
+
+            return queryDelta(since)
+                .thenApply(response -> {
+                    if (subscriber == null) {
+                        subscriber = new Subscriber(sink, cursorOf(response));
+                        subscribers.add(subscriber);
+                    } else {
+                        subscriber.cursor = cursorOf(response);
+                    }
+                    return response;
+                })
+                .exceptionally(e -> new Message("DATASERVER_ERROR",
+                    "Erro ao consultar o banco de dados: " + e.getMessage()));
+        }
+
+        @Override
+        public void closed() {
+            if (subscriber != null) subscribers.remove(subscriber);
+            if (userSession.compareAndSet(true, false)) {
+                openSessions.decrementAndGet();
+                closedSessions.incrementAndGet();
+                endSession(lease);
+            }
+        }
+    }
+
+    // SESSION_END|serverId;lease=datacenterId/id: o datacenter que encaminhou o usuário deixa de contá-lo
+    private void endSession(String lease) {
+        if (lease == null || multicastConnection == null || multicastConnection.isClosed()) return;
+        try {
+            multicastConnection.send(new Message("SESSION_END", serverId + ";" + lease));
+        } catch (IOException e) {
+            System.err.println("Falha ao avisar o fim da sessão: " + e.getMessage());
+        }
+    }
+
     public Dataserver(Host databaseHost) {
         this.databaseHost = databaseHost;
         executor = Executors.newCachedThreadPool();
         scheduler = Executors.newScheduledThreadPool(1);
-        workload = 0;
 
         // formata número com 2 casas decimais
         df = new DecimalFormat("#.##", new DecimalFormatSymbols(Locale.US));
 
         // gera um id único para o servidor
         serverId = UUID.randomUUID().toString();
+
+        // leituras em atendimento e gravações ainda não enviadas ao banco
+        admission = new AdmissionController(AdmissionController.Watermarks.fromProperties(ADMISSION_PREFIX),
+            () -> outstandingRequests.get() + (batchWriter != null ? batchWriter.queueDepth() : 0));
     }
 
     @Override
@@ -48,7 +198,7 @@ public class Dataserver extends Server {
         boolean connected = false;
         while (!connected) {
             try {
-                tcpConnection = new TcpConnection(port);
+                openTcpServer(port);
                 connected = true;
                 System.out.println("Servidor TCP iniciado na porta " + port);
             } catch (IOException e) {
@@ -68,14 +218,19 @@ public class Dataserver extends Server {
             return;
         }
 
-        // se conecta ao banco de dados
+        // se conecta ao banco de dados; conexões quebradas são substituídas pelo pool
         try {
-            tcpConnection.connect(databaseHost.host, databaseHost.port);
+            databasePool = new ConnectionPool<>(
+                () -> new MultiplexedConnection(
+                    new TcpConnection(databaseHost.host, databaseHost.port), DATABASE_TIMEOUT_MS),
+                Dataserver::isDatabaseAlive, ConnectionPool.Settings.fromProperties(DATABASE_POOL_PREFIX));
         } catch (IOException e) {
             System.err.println("Erro ao conectar ao banco de dados: " + e.getMessage());
             e.printStackTrace(System.err);
             return;
         }
+        dataCache = new VersionedCache<>(CACHE_MAX_STALENESS_MS, this::fetchDataVersion, this::fetchData);
+        batchWriter = new BatchWriter(this::saveToDatabase, BatchWriter.Settings.fromProperties(BATCH_PREFIX));
 
         run();
     }
@@ -83,47 +238,14 @@ public class Dataserver extends Server {
     @Override
     protected void run() {
         // trata conexões tcp
-        executor.submit(() -> {
-            while (!tcpConnection.isClosed()) {
-                // aceita conexões de clientes
-                Socket clientSocket = tcpConnection.accept();
-
-                if (clientSocket == null) break;
-
-                // cria uma nova tarefa para lidar com o cliente
-                executor.submit(() -> tcpConnection.handleClient(clientSocket, (message) -> {
-                    switch (message.type()) {
-                        case "USER_REQUEST" -> {
-                            workload++; // incrementa carga de trabalho do servidor
-                            return new Message("", "");
-                        }
-
-                        case "DATA_REQUEST" -> {
-                            // envia requisição para o banco de dados
-                            tcpConnection.send(new Message("GET_DATA", ""));
-                            Message dataResponse;
-                            try {
-                                dataResponse = tcpConnection.receive();
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                            return dataResponse;
-                        }
-
-                        case "DATA_RESPONSE" -> {
-                            // recebe dados do banco de dados
-                            String data = message.payload();
-
-                            // envia resposta ao usuário
-                            return new Message("DATA_RESPONSE", data);
-                        }
-                    }
+        serveTcpConnections(ClientConnection::new);
 
-                    return new Message("DATASERVER_ERROR",
-                        "Tipo de mensagem desconhecido: " + message.type());
-                }));
-            }
-        });
+        // mede a carga fora do caminho das requisições e a envia periodicamente, sem esperar o pedido do datacenter
+        admission.sample();
+        scheduler.scheduleAtFixedRate(this::sampleLoad, ADMISSION_SAMPLE_INTERVAL_MS, ADMISSION_SAMPLE_INTERVAL_MS,
+            TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::pushUpdates, PUSH_INTERVAL_MS, PUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::sendHeartbeat, 0, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
 
         // trata conexões multicast
         executor.submit(() -> {
@@ -133,27 +255,12 @@ public class Dataserver extends Server {
                     Message message = multicastConnection.receive();    // mensagem com endereço e porta do remetente
                     Message request = new Message(message.payload());   // extrai a mensagem original
 
-                    // envia resposta ao datacenter
+                    // envia resposta ao datacenter; o multicast serve apenas para descoberta
                     switch (request.type()) {
                         case "DATACENTER_REQUEST" -> {
-                            Message response = new Message("SERVER_RESPONSE",
-                                workload + ";" + getResourceUsage() + ";" + serverId + ";" + port);
+                            Message response = new Message("SERVER_RESPONSE", loadReport());
                             multicastConnection.send(response);
                         }
-
-                        case "DRONE_REQUEST" -> {
-                            // trata os dados
-                            String data = request.payload();
-                            System.out.println("Dados recebidos: " + data);
-                            String formattedData = format(data);
-
-                            System.out.println("Dados formatados: " + formattedData);
-
-                            // envia para o banco de dados
-                            Message response = new Message("SAVE_DATA", formattedData);
-                            System.out.println("Enviando dados para o banco de dados: " + response);
-                            tcpConnection.send(response);
-                        }
                     }
                 } catch (IOException e) {
                     System.err.println("Erro ao processar mensagem do multicast: " + e.getMessage());
@@ -164,11 +271,279 @@ public class Dataserver extends Server {
         });
     }
 
+    // trata mensagens recebidas dos clientes TCP
+    private CompletableFuture<Message> handleTcpMessage(Message message) {
+        switch (message.type()) {
+            case "USER_REQUEST" -> {
+                // a sessão é contada por ClientConnection
+                return CompletableFuture.completedFuture(new Message("", ""));
+            }
+
+            case "DATA_REQUEST" -> {
+                // com "since=<cursor>" responde só as leituras novas; sem cursor, a resposta completa vem do cache,
+                // e o banco só é consultado quando a cópia vence, uma vez para todos os usuários
+                long since = parseCursor(message.payload());
+                if (since < 0) {
+                    return CompletableFuture.completedFuture(new Message("DATASERVER_ERROR",
+                        "Cursor inválido: " + message.payload()));
+                }
+
+                // sobrecarregado: só um número limitado de leituras vai ao banco; as gravações dos drones continuam
+                long known = dataCache.freshVersion();
+                boolean cached = known >= 0 && (message.payload().isEmpty() || since >= known);
+                if (!cached && !admission.admitRead(outstandingRequests.get(), CAPACITY)) {
+                    return CompletableFuture.completedFuture(busy());
+                }
+
+                long start = System.nanoTime();
+                outstandingRequests.incrementAndGet();
+                CompletableFuture<Message> reply = message.payload().isEmpty() ? dataCache.get() : fetchDelta(since);
+                return reply
+                    .whenComplete((response, error) -> {
+                        outstandingRequests.decrementAndGet();
+                        recordServiceTime(System.nanoTime() - start);
+                    })
+                    .exceptionally(e -> new Message("DATASERVER_ERROR",
+                        "Erro ao consultar o banco de dados: " + e.getMessage()));
+            }
+
+            case "DRONE_REQUEST" -> {
+                // dados encaminhados diretamente pelo datacenter
+                return saveDroneData(message.payload());
+            }
+
+            case "DATA_RESPONSE" -> {
+                // recebe dados do banco de dados
+                String data = message.payload();
+
+                // envia resposta ao usuário
+                return CompletableFuture.completedFuture(new Message("DATA_RESPONSE", data));
+            }
+        }
+
+        return CompletableFuture.completedFuture(new Message("DATASERVER_ERROR",
+            "Tipo de mensagem desconhecido: " + message.type()));
+    }
+
+    // versão e dados na mesma conexão: o banco responde na ordem dos pedidos, então a versão nunca é posterior aos
+    // dados
+    private CompletableFuture<VersionedCache.Entry<Message>> fetchData() {
+        return withDatabase(connection -> {
+            CompletableFuture<Long> version = parseVersion(connection.request(new Message("GET_VERSION", "")));
+            CompletableFuture<Message> data = connection.request(new Message("GET_DATA", ""));
+            return version.thenCombine(data, VersionedCache.Entry::new);
+        });
+    }
+
+    // nada novo se o cache sabe, dentro do prazo de validade, que o banco não passou do cursor
+    private CompletableFuture<Message> fetchDelta(long since) {
+        long known = dataCache.freshVersion();
+        if (known >= 0 && since >= known) {
+            return CompletableFuture.completedFuture(new Message("DELTA_RESPONSE", since + ";"));
+        }
+        return queryDelta(since);
+    }
+
+    private CompletableFuture<Message> queryDelta(long since) {
+        return withDatabase(connection -> connection.request(new Message("GET_DATA", "since=" + since))
+            .thenApply(response -> {
+                if (!response.type().equals("DELTA_RESPONSE")) {
+                    throw new IllegalStateException("Resposta inesperada do banco de dados: " + response);
+                }
+                return response;
+            }));
+    }
+
+    // payload vazio equivale a "since=0"; -1 se o cursor for inválido
+    private static long parseCursor(String payload) {
+        if (payload.isEmpty()) return 0;
+        if (!payload.startsWith("since=")) return -1;
+        try {
+            return Math.max(-1, Long.parseLong(payload.substring("since=".length())));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // DELTA_RESPONSE|<cursor>;<leituras>
+    private static long cursorOf(Message delta) {
+        return Long.parseLong(delta.payload().substring(0, delta.payload().indexOf(';')));
+    }
+
+    // envia as leituras novas aos usuários em modo push; os que estão no mesmo cursor compartilham a consulta
+    // sobrecarregado, a rodada é adiada: os cursores garantem que nada se perde
+    private void pushUpdates() {
+        if (subscribers.isEmpty() || admission.isShedding() || !pushing.compareAndSet(false, true)) return;
+
+        fetchDataVersion()
+            .thenCompose(version -> {
+                Map<Long, List<Subscriber>> behind = new HashMap<>();
+                for (Subscriber subscriber : subscribers) {
+                    if (subscriber.cursor < version) {
+                        behind.computeIfAbsent(subscriber.cursor, cursor -> new ArrayList<>()).add(subscriber);
+                    }
+                }
+
+                // a entrega escreve nos sockets dos usuários, fora da thread que lê as respostas do banco
+                List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+                behind.forEach((cursor, group) -> deliveries.add(
+                    queryDelta(cursor).thenAcceptAsync(delta -> deliver(group, cursor, delta), executor)));
+                return CompletableFuture.allOf(deliveries.toArray(CompletableFuture[]::new));
+            })
+            .whenComplete((done, error) -> {
+                if (error != null) System.err.println("Erro ao enviar leituras novas: " + error.getMessage());
+                pushing.set(false);
+            });
+    }
+
+    private void deliver(List<Subscriber> group, long cursor, Message delta) {
+        long next = cursorOf(delta);
+        if (next <= cursor) return;
+
+        Message push = new Message("DATA_PUSH", delta.payload());
+        for (Subscriber subscriber : group) {
+            if (subscriber.cursor != cursor) continue;  // assinou de novo enquanto a consulta estava em andamento
+            try {
+                subscriber.sink.send(push);
+                subscriber.cursor = next;
+            } catch (IOException e) {
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    private CompletableFuture<Long> fetchDataVersion() {
+        return withDatabase(connection -> parseVersion(connection.request(new Message("GET_VERSION", ""))));
+    }
+
+    private static CompletableFuture<Long> parseVersion(CompletableFuture<Message> response) {
+        return response.thenApply(message -> {
+            if (!message.type().equals("VERSION_RESPONSE")) {
+                throw new IllegalStateException("Resposta inesperada do banco de dados: " + message);
+            }
+            return Long.parseLong(message.payload());
+        });
+    }
+
+    // a conexão é compartilhada: as requisições vão pela menos ocupada, e o pool as conta até a resposta
+    private <T> CompletableFuture<T> withDatabase(Function<MultiplexedConnection, CompletableFuture<T>> query) {
+        return databasePool.execute(query);
+    }
+
+    // validação do pool: uma conexão aberta que não responde no prazo (por exemplo, com o socket meio aberto) é trocada
+    private static boolean isDatabaseAlive(MultiplexedConnection connection) {
+        if (connection.isClosed()) return false;
+        try {
+            connection.request(new Message("GET_VERSION", "")).join();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // formata os dados do drone e os entrega ao agrupador; SERVER_BUSY indica ao datacenter que tente outro servidor
+    private CompletableFuture<Message> saveDroneData(String data) {
+        System.out.println("Dados recebidos: " + data);
+        // prefixo opcional "regiao/" do roteamento; a região segue com a leitura até o banco
+        int slash = data.indexOf('/');
+        Region region = slash > 0 ? Region.fromKey(data.substring(0, slash)) : Region.UNKNOWN;
+        String reading = data.substring(slash + 1);
+        String formattedData = format(reading);
+        if (formattedData.equals(ReadingCodec.INVALID_DATA)) {
+            return CompletableFuture.completedFuture(new Message("DATASERVER_ERROR", "Dados inválidos: " + reading));
+        }
+
+        System.out.println("Dados formatados: " + formattedData);
+        String record = region == Region.UNKNOWN ? formattedData : region.key() + "/" + formattedData;
+
+        // responde quando o banco confirma o lote com a leitura; fila cheia ou banco fora do ar viram SERVER_BUSY
+        return batchWriter.submit(record).handle((sent, error) -> {
+            if (error == null) return new Message("DRONE_RESPONSE", serverId);
+
+            System.err.println("Erro ao enviar dados ao banco de dados: " + error.getMessage());
+            return new Message("SERVER_BUSY", error instanceof RejectedExecutionException
+                ? "Fila de gravação cheia." : "Banco de dados indisponível.");
+        });
+    }
+
+    // envia um lote ao banco; chamado apenas pela thread do agrupador. O cache só é invalidado quando o banco
+    // responde, com a gravação já aplicada: antes disso, uma consulta ainda poderia repor a cópia antiga. Erros e
+    // prazos esgotados também invalidam, pois a gravação pode ter sido aplicada mesmo assim
+    private CompletableFuture<Message> saveToDatabase(Message batch) {
+        return withDatabase(connection -> connection.request(batch))
+            .whenComplete((response, error) -> dataCache.invalidate());
+    }
+
+    // uma mudança de estado é informada na hora, para que os datacenters desviem ou voltem a enviar usuários
+    private void sampleLoad() {
+        boolean wasShedding = admission.isShedding();
+        admission.sample();
+        if (admission.isShedding() != wasShedding) {
+            AdmissionController.Sample sample = admission.current();
+            System.out.println((sample.shedding() ? "Sobrecarga, recusando novos usuários: " : "Carga normalizada: ")
+                + sample);
+            sendHeartbeat();
+        }
+    }
+
+    // SERVER_BUSY|retry-after=<ms>;<motivo>
+    private Message busy() {
+        return new Message("SERVER_BUSY", "retry-after=" + admission.retryAfterMillis() + ";Servidor sobrecarregado.");
+    }
+
+    private void sendHeartbeat() {
+        if (multicastConnection.isClosed()) return;
+        try {
+            multicastConnection.send(new Message("HEARTBEAT", loadReport()));
+        } catch (IOException e) {
+            System.err.println("Falha ao enviar heartbeat: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pede aos datacenters que não encaminhem novos usuários e espera as sessões abertas terminarem.
+     *
+     * @return {@code true} se todas as sessões terminaram dentro do prazo
+     */
+    public boolean drain(long timeoutMillis) throws InterruptedException {
+        draining = true;
+        sendHeartbeat();    // avisa sem esperar o próximo intervalo
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (openSessions.get() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        return openSessions.get() == 0;
+    }
+
+    public int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    public long getClosedSessions() {
+        return closedSessions.get();
+    }
+
     @Override
     public void stop() {
         // encerra todas as tarefas e fecha todas as conexões ao encerrar o datacenter
         try {
-            tcpConnection.close();
+            if (!drain(DRAIN_TIMEOUT_MS)) {
+                System.out.println("Encerrando com " + openSessions.get() + " sessões abertas.");
+            }
+
+            if (tcpConnection != null) tcpConnection.close();
+            if (nioConnection != null) nioConnection.close();
+            if (dataCache != null) System.out.println("Cache de dados: " + dataCache.getStats());
+            System.out.println("Controle de admissão: " + admission.getStats());
+            if (batchWriter != null) {
+                batchWriter.close();    // envia as leituras pendentes antes de fechar o pool
+                System.out.println("Gravações em lote: " + batchWriter.getStats());
+            }
+            if (databasePool != null) {
+                System.out.println("Pool do banco de dados: " + databasePool.getStats());
+                databasePool.close();
+            }
             multicastConnection.close();
             executor.shutdown();
             if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -182,51 +557,70 @@ public class Dataserver extends Server {
         }
     }
 
-    private String getResourceUsage() {
-        // uso de cpu
-        OperatingSystemMXBean os =
-            (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    /**
+     * Métricas do pool de conexões com o banco de dados, para dimensioná-lo sob carga.
+     */
+    public ConnectionPool.Stats getDatabasePoolStats() {
+        return databasePool.getStats();
+    }
 
-        // uso de memória
-        long totalMemory = os.getTotalMemorySize();
-        long freeMemory = os.getFreeMemorySize();
-        long usedMemory = totalMemory - freeMemory;
+    /**
+     * Acertos e faltas do cache de respostas de {@code DATA_REQUEST}.
+     */
+    public VersionedCache.Stats getDataCacheStats() {
+        return dataCache.getStats();
+    }
 
-        // calcula porcentagem de uso de recursos e faz a média
-        double cpu = os.getCpuLoad() * 100;
-        double mem = ((double) usedMemory / totalMemory) * 100;
-        double resourceUsage = (cpu + mem) / 2;
+    /**
+     * Usuários e leituras recusados por sobrecarga.
+     */
+    public AdmissionController.Stats getAdmissionStats() {
+        return admission.getStats();
+    }
 
-        return df.format(resourceUsage); // formata número com 2 casas decimais
+    /**
+     * Leituras e lotes enviados ao banco e leituras recusadas pelo agrupador.
+     */
+    public BatchWriter.Stats getBatchWriterStats() {
+        return batchWriter.getStats();
     }
 
-    public String format(String data) {
-        if (data == null || data.isEmpty()) {
-            return "Error: Invalid Data.";
-        }
+    // média móvel exponencial; falhas e prazos esgotados também contam, pois o usuário esperou por eles
+    private synchronized void recordServiceTime(long nanos) {
+        double millis = nanos / 1e6;
+        serviceTimeMillis = serviceTimeMillis == 0
+            ? millis : serviceTimeMillis + SERVICE_TIME_ALPHA * (millis - serviceTimeMillis);
+    }
 
-        StringBuilder sb = new StringBuilder(data);
-        char[] array = sb.toString().toCharArray();
-        String[] values = { "", "", "", "" };
-        int j = 0;
+    /**
+     * Média móvel do tempo de atendimento de {@code DATA_REQUEST}, em milissegundos.
+     */
+    public synchronized double getServiceTimeMillis() {
+        return serviceTimeMillis;
+    }
 
-        for (int i = 0; i < sb.length(); i++) {
-            if (Character.isDigit(array[i]) || array[i] == '.' || (array[i] == '-' && !Character.isDigit(array[i - 1]))) {
-                values[j] = values[j].concat(String.valueOf(array[i]));
-            } else if (String.valueOf(array[i]).matches("[-,;#]")) {
-                j++;
-            }
+    // relatório de carga enviado aos datacenters: sessões abertas;uso de recursos;id;porta;em drenagem (0 ou 1);
+    // tempo de serviço em ms;requisições em andamento;capacidade;sequência do relatório;descartando carga (0 ou 1)
+    private String loadReport() {
+        AdmissionController.Sample sample = admission.current();  // medida em segundo plano, sem consultar o SO aqui
+        String serviceTime;
+        String resourceUsage;
+        synchronized (df) { // DecimalFormat não é thread-safe
+            serviceTime = df.format(getServiceTimeMillis());
+            resourceUsage = df.format(sample.resourceUsage());
         }
+        return openSessions.get() + ";" + resourceUsage + ";" + serverId + ";" + port + ";" + (draining ? 1 : 0)
+            + ";" + serviceTime + ";" + outstandingRequests.get() + ";" + CAPACITY
+            + ";" + reportSequence.incrementAndGet() + ";" + (sample.shedding() ? 1 : 0);
+    }
 
-        // Montagem da string formatada
-        sb = new StringBuilder();
-
-        sb.append('[').append(values[0]).append("//")
-                .append(values[1]).append("//")
-                .append(values[2]).append("//")
-                .append(values[3]).append(']');
+    public String format(String data) {
+        Reading reading = new Reading();
+        if (!ReadingCodec.parse(data, reading)) {
+            return ReadingCodec.INVALID_DATA;
+        }
 
-        return sb.toString();
+        return ReadingCodec.Format.DATASERVER.format(reading);
     }
 
     public static void main(String[] args) {
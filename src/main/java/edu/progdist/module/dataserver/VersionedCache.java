@@ -0,0 +1,145 @@
+package edu.progdist.module.dataserver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Cache de um único valor lido do banco de dados, identificado pela versão dos dados (o número de leituras, que só
+ * cresce).
+ * <p>
+ * Uma cópia com menos de {@code maxStalenessMillis} é servida sem consultar o banco. Depois disso, a cópia é
+ * revalidada com uma consulta barata da versão e só é lida de novo se a versão mudou. Requisições simultâneas que
+ * não encontram cópia válida esperam a mesma consulta (single-flight), de modo que o banco recebe no máximo uma
+ * consulta por vez, não importa quantos usuários peçam os dados. {@link #invalidate()} descarta a cópia quando o
+ * próprio Dataserver grava no banco.
+ *
+ * @param <V> valor guardado
+ */
+public final class VersionedCache<V> {
+
+    /**
+     * Valor lido do banco e a versão dos dados no momento da leitura (ou anterior a ela).
+     */
+    public record Entry<V>(long version, V value) {}
+
+    /**
+     * Contadores do cache: servidas da cópia, servidas após confirmar a versão, leituras completas do banco e
+     * requisições que esperaram uma consulta já em andamento.
+     */
+    public record Stats(long hits, long revalidations, long misses, long coalesced) {}
+
+    // cópia em cache; epoch é o valor de invalidations quando a consulta começou
+    private record Cached<V>(long version, V value, long fetchedAt, long epoch) {}
+
+    private final long maxStalenessNanos;
+    private final Supplier<CompletableFuture<Long>> versionSource;
+    private final Supplier<CompletableFuture<Entry<V>>> loader;
+
+    private volatile Cached<V> cached;
+    private final AtomicReference<CompletableFuture<V>> inflight = new AtomicReference<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param maxStalenessMillis tempo em que uma cópia é servida sem consultar o banco
+     * @param versionSource      consulta a versão atual dos dados
+     * @param loader             lê o valor e a versão; a versão não pode ser posterior ao valor lido
+     */
+    public VersionedCache(long maxStalenessMillis, Supplier<CompletableFuture<Long>> versionSource,
+                          Supplier<CompletableFuture<Entry<V>>> loader) {
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        this.versionSource = versionSource;
+        this.loader = loader;
+    }
+
+    /**
+     * O valor atual: da cópia, se ainda estiver dentro do prazo, ou da consulta em andamento ou de uma nova.
+     * Falhas não ficam em cache.
+     */
+    public CompletableFuture<V> get() {
+        while (true) {
+            Cached<V> current = cached;
+            long epoch = invalidations.get();
+            boolean valid = current != null && current.epoch() == epoch;
+            if (valid && isFresh(current)) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(current.value());
+            }
+
+            CompletableFuture<V> running = inflight.get();
+            if (running != null) {
+                coalesced.incrementAndGet();
+                return running;
+            }
+
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            if (!inflight.compareAndSet(null, mine)) continue;  // outra thread começou a consulta
+
+            CompletableFuture<V> work = valid ? revalidate(current, epoch) : load(epoch);
+
+            // a cópia é publicada antes de liberar a vaga, para que as próximas requisições a encontrem
+            work.whenComplete((value, error) -> {
+                inflight.set(null);
+                if (error != null) {
+                    mine.completeExceptionally(error);
+                } else {
+                    mine.complete(value);
+                }
+            });
+            return mine;
+        }
+    }
+
+    // confirma a versão da cópia; se os dados mudaram, lê de novo
+    private CompletableFuture<V> revalidate(Cached<V> current, long epoch) {
+        long start = System.nanoTime();
+        return versionSource.get().thenCompose(version -> {
+            if (version != current.version()) return load(epoch);
+
+            revalidations.incrementAndGet();
+            cached = new Cached<>(current.version(), current.value(), start, epoch);
+            return CompletableFuture.completedFuture(current.value());
+        });
+    }
+
+    private CompletableFuture<V> load(long epoch) {
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        return loader.get().thenApply(entry -> {
+            // gravações durante a leitura mudam invalidations, e a cópia já nasce vencida
+            cached = new Cached<>(entry.version(), entry.value(), start, epoch);
+            return entry.value();
+        });
+    }
+
+    /**
+     * Versão da cópia, se ela ainda puder ser servida sem consultar o banco; {@code -1} se não puder.
+     */
+    public long freshVersion() {
+        Cached<V> current = cached;
+        boolean valid = current != null && current.epoch() == invalidations.get();
+        return valid && isFresh(current) ? current.version() : -1;
+    }
+
+    private boolean isFresh(Cached<V> current) {
+        return System.nanoTime() - current.fetchedAt() <= maxStalenessNanos;
+    }
+
+    /**
+     * Descarta a cópia; a próxima requisição lê os dados de novo.
+     */
+    public void invalidate() {
+        invalidations.incrementAndGet();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.get(), revalidations.get(), misses.get(), coalesced.get());
+    }
+}
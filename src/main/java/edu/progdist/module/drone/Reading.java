@@ -0,0 +1,46 @@
+package edu.progdist.module.drone;
+
+/**
+ * Leitura climática já decodificada em campos primitivos.
+ * Instâncias são mutáveis para que o mesmo objeto possa ser reaproveitado entre decodificações.
+ */
+public final class Reading {
+    int pressure;       // pressão em hPa
+    double radiation;   // radiação em kW/m²
+    int temperature;    // temperatura em °C
+    int humidity;       // umidade relativa em %
+
+    public Reading() {}
+
+    public Reading(int pressure, double radiation, int temperature, int humidity) {
+        set(pressure, radiation, temperature, humidity);
+    }
+
+    public void set(int pressure, double radiation, int temperature, int humidity) {
+        this.pressure = pressure;
+        this.radiation = radiation;
+        this.temperature = temperature;
+        this.humidity = humidity;
+    }
+
+    public int pressure() {
+        return pressure;
+    }
+
+    public double radiation() {
+        return radiation;
+    }
+
+    public int temperature() {
+        return temperature;
+    }
+
+    public int humidity() {
+        return humidity;
+    }
+
+    @Override
+    public String toString() {
+        return ReadingCodec.Format.DATASERVER.format(this);
+    }
+}
@@ -0,0 +1,174 @@
+package edu.progdist.module.drone;
+
+/**
+ * Decodifica os quatro formatos de payload dos drones em uma única passada.
+ * <p>
+ * Formatos aceitos (ver {@link EnviromentData}): norte {@code p-r-t-u}, sul {@code (p;r;t;u)},
+ * leste {@code {p,r,t,u}} e oeste {@code p#r#t#u}. Os valores são acumulados diretamente em campos
+ * primitivos, sem alocação por caractere e sem expressões regulares.
+ */
+public final class ReadingCodec {
+    public static final String INVALID_DATA = "Error: Invalid Data.";
+
+    private static final int FIELDS = 4;
+    private static final int PRESSURE = 0;
+    private static final int RADIATION = 1;
+    private static final int TEMPERATURE = 2;
+    private static final int HUMIDITY = 3;
+    private static final int[] DRONE_FIELDS = { PRESSURE, RADIATION, TEMPERATURE, HUMIDITY };
+    private static final char DRONE_SEPARATORS = 0;
+    private static final int MAX_DIGITS = 18;           // cabe em um long sem overflow
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Formatos textuais usados para armazenar e trafegar leituras já decodificadas.
+     */
+    public enum Format {
+        /** {@code [temperatura|umidade|pressão|radiação]}, publicado pelo Gateway. */
+        GATEWAY('|', new int[] { TEMPERATURE, HUMIDITY, PRESSURE, RADIATION }) {
+            @Override
+            public StringBuilder append(StringBuilder sb, Reading r) {
+                return sb.append('[').append(r.temperature).append('|')
+                    .append(r.humidity).append('|')
+                    .append(r.pressure).append('|')
+                    .append(r.radiation).append(']');
+            }
+        },
+
+        /** {@code [pressão//radiação//temperatura//umidade]}, enviado pelo Dataserver ao banco de dados. */
+        DATASERVER('/', new int[] { PRESSURE, RADIATION, TEMPERATURE, HUMIDITY }) {
+            @Override
+            public StringBuilder append(StringBuilder sb, Reading r) {
+                return sb.append('[').append(r.pressure).append("//")
+                    .append(r.radiation).append("//")
+                    .append(r.temperature).append("//")
+                    .append(r.humidity).append(']');
+            }
+        };
+
+        private final char separator;
+        private final int[] fields;     // campo da leitura em cada posição do texto
+
+        Format(char separator, int[] fields) {
+            this.separator = separator;
+            this.fields = fields;
+        }
+
+        public abstract StringBuilder append(StringBuilder sb, Reading r);
+
+        public String format(Reading r) {
+            return append(new StringBuilder(32), r).toString();
+        }
+
+        /**
+         * Decodifica uma leitura previamente renderizada neste formato.
+         *
+         * @return {@code false} se o texto estiver vazio ou malformado
+         */
+        public boolean parse(CharSequence data, Reading out) {
+            return ReadingCodec.parse(data, out, separator, fields);
+        }
+    }
+
+    private ReadingCodec() {}
+
+    /**
+     * Decodifica um payload de drone em {@code out}.
+     *
+     * @return {@code false} se o payload estiver vazio ou malformado; nesse caso {@code out} fica indefinido
+     */
+    public static boolean parse(CharSequence data, Reading out) {
+        return parse(data, out, DRONE_SEPARATORS, DRONE_FIELDS);
+    }
+
+    /**
+     * Laço único compartilhado pelos formatos de drone e de armazenamento.
+     * Com {@code separator == DRONE_SEPARATORS} aceita {@code - , ; #}; caso contrário só o separador informado,
+     * tratando repetições consecutivas (como {@code //}) como um único separador.
+     */
+    private static boolean parse(CharSequence data, Reading out, char separator, int[] fields) {
+        if (data == null || data.isEmpty()) return false;
+
+        int position = 0;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;             // -1 enquanto não houver ponto decimal
+        boolean negative = false;
+        char previous = 0;
+
+        for (int i = 0, n = data.length(); i < n; previous = data.charAt(i), i++) {
+            char c = data.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                if (++digits > MAX_DIGITS) return false;
+                mantissa = mantissa * 10 + (c - '0');
+                if (scale >= 0) scale++;
+            } else if (c == '.') {
+                if (scale >= 0 || fields[position] != RADIATION) return false;
+                scale = 0;
+            } else if (c == '-' && !isDigit(previous)) {
+                // sinal negativo: só é válido antes do primeiro dígito do campo
+                if (negative || digits > 0) return false;
+                negative = true;
+            } else if (isSeparator(c, previous, separator)) {
+                if (position == FIELDS - 1
+                    || !store(out, fields[position], mantissa, digits, scale, negative)) return false;
+                position++;
+                mantissa = 0;
+                digits = 0;
+                scale = -1;
+                negative = false;
+            } else if (c == '-') {
+                return false;   // '-' após dígito só é separador no formato do drone norte
+            }
+            // demais caracteres ('(', ')', '{', '}', '[', ']', espaços) são ignorados
+        }
+
+        return position == FIELDS - 1 && store(out, fields[position], mantissa, digits, scale, negative);
+    }
+
+    private static boolean isSeparator(char c, char previous, char separator) {
+        if (separator == DRONE_SEPARATORS) {
+            return c == '-' || c == ',' || c == ';' || c == '#';
+        }
+        return c == separator && previous != separator;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean store(Reading out, int field, long mantissa, int digits, int scale, boolean negative) {
+        if (digits == 0) return false;
+
+        if (field == RADIATION) {
+            out.radiation = toDouble(mantissa, Math.max(scale, 0), negative);
+            return true;
+        }
+
+        long value = negative ? -mantissa : mantissa;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) return false;
+
+        switch (field) {
+            case PRESSURE -> out.pressure = (int) value;
+            case TEMPERATURE -> out.temperature = (int) value;
+            default -> out.humidity = (int) value;
+        }
+        return true;
+    }
+
+    private static double toDouble(long mantissa, int scale, boolean negative) {
+        double value;
+        if (mantissa <= MAX_EXACT_MANTISSA && scale < POWERS_OF_TEN.length) {
+            // mantissa e potência são exatas em double, então a divisão já é corretamente arredondada
+            value = mantissa / POWERS_OF_TEN[scale];
+        } else {
+            value = Double.parseDouble(mantissa + "E-" + scale);
+        }
+        return negative ? -value : value;
+    }
+}
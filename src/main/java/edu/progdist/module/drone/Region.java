@@ -0,0 +1,40 @@
+package edu.progdist.module.drone;
+
+/**
+ * Regiões atendidas pelos drones.
+ * A chave corresponde ao sufixo dos tópicos MQTT e às routing keys do RabbitMQ.
+ */
+public enum Region {
+    UNKNOWN(""),
+    NORTH("norte"),
+    SOUTH("sul"),
+    EAST("leste"),
+    WEST("oeste");
+
+    private static final Region[] BY_ID = values();
+
+    private final String key;
+
+    Region(String key) {
+        this.key = key;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public byte id() {
+        return (byte) ordinal();
+    }
+
+    public static Region fromId(int id) {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : UNKNOWN;
+    }
+
+    public static Region fromKey(String key) {
+        for (Region region : BY_ID) {
+            if (region.key.equalsIgnoreCase(key)) return region;
+        }
+        return UNKNOWN;
+    }
+}
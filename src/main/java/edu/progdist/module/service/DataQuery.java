@@ -0,0 +1,123 @@
+package edu.progdist.module.service;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Parâmetros de {@code GET /data}: {@code region} (uma ou mais, separadas por vírgula), {@code from} e {@code to}
+ * (instante de chegada em ms, o primeiro inclusivo e o segundo exclusivo), {@code limit} (leituras na página) e
+ * {@code cursor}, ou {@code since}, que é o mesmo cursor usado para buscar só as leituras novas.
+ * <p>
+ * O cursor é a lista {@code regiao:sequência,...} devolvida pela resposta anterior: em cada região, a resposta
+ * começa na sequência informada; regiões ausentes começam do início.
+ *
+ * @param regions regiões pedidas; vazio para todas
+ * @param cursor  sequência inicial de cada região
+ * @param paged   se a resposta traz o próximo cursor: com {@code limit}, {@code cursor} ou {@code since}
+ */
+public record DataQuery(Set<String> regions, long from, long to, int limit, Map<String, Long> cursor,
+                        boolean paged) {
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * @throws IllegalArgumentException se algum parâmetro for inválido
+     */
+    public static DataQuery parse(String rawQuery) {
+        Set<String> regions = new TreeSet<>();
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        int limit = UNLIMITED;
+        Map<String, Long> cursor = Collections.emptyMap();
+        boolean paged = false;
+
+        if (rawQuery != null && !rawQuery.isEmpty()) {
+            for (String parameter : rawQuery.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = decode(equals >= 0 ? parameter.substring(0, equals) : parameter);
+                String value = equals >= 0 ? decode(parameter.substring(equals + 1)) : "";
+
+                switch (name) {
+                    case "region" -> {
+                        for (String region : value.split(",")) {
+                            if (!region.isBlank()) regions.add(region.trim());
+                        }
+                    }
+                    case "from" -> from = parseLong(name, value);
+                    case "to" -> to = parseLong(name, value);
+                    case "limit" -> {
+                        long parsed = parseLong(name, value);
+                        if (parsed < 1) throw new IllegalArgumentException("limit deve ser positivo: " + value);
+                        limit = (int) Math.min(parsed, UNLIMITED);
+                        paged = true;
+                    }
+                    case "cursor", "since" -> {
+                        cursor = parseCursor(value);
+                        paged = true;
+                    }
+                    default -> { }  // parâmetros desconhecidos são ignorados
+                }
+            }
+        }
+        return new DataQuery(Collections.unmodifiableSet(regions), from, to, limit, cursor, paged);
+    }
+
+    public boolean includes(String region) {
+        return regions.isEmpty() || regions.contains(region);
+    }
+
+    public boolean inRange(long timestamp) {
+        return timestamp >= from && timestamp < to;
+    }
+
+    /**
+     * Sequência em que a região começa: a do cursor ou {@code 0}.
+     */
+    public long start(String region) {
+        return cursor.getOrDefault(region, 0L);
+    }
+
+    /**
+     * @throws IllegalArgumentException se o cursor não estiver no formato {@code regiao:sequência,...}
+     */
+    public static Map<String, Long> parseCursor(String value) {
+        Map<String, Long> cursor = new TreeMap<>();
+        for (String part : value.split(",")) {
+            if (part.isEmpty()) continue;
+            int colon = part.lastIndexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("Cursor inválido: " + value);
+            long sequence = parseLong("cursor", part.substring(colon + 1));
+            if (sequence < 0) throw new IllegalArgumentException("Cursor inválido: " + value);
+            cursor.put(part.substring(0, colon), sequence);
+        }
+        return Collections.unmodifiableMap(cursor);
+    }
+
+    /**
+     * O texto que {@link #parseCursor(String)} lê.
+     */
+    public static String formatCursor(Map<String, Long> cursor) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : cursor.entrySet()) {
+            if (!sb.isEmpty()) sb.append(',');
+            sb.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido para " + name + ": " + value);
+        }
+    }
+
+    private static String decode(String text) {
+        return URLDecoder.decode(text, StandardCharsets.UTF_8);
+    }
+}
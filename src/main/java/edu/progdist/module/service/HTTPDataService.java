@@ -3,27 +3,61 @@ package edu.progdist.module.service;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.DeliverCallback;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Microserviço que consome dados do RabbitMQ e os expõe via uma API HTTP.
  * Este serviço corresponde ao "Serviço - Consumidor - Sob demanda" do diagrama.
+ * <p>
+ * As mensagens de cada região ficam em um {@link ReadingRing}: só as últimas são retidas, e as antigas demais
+ * deixam de ser servidas, então a memória não cresce com o tempo de execução. Além de consultadas em {@code /data},
+ * as mensagens são repassadas assim que chegam aos clientes conectados em {@code /stream} e resumidas, por região,
+ * em {@code /stats}.
  */
 public class HTTPDataService {
 
-    private static final Map<String, List<String>> receivedData = new ConcurrentHashMap<>();
+    // mensagens retidas por região: -Dhttpdataservice.retention.max-readings=<n>
+    private static final int RETENTION_MAX_READINGS =
+        Integer.getInteger("httpdataservice.retention.max-readings", 10_000);
+    // idade máxima de uma mensagem servida, 0 para não expirar: -Dhttpdataservice.retention.max-age-ms=<ms>
+    private static final long RETENTION_MAX_AGE_MS = Long.getLong("httpdataservice.retention.max-age-ms", 3_600_000);
+    // mensagens pendentes por cliente de /stream: -Dhttpdataservice.stream.queue=<n>
+    private static final int STREAM_QUEUE = Integer.getInteger("httpdataservice.stream.queue", 256);
+    // cliente lento: descarta as mais antigas ou desconecta: -Dhttpdataservice.stream.overflow=drop-oldest|disconnect
+    private static final StreamHub.Overflow STREAM_OVERFLOW =
+        StreamHub.Overflow.byName(System.getProperty("httpdataservice.stream.overflow", "drop-oldest"));
+    // intervalo máximo sem enviar nada a um cliente de /stream: -Dhttpdataservice.stream.heartbeat-ms=<ms>
+    private static final long STREAM_HEARTBEAT_MS = Long.getLong("httpdataservice.stream.heartbeat-ms", 15_000);
+    private static final int STREAM_BUFFER_SIZE = 1024;   // por conexão; milhares podem estar abertas
+    // fila durável que guarda as mensagens enquanto o serviço está fora; sem ela, uma fila temporária por execução:
+    // -Dhttpdataservice.queue=<nome>
+    private static final String QUEUE = System.getProperty("httpdataservice.queue", "");
+
+    private final Map<String, ReadingRing> receivedData = new ConcurrentHashMap<>();
+    private final AtomicLong dataVersion = new AtomicLong();   // mensagens publicadas; muda a cada entrega
+    private final StreamHub streams = new StreamHub(STREAM_QUEUE, STREAM_OVERFLOW);
+    private final ReadingStats stats = new ReadingStats();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private QueueConsumer consumer;
+    private HttpServer server;
 
     /**
      * Inicia o consumidor RabbitMQ e o servidor HTTP.
@@ -33,68 +67,331 @@ public class HTTPDataService {
     public void start(String rabbitMqHost, int httpPort, String exchange)
         throws IOException, TimeoutException {
 
-        // configura a conexão com o RabbitMQ para consumir mensagens
+        // configura a conexão com o RabbitMQ para consumir mensagens; cada canal é atendido por uma thread do executor
+        QueueConsumer.Settings settings = QueueConsumer.Settings.fromProperties("httpdataservice.consumer");
         ConnectionFactory factory = new ConnectionFactory();
         factory.setHost(rabbitMqHost);
-        Connection connection = factory.newConnection();
-        Channel channel = connection.createChannel();
-        channel.exchangeDeclare(exchange, "topic");
-        String queueName = channel.queueDeclare().getQueue();
-
-        // ouve todos os tópicos (#) no exchange
-        channel.queueBind(queueName, exchange, "#");
-
-        DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-            String message = new String(delivery.getBody(), StandardCharsets.UTF_8);
-            String region = delivery.getEnvelope().getRoutingKey();
-            // adiciona a mensagem recebida ao mapa de dados
-            receivedData.computeIfAbsent(region, k -> new CopyOnWriteArrayList<>()).add(message);
-        };
-        channel.basicConsume(queueName, true, deliverCallback, consumerTag -> {});
-        System.out.println("Serviço de dados iniciado. Aguardando mensagens do RabbitMQ...");
-
-        // configura e inicia o servidor http
-        HttpServer server = HttpServer.create(new InetSocketAddress(httpPort), 0);
+        Connection connection = factory.newConnection(Executors.newFixedThreadPool(settings.consumers()));
+
+        String queueName;
+        try (Channel channel = connection.createChannel()) {
+            channel.exchangeDeclare(exchange, "topic");
+            queueName = QUEUE.isEmpty()
+                ? channel.queueDeclare().getQueue()
+                : channel.queueDeclare(QUEUE, true, false, false, null).getQueue();
+
+            // ouve todos os tópicos (#) no exchange
+            channel.queueBind(queueName, exchange, "#");
+        }
+
+        consumer = new QueueConsumer(connection, queueName, settings, this::receive);
+        System.out.println("Serviço de dados iniciado com " + settings.consumers()
+            + " consumidores. Aguardando mensagens do RabbitMQ...");
+
+        // libera a memória das mensagens vencidas antes que o anel as sobrescreva
+        if (RETENTION_MAX_AGE_MS > 0) {
+            long interval = Math.max(RETENTION_MAX_AGE_MS / 10, 1000);
+            scheduler.scheduleAtFixedRate(() -> {
+                long now = System.currentTimeMillis();
+                for (ReadingRing ring : receivedData.values()) ring.expire(now);
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        startHttp(httpPort);
+    }
+
+    /**
+     * Inicia só o servidor HTTP, que serve as mensagens entregues a {@link #receive(String, String)}.
+     *
+     * @param httpPort a porta, ou 0 para uma livre
+     * @return a porta em que o servidor ouve
+     */
+    int startHttp(int httpPort) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(httpPort), 0);
         server.createContext("/data", this::handleDataRequest);
-        server.setExecutor(null); // usa o executor padrão
+        server.createContext("/stream", this::handleStreamRequest);
+        server.createContext("/stats", this::handleStatsRequest);
+        // uma thread virtual por requisição: respostas longas e conexões de /stream paradas não ocupam threads do SO
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
         server.start();
-        System.out.println("Servidor HTTP iniciado na porta " + httpPort);
+        System.out.println("Servidor HTTP iniciado na porta " + server.getAddress().getPort());
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Para o servidor HTTP, o consumidor e a retenção.
+     */
+    public void stop() throws IOException {
+        if (server != null) server.stop(0);
+        if (consumer != null) consumer.close();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Mensagens processadas, reentregas descartadas e confirmações enviadas ao RabbitMQ.
+     */
+    public QueueConsumer.Stats getConsumerStats() {
+        return consumer.getStats();
+    }
+
+    // chamado pelas threads dos consumidores, possivelmente ao mesmo tempo
+    void receive(String region, String message) {
+        // adiciona a mensagem recebida ao histórico da região; a versão só muda depois da publicação
+        long now = System.currentTimeMillis();
+        long sequence = ring(region).append(now, message);
+        stats.add(region, message);
+        dataVersion.incrementAndGet();
+        // só enfileira para os clientes de /stream: um cliente lento não atrasa a entrega
+        streams.publish(new StreamHub.Event(region, sequence, now, message));
+    }
+
+    // histórico da região, criado na primeira mensagem
+    private ReadingRing ring(String region) {
+        return receivedData.computeIfAbsent(region, k -> new ReadingRing(RETENTION_MAX_READINGS, RETENTION_MAX_AGE_MS));
     }
 
     /**
      * Manipulador para requisições HTTP em /data.
-     * Serializa o mapa de dados para JSON e o envia como resposta.
+     * Escreve o JSON aos poucos, com codificação chunked, enquanto percorre o histórico: a memória usada por
+     * requisição não depende de quanto histórico há. Sem {@code limit} nem {@code cursor} a resposta é
+     * {@code {"regiao": ["mensagem", ...], ...}}; com eles,
+     * {@code {"data": {...}, "next": "<cursor>", "more": <bool>}}.
+     * <p>
+     * O {@code ETag} identifica a versão de todo o histórico, e não de uma consulta: se ele não mudou, nenhuma
+     * consulta tem resultado diferente, e um {@code If-None-Match} com ele recebe {@code 304}. Um cliente que
+     * busca deltas com {@code since} pode, assim, reenviar o ETag da resposta anterior mesmo com outro cursor.
      */
     private void handleDataRequest(HttpExchange exchange) throws IOException {
-        String jsonResponse = convertMapToJson();
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(200, jsonResponse.getBytes().length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(jsonResponse.getBytes());
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Método não permitido: " + exchange.getRequestMethod());
+                return;
+            }
+
+            DataQuery query;
+            try {
+                query = DataQuery.parse(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            // a versão é lida antes do histórico: a resposta pode ser mais nova que o ETag, nunca mais antiga
+            long now = System.currentTimeMillis();
+            String etag = etag(now);
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);   // tamanho desconhecido: chunked
+            try (JsonOutput json = new JsonOutput(exchange.getResponseBody())) {
+                writeData(json, query, now);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();     // cliente desconectou no meio da resposta
+            }
         }
     }
 
     /**
-     * Converte manualmente o mapa de dados para uma string JSON.
+     * Manipulador para requisições HTTP em /stream.
+     * Mantém a conexão aberta e envia cada mensagem recebida como um evento SSE ({@code text/event-stream}), só das
+     * regiões em {@code region}, se informado. O {@code id} do evento é o cursor {@code regiao:sequência} que segue a
+     * mensagem, e {@code /data?since=} com ele recupera o que um cliente perdeu ao reconectar ou por ser lento.
+     * <p>
+     * Enquanto não há mensagens, a thread virtual da conexão fica parada na fila do cliente; a cada
+     * {@code heartbeat-ms} sem eventos é enviado um comentário, o que mantém a conexão viva e revela clientes que já
+     * se foram.
      */
-    private String convertMapToJson() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        boolean firstRegion = true;
-        for (Map.Entry<String, List<String>> entry : HTTPDataService.receivedData.entrySet()) {
-            if (!firstRegion) sb.append(",");
-            sb.append("\"").append(entry.getKey()).append("\": [");
-            boolean firstMessage = true;
-            for (String message : entry.getValue()) {
-                if (!firstMessage) sb.append(",");
-                sb.append("\"").append(message.replace("\"", "\\\"")).append("\"");
-                firstMessage = false;
+    private void handleStreamRequest(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Método não permitido: " + exchange.getRequestMethod());
+                return;
+            }
+
+            DataQuery query;
+            try {
+                query = DataQuery.parse(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
             }
-            sb.append("]");
+
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+
+            StreamHub.Subscriber subscriber = streams.subscribe(query.regions());
+            try (JsonOutput out = new JsonOutput(exchange.getResponseBody(), STREAM_BUFFER_SIZE)) {
+                out.raw(":\n\n").flush();
+                while (true) {
+                    StreamHub.Event event = subscriber.poll(STREAM_HEARTBEAT_MS);
+                    if (subscriber.isClosed()) {
+                        System.out.println("Cliente de /stream lento demais, desconectado.");
+                        break;
+                    }
+                    if (event == null) out.raw(":\n\n");
+                    // o que já estiver na fila vai junto, com um único flush
+                    for (; event != null; event = subscriber.poll()) writeEvent(out, event);
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                streams.unsubscribe(subscriber);
+            }
+        }
+    }
+
+    private static void writeEvent(JsonOutput out, StreamHub.Event event) throws IOException {
+        out.raw("id: ").raw(event.region()).raw(':').number(event.sequence() + 1)
+            .raw("\ndata: {\"region\":").string(event.region())
+            .raw(",\"timestamp\":").number(event.timestamp())
+            .raw(",\"message\":").string(event.message())
+            .raw("}\n\n");
+    }
+
+    /**
+     * Manipulador para requisições HTTP em /stats.
+     * Responde com o resumo de cada métrica por região e com os rankings percentuais do dashboard, calculados a
+     * partir dos acumuladores e não do histórico:
+     * {@code {"total": n, "invalid": n, "regions": {"regiao": {"count": n, "percentage": p, "temperature": {"sum",
+     * "min", "max", "mean", "variance"}, ...}}, "rankings": {"temperature": [{"region", "mean", "percentage"}, ...],
+     * ...}}}.
+     */
+    private void handleStatsRequest(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Método não permitido: " + exchange.getRequestMethod());
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (JsonOutput json = new JsonOutput(exchange.getResponseBody())) {
+                writeStats(json, stats.snapshot(), stats.invalid());
+            }
+        }
+    }
+
+    private static void writeStats(JsonOutput json, Map<String, ReadingStats.RegionSummary> summaries, long invalid)
+        throws IOException {
+        long total = 0;
+        for (ReadingStats.RegionSummary summary : summaries.values()) total += summary.count();
+
+        json.raw("{\"total\":").number(total).raw(",\"invalid\":").number(invalid).raw(",\"regions\":{");
+        boolean first = true;
+        for (Map.Entry<String, ReadingStats.RegionSummary> entry : summaries.entrySet()) {
+            ReadingStats.RegionSummary summary = entry.getValue();
+            if (!first) json.raw(',');
+            first = false;
+            json.string(entry.getKey()).raw(":{\"count\":").number(summary.count())
+                .raw(",\"percentage\":").number((double) summary.count() / total * 100.0);
+            for (ReadingStats.Metric metric : ReadingStats.Metric.values()) {
+                ReadingStats.Summary m = summary.metric(metric);
+                json.raw(',').string(metric.key())
+                    .raw(":{\"sum\":").number(m.sum())
+                    .raw(",\"min\":").number(m.min())
+                    .raw(",\"max\":").number(m.max())
+                    .raw(",\"mean\":").number(m.mean())
+                    .raw(",\"variance\":").number(m.variance()).raw('}');
+            }
+            json.raw('}');
+        }
+
+        json.raw("},\"rankings\":{");
+        first = true;
+        for (ReadingStats.Metric metric : ReadingStats.Metric.values()) {
+            if (!first) json.raw(',');
+            first = false;
+            json.string(metric.key()).raw(":[");
+            boolean firstShare = true;
+            for (ReadingStats.Share share : ReadingStats.ranking(summaries, metric)) {
+                if (!firstShare) json.raw(',');
+                firstShare = false;
+                json.raw("{\"region\":").string(share.region())
+                    .raw(",\"mean\":").number(share.mean())
+                    .raw(",\"percentage\":").number(share.percentage()).raw('}');
+            }
+            json.raw(']');
+        }
+        json.raw("}}");
+    }
+
+    // regiões em ordem alfabética, para que o cursor de uma página continue na seguinte
+    private void writeData(JsonOutput json, DataQuery query, long now) throws IOException {
+        Map<String, Long> next = new TreeMap<>(query.cursor());
+        int[] remaining = { query.limit() };
+        boolean more = false;
+
+        if (query.paged()) json.raw("{\"data\":");
+        json.raw('{');
+        boolean firstRegion = true;
+        for (String region : new TreeSet<>(receivedData.keySet())) {
+            if (!query.includes(region)) continue;
+            ReadingRing ring = receivedData.get(region);
+
+            if (!firstRegion) json.raw(',');
+            json.string(region).raw(":[");
             firstRegion = false;
+
+            long cursor = query.start(region);
+            if (remaining[0] > 0) {
+                boolean[] firstMessage = { true };
+                cursor = ring.forEach(cursor, now, reading -> {
+                    if (!query.inRange(reading.timestamp())) return true;
+                    try {
+                        if (!firstMessage[0]) json.raw(',');
+                        json.string(reading.message());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    firstMessage[0] = false;
+                    return --remaining[0] > 0;
+                });
+            }
+            json.raw(']');
+
+            next.put(region, cursor);
+            more |= cursor < ring.next();
+        }
+        json.raw('}');
+
+        if (query.paged()) {
+            json.raw(",\"next\":").string(DataQuery.formatCursor(next)).raw(",\"more\":").bool(more).raw('}');
+        }
+    }
+
+    // entregas mudam a versão; a expiração, a primeira leitura visível de alguma região
+    private String etag(long now) {
+        long version = dataVersion.get();
+        long visible = 0;
+        for (Map.Entry<String, ReadingRing> entry : receivedData.entrySet()) {
+            visible += (entry.getKey().hashCode() * 0x9E3779B97F4A7C15L) ^ entry.getValue().firstVisible(now);
+        }
+        return "\"" + version + "-" + Long.toHexString(visible) + "\"";
+    }
+
+    // If-None-Match: "*" ou lista de ETags, fortes ou fracas
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        try (JsonOutput json = new JsonOutput(exchange.getResponseBody())) {
+            json.raw("{\"error\":").string(message).raw('}');
         }
-        sb.append("}");
-        return sb.toString();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,145 @@
+package edu.progdist.module.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Escreve JSON em UTF-8 diretamente em um {@link OutputStream}, por um buffer de tamanho fixo reutilizado durante
+ * toda a resposta: nenhuma {@code String} intermediária é montada, e a memória usada não depende do tamanho do
+ * conteúdo.
+ * <p>
+ * Cabe ao chamador a estrutura do documento (chaves, vírgulas); {@link #string(CharSequence)} cuida das aspas e do
+ * escape.
+ */
+public final class JsonOutput implements AutoCloseable {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    public JsonOutput(OutputStream out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize bytes acumulados antes de escrever no stream; no mínimo 4, um caractere em UTF-8
+     */
+    public JsonOutput(OutputStream out, int bufferSize) {
+        if (bufferSize < 4) throw new IllegalArgumentException("Buffer inválido: " + bufferSize);
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Escreve texto já em JSON (pontuação, nomes fixos), codificado em UTF-8, sem escape.
+     */
+    public JsonOutput raw(CharSequence text) throws IOException {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            i = encode(text, i);
+        }
+        return this;
+    }
+
+    public JsonOutput raw(char c) throws IOException {
+        if (c < 0x80) {
+            if (position == buffer.length) flushBuffer();
+            buffer[position++] = (byte) c;
+            return this;
+        }
+        return raw(String.valueOf(c));
+    }
+
+    public JsonOutput number(long value) throws IOException {
+        return raw(Long.toString(value));
+    }
+
+    public JsonOutput number(double value) throws IOException {
+        // JSON não tem NaN nem infinito
+        return Double.isFinite(value) ? raw(Double.toString(value)) : raw("null");
+    }
+
+    public JsonOutput bool(boolean value) throws IOException {
+        return raw(value ? "true" : "false");
+    }
+
+    /**
+     * Escreve o texto como string JSON, entre aspas e com escape.
+     */
+    public JsonOutput string(CharSequence text) throws IOException {
+        raw('"');
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> raw("\\\"");
+                case '\\' -> raw("\\\\");
+                case '\n' -> raw("\\n");
+                case '\r' -> raw("\\r");
+                case '\t' -> raw("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        raw("\\u00");
+                        raw((char) HEX[c >> 4]);
+                        raw((char) HEX[c & 0xF]);
+                    } else {
+                        i = encode(text, i);
+                    }
+                }
+            }
+        }
+        return raw('"');
+    }
+
+    // codifica o caractere em i (ou o par substituto que começa em i) e retorna o índice do último usado
+    private int encode(CharSequence text, int i) throws IOException {
+        if (buffer.length - position < 4) flushBuffer();
+
+        char c = text.charAt(i);
+        if (c < 0x80) {
+            buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | c >> 6);
+            buffer[position++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(++i));
+            buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+            buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (Character.isSurrogate(c)) {
+            buffer[position++] = '?';   // substituto isolado não tem representação em UTF-8
+        } else {
+            buffer[position++] = (byte) (0xE0 | c >> 12);
+            buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+            buffer[position++] = (byte) (0x80 | c & 0x3F);
+        }
+        return i;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Envia o que está no buffer e o próprio stream.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Envia o que está no buffer e fecha o stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+}
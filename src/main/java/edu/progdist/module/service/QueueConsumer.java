@@ -0,0 +1,227 @@
+package edu.progdist.module.service;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consome uma fila do RabbitMQ com confirmação manual, por {@code consumers} canais com um consumidor cada.
+ * <p>
+ * O cliente entrega as mensagens de um canal uma de cada vez e em ordem, mas canais diferentes em paralelo, pelas
+ * threads do executor compartilhado da conexão: com uma thread por canal, as mensagens são processadas em
+ * {@code consumers} threads. Cada canal recebe até {@code prefetch} mensagens ainda não confirmadas.
+ * <p>
+ * A entrega é pelo menos uma vez: uma mensagem só é confirmada depois de processada, e as que estavam em andamento
+ * quando o canal ou o serviço caiu são reentregues. Como o processamento de um canal é sequencial, confirmar a
+ * última mensagem com {@code multiple=true} confirma todas as anteriores; isso é feito a cada {@code ackBatch}
+ * mensagens ou, se houver pendentes, a cada {@code ackIntervalMillis}. Reentregas de mensagens já processadas são
+ * reconhecidas pelo {@code messageId} entre os últimos {@code dedupWindow} vistos e apenas confirmadas.
+ */
+public final class QueueConsumer implements AutoCloseable {
+
+    /**
+     * Parâmetros do consumo.
+     *
+     * @param consumers         canais consumindo a fila, e threads que processam as mensagens
+     * @param prefetch          mensagens não confirmadas por canal; {@code 0} sem limite
+     * @param ackBatch          mensagens processadas por confirmação
+     * @param ackIntervalMillis espera máxima de uma mensagem processada pela confirmação
+     * @param dedupWindow       ids de mensagem lembrados para descartar reentregas
+     */
+    public record Settings(int consumers, int prefetch, int ackBatch, long ackIntervalMillis, int dedupWindow) {
+        public Settings {
+            if (consumers < 1 || prefetch < 0 || ackBatch < 1 || (prefetch > 0 && ackBatch > prefetch)
+                || ackIntervalMillis < 1 || dedupWindow < 1) {
+                throw new IllegalArgumentException("Parâmetros de consumo inválidos: consumers=" + consumers
+                    + ", prefetch=" + prefetch + ", ack-batch=" + ackBatch + ", ack-interval-ms="
+                    + ackIntervalMillis + ", dedup-window=" + dedupWindow);
+            }
+        }
+
+        /**
+         * Lê os parâmetros de {@code <prefix>.consumers}, {@code .prefetch}, {@code .ack-batch},
+         * {@code .ack-interval-ms} e {@code .dedup-window}, usando os valores padrão para os ausentes.
+         */
+        public static Settings fromProperties(String prefix) {
+            return new Settings(
+                Integer.getInteger(prefix + ".consumers", 4),
+                Integer.getInteger(prefix + ".prefetch", 256),
+                Integer.getInteger(prefix + ".ack-batch", 64),
+                Long.getLong(prefix + ".ack-interval-ms", 100),
+                Integer.getInteger(prefix + ".dedup-window", 65_536));
+        }
+    }
+
+    /**
+     * Contadores: mensagens processadas, reentregas descartadas e confirmações enviadas.
+     */
+    public record Stats(long processed, long duplicates, long acks) {}
+
+    /**
+     * Processa uma mensagem; é chamado por várias threads ao mesmo tempo.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        void handle(String routingKey, String message);
+    }
+
+    // canal e as mensagens processadas ainda não confirmadas nele
+    private final class Consumer {
+        private final Channel channel;
+        private long lastTag;       // última processada
+        private long ackedTag;      // última confirmada
+
+        private Consumer(Channel channel) {
+            this.channel = channel;
+        }
+
+        private synchronized void processed(long deliveryTag) throws IOException {
+            lastTag = deliveryTag;
+            if (lastTag - ackedTag >= settings.ackBatch()) ack();
+        }
+
+        private synchronized void flush() throws IOException {
+            if (lastTag > ackedTag && channel.isOpen()) ack();
+        }
+
+        private void ack() throws IOException {
+            channel.basicAck(lastTag, true);
+            ackedTag = lastTag;
+            acks.incrementAndGet();
+        }
+    }
+
+    private final Settings settings;
+    private final Handler handler;
+    private final List<Consumer> consumers = new ArrayList<>();
+    private final RecentIds recent;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ack-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong acks = new AtomicLong();
+
+    /**
+     * Abre os canais e começa a consumir {@code queue}. Para que os canais sejam processados em paralelo, a conexão
+     * deve ter sido criada com um executor de {@code settings.consumers()} threads.
+     */
+    public QueueConsumer(Connection connection, String queue, Settings settings, Handler handler)
+        throws IOException {
+        this.settings = settings;
+        this.handler = handler;
+        this.recent = new RecentIds(settings.dedupWindow());
+
+        for (int i = 0; i < settings.consumers(); i++) {
+            Channel channel = connection.createChannel();
+            channel.basicQos(settings.prefetch());
+            Consumer consumer = new Consumer(channel);
+            consumers.add(consumer);
+            channel.basicConsume(queue, false, delivery(consumer), consumerTag -> {});
+        }
+
+        flusher.scheduleAtFixedRate(this::flush, settings.ackIntervalMillis(), settings.ackIntervalMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    private DeliverCallback delivery(Consumer consumer) {
+        return (consumerTag, delivery) -> {
+            String id = messageId(delivery);
+            if (id != null && !recent.add(id)) {
+                duplicates.incrementAndGet();
+            } else {
+                try {
+                    handler.handle(delivery.getEnvelope().getRoutingKey(),
+                        new String(delivery.getBody(), StandardCharsets.UTF_8));
+                } catch (RuntimeException e) {
+                    // o cliente fecha o canal e a mensagem é reentregue: ela não pode constar como vista
+                    if (id != null) recent.remove(id);
+                    throw e;
+                }
+                processed.incrementAndGet();
+            }
+            consumer.processed(delivery.getEnvelope().getDeliveryTag());
+        };
+    }
+
+    private static String messageId(Delivery delivery) {
+        AMQP.BasicProperties properties = delivery.getProperties();
+        return properties != null ? properties.getMessageId() : null;
+    }
+
+    // confirma o que foi processado desde a última confirmação, em cada canal
+    private void flush() {
+        for (Consumer consumer : consumers) {
+            try {
+                consumer.flush();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Erro ao confirmar mensagens: " + e.getMessage());
+            }
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(processed.get(), duplicates.get(), acks.get());
+    }
+
+    /**
+     * Confirma o que já foi processado e fecha os canais; as mensagens ainda não entregues voltam à fila.
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdownNow();
+        flush();
+        for (Consumer consumer : consumers) {
+            try {
+                if (consumer.channel.isOpen()) consumer.channel.close();
+            } catch (TimeoutException e) {
+                throw new IOException("Tempo esgotado ao fechar o canal.", e);
+            }
+        }
+    }
+
+    // últimos ids vistos e a posição de cada um na janela; quando ela enche, o mais antigo é esquecido
+    private static final class RecentIds {
+        private final Map<String, Integer> slots;
+        private final String[] order;
+        private int next;
+
+        private RecentIds(int capacity) {
+            this.slots = new HashMap<>(capacity * 4 / 3 + 1);
+            this.order = new String[capacity];
+        }
+
+        // false se o id já estava na janela
+        private synchronized boolean add(String id) {
+            if (slots.putIfAbsent(id, next) != null) return false;
+            String evicted = order[next];
+            if (evicted != null) slots.remove(evicted);
+            order[next] = id;
+            next = (next + 1) % order.length;
+            return true;
+        }
+
+        // libera também a posição: se o id voltar, a antiga não pode esquecê-lo antes da hora ao ser reaproveitada
+        private synchronized void remove(String id) {
+            Integer slot = slots.remove(id);
+            if (slot != null) order[slot] = null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package edu.progdist.module.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Histórico limitado das mensagens de uma região: um anel com as últimas {@code capacity} mensagens, das quais só
+ * as com menos de {@code maxAgeMillis} são visíveis.
+ * <p>
+ * Cada mensagem recebe um número de sequência crescente, que serve de cursor para os leitores. Escritores reservam
+ * a sequência com um incremento atômico e publicam a entrada imutável no slot; leitores nunca bloqueiam e param na
+ * primeira sequência ainda não publicada, de modo que sempre veem um prefixo contínuo. Uma mensagem sobrescrita por
+ * uma volta do anel é simplesmente pulada. A memória fica limitada pela capacidade, e {@link #expire(long)} libera
+ * antes disso as entradas vencidas.
+ */
+public final class ReadingRing {
+
+    /**
+     * Mensagem retida, com sua sequência e o instante de chegada em ms.
+     */
+    public record Entry(long sequence, long timestamp, String message) {}
+
+    /**
+     * Cópia das entradas visíveis e o cursor para continuar depois delas.
+     */
+    public record Snapshot(List<Entry> entries, long next) {}
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final long maxAgeMillis;
+    private final AtomicLong next = new AtomicLong();   // próxima sequência a reservar
+    private volatile long start;                        // antes dela, tudo expirou; só avança
+
+    /**
+     * @param capacity     mensagens retidas, arredondado para cima até uma potência de dois
+     * @param maxAgeMillis idade máxima de uma mensagem visível; {@code 0} desliga a retenção por idade
+     */
+    public ReadingRing(int capacity, long maxAgeMillis) {
+        if (capacity < 1 || capacity > 1 << 30 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Retenção inválida: capacidade=" + capacity
+                + ", idade máxima=" + maxAgeMillis);
+        }
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Retém a mensagem, sobrescrevendo a mais antiga se o anel estiver cheio, e retorna sua sequência.
+     */
+    public long append(long timestamp, String message) {
+        long sequence = next.getAndIncrement();
+        slots.set(index(sequence), new Entry(sequence, timestamp, message));
+        return sequence;
+    }
+
+    /**
+     * Visita em ordem as entradas visíveis a partir da sequência {@code since}, até a primeira ainda não publicada
+     * ou até o visitante retornar {@code false}, e retorna o cursor para continuar depois da última visitada.
+     */
+    public long forEach(long since, long nowMillis, Predicate<Entry> visitor) {
+        long end = next.get();
+        long oldest = maxAgeMillis > 0 ? nowMillis - maxAgeMillis : Long.MIN_VALUE;
+        long sequence = Math.max(since, first(end));
+
+        for (; sequence < end; sequence++) {
+            Entry entry = slots.get(index(sequence));
+            if (entry == null || entry.sequence() < sequence) break;    // escritor ainda não publicou
+            if (entry.sequence() > sequence) continue;                  // sobrescrita por uma volta do anel
+            if (entry.timestamp() < oldest) continue;                   // vencida
+            if (!visitor.test(entry)) return sequence + 1;
+        }
+        return sequence;
+    }
+
+    /**
+     * Copia as entradas visíveis a partir da sequência {@code since}; só as referências são copiadas.
+     */
+    public Snapshot snapshot(long since, long nowMillis) {
+        List<Entry> entries = new ArrayList<>(Math.min(size(), slots.length()));
+        long cursor = forEach(since, nowMillis, entries::add);
+        return new Snapshot(entries, cursor);
+    }
+
+    /**
+     * Libera os slots das entradas vencidas no início do anel. Deve ser chamado por uma única thread.
+     */
+    public void expire(long nowMillis) {
+        if (maxAgeMillis == 0) return;
+
+        long oldest = nowMillis - maxAgeMillis;
+        long end = next.get();
+        long sequence = first(end);
+        for (; sequence < end; sequence++) {
+            int index = index(sequence);
+            Entry entry = slots.get(index);
+            if (entry == null || entry.sequence() < sequence) break;
+            if (entry.sequence() > sequence) continue;
+            if (entry.timestamp() >= oldest) break;
+            slots.compareAndSet(index, entry, null);    // não apaga uma entrada mais nova escrita no mesmo slot
+        }
+        if (sequence > start) start = sequence;
+    }
+
+    /**
+     * Sequência da entrada visível mais antiga em {@code nowMillis}, ou o cursor seguinte se não houver nenhuma.
+     */
+    public long firstVisible(long nowMillis) {
+        long[] first = { -1 };
+        long cursor = forEach(0, nowMillis, entry -> {
+            first[0] = entry.sequence();
+            return false;
+        });
+        return first[0] >= 0 ? first[0] : cursor;
+    }
+
+    /**
+     * Cursor da próxima mensagem: quem já leu até aqui não tem nada novo.
+     */
+    public long next() {
+        return next.get();
+    }
+
+    /**
+     * Quantidade aproximada de mensagens retidas, incluindo as vencidas ainda não liberadas.
+     */
+    public int size() {
+        long end = next.get();
+        return (int) (end - first(end));
+    }
+
+    // primeira sequência ainda retida, pela capacidade e pela expiração
+    private long first(long end) {
+        return Math.max(start, end - slots.length());
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+}
@@ -0,0 +1,150 @@
+package edu.progdist.module.service;
+
+import edu.progdist.module.drone.Reading;
+import edu.progdist.module.drone.ReadingCodec;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estatísticas de cada métrica por região, mantidas enquanto as mensagens chegam: quantidade, soma, mínimo, máximo,
+ * média e variância, esta pelo método de Welford, numericamente estável sem guardar as leituras.
+ * <p>
+ * Cada mensagem é decodificada uma vez e atualiza os acumuladores da sua região em tempo constante, então consultar
+ * as estatísticas não depende de quantas mensagens chegaram. Elas cobrem todas as mensagens desde o início do
+ * serviço, e não só as retidas no histórico.
+ */
+public final class ReadingStats {
+
+    /**
+     * Métricas de uma leitura, na ordem do formato do Gateway.
+     */
+    public enum Metric {
+        TEMPERATURE, HUMIDITY, PRESSURE, RADIATION;
+
+        private static final Metric[] VALUES = values();
+
+        /**
+         * Nome usado no JSON.
+         */
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        private double of(Reading reading) {
+            return switch (this) {
+                case TEMPERATURE -> reading.temperature();
+                case HUMIDITY -> reading.humidity();
+                case PRESSURE -> reading.pressure();
+                case RADIATION -> reading.radiation();
+            };
+        }
+    }
+
+    /**
+     * Resumo de uma métrica em uma região; {@code variance} é a variância populacional.
+     */
+    public record Summary(double sum, double min, double max, double mean, double variance) {}
+
+    /**
+     * Resumo de uma região: quantas leituras e o resumo de cada métrica, indexado por {@link Metric#ordinal()}.
+     */
+    public record RegionSummary(long count, Summary[] metrics) {
+        public Summary metric(Metric metric) {
+            return metrics[metric.ordinal()];
+        }
+    }
+
+    /**
+     * Posição de uma região no ranking de uma métrica: sua média e a fatia, em porcentagem, que o módulo da média
+     * representa na soma dos módulos das médias de todas as regiões.
+     */
+    public record Share(String region, double mean, double percentage) {}
+
+    // acumuladores de uma região, protegidos pelo próprio objeto
+    private static final class Accumulator {
+        private long count;
+        private final double[] sum = new double[Metric.VALUES.length];
+        private final double[] min = new double[Metric.VALUES.length];
+        private final double[] max = new double[Metric.VALUES.length];
+        private final double[] mean = new double[Metric.VALUES.length];
+        private final double[] m2 = new double[Metric.VALUES.length];   // soma dos quadrados dos desvios
+
+        private synchronized void add(Reading reading) {
+            count++;
+            for (Metric metric : Metric.VALUES) {
+                int i = metric.ordinal();
+                double value = metric.of(reading);
+                sum[i] += value;
+                min[i] = count == 1 ? value : Math.min(min[i], value);
+                max[i] = count == 1 ? value : Math.max(max[i], value);
+                double delta = value - mean[i];
+                mean[i] += delta / count;
+                m2[i] += delta * (value - mean[i]);
+            }
+        }
+
+        private synchronized RegionSummary summary() {
+            Summary[] metrics = new Summary[Metric.VALUES.length];
+            for (int i = 0; i < metrics.length; i++) {
+                metrics[i] = new Summary(sum[i], min[i], max[i], mean[i], count > 0 ? m2[i] / count : 0);
+            }
+            return new RegionSummary(count, metrics);
+        }
+    }
+
+    private final Map<String, Accumulator> regions = new ConcurrentHashMap<>();
+    private final AtomicLong invalid = new AtomicLong();
+
+    /**
+     * Contabiliza uma mensagem no formato do Gateway; mensagens malformadas só são contadas em {@link #invalid()}.
+     *
+     * @return {@code false} se a mensagem estiver malformada
+     */
+    public boolean add(String region, String message) {
+        Reading reading = new Reading();
+        if (!ReadingCodec.Format.GATEWAY.parse(message, reading)) {
+            invalid.incrementAndGet();
+            return false;
+        }
+        regions.computeIfAbsent(region, k -> new Accumulator()).add(reading);
+        return true;
+    }
+
+    /**
+     * Resumo de cada região, em ordem alfabética.
+     */
+    public Map<String, RegionSummary> snapshot() {
+        Map<String, RegionSummary> summaries = new TreeMap<>();
+        regions.forEach((region, accumulator) -> summaries.put(region, accumulator.summary()));
+        return summaries;
+    }
+
+    public long invalid() {
+        return invalid.get();
+    }
+
+    /**
+     * Ranking das regiões pela média da métrica, da maior para a menor, como o exibido pelo dashboard; vazio se
+     * todas as médias forem zero.
+     */
+    public static List<Share> ranking(Map<String, RegionSummary> summaries, Metric metric) {
+        double total = 0;
+        for (RegionSummary summary : summaries.values()) total += Math.abs(summary.metric(metric).mean());
+
+        List<Share> ranking = new ArrayList<>(summaries.size());
+        if (total == 0) return ranking;
+        for (Map.Entry<String, RegionSummary> entry : summaries.entrySet()) {
+            double mean = entry.getValue().metric(metric).mean();
+            ranking.add(new Share(entry.getKey(), mean, Math.abs(mean) / total * 100.0));
+        }
+        ranking.sort(Comparator.comparingDouble(Share::mean).reversed());
+        return ranking;
+    }
+}
@@ -0,0 +1,151 @@
+package edu.progdist.module.service;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distribui cada mensagem recebida aos assinantes de {@code /stream}.
+ * <p>
+ * {@link #publish} nunca bloqueia: cada assinante tem uma fila limitada, esvaziada pela thread que escreve na sua
+ * conexão. Quando a fila de um assinante lento enche, conforme a política, a mensagem mais antiga da fila é
+ * descartada ({@link Overflow#DROP_OLDEST}) ou o assinante é desconectado ({@link Overflow#DISCONNECT}); os demais
+ * assinantes e a thread de entrega do RabbitMQ não esperam por ele.
+ */
+public final class StreamHub {
+
+    /**
+     * O que fazer quando a fila de um assinante está cheia.
+     */
+    public enum Overflow {
+        DROP_OLDEST, DISCONNECT;
+
+        /**
+         * @throws IllegalArgumentException se o nome não for {@code drop-oldest} nem {@code disconnect}
+         */
+        public static Overflow byName(String name) {
+            return switch (name) {
+                case "drop-oldest" -> DROP_OLDEST;
+                case "disconnect" -> DISCONNECT;
+                default -> throw new IllegalArgumentException("Política de fila desconhecida: " + name);
+            };
+        }
+    }
+
+    /**
+     * Mensagem de uma região, com sua sequência no histórico e o instante de chegada em ms.
+     */
+    public record Event(String region, long sequence, long timestamp, String message) {}
+
+    // avisa a thread do assinante de que ele foi desconectado
+    private static final Event CLOSED = new Event("", -1, 0, "");
+
+    /**
+     * Conexão de {@code /stream}: as regiões de interesse e a fila de mensagens ainda não enviadas.
+     */
+    public final class Subscriber {
+        private final Set<String> regions;
+        private final BlockingQueue<Event> queue;
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean closed;
+
+        private Subscriber(Set<String> regions, int capacity) {
+            this.regions = regions;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * A próxima mensagem, esperando até {@code timeoutMillis}; {@code null} se nenhuma chegou ou se o assinante
+         * foi desconectado (veja {@link #isClosed()}).
+         */
+        public Event poll(long timeoutMillis) throws InterruptedException {
+            Event event = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            return event == CLOSED ? null : event;
+        }
+
+        /**
+         * A próxima mensagem já na fila, sem esperar; {@code null} se não houver.
+         */
+        public Event poll() {
+            Event event = queue.poll();
+            return event == CLOSED ? null : event;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Mensagens descartadas por fila cheia.
+         */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        private boolean wants(String region) {
+            return regions.isEmpty() || regions.contains(region);
+        }
+
+        private void offer(Event event) {
+            if (closed || queue.offer(event)) return;
+
+            if (overflow == Overflow.DISCONNECT) {
+                close();
+                return;
+            }
+            // a thread do assinante pode consumir entre as duas chamadas; nesse caso nada é descartado à toa
+            while (!queue.offer(event)) {
+                if (queue.poll() != null) dropped.incrementAndGet();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            queue.clear();
+            queue.offer(CLOSED);
+        }
+    }
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final int queueCapacity;
+    private final Overflow overflow;
+
+    /**
+     * @param queueCapacity mensagens pendentes por assinante
+     */
+    public StreamHub(int queueCapacity, Overflow overflow) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("Fila inválida: " + queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Registra um assinante das regiões informadas (vazio para todas).
+     */
+    public Subscriber subscribe(Set<String> regions) {
+        Subscriber subscriber = new Subscriber(regions, queueCapacity);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscriber.close();
+    }
+
+    /**
+     * Entrega a mensagem às filas dos assinantes da região, sem bloquear.
+     */
+    public void publish(Event event) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.wants(event.region())) subscriber.offer(event);
+        }
+    }
+
+    public int size() {
+        return subscribers.size();
+    }
+}
@@ -1,20 +1,52 @@
 package edu.progdist.module.user;
 
+import edu.progdist.module.drone.Reading;
+import edu.progdist.module.drone.ReadingCodec;
+
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class Dashboard {
+    private static final int METRICS = 4;   // temperatura, umidade, pressão e radiação, na ordem do Gateway
 
     /**
      * Exibe o dashboard com os dados coletados.
      * Mostra o total de dados, dados por região e análise percentual de cada métrica.
+     * Cada leitura é decodificada uma única vez para as quatro métricas.
      */
     public static void display(Map<String, List<String>> receivedData) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        Map<String, double[]> averages = new LinkedHashMap<>();
+        Reading reading = new Reading();
+        receivedData.forEach((region, data) -> {
+            double[] sums = new double[METRICS];
+            for (String entry : data) {
+                // leituras malformadas entram na média como zero
+                if (!ReadingCodec.Format.GATEWAY.parse(entry, reading)) continue;
+                sums[0] += reading.temperature();
+                sums[1] += reading.humidity();
+                sums[2] += reading.pressure();
+                sums[3] += reading.radiation();
+            }
+            for (int i = 0; i < METRICS; i++) {
+                sums[i] = data.isEmpty() ? 0.0 : sums[i] / data.size();
+            }
+            counts.put(region, (long) data.size());
+            averages.put(region, sums);
+        });
+        display(counts, averages);
+    }
+
+    /**
+     * Exibe o dashboard a partir de resumos já calculados, como os de {@code /stats}: a quantidade de leituras e a
+     * média de cada métrica (temperatura, umidade, pressão e radiação, nesta ordem) por região.
+     */
+    public static void display(Map<String, Long> counts, Map<String, double[]> averages) {
         System.out.println("\n=====================================================");
         System.out.println("=========== DASHBOARD DE DADOS CLIMÁTICOS ===========");
         System.out.println("=====================================================");
-        long totalColetado = receivedData.values().stream().mapToLong(List::size).sum();
+        long totalColetado = counts.values().stream().mapToLong(Long::longValue).sum();
 
         System.out.print("Total de dados coletados: ");
         if (totalColetado == 0) {
@@ -25,19 +57,19 @@ public class Dashboard {
         System.out.println(totalColetado);
 
         System.out.println("\n============= Distribuição de Leituras ==============");
-        receivedData.forEach((region, data) -> {
-            double percentage = (double) data.size() / totalColetado * 100.0;
-            System.out.printf("\t%-8s: %d registros (%.2f%%)%n", region, data.size(), percentage);
+        counts.forEach((region, count) -> {
+            double percentage = (double) count / totalColetado * 100.0;
+            System.out.printf("\t%-8s: %d registros (%.2f%%)%n", region, count, percentage);
         });
 
         System.out.println("\n=========== Análise Percentual por Métrica ==========");
-        displayPercentageRanking(receivedData, "\tTemperatura", 0);
+        displayPercentageRanking(averages, "\tTemperatura", 0);
         System.out.println();
-        displayPercentageRanking(receivedData, "\tUmidade Relativa", 1);
+        displayPercentageRanking(averages, "\tUmidade Relativa", 1);
         System.out.println();
-        displayPercentageRanking(receivedData, "\tPressão do Ar", 2);
+        displayPercentageRanking(averages, "\tPressão do Ar", 2);
         System.out.println();
-        displayPercentageRanking(receivedData, "\tRadiação Solar", 3);
+        displayPercentageRanking(averages, "\tRadiação Solar", 3);
         System.out.println("======================================================\n");
     }
 
@@ -46,17 +78,12 @@ public class Dashboard {
      * Mostra a contribuição de cada região para o total das médias.
      */
     private static void displayPercentageRanking(
-        Map<String, List<String>> receivedData, String title, int dataIndex) {
+        Map<String, double[]> averages, String title, int dataIndex) {
         System.out.println(title + ":");
 
-        // calcula a média de cada região para a métrica
-        Map<String, Double> averageByRegion = receivedData.entrySet().stream()
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                entry -> entry.getValue().stream()
-                    .mapToDouble(data -> parseData(data, dataIndex))
-                    .average().orElse(0.0)
-            ));
+        // média de cada região para a métrica
+        Map<String, Double> averageByRegion = new LinkedHashMap<>();
+        averages.forEach((region, metrics) -> averageByRegion.put(region, metrics[dataIndex]));
 
         // calcula o total das médias usando o valor absoluto
         double totalMagnitudeSum = averageByRegion.values().stream()
@@ -76,11 +103,4 @@ public class Dashboard {
                 System.out.printf("\t>> %-8s: %.2f%% (média: %.2f)%n", entry.getKey(), percentage, entry.getValue());
             });
     }
-
-    private static double parseData(String data, int index) {
-        try {
-            String[] parts = data.replace("[", "").replace("]", "").split("\\|");
-            return Double.parseDouble(parts[index]);
-        } catch (Exception e) { return 0.0; }
-    }
 }
@@ -1,13 +1,13 @@
 package edu.progdist.module.user;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -17,10 +17,44 @@ import java.util.*;
 public class HTTPUser {
 
     private static final String SERVICE_HOST = "http://26.44.67.239:8081";
-    private static Map<String, List<String>> receivedData = new HashMap<>();
+    // readings kept per region, oldest dropped first: -Dhttpuser.max-readings=<n>
+    private static final int MAX_READINGS = Integer.getInteger("httpuser.max-readings", 10_000);
+    private static final Map<String, List<String>> receivedData = new HashMap<>();
     // Gson instance for JSON conversion
     private static final Gson gson = new Gson();
 
+    // position already fetched in each region and the data version it was fetched at
+    private static String cursor = "";
+    private static String etag;
+
+    /**
+     * Body of {@code /data?since=<cursor>}: the readings after the cursor and the cursor to send next.
+     */
+    private static final class Delta {
+        Map<String, List<String>> data;
+        String next;
+        boolean more;
+    }
+
+    /**
+     * Body of {@code /stats}: reading count and metric summaries of each region, kept by the service.
+     */
+    private static final class Stats {
+        Map<String, RegionStats> regions;
+    }
+
+    private static final class RegionStats {
+        long count;
+        MetricStats temperature;
+        MetricStats humidity;
+        MetricStats pressure;
+        MetricStats radiation;
+    }
+
+    private static final class MetricStats {
+        double mean;
+    }
+
     /**
      * Initializes the HTTP client process by connecting to the data microservice and
      * displaying a menu for user interaction.
@@ -33,7 +67,8 @@ public class HTTPUser {
             System.out.println("\n============ MENU ============");
             System.out.println("1. Atualizar dados do servidor");
             System.out.println("2. Mostrar Dashboard");
-            System.out.println("3. Sair");
+            System.out.println("3. Mostrar Dashboard do servidor");
+            System.out.println("4. Sair");
             System.out.print("Escolha uma opção: ");
 
             String choice = scanner.nextLine();
@@ -41,22 +76,10 @@ public class HTTPUser {
             switch (choice) {
                 case "1":
                     System.out.println("Atualizando com dados do servidor " + SERVICE_HOST + "/data ...");
-                    HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(SERVICE_HOST + "/data"))
-                        .build();
                     try {
-                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-                        if (response.statusCode() == 200) {
-                            String jsonData = response.body();
-                            // Define the type for deserialization
-                            Type type = new TypeToken<Map<String, List<String>>>(){}.getType();
-                            // Use Gson to parse the JSON string into the map
-                            receivedData = gson.fromJson(jsonData, type);
-                            System.out.println("Dados atualizados com sucesso.");
-                        } else {
-                            System.out.println("Falha ao atualizar dados. Código de status: " + response.statusCode());
-                        }
-
+                        int received = refresh(client);
+                        System.out.println(received < 0 ? "Nenhum dado novo."
+                            : "Dados atualizados com sucesso: " + received + " novas leituras.");
                     } catch (IOException | InterruptedException e) {
                         System.err.println("Erro ao se conectar com serviço de dados: " + e.getMessage());
                     }
@@ -71,6 +94,14 @@ public class HTTPUser {
                     break;
 
                 case "3":
+                    try {
+                        showServerDashboard(client);
+                    } catch (IOException | InterruptedException e) {
+                        System.err.println("Erro ao se conectar com serviço de dados: " + e.getMessage());
+                    }
+                    break;
+
+                case "4":
                     System.out.println("Exiting...");
                     scanner.close();
                     System.exit(0);
@@ -82,4 +113,72 @@ public class HTTPUser {
             }
         }
     }
+
+    /**
+     * Fetches only the readings after the local cursor and merges them into the local map. The ETag of the last
+     * response is sent back, so an unchanged dataset costs a 304 with no body.
+     *
+     * @return the number of new readings, or {@code -1} if nothing changed
+     */
+    private static int refresh(HttpClient client) throws IOException, InterruptedException {
+        int received = 0;
+        boolean more = true;
+        for (boolean first = true; more; first = false) {
+            HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(SERVICE_HOST + "/data?since=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8)));
+            if (first && etag != null) request.header("If-None-Match", etag);   // later pages are never cached
+
+            HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 304) return -1;
+            if (response.statusCode() != 200) {
+                throw new IOException("Falha ao atualizar dados. Código de status: " + response.statusCode());
+            }
+
+            Delta delta = gson.fromJson(response.body(), Delta.class);
+            if (delta.data != null) {
+                for (Map.Entry<String, List<String>> region : delta.data.entrySet()) {
+                    received += region.getValue().size();
+                    merge(region.getKey(), region.getValue());
+                }
+            }
+            cursor = delta.next;
+            etag = response.headers().firstValue("ETag").orElse(null);
+            more = delta.more;
+        }
+        return received;
+    }
+
+    /**
+     * Shows the dashboard over every reading the service received, from the aggregates behind {@code /stats}: the
+     * response size and the work on both sides do not depend on how much history there is.
+     */
+    private static void showServerDashboard(HttpClient client) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(SERVICE_HOST + "/stats")).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Falha ao obter estatísticas. Código de status: " + response.statusCode());
+        }
+
+        Stats stats = gson.fromJson(response.body(), Stats.class);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        Map<String, double[]> averages = new LinkedHashMap<>();
+        if (stats.regions != null) {
+            stats.regions.forEach((region, summary) -> {
+                counts.put(region, summary.count);
+                averages.put(region, new double[] {
+                    summary.temperature.mean, summary.humidity.mean, summary.pressure.mean, summary.radiation.mean
+                });
+            });
+        }
+        Dashboard.display(counts, averages);
+    }
+
+    // appends the new readings, dropping the oldest beyond MAX_READINGS
+    private static void merge(String region, List<String> readings) {
+        List<String> local = receivedData.computeIfAbsent(region, k -> new ArrayList<>());
+        local.addAll(readings);
+        if (local.size() > MAX_READINGS) {
+            local.subList(0, local.size() - MAX_READINGS).clear();
+        }
+    }
 }
@@ -5,6 +5,8 @@ import edu.progdist.connection.direct.Server;
 import edu.progdist.connection.direct.TcpConnection;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -14,66 +16,67 @@ import java.util.concurrent.TimeUnit;
  * Abstrai as funcionalidades de um usuário.
  */
 class TCPUser {
+    // região de interesse, usada pelo datacenter para escolher o servidor: -Dtcpuser.region=<norte|sul|leste|oeste>
+    private static final String REGION = System.getProperty("tcpuser.region", "");
+    // "poll" (padrão) pede as leituras novas a cada segundo; "push" recebe-as do servidor: -Dtcpuser.mode=<modo>
+    private static final boolean PUSH_MODE = "push".equalsIgnoreCase(System.getProperty("tcpuser.mode", "poll"));
+
+    private long cursor;    // leituras já recebidas; o servidor envia só as de número maior ou igual
+
     private TcpConnection tcpConnection;
     private final ScheduledExecutorService scheduler;
 
-    public TCPUser(String host, int port) {
+    // tenta os datacenters em ordem: qualquer um do cluster responde pelo servidor de dados
+    public TCPUser(List<Server.Host> datacenters) {
         scheduler = Executors.newScheduledThreadPool(1);
-        try {
-            this.tcpConnection = new TcpConnection(host, port);
-            System.out.println("Conexão TCP estabelecida com o servidor " + host + " na porta " + port);
-            run();
-        } catch (IOException e) {
-            System.err.println("Erro ao conectar ao servidor: " + e.getMessage());
+        for (Server.Host datacenter : datacenters) {
+            try {
+                this.tcpConnection = new TcpConnection(datacenter.host, datacenter.port);
+                System.out.println("Conexão TCP estabelecida com o servidor " + datacenter.host + " na porta " +
+                    datacenter.port);
+                run(datacenter);
+                return;
+            } catch (IOException e) {
+                System.err.println("Erro ao conectar ao servidor " + datacenter + ": " + e.getMessage());
+            }
         }
     }
 
-    private void run() {
-        // envia requisição ao servidor
+    private void run(Server.Host datacenter) {
+        // um servidor sobrecarregado recusa a sessão e sugere quanto esperar antes de pedir outro ao datacenter
         try {
-            tcpConnection.send(new Message("USER_REQUEST", ""));
-            System.out.println("Mensagem enviada com sucesso.");
-        } catch (Exception e) {
-            System.err.println("Erro ao enviar mensagem: " + e.getMessage());
-        }
-
-        // recebe a resposta do servidor
-        Message response;
-        try {
-            response = tcpConnection.receive();
-            System.out.println("Se conectando ao servidor de dados: " + response);
-
-            // se conecta ao servidor de dados
-            String host = response.payload().split(":")[0];
-            int port = Integer.parseInt(response.payload().split(":")[1]);
-            tcpConnection.connect(host, port);
-            tcpConnection.send(new Message("USER_REQUEST", "Usuário conectado ao servidor de dados."));
-            System.out.println("Conexão estabelecida com o servidor de dados " + host + " na porta " + port);
+            long retryAfter;
+            while ((retryAfter = joinDataserver()) > 0) {
+                System.out.println("Servidor de dados sobrecarregado, nova tentativa em " + retryAfter + " ms.");
+                tcpConnection.close();
+                Thread.sleep(retryAfter);
+                tcpConnection = new TcpConnection(datacenter.host, datacenter.port);
+            }
         } catch (IOException e) {
             System.err.println("Erro ao receber resposta do datacenter: " + e.getMessage());
             return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (PUSH_MODE) {
+            scheduler.execute(this::receivePushes);
+            return;
         }
 
         scheduler.scheduleAtFixedRate(() -> {
             try {
-                // envia requisição de dados climáticos ao servidor
-                tcpConnection.send(new Message("DATA_REQUEST", ""));
+                // pede ao servidor só as leituras posteriores ao cursor
+                tcpConnection.send(new Message("DATA_REQUEST", "since=" + cursor));
 
                 // recebe a resposta do servidor
                 Message dataResponse = tcpConnection.receive();
 
-                if (dataResponse.type().equals("GET_RESPONSE")) {
-                    System.out.println("\n\n\nDados climáticos recebidos:");
-                    for (String line : dataResponse.payload().split(" ")) {
-                        String[] data = line.replace("[", "")
-                            .replace("]", "")
-                            .split("//");
-
-                        System.out.println("Temperatura: " + data[0] + "°C, " +
-                            "Umidade: " + data[1] + "%, " +
-                            "Pressão: " + data[2] + "hPa, " +
-                            "Radiação: " + data[3] + "W/m²");
-                    }
+                if (dataResponse.type().equals("DELTA_RESPONSE")) {
+                    applyDelta(dataResponse);
+                } else if (dataResponse.type().equals("GET_RESPONSE")) {
+                    printReadings(dataResponse.payload());
                 }
             } catch (IOException e) {
                 System.err.println("Erro ao conectar ao servidor: " + e.getMessage());
@@ -83,13 +86,102 @@ class TCPUser {
         }, 0, 1, TimeUnit.SECONDS);
     }
 
+    // pede um servidor ao datacenter e abre a sessão nele; retorna a espera sugerida se o servidor recusar, ou 0
+    private long joinDataserver() throws IOException {
+        // envia requisição ao servidor
+        try {
+            tcpConnection.send(new Message("USER_REQUEST", REGION));
+            System.out.println("Mensagem enviada com sucesso.");
+        } catch (Exception e) {
+            System.err.println("Erro ao enviar mensagem: " + e.getMessage());
+        }
+
+        // recebe a resposta do servidor
+        Message response = tcpConnection.receive();
+        System.out.println("Se conectando ao servidor de dados: " + response);
+
+        // se conecta ao servidor de dados; "host:porta;lease=..." leva a concessão do datacenter ao servidor
+        String[] parts = response.payload().split(";", 2);
+        String host = parts[0].split(":")[0];
+        int port = Integer.parseInt(parts[0].split(":")[1]);
+        tcpConnection.connect(host, port);
+        String session = parts.length > 1 ? parts[1] : "Usuário conectado ao servidor de dados.";
+        tcpConnection.send(new Message("USER_REQUEST", session));
+        Message confirmation = tcpConnection.receive();    // confirmação da sessão
+        if (confirmation.type().equals("SERVER_BUSY")) return retryAfter(confirmation.payload());
+
+        System.out.println("Conexão estabelecida com o servidor de dados " + host + " na porta " + port);
+        return 0;
+    }
+
+    // "retry-after=<ms>;<motivo>"; sem sugestão válida, espera um segundo
+    private static long retryAfter(String payload) {
+        int end = payload.indexOf(';');
+        String value = end >= 0 ? payload.substring(0, end) : payload;
+        try {
+            return Math.max(1, Long.parseLong(value.substring(value.indexOf('=') + 1)));
+        } catch (NumberFormatException e) {
+            return 1000;
+        }
+    }
+
+    // assina as leituras novas e as recebe até a conexão cair
+    private void receivePushes() {
+        try {
+            tcpConnection.send(new Message("SUBSCRIBE", "since=" + cursor));
+            while (true) {
+                Message message = tcpConnection.receive();
+                if (message.type().equals("DELTA_RESPONSE") || message.type().equals("DATA_PUSH")) {
+                    applyDelta(message);
+                } else if (message.type().equals("SERVER_BUSY")) {
+                    // assinatura recusada por sobrecarga: tenta de novo depois da espera sugerida
+                    Thread.sleep(retryAfter(message.payload()));
+                    tcpConnection.send(new Message("SUBSCRIBE", "since=" + cursor));
+                } else {
+                    System.err.println("Mensagem inesperada do servidor: " + message);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao conectar ao servidor: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // payload "<cursor>;<leituras>"; respostas e envios podem chegar fora de ordem, então o cursor só avança
+    private void applyDelta(Message delta) {
+        String payload = delta.payload();
+        int separator = payload.indexOf(';');
+        cursor = Math.max(cursor, Long.parseLong(payload.substring(0, separator)));
+        if (separator + 1 < payload.length()) {
+            printReadings(payload.substring(separator + 1));
+        }
+    }
+
+    private static void printReadings(String readings) {
+        System.out.println("\n\n\nDados climáticos recebidos:");
+        for (String line : readings.split(" ")) {
+            String[] data = line.replace("[", "")
+                .replace("]", "")
+                .split("//");
+
+            System.out.println("Temperatura: " + data[0] + "°C, " +
+                "Umidade: " + data[1] + "%, " +
+                "Pressão: " + data[2] + "hPa, " +
+                "Radiação: " + data[3] + "W/m²");
+        }
+    }
+
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
 
         System.out.println("Bem-vindo ao sistema de monitoramento climático!");
-        System.out.println("Digite o endereço do datacenter (formato: host:port):");
+        System.out.println("Digite o endereço do datacenter (formato: host:port, ou vários separados por vírgula):");
 
-        Server.Host datacenterHost = new Server.Host(scanner.nextLine());
-        new TCPUser(datacenterHost.host, datacenterHost.port);
+        List<Server.Host> datacenters = new ArrayList<>();
+        for (String address : scanner.nextLine().split(",")) {
+            datacenters.add(new Server.Host(address.trim()));
+        }
+        new TCPUser(datacenters);
     }
 }
@@ -0,0 +1,259 @@
+package edu.progdist.connection.direct;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Dimensionamento do {@link ConnectionPool}: crescimento até o máximo quando as conexões enchem, espera limitada por
+ * espaço, fechamento das ociosas além do mínimo e substituição das quebradas.
+ */
+class ConnectionPoolTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    // conexão sem rede; as requisições são futuros completados pelo teste
+    static final class FakeConnection implements Connection {
+        final int id;
+        volatile boolean closed;
+
+        FakeConnection(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void send(Message message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Message receive() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+
+    private final List<FakeConnection> opened = new CopyOnWriteArrayList<>();
+    private final Set<FakeConnection> invalid = ConcurrentHashMap.newKeySet();
+    private final List<CompletableFuture<Integer>> requests = new CopyOnWriteArrayList<>();
+    private ConnectionPool<FakeConnection> pool;
+
+    @AfterEach
+    void close() {
+        if (pool != null) pool.close();
+    }
+
+    private ConnectionPool<FakeConnection> pool(ConnectionPool.Settings settings) throws IOException {
+        pool = new ConnectionPool<>(() -> {
+            FakeConnection connection = new FakeConnection(opened.size());
+            opened.add(connection);
+            return connection;
+        }, connection -> !invalid.contains(connection), settings);
+        return pool;
+    }
+
+    // requisição que fica pendente até o teste completá-la; o resultado é o id da conexão usada
+    private CompletableFuture<Integer> request() {
+        return pool.execute(connection -> {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            requests.add(future);
+            return future.thenApply(ignored -> connection.id);
+        });
+    }
+
+    private void completeAll() {
+        for (CompletableFuture<Integer> request : requests) request.complete(0);
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("Prazo esgotado esperando " + description);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void growsUpToTheMaximumAndThenTimesOut() throws Exception {
+        pool(new ConnectionPool.Settings(1, 3, 2, 100, 60_000, 60_000));
+        assertEquals(1, opened.size());
+
+        List<CompletableFuture<Integer>> responses = new ArrayList<>();
+        for (int i = 0; i < 6; i++) responses.add(request());
+        assertEquals(3, opened.size());
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(3, stats.open());
+        assertEquals(3, stats.active());
+        assertEquals(6, stats.pending());
+
+        // as três conexões estão cheias e não cabe outra: a sétima espera o prazo e desiste
+        CompletableFuture<Integer> refused = request();
+        ExecutionException error = assertThrows(ExecutionException.class, refused::get);
+        assertInstanceOf(IOException.class, error.getCause());
+        assertEquals(3, opened.size());
+        assertEquals(1, pool.getStats().timeouts());
+        assertTrue(pool.getStats().maxWaitMillis() >= 100, "espera de " + pool.getStats().maxWaitMillis() + " ms");
+
+        completeAll();
+        for (CompletableFuture<Integer> response : responses) response.get();
+        assertEquals(0, pool.getStats().pending());
+        assertEquals(3, pool.getStats().idle());
+    }
+
+    @Test
+    void requestsGoToTheLeastLoadedConnection() throws Exception {
+        pool(new ConnectionPool.Settings(3, 3, 100, 100, 60_000, 60_000));
+        for (int i = 0; i < 9; i++) request();
+        completeAll();
+
+        int[] perConnection = new int[3];
+        for (CompletableFuture<Integer> request : requests) request.get();
+        for (int i = 0; i < 9; i++) {
+            CompletableFuture<Integer> response = request();
+            requests.get(requests.size() - 1).complete(0);
+            perConnection[response.get()]++;
+        }
+        // sem requisições pendentes todas empatam; a primeira aberta é escolhida
+        assertEquals(9, perConnection[0]);
+
+        requests.clear();
+        List<CompletableFuture<Integer>> pending = new ArrayList<>();
+        for (int i = 0; i < 9; i++) pending.add(request());
+        completeAll();
+        int[] spread = new int[3];
+        for (CompletableFuture<Integer> response : pending) spread[response.get()]++;
+        assertEquals(3, spread[0]);
+        assertEquals(3, spread[1]);
+        assertEquals(3, spread[2]);
+    }
+
+    @Test
+    void waitingCallerProceedsWhenAResponseFreesRoom() throws Exception {
+        pool(new ConnectionPool.Settings(1, 1, 1, TIMEOUT_MILLIS, 60_000, 60_000));
+        CompletableFuture<Integer> first = request();
+
+        CompletableFuture<CompletableFuture<Integer>> second = CompletableFuture.supplyAsync(this::request);
+        await(() -> pool.getStats().waiting() == 1, "a segunda requisição esperar");
+        assertFalse(second.isDone());
+
+        requests.get(0).complete(0);
+        assertEquals(0, first.get());
+        CompletableFuture<Integer> response = second.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        requests.get(1).complete(0);
+        assertEquals(0, response.get());
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(0, stats.waiting());
+        assertEquals(0, stats.timeouts());
+        assertEquals(1, opened.size());
+        assertTrue(stats.averageWaitMillis() > 0);
+    }
+
+    @Test
+    void idleConnectionsAboveTheMinimumAreClosed() throws Exception {
+        pool(new ConnectionPool.Settings(1, 3, 1, 100, 50, 20));
+        for (int i = 0; i < 3; i++) request();
+        assertEquals(3, pool.getStats().open());
+
+        completeAll();
+        await(() -> pool.getStats().open() == 1, "as conexões ociosas fecharem");
+        assertEquals(2, pool.getStats().destroyed());
+        assertEquals(2, opened.stream().filter(FakeConnection::isClosed).count());
+    }
+
+    @Test
+    void busyConnectionsAreNotClosedAsIdle() throws Exception {
+        pool(new ConnectionPool.Settings(0, 2, 1, 100, 20, 10));
+        request();
+        request();
+
+        Thread.sleep(200);
+        assertEquals(2, pool.getStats().open());
+        assertEquals(0, pool.getStats().destroyed());
+    }
+
+    @Test
+    void brokenConnectionsAreReplaced() throws Exception {
+        pool(new ConnectionPool.Settings(2, 2, 10, 100, 60_000, 20));
+        opened.get(0).close();
+
+        // a quebrada é descartada no caminho e a requisição vai pela outra
+        CompletableFuture<Integer> response = request();
+        completeAll();
+        assertEquals(1, response.get());
+
+        await(() -> pool.getStats().open() == 2, "a manutenção reabrir a conexão");
+        assertEquals(3, pool.getStats().created());
+        assertEquals(1, pool.getStats().destroyed());
+    }
+
+    @Test
+    void connectionsFailingValidationAreReplaced() throws Exception {
+        pool(new ConnectionPool.Settings(1, 1, 10, 100, 60_000, 20));
+        invalid.add(opened.get(0));
+
+        await(() -> opened.size() == 2 && pool.getStats().open() == 1, "a manutenção trocar a conexão");
+        assertTrue(opened.get(0).isClosed());
+        CompletableFuture<Integer> response = request();
+        completeAll();
+        assertEquals(1, response.get());
+    }
+
+    @Test
+    void closingThePoolReleasesWaitingCallersAndClosesConnections() throws Exception {
+        pool(new ConnectionPool.Settings(1, 1, 1, TIMEOUT_MILLIS, 60_000, 60_000));
+        request();
+        CompletableFuture<CompletableFuture<Integer>> waiting = CompletableFuture.supplyAsync(this::request);
+        await(() -> pool.getStats().waiting() == 1, "a segunda requisição esperar");
+
+        pool.close();
+        CompletableFuture<Integer> refused = waiting.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertInstanceOf(IOException.class, assertThrows(ExecutionException.class, refused::get).getCause());
+        assertTrue(opened.get(0).isClosed());
+        assertInstanceOf(IOException.class, assertThrows(ExecutionException.class, () -> request().get()).getCause());
+    }
+
+    @Test
+    void unreachableDestinationFailsTheRequest() throws Exception {
+        pool = new ConnectionPool<>(() -> {
+            throw new IOException("recusada");
+        }, connection -> true, new ConnectionPool.Settings(0, 2, 1, 100, 60_000, 60_000));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> pool.execute(
+            connection -> CompletableFuture.completedFuture(1)).get());
+        assertEquals("recusada", error.getCause().getMessage());
+    }
+
+    @Test
+    void invalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionPool.Settings(2, 1, 1, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionPool.Settings(0, 0, 1, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionPool.Settings(0, 1, 0, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionPool.Settings(0, 1, 1, -1, 1, 1));
+    }
+}
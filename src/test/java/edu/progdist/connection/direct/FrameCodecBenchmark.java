@@ -0,0 +1,87 @@
+package edu.progdist.connection.direct;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Custo de codificar e decodificar mensagens em frames do {@link FrameCodec} e em linhas de texto, como o
+ * {@link NioTcpConnection} faz em cada modo: uma leitura com ID de correlação e respostas com muitas leituras. Fora
+ * do {@code mvn test} padrão; rode com {@code mvn test -Dgroups=benchmark -DexcludedGroups=}.
+ */
+@Tag("benchmark")
+class FrameCodecBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int BYTES_PER_ROUND = 64 * 1024 * 1024;
+
+    private static String records(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append("norte/[").append(1000 + i % 50).append("//").append(i % 7).append(".5//")
+                .append(i % 40).append("//").append(i % 100).append(']');
+        }
+        return sb.toString();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 100, 10_000 })
+    void binaryAgainstText(int records) throws IOException {
+        Message message = new Message("SAVE_BATCH", records(records), 123_456);
+        int count = Math.max(1_000, BYTES_PER_ROUND / message.payload().length());
+
+        double[] best = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        long sink = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            ByteBuffer frame = null;
+            for (int i = 0; i < count; i++) frame = FrameCodec.encode(message);
+            long binaryEncode = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) sink += FrameCodec.decode(frame.duplicate()).correlationId();
+            long binaryDecode = System.nanoTime() - start;
+
+            // o texto viaja como a linha do Message mais a quebra de linha, e volta pelo construtor que a interpreta
+            start = System.nanoTime();
+            byte[] line = null;
+            for (int i = 0; i < count; i++) line = (message + "\n").getBytes(StandardCharsets.UTF_8);
+            long textEncode = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sink += new Message(new String(line, 0, line.length - 1, StandardCharsets.UTF_8)).correlationId();
+            }
+            long textDecode = System.nanoTime() - start;
+
+            assertEquals(message, FrameCodec.decode(frame.duplicate()));
+            assertEquals(message, new Message(new String(line, 0, line.length - 1, StandardCharsets.UTF_8)));
+            if (round >= WARMUP_ROUNDS) {
+                long[] nanos = { binaryEncode, binaryDecode, textEncode, textDecode };
+                for (int i = 0; i < nanos.length; i++) best[i] = Math.min(best[i], (double) nanos[i] / count);
+            }
+        }
+
+        int frameBytes = FrameCodec.encode(message).remaining();
+        int lineBytes = (message + "\n").getBytes(StandardCharsets.UTF_8).length;
+        System.out.printf(Locale.ROOT, "%5d leituras: binário %d bytes, codifica %.0f ns, decodifica %.0f ns | "
+                + "texto %d bytes, codifica %.0f ns, decodifica %.0f ns%n",
+            records, frameBytes, best[0], best[1], lineBytes, best[2], best[3]);
+
+        assertTrue(sink != 0);
+        // o frame troca o tipo por um código e o ID textual por 8 bytes fixos; nunca fica maior que a linha
+        assertTrue(frameBytes <= lineBytes + Integer.BYTES, frameBytes + " bytes contra " + lineBytes);
+        // o decodificador binário não procura separadores nem converte o ID de texto
+        assertTrue(best[1] <= best[3] * 1.2,
+            String.format(Locale.ROOT, "decodificação binária %.0f ns contra %.0f ns", best[1], best[3]));
+    }
+}
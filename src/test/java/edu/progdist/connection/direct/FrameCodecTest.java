@@ -0,0 +1,178 @@
+package edu.progdist.connection.direct;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Frames do {@link FrameCodec}: ida e volta dos tipos conhecidos e literais, frames que chegam aos pedaços e frames
+ * malformados, que devem falhar com {@link IOException} sem ler além do próprio corpo.
+ */
+class FrameCodecTest {
+    private static final List<Message> MESSAGES = List.of(
+        new Message("SAVE_DATA", "[1000//5.5//20//40]"),
+        new Message("GET_DATA", "since=42", 7),
+        new Message("", ""),
+        new Message("TIPO_NOVO", "região norte", 0),
+        new Message("TIPO_NOVO", "sem id"),
+        new Message("DATA_PUSH", "x".repeat(100_000), Long.MAX_VALUE));
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(List<Message> messages) {
+        ByteBuffer all = ByteBuffer.allocate(messages.stream().mapToInt(m -> FrameCodec.encode(m).remaining()).sum());
+        for (Message message : messages) all.put(FrameCodec.encode(message));
+        return all.array();
+    }
+
+    // frame com o corpo informado e o tamanho declarado no cabeçalho
+    private static ByteBuffer frame(int bodySize, int... body) {
+        ByteBuffer buffer = ByteBuffer.allocate(FrameCodec.HEADER_SIZE + body.length).putInt(bodySize);
+        for (int b : body) buffer.put((byte) b);
+        return buffer.flip();
+    }
+
+    @Test
+    void messagesSurviveARoundTrip() throws IOException {
+        for (Message message : MESSAGES) {
+            ByteBuffer encoded = FrameCodec.encode(message);
+            assertEquals(message, FrameCodec.decode(encoded));
+            assertEquals(0, encoded.remaining());
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes(FrameCodec.encode(message))));
+            assertEquals(message, FrameCodec.read(in));
+        }
+    }
+
+    @Test
+    void knownTypesDecodeToTheSameInstance() throws IOException {
+        String type = new String("SAVE_DATA".toCharArray());
+        Message decoded = FrameCodec.decode(FrameCodec.encode(new Message(type, "")));
+        assertEquals("SAVE_DATA", decoded.type());
+        assertEquals(System.identityHashCode("SAVE_DATA"), System.identityHashCode(decoded.type()));
+    }
+
+    @Test
+    void headerWithSeparatePayloadMatchesEncode() throws IOException {
+        Message message = new Message("GET_RESPONSE", "[1000//5.5//20//40] [1001//6.5//21//41]", 3);
+        byte[] payload = message.payload().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = FrameCodec.header(new Message("GET_RESPONSE", "", 3), payload.length);
+        ByteBuffer frame = ByteBuffer.allocate(header.remaining() + payload.length).put(header).put(payload).flip();
+
+        assertArrayEquals(bytes(FrameCodec.encode(message)), bytes(frame.duplicate()));
+        assertEquals(message, FrameCodec.decode(frame));
+    }
+
+    @Test
+    void partialFramesWaitWithoutMovingThePosition() throws IOException {
+        byte[] stream = concat(MESSAGES);
+        ByteBuffer in = ByteBuffer.allocate(stream.length);
+        int decoded = 0;
+
+        // os bytes chegam um a um; cada frame só sai inteiro, e na ordem
+        for (byte b : stream) {
+            in.put(b).flip();
+            int before = in.position();
+            Message message = FrameCodec.decode(in);
+            if (message == null) {
+                assertEquals(before, in.position());
+            } else {
+                assertEquals(MESSAGES.get(decoded++), message);
+            }
+            in.compact();
+        }
+        assertEquals(MESSAGES.size(), decoded);
+    }
+
+    @Test
+    void consecutiveFramesInOneBufferDecodeInOrder() throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(concat(MESSAGES));
+        for (Message message : MESSAGES) assertEquals(message, FrameCodec.decode(in));
+        assertNull(FrameCodec.decode(in));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, -1, Integer.MIN_VALUE, FrameCodec.MAX_FRAME_SIZE + 1 })
+    void invalidFrameSizesAreRejected(int bodySize) {
+        assertThrows(IOException.class, () -> FrameCodec.decode(frame(bodySize)));
+        assertThrows(IOException.class, () -> FrameCodec.read(new DataInputStream(
+            new ByteArrayInputStream(bytes(frame(bodySize))))));
+    }
+
+    @Test
+    void correlatedFrameWithoutRoomForTheIdIsRejected() {
+        // corpo de um byte com o bit de correlação; o frame seguinte não pode ser lido como o ID
+        ByteBuffer in = ByteBuffer.allocate(64).put(frame(1, 0x80 | 7)).put(FrameCodec.encode(MESSAGES.get(0))).flip();
+        assertThrows(IOException.class, () -> FrameCodec.decode(in));
+
+        assertThrows(IOException.class, () -> FrameCodec.decode(frame(5, 0x80 | 7, 0, 0, 0, 1)));
+    }
+
+    @Test
+    void literalTypeLongerThanTheFrameIsRejected() {
+        // tipo literal de 0xFFFF bytes em um frame de 4
+        ByteBuffer in = ByteBuffer.allocate(64).put(frame(4, 0, 0xFF, 0xFF, 'A'))
+            .put(FrameCodec.encode(MESSAGES.get(0))).flip();
+        assertThrows(IOException.class, () -> FrameCodec.decode(in));
+
+        assertThrows(IOException.class, () -> FrameCodec.decode(frame(2, 0, 0)));       // tamanho pela metade
+        assertThrows(IOException.class, () -> FrameCodec.decode(frame(4, 0x80, 0, 1, 'A')));   // sem o ID
+        assertThrows(IOException.class, () -> FrameCodec.read(new DataInputStream(
+            new ByteArrayInputStream(bytes(frame(4, 0, 0, 9, 'A'))))));
+    }
+
+    @Test
+    void unknownTypeCodeIsRejected() {
+        assertThrows(IOException.class, () -> FrameCodec.decode(frame(1, 0x7F)));
+    }
+
+    @Test
+    void malformedFrameDisconnectsOnlyItsClient() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        try (NioTcpConnection server = new NioTcpConnection(port, 1, 2, 16)) {
+            server.serve(message -> new Message("SERVER_RESPONSE", message.payload()));
+
+            try (Socket bad = new Socket("localhost", port);
+                 TcpConnection good = new TcpConnection("localhost", port)) {
+                bad.setSoTimeout(10_000);
+                OutputStream out = bad.getOutputStream();
+                InputStream in = bad.getInputStream();
+                out.write(bytes(FrameCodec.preface()));
+                assertArrayEquals(bytes(FrameCodec.preface()), in.readNBytes(FrameCodec.PREFACE.length));
+
+                out.write(bytes(frame(4, 0, 0xFF, 0xFF, 'A')));
+                out.write(bytes(FrameCodec.encode(MESSAGES.get(0))));
+                out.flush();
+                assertEquals(-1, in.read());
+
+                // o selector continua servindo os outros clientes
+                good.send(new Message("GET_DATA", "ainda vivo"));
+                assertEquals(new Message("SERVER_RESPONSE", "ainda vivo"), good.receive());
+            }
+        }
+    }
+}
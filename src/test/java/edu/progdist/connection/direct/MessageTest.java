@@ -0,0 +1,53 @@
+package edu.progdist.connection.direct;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Formato textual de {@link Message}: {@code TIPO#id|payload}, com ID e payload opcionais.
+ */
+class MessageTest {
+
+    private static void assertParsed(String raw, String type, String payload, long correlationId) {
+        assertEquals(new Message(type, payload, correlationId), new Message(raw));
+    }
+
+    @Test
+    void typeIdAndPayloadAreSplitAtTheSeparators() {
+        assertParsed("SAVE_DATA|[1000//5.5//20//40]", "SAVE_DATA", "[1000//5.5//20//40]", -1);
+        assertParsed("GET_DATA#42|since=7", "GET_DATA", "since=7", 42);
+        assertParsed("GET_VERSION#0|", "GET_VERSION", "", 0);
+        assertParsed("GET_VERSION", "GET_VERSION", "", -1);
+        assertParsed("GET_VERSION#9", "GET_VERSION", "", 9);
+        assertParsed("", "", "", -1);
+        assertParsed("|", "", "", -1);
+        assertParsed("#5|x", "", "x", 5);
+    }
+
+    @Test
+    void payloadKeepsItsOwnSeparators() {
+        assertParsed("DATA_RESPONSE#3|a|b#4|c", "DATA_RESPONSE", "a|b#4|c", 3);
+        assertParsed("USER_REQUEST|DRONE_REQUEST#8|x", "USER_REQUEST", "DRONE_REQUEST#8|x", -1);
+    }
+
+    @Test
+    void typeWithoutANumericSuffixHasNoId() {
+        assertParsed("TIPO#|x", "TIPO#", "x", -1);
+        assertParsed("TIPO#1a|x", "TIPO#1a", "x", -1);
+        assertParsed("TIPO1|x", "TIPO1", "x", -1);
+        assertParsed("A#1#2|x", "A#1", "x", 2);
+        // ID que não cabe em um long fica no tipo
+        assertParsed("TIPO#1234567890123456789|x", "TIPO#1234567890123456789", "x", -1);
+    }
+
+    @Test
+    void toStringParsesBackToTheSameMessage() {
+        Message[] messages = {
+            new Message("SAVE_DATA", "norte/[1000//5.5//20//40]"),
+            new Message("GET_DATA", "since=7", 123_456_789_012L),
+            new Message("", "", 0),
+        };
+        for (Message message : messages) assertEquals(message, new Message(message.toString()));
+    }
+}
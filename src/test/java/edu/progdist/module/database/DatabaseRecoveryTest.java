@@ -0,0 +1,155 @@
+package edu.progdist.module.database;
+
+import edu.progdist.module.drone.Reading;
+import edu.progdist.module.drone.ReadingCodec;
+import edu.progdist.module.drone.Region;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Recuperação dos segmentos depois de um truncamento: a reabertura mantém exatamente os registros inteiros e
+ * confirmados, e o banco continua gravando logo depois deles.
+ */
+class DatabaseRecoveryTest {
+    private static final int CAPACITY = 8;
+    private static final long SEGMENT_BYTES = MappedSegment.HEADER_SIZE + (long) CAPACITY * MappedSegment.RECORD_SIZE;
+    private static final Region[] REGIONS = { Region.NORTH, Region.SOUTH, Region.EAST, Region.WEST };
+
+    @TempDir
+    Path directory;
+
+    private static Reading reading(int i) {
+        return new Reading(1000 + i, i + 0.5, 20 + i, 40 + i);
+    }
+
+    private static long timestamp(int i) {
+        return 1_700_000_000_000L + i;
+    }
+
+    private void write(int count) throws IOException {
+        Database database = Database.open(ReadingCodec.Format.DATASERVER, directory, SEGMENT_BYTES);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, database.append(timestamp(i), REGIONS[i % REGIONS.length], reading(i)));
+        }
+        database.close();
+    }
+
+    private void truncate(int segment, long size) throws IOException {
+        Path path = directory.resolve(String.format("segment-%06d.dat", segment));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private void patchHeader(int offset, int value) throws IOException {
+        Path path = directory.resolve(String.format("segment-%06d.dat", 0));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, value), offset);
+        }
+    }
+
+    private static void assertRecords(Database database, int count) {
+        assertEquals(count, database.getTotalCount());
+
+        Reading out = new Reading();
+        for (int i = 0; i < count; i++) {
+            assertEquals(REGIONS[i % REGIONS.length], database.get(i, out));
+            assertEquals(reading(i).toString(), out.toString());
+        }
+
+        long[] visited = { 0 };
+        database.scan((sequence, timestamp, region, reading) -> {
+            assertEquals(timestamp(Math.toIntExact(sequence)), timestamp);
+            visited[0]++;
+        });
+        assertEquals(count, visited[0]);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 8, 16, 28, 29, 30, 31 })
+    void truncationInsideARecordKeepsOnlyTheWholeRecordsBeforeIt(int cut) throws IOException {
+        write(5);
+        truncate(0, MappedSegment.HEADER_SIZE + 3L * MappedSegment.RECORD_SIZE + cut);
+
+        try (Database reopened = Database.open(ReadingCodec.Format.DATASERVER, directory, SEGMENT_BYTES)) {
+            assertRecords(reopened, 3);
+        }
+    }
+
+    @Test
+    void truncationAtARecordBoundaryLosesNothingBeforeIt() throws IOException {
+        write(5);
+        truncate(0, MappedSegment.HEADER_SIZE + 4L * MappedSegment.RECORD_SIZE);
+
+        try (Database reopened = Database.open(ReadingCodec.Format.DATASERVER, directory, SEGMENT_BYTES)) {
+            assertRecords(reopened, 4);
+        }
+    }
+
+    @Test
+    void recoveredDatabaseAppendsRightAfterTheLastWholeRecord() throws IOException {
+        write(5);
+        truncate(0, MappedSegment.HEADER_SIZE + 2L * MappedSegment.RECORD_SIZE + MappedSegment.RECORD_SIZE / 2);
+
+        try (Database reopened = Database.open(ReadingCodec.Format.DATASERVER, directory, SEGMENT_BYTES)) {
+            assertRecords(reopened, 2);
+            assertEquals(2, reopened.append(timestamp(2), REGIONS[2], reading(2)));
+        }
+        try (Database reopened = Database.open(ReadingCodec.Format.DATASERVER, directory, SEGMENT_BYTES)) {
+            assertRecords(reopened, 3);
+        }
+    }
+
+    @Test
+    void truncatedSegmentDiscardsTheSegmentsAfterIt() throws IOException {
+        write(CAPACITY + 3);
+        truncate(0, MappedSegment.HEADER_SIZE + 6L * MappedSegment.RECORD_SIZE + 5);
+
+        try (Database reopened = Database.open(ReadingCodec.Format.DATASERVER, directory, SEGMENT_BYTES)) {
+            assertRecords(reopened, 6);
+        }
+    }
+
+    @Test
+    void truncatedHeaderIsRejected() throws IOException {
+        write(1);
+        truncate(0, MappedSegment.HEADER_SIZE - 1);
+
+        assertThrows(IOException.class,
+            () -> Database.open(ReadingCodec.Format.DATASERVER, directory, SEGMENT_BYTES));
+    }
+
+    // capacidades que não cabem no arquivo de CAPACITY registros, ou que não cabem em um segmento
+    @ParameterizedTest
+    @ValueSource(ints = {
+        0, -1, 1, CAPACITY - 1, MappedSegment.MAX_CAPACITY + 1, Integer.MAX_VALUE, Integer.MIN_VALUE
+    })
+    void corruptCapacityIsRejected(int capacity) throws IOException {
+        write(3);
+        patchHeader(MappedSegment.CAPACITY_OFFSET, capacity);
+
+        assertThrows(IOException.class,
+            () -> Database.open(ReadingCodec.Format.DATASERVER, directory, SEGMENT_BYTES));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { -1, CAPACITY + 1, Integer.MAX_VALUE })
+    void corruptCountIsRejected(int count) throws IOException {
+        write(3);
+        patchHeader(MappedSegment.COUNT_OFFSET, count);
+
+        assertThrows(IOException.class,
+            () -> Database.open(ReadingCodec.Format.DATASERVER, directory, SEGMENT_BYTES));
+    }
+}
@@ -0,0 +1,98 @@
+package edu.progdist.module.database;
+
+import edu.progdist.connection.direct.Message;
+import edu.progdist.connection.direct.MultiplexedConnection;
+import edu.progdist.module.drone.ReadingCodec;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Medições do {@link DatabaseServer}: vazão de escritas sem e com confirmação e latência de um {@code GET_DATA}
+ * completo e de um delta. Fora do {@code mvn test} padrão; rode com
+ * {@code mvn test -Dgroups=benchmark -DexcludedGroups=}.
+ */
+@Tag("benchmark")
+class DatabaseServerBenchmark {
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+
+    @ParameterizedTest
+    @ValueSource(strings = { "text", "binary" })
+    void writes(String framing) throws Exception {
+        int count = 100_000;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            Database database = new Database(ReadingCodec.Format.DATASERVER);
+            DatabaseServer server = new DatabaseServer(database);
+            int port = DatabaseServerTest.freePort();
+            server.start(port);
+            try (MultiplexedConnection connection = DatabaseServerTest.connect(port, framing)) {
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) connection.send(new Message("SAVE_DATA", DatabaseServerTest.record(i)));
+                connection.request(new Message("GET_VERSION", "")).get();
+                long uncorrelated = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                List<CompletableFuture<Message>> acks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    acks.add(connection.request(new Message("SAVE_DATA", DatabaseServerTest.record(i))));
+                }
+                CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new)).get();
+                long correlated = System.nanoTime() - start;
+
+                assertEquals(2L * count, database.getTotalCount());
+                if (round >= WARMUP_ROUNDS) {
+                    report(framing, "SAVE_DATA sem ID", count, uncorrelated);
+                    report(framing, "SAVE_DATA com ID", count, correlated);
+                }
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "text", "binary" })
+    void reads(String framing) throws Exception {
+        int count = 1_000_000;
+        Database database = new Database(ReadingCodec.Format.DATASERVER);
+        database.saveBatch(DatabaseServerTest.records(0, count));
+        DatabaseServer server = new DatabaseServer(database);
+        int port = DatabaseServerTest.freePort();
+        server.start(port);
+
+        try (MultiplexedConnection connection = DatabaseServerTest.connect(port, framing)) {
+            for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+                long start = System.nanoTime();
+                Message data = connection.request(new Message("GET_DATA", "")).get();
+                long full = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                Message delta = connection.request(new Message("GET_DATA", "since=" + (count - 100))).get();
+                long tail = System.nanoTime() - start;
+
+                assertEquals("GET_RESPONSE", data.type());
+                assertEquals("DELTA_RESPONSE", delta.type());
+                if (round >= WARMUP_ROUNDS) {
+                    System.out.printf(Locale.ROOT,
+                        "[%s] GET_DATA de %d leituras (%.1f MB): %.1f ms; delta de 100: %.2f ms%n",
+                        framing, count, data.payload().length() / 1e6, full / 1e6, tail / 1e6);
+                }
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void report(String framing, String operation, int count, long nanos) {
+        System.out.printf(Locale.ROOT, "[%s] %s: %d em %.1f ms (%.0f/s)%n",
+            framing, operation, count, nanos / 1e6, count / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,211 @@
+package edu.progdist.module.database;
+
+import edu.progdist.connection.direct.FrameCodec;
+import edu.progdist.connection.direct.Message;
+import edu.progdist.connection.direct.MultiplexedConnection;
+import edu.progdist.connection.direct.TcpConnection;
+import edu.progdist.module.drone.Reading;
+import edu.progdist.module.drone.ReadingCodec;
+import edu.progdist.module.drone.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Protocolo do {@link DatabaseServer} por uma conexão real, em texto e em binário: escritas sem ID vistas pela
+ * consulta seguinte, confirmação das escritas com ID só depois de aplicadas, deltas por cursor sem lacunas nem
+ * repetições e respostas grandes transmitidas aos pedaços sem perder nem reordenar leituras.
+ */
+class DatabaseServerTest {
+    static final long TIMEOUT_MILLIS = 30_000;
+
+    private Database database;
+    private DatabaseServer server;
+    private int port;
+    private final List<MultiplexedConnection> connections = new ArrayList<>();
+
+    @BeforeEach
+    void start() throws IOException {
+        database = new Database(ReadingCodec.Format.DATASERVER);
+        server = new DatabaseServer(database);
+        port = freePort();
+        server.start(port);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        for (MultiplexedConnection connection : connections) connection.close();
+        server.stop();
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // o modo de enquadramento é negociado ao conectar, conforme a propriedade de sistema
+    static MultiplexedConnection connect(int port, String framing) throws IOException {
+        String previous = System.getProperty(FrameCodec.FRAMING_PROPERTY);
+        System.setProperty(FrameCodec.FRAMING_PROPERTY, framing);
+        try {
+            return new MultiplexedConnection(new TcpConnection("localhost", port), TIMEOUT_MILLIS);
+        } finally {
+            if (previous != null) System.setProperty(FrameCodec.FRAMING_PROPERTY, previous);
+            else System.clearProperty(FrameCodec.FRAMING_PROPERTY);
+        }
+    }
+
+    private MultiplexedConnection connect(String framing) throws IOException {
+        MultiplexedConnection connection = connect(port, framing);
+        connections.add(connection);
+        return connection;
+    }
+
+    static String record(int i) {
+        return "[" + (1000 + i % 50) + "//" + (i % 7) + ".5//" + (i % 40) + "//" + (i % 100) + "]";
+    }
+
+    // leituras [from, to) como o banco as devolve, separadas por espaço
+    static String records(int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i > from) sb.append(' ');
+            sb.append(record(i));
+        }
+        return sb.toString();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "text", "binary" })
+    void uncorrelatedWritesAreVisibleToTheNextRead(String framing) throws Exception {
+        MultiplexedConnection connection = connect(framing);
+        int count = 5_000;
+        for (int i = 0; i < count; i++) connection.send(new Message("SAVE_DATA", record(i)));
+
+        Message version = connection.request(new Message("GET_VERSION", "")).get();
+        assertEquals(new Message("VERSION_RESPONSE", Integer.toString(count)), version.withoutCorrelation());
+
+        Message data = connection.request(new Message("GET_DATA", "")).get();
+        assertEquals("GET_RESPONSE", data.type());
+        assertEquals(records(0, count), data.payload());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "text", "binary" })
+    void correlatedWritesAreAckedOnceApplied(String framing) throws Exception {
+        MultiplexedConnection connection = connect(framing);
+        int count = 2_000;
+        List<CompletableFuture<Message>> acks = new ArrayList<>();
+        for (int i = 0; i < count; i++) acks.add(connection.request(new Message("SAVE_DATA", record(i))));
+
+        for (int i = 0; i < count; i++) {
+            Message ack = acks.get(i).get();
+            assertEquals("SAVE_RESPONSE", ack.type());
+            assertTrue(Long.parseLong(ack.payload()) >= i + 1, "confirmada antes de aplicada: " + ack);
+        }
+
+        Message invalid = connection.request(new Message("SAVE_DATA", "lixo")).get();
+        assertEquals("DATABASE_ERROR", invalid.type());
+        assertEquals(count, database.getTotalCount());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "text", "binary" })
+    void largeResponsesAreStreamedIntact(String framing) throws Exception {
+        int count = 200_000;
+        database.saveBatch(records(0, count));
+        MultiplexedConnection connection = connect(framing);
+
+        Message data = connection.request(new Message("GET_DATA", "")).get();
+        assertEquals(records(0, count), data.payload());
+
+        Message delta = connection.request(new Message("GET_DATA", "since=" + (count - 3))).get();
+        assertEquals("DELTA_RESPONSE", delta.type());
+        assertEquals(count + ";" + records(count - 3, count), delta.payload());
+
+        Message empty = connection.request(new Message("GET_DATA", "since=" + count)).get();
+        assertEquals(count + ";", empty.payload());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "text", "binary" })
+    void cursorsFollowNewReadingsWithoutGapsOrRepeats(String framing) throws Exception {
+        MultiplexedConnection connection = connect(framing);
+        StringBuilder received = new StringBuilder();
+        long cursor = 0;
+        int written = 0;
+        for (int round = 1; round <= 5; round++) {
+            for (int i = 0; i < 100 * round; i++) connection.send(new Message("SAVE_DATA", record(written++)));
+
+            Message delta = connection.request(new Message("GET_DATA", "since=" + cursor)).get();
+            assertEquals("DELTA_RESPONSE", delta.type());
+            int separator = delta.payload().indexOf(';');
+            cursor = Long.parseLong(delta.payload().substring(0, separator));
+            assertEquals(written, cursor);
+            if (received.length() > 0) received.append(' ');
+            received.append(delta.payload().substring(separator + 1));
+        }
+        assertEquals(records(0, written), received.toString());
+
+        // cursores fora do intervalo são ajustados a ele; os que não são números voltam como erro
+        assertEquals(written + ";" + records(0, written),
+            connection.request(new Message("GET_DATA", "since=-5")).get().payload());
+        assertEquals(written + ";", connection.request(new Message("GET_DATA", "since=" + (written + 10))).get()
+            .payload());
+        assertEquals("DATABASE_ERROR", connection.request(new Message("GET_DATA", "since=abc")).get().type());
+    }
+
+    @Test
+    void batchesKeepTheRegionOfEachReading() throws Exception {
+        MultiplexedConnection connection = connect("binary");
+        Message ack = connection.request(
+            new Message("SAVE_BATCH", "norte/" + record(0) + " " + record(1) + " oeste/" + record(2))).get();
+        assertEquals(new Message("SAVE_RESPONSE", "3"), ack.withoutCorrelation());
+
+        Reading reading = new Reading();
+        assertEquals(Region.NORTH, database.get(0, reading));
+        assertEquals(Region.UNKNOWN, database.get(1, reading));
+        assertEquals(Region.WEST, database.get(2, reading));
+        assertEquals(record(2), reading.toString());
+    }
+
+    @Test
+    void malformedFrameDisconnectsOnlyItsClient() throws Exception {
+        MultiplexedConnection good = connect("binary");
+        good.send(new Message("SAVE_DATA", record(0)));
+
+        try (Socket bad = new Socket("localhost", port)) {
+            bad.setSoTimeout((int) TIMEOUT_MILLIS);
+            OutputStream out = bad.getOutputStream();
+            InputStream in = bad.getInputStream();
+            byte[] preface = new byte[FrameCodec.preface().remaining()];
+            FrameCodec.preface().get(preface);
+            out.write(preface);
+            assertEquals(preface.length, in.readNBytes(preface.length).length);
+
+            // corpo de um byte com o bit de correlação, seguido de um frame válido que não pode virar o ID
+            out.write(new byte[] { 0, 0, 0, 1, (byte) 0x87 });
+            out.write(FrameCodec.encode(new Message("SAVE_DATA", record(1))).array());
+            out.flush();
+            assertEquals(-1, in.read());
+        }
+
+        Message version = good.request(new Message("GET_VERSION", "")).get();
+        assertEquals(new Message("VERSION_RESPONSE", "1"), version.withoutCorrelation());
+    }
+}
@@ -0,0 +1,219 @@
+package edu.progdist.module.datacenter;
+
+import edu.progdist.connection.direct.Server.Host;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Três Datacenters trocando rodadas de gossip por um grupo simulado em memória, com perda e reordenação de pacotes.
+ * Cada Dataserver é ouvido diretamente por um só Datacenter e cada um concede usuários por conta própria; o cluster
+ * converge quando os três têm os mesmos servidores, com a mesma sequência de relatório e a mesma contagem de conexões.
+ */
+class ClusterGossipTest {
+    // os mesmos valores padrão do Datacenter
+    private static final long GOSSIP_INTERVAL = 1000;
+    private static final long PEER_TIMEOUT = 3 * GOSSIP_INTERVAL;
+    private static final long TOMBSTONE_TTL = 60_000;
+    private static final int PAYLOAD_BYTES = 960;
+
+    private static final int INSTANCES = 3;
+    private static final int SERVERS = 30;
+    private static final int MAX_ROUNDS = 50;
+
+    // uma instância: o que o Datacenter usa do registro e do gossip
+    private record Instance(ServerRegistry registry, ClusterGossip gossip) {}
+
+    private final List<Instance> instances = new ArrayList<>();
+    private final long[] sequences = new long[SERVERS];
+    private long now;
+
+    private void start() {
+        for (int i = 0; i < INSTANCES; i++) {
+            // concessões não expiram durante o teste, que roda em bem menos tempo
+            ServerRegistry registry = new ServerRegistry(600_000, 10_000);
+            PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(100, 1000, 250, 3000);
+            instances.add(new Instance(registry,
+                new ClusterGossip("dc-" + i, registry, detector, PEER_TIMEOUT, TOMBSTONE_TTL, PAYLOAD_BYTES)));
+        }
+    }
+
+    private static String serverId(int server) {
+        return "dataserver-" + server;
+    }
+
+    // relatório direto do servidor, ouvido só pela instância informada
+    private void report(int server, Instance instance, int sessions) {
+        sequences[server]++;
+        LoadReport report = new LoadReport(serverId(server), 5000 + server, sessions, 0.1 * (server % 10), false,
+            12.5, server % 4, 4, sequences[server], false);
+        instance.gossip().reported(report.serverId());
+        instance.registry().update(report.serverId(), new Host("10.0.0." + server + ":" + report.port()), report);
+    }
+
+    // uma rodada: cada instância publica e as outras recebem o que não se perdeu, em ordem embaralhada
+    private void round(Random random, double loss) {
+        now += GOSSIP_INTERVAL;
+        List<String> packets = new ArrayList<>();
+        for (Instance instance : instances) packets.addAll(instance.gossip().round());
+
+        for (Instance instance : instances) {
+            List<String> received = new ArrayList<>(packets);
+            Collections.shuffle(received, random);
+            for (String payload : received) {
+                if (random.nextDouble() >= loss) instance.gossip().merge(payload, now);
+            }
+        }
+    }
+
+    // servidor -> "sequência/conexões" como cada instância o vê
+    private static Map<String, String> view(Instance instance) {
+        Map<String, String> view = new TreeMap<>();
+        for (ServerAddress server : instance.registry().servers()) {
+            view.put(server.serverId(), server.getReportSequence() + "/" + server.getConnectionCount());
+        }
+        return view;
+    }
+
+    private boolean converged() {
+        Map<String, String> first = view(instances.get(0));
+        if (first.size() != SERVERS) return false;
+        for (Instance instance : instances) {
+            if (!view(instance).equals(first)) return false;
+        }
+        return true;
+    }
+
+    // rodadas até convergir, ou -1 se não convergiu em MAX_ROUNDS
+    private int converge(Random random, double loss) {
+        for (int rounds = 0; rounds <= MAX_ROUNDS; rounds++) {
+            if (converged()) return rounds;
+            round(random, loss);
+        }
+        return -1;
+    }
+
+    // cada servidor é ouvido por uma só instância, que também encaminha a ele alguns usuários
+    private void seed(Random random) {
+        for (int server = 0; server < SERVERS; server++) {
+            Instance instance = instances.get(server % INSTANCES);
+            report(server, instance, random.nextInt(20));
+            int leases = random.nextInt(3);
+            for (int j = 0; j < leases; j++) {
+                assertNotNull(instance.registry().lease(instance.registry().get(serverId(server))));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = { 0, 0.1, 0.3 })
+    void threeInstancesConverge(double loss) {
+        int worst = 0;
+        long total = 0;
+        int runs = 20;
+        for (long seed = 1; seed <= runs; seed++) {
+            instances.clear();
+            Arrays.fill(sequences, 0);
+            Random random = new Random(seed);
+            start();
+            seed(random);
+
+            int rounds = converge(random, loss);
+            assertTrue(rounds >= 0, "sem convergência em " + MAX_ROUNDS + " rodadas com perda " + loss);
+
+            // um relatório novo ouvido por uma só instância chega às demais
+            report(0, instances.get(1), 99);
+            int again = converge(random, loss);
+            assertTrue(again >= 0, "atualização não propagada com perda " + loss);
+            assertEquals(sequences[0] + "/" + (99 + instances.get(0).registry().localLeases(
+                instances.get(0).registry().get(serverId(0)))), view(instances.get(2)).get(serverId(0)));
+
+            worst = Math.max(worst, Math.max(rounds, again));
+            total += rounds;
+        }
+
+        System.out.printf(Locale.ROOT,
+            "Perda de %.0f%%: convergência em %.1f rodadas em média (%.1f s), pior caso %d%n",
+            loss * 100, (double) total / runs, total * GOSSIP_INTERVAL / 1000.0 / runs, worst);
+
+        // sem perdas, o grupo entrega tudo a todos: uma rodada basta
+        if (loss == 0) assertEquals(1, worst);
+        assertTrue(worst <= 10, "convergência lenta com perda " + loss + ": " + worst + " rodadas");
+    }
+
+    @Test
+    void staleGossipDoesNotOverwriteNewerReports() {
+        start();
+        Instance a = instances.get(0);
+        Instance b = instances.get(1);
+
+        report(0, a, 5);
+        List<String> stale = a.gossip().round();
+        report(0, a, 7);
+        List<String> fresh = a.gossip().round();
+
+        for (String payload : fresh) b.gossip().merge(payload, now);
+        for (String payload : stale) b.gossip().merge(payload, now);   // atrasado: chega depois do novo
+
+        ServerAddress server = b.registry().get(serverId(0));
+        assertEquals(sequences[0], server.getReportSequence());
+        assertEquals(7, server.getReportedSessions());
+    }
+
+    @Test
+    void removedServerIsNotRevivedByLateGossip() {
+        start();
+        Instance a = instances.get(0);
+        Instance b = instances.get(1);
+
+        report(0, a, 5);
+        List<String> late = a.gossip().round();
+        for (String payload : late) b.gossip().merge(payload, now);
+
+        // b declara o servidor morto, e a rodada de a chega de novo, atrasada
+        ServerAddress removed = b.registry().get(serverId(0));
+        assertTrue(b.registry().remove(serverId(0)));
+        b.gossip().removed(removed, now);
+
+        for (String payload : late) b.gossip().merge(payload, now);
+        assertNull(b.registry().get(serverId(0)));
+
+        // um relatório mais novo prova que o servidor voltou
+        report(0, a, 6);
+        for (String payload : a.gossip().round()) b.gossip().merge(payload, now);
+        assertNotNull(b.registry().get(serverId(0)));
+    }
+
+    @Test
+    void leasesOfASilentPeerStopCounting() {
+        start();
+        Instance a = instances.get(0);
+        Instance b = instances.get(1);
+
+        report(0, a, 5);
+        report(0, b, 5);
+        a.registry().lease(a.registry().get(serverId(0)));
+        a.registry().lease(a.registry().get(serverId(0)));
+        for (String payload : a.gossip().round()) b.gossip().merge(payload, now);
+        assertEquals(7, b.registry().get(serverId(0)).getConnectionCount());
+
+        b.gossip().expire(now + PEER_TIMEOUT);
+        assertEquals(7, b.registry().get(serverId(0)).getConnectionCount());
+        b.gossip().expire(now + PEER_TIMEOUT + 1);
+        assertEquals(5, b.registry().get(serverId(0)).getConnectionCount());
+    }
+}
@@ -0,0 +1,103 @@
+package edu.progdist.module.datacenter;
+
+import edu.progdist.connection.direct.Server.Host;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Anel de hash consistente: só cerca de 1/N das chaves muda de dono quando um servidor entra ou sai, e um dono
+ * acima do limite de carga transborda a chave para o próximo servidor do anel.
+ */
+class ConsistentHashRingTest {
+    private static final int SERVERS = 10;
+    private static final int KEYS = 20_000;
+
+    // concessões não expiram durante o teste
+    private final ServerRegistry registry = new ServerRegistry(600_000, 10_000);
+    private final ConsistentHashRing ring = new ConsistentHashRing(160, 1.25);
+
+    private void report(int server, int sessions) {
+        LoadReport report = new LoadReport("dataserver-" + server, 5000 + server, sessions, 0.5, false, 0, 0, 1, 0,
+            false);
+        registry.update(report.serverId(), new Host("10.0.0.1:" + report.port()), report);
+    }
+
+    private String owner(String key) {
+        return ring.candidates(registry, key, 1).get(0).serverId();
+    }
+
+    private List<String> owners() {
+        List<String> owners = new ArrayList<>(KEYS);
+        for (int key = 0; key < KEYS; key++) owners.add(owner("chave-" + key));
+        return owners;
+    }
+
+    // a fração esperada com folga para a variação dos nós virtuais
+    private static void assertAboutOneIn(int servers, int moved) {
+        double expected = KEYS / (double) servers;
+        assertTrue(moved > expected / 2 && moved < expected * 1.5,
+            moved + " chaves mudaram de dono, esperadas cerca de " + (int) expected);
+    }
+
+    @Test
+    void joiningServerTakesAboutOneNthOfTheKeys() {
+        for (int server = 0; server < SERVERS; server++) report(server, 0);
+        List<String> before = owners();
+
+        report(SERVERS, 0);
+        List<String> after = owners();
+
+        int moved = 0;
+        for (int key = 0; key < KEYS; key++) {
+            if (before.get(key).equals(after.get(key))) continue;
+            moved++;
+            assertEquals("dataserver-" + SERVERS, after.get(key), "uma chave mudou entre servidores antigos");
+        }
+        assertAboutOneIn(SERVERS + 1, moved);
+    }
+
+    @Test
+    void leavingServerHandsOnlyItsKeysOver() {
+        for (int server = 0; server < SERVERS; server++) report(server, 0);
+        List<String> before = owners();
+
+        registry.remove("dataserver-3");
+        List<String> after = owners();
+
+        int moved = 0;
+        for (int key = 0; key < KEYS; key++) {
+            if (before.get(key).equals(after.get(key))) continue;
+            moved++;
+            assertEquals("dataserver-3", before.get(key), "uma chave de um servidor que ficou mudou de dono");
+        }
+        assertAboutOneIn(SERVERS, moved);
+    }
+
+    @Test
+    void overloadedOwnerSpillsToTheNextServer() {
+        for (int server = 0; server < 4; server++) report(server, 10);
+        List<ServerAddress> order = ring.candidates(registry, "norte", 4);
+        assertEquals(4, order.size());
+
+        // 30 + 3 * 10 = 60 conexões: o limite é ceil(1.25 * 61 / 4) = 20, e o dono passa dele
+        report(Integer.parseInt(order.get(0).serverId().substring("dataserver-".length())), 30);
+        assertEquals(order.get(1), ring.candidates(registry, "norte", 1).get(0));
+        assertEquals(order.get(1), ring.select(registry, "norte").server());
+
+        // o sobrecarregado vai para o fim das tentativas, sem sair delas
+        assertEquals(List.of(order.get(1), order.get(2), order.get(3), order.get(0)),
+            ring.candidates(registry, "norte", 4));
+    }
+
+    @Test
+    void invalidParametersAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(0, 1.25));
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(160, 0.5));
+    }
+}
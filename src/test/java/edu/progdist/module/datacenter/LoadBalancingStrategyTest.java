@@ -0,0 +1,83 @@
+package edu.progdist.module.datacenter;
+
+import edu.progdist.connection.direct.Server.Host;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Estratégias de duas escolhas com um servidor lento entre servidores rápidos. Enquanto as concessões dos rápidos
+ * não compensam a lentidão, o lento só recebe um usuário quando é sorteado duas vezes seguidas, uma vez em
+ * {@code SERVERS²} escolhas; sem a estratégia, receberia uma em {@code SERVERS}.
+ */
+class LoadBalancingStrategyTest {
+    private static final int SERVERS = 4;
+    private static final int SELECTIONS = 1000;
+    private static final String SLOW = "dataserver-0";
+
+    // concessões não expiram durante o teste
+    private final ServerRegistry registry = new ServerRegistry(600_000, 10_000);
+    private final long[] sequences = new long[SERVERS];
+
+    private void report(ServerRegistry registry, int server, double serviceTimeMillis, int outstanding) {
+        LoadReport report = new LoadReport("dataserver-" + server, 5000 + server, 0, 0.5, false, serviceTimeMillis,
+            outstanding, 4, ++sequences[server], false);
+        registry.update(report.serverId(), new Host("10.0.0.1:" + report.port()), report);
+    }
+
+    private Map<String, Integer> select(LoadBalancingStrategy strategy) {
+        Map<String, Integer> chosen = new HashMap<>();
+        for (int i = 0; i < SELECTIONS; i++) {
+            chosen.merge(strategy.select(registry).server().serverId(), 1, Integer::sum);
+        }
+        return chosen;
+    }
+
+    // esperado SELECTIONS / SERVERS² = 62 com desvio de uns 8; a escolha uniforme daria 250
+    private static void assertAvoided(Map<String, Integer> chosen) {
+        int slow = chosen.getOrDefault(SLOW, 0);
+        assertTrue(slow < 2 * SELECTIONS / (SERVERS * SERVERS), "o servidor lento recebeu " + slow + ": " + chosen);
+    }
+
+    @Test
+    void peakEwmaAvoidsTheSlowServer() {
+        report(registry, 0, 200, 0);
+        for (int server = 1; server < SERVERS; server++) report(registry, server, 5, 0);
+
+        assertAvoided(select(LoadBalancingStrategy.PEAK_EWMA));
+    }
+
+    @Test
+    void weightedLeastOutstandingAvoidsTheBacklog() {
+        report(registry, 0, 5, 400);
+        for (int server = 1; server < SERVERS; server++) report(registry, server, 5, 0);
+
+        assertAvoided(select(LoadBalancingStrategy.WEIGHTED_LEAST_OUTSTANDING));
+    }
+
+    @Test
+    void serviceTimePeaksAtOnceAndDecaysOverTime() throws InterruptedException {
+        ServerRegistry decaying = new ServerRegistry(600_000, 10);
+        report(decaying, 0, 5, 0);
+        report(decaying, 0, 200, 0);
+        assertEquals(200, decaying.get(SLOW).getServiceTime());
+
+        // dez constantes de tempo depois, o pico pesa menos de um milésimo
+        Thread.sleep(100);
+        report(decaying, 0, 5, 0);
+        assertTrue(decaying.get(SLOW).getServiceTime() < 6, "tempo de serviço " + decaying.get(SLOW).getServiceTime());
+    }
+
+    @Test
+    void strategiesAreFoundByName() {
+        assertSame(LoadBalancingStrategy.PEAK_EWMA, LoadBalancingStrategy.byName("peak-ewma"));
+        assertSame(LoadBalancingStrategy.POWER_OF_TWO_CHOICES, LoadBalancingStrategy.byName("P2C"));
+        assertThrows(IllegalArgumentException.class, () -> LoadBalancingStrategy.byName("round-robin"));
+    }
+}
@@ -0,0 +1,131 @@
+package edu.progdist.module.datacenter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Simulação do detector com o relógio controlado pelo teste: heartbeats a cada segundo com atraso variável e perda
+ * de pacotes injetada, verificados a cada meio segundo como faz o Datacenter. Um servidor vivo não pode ser dado
+ * como morto, e um servidor que parou deve ser suspeito e depois removido em poucos intervalos.
+ */
+class PhiAccrualFailureDetectorTest {
+    // os mesmos valores padrão do Datacenter
+    private static final long INTERVAL = 1000;
+    private static final long CHECK_INTERVAL = INTERVAL / 2;
+    private static final long ACCEPTABLE_PAUSE = 3 * INTERVAL;
+    private static final double SUSPECT_PHI = 3;
+    private static final double DEAD_PHI = 8;
+
+    private static final long JITTER = 100;
+    private static final long SIMULATED_MILLIS = 30 * 60 * 1000;
+    private static final int SEEDS = 10;
+
+    private static PhiAccrualFailureDetector detector() {
+        return new PhiAccrualFailureDetector(100, INTERVAL, INTERVAL / 4, ACCEPTABLE_PAUSE);
+    }
+
+    // resultado de uma simulação: fração das verificações com suspeita e maior phi enquanto o servidor estava vivo, e
+    // quanto tempo depois da falha ele foi suspeito e removido
+    private record Outcome(double suspectFraction, double maxLivePhi, long suspectAfter, long deadAfter) {}
+
+    // o servidor envia heartbeats por SIMULATED_MILLIS, cada um perdido com probabilidade loss, e então para
+    private static Outcome simulate(double loss, long seed) {
+        Random random = new Random(seed);
+        PhiAccrualFailureDetector detector = detector();
+        long crashAt = SIMULATED_MILLIS;
+
+        long nextSend = 0;
+        long nextCheck = CHECK_INTERVAL;
+        long checks = 0;
+        long suspectChecks = 0;
+        double maxLivePhi = 0;
+        long suspectAfter = -1;
+        long deadAfter = -1;
+
+        while (deadAfter < 0) {
+            if (nextSend < crashAt && nextSend <= nextCheck) {
+                // o primeiro heartbeat sempre chega, para que o servidor entre no registro
+                if (nextSend == 0 || random.nextDouble() >= loss) {
+                    detector.heartbeat("dataserver", nextSend + (long) (random.nextDouble() * JITTER));
+                }
+                nextSend += INTERVAL;
+                continue;
+            }
+
+            double phi = detector.phi("dataserver", nextCheck);
+            if (nextCheck < crashAt) {
+                checks++;
+                if (phi >= SUSPECT_PHI) suspectChecks++;
+                maxLivePhi = Math.max(maxLivePhi, phi);
+            } else {
+                if (suspectAfter < 0 && phi >= SUSPECT_PHI) suspectAfter = nextCheck - crashAt;
+                if (phi >= DEAD_PHI) deadAfter = nextCheck - crashAt;
+            }
+            nextCheck += CHECK_INTERVAL;
+        }
+        return new Outcome((double) suspectChecks / checks, maxLivePhi, suspectAfter, deadAfter);
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = { 0, 0.05, 0.1, 0.2 })
+    void liveServerIsNeverDeclaredDead(double loss) {
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            Outcome outcome = simulate(loss, seed);
+            assertTrue(outcome.maxLivePhi() < DEAD_PHI, "servidor vivo removido com perda " + loss + ": " + outcome);
+            assertTrue(outcome.suspectFraction() < 0.001, "suspeitas demais com perda " + loss + ": " + outcome);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = { 0, 0.05, 0.1, 0.2 })
+    void crashedServerIsDetectedWithinAFewIntervals(double loss) {
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            Outcome outcome = simulate(loss, seed);
+            assertTrue(outcome.suspectAfter() <= 7 * INTERVAL, "suspeita tardia com perda " + loss + ": " + outcome);
+            assertTrue(outcome.deadAfter() <= 8 * INTERVAL, "remoção tardia com perda " + loss + ": " + outcome);
+            assertTrue(outcome.suspectAfter() <= outcome.deadAfter());
+        }
+    }
+
+    @Test
+    void lossyHistoryWaitsLongerBeforeSuspecting() {
+        Outcome regular = simulate(0, 1);
+        Outcome lossy = simulate(0.2, 1);
+
+        // sem perdas a janela é regular e a falha aparece logo depois da pausa tolerada
+        assertTrue(regular.suspectAfter() <= INTERVAL + ACCEPTABLE_PAUSE, regular.toString());
+        assertTrue(lossy.deadAfter() > regular.deadAfter(), regular + " " + lossy);
+    }
+
+    @Test
+    void unknownOrJustSeenServerIsNotSuspected() {
+        PhiAccrualFailureDetector detector = detector();
+        assertEquals(0, detector.phi("dataserver", 10_000));
+
+        detector.heartbeat("dataserver", 0);
+        assertTrue(detector.phi("dataserver", INTERVAL) < SUSPECT_PHI);
+
+        detector.remove("dataserver");
+        assertEquals(0, detector.phi("dataserver", 60_000));
+    }
+
+    @Test
+    void phiGrowsWithSilence() {
+        PhiAccrualFailureDetector detector = detector();
+        for (long t = 0; t <= 20 * INTERVAL; t += INTERVAL) detector.heartbeat("dataserver", t);
+
+        double previous = -1;
+        for (long silence = 0; silence <= 10 * INTERVAL; silence += CHECK_INTERVAL) {
+            double phi = detector.phi("dataserver", 20 * INTERVAL + silence);
+            assertTrue(phi >= previous, "phi diminuiu após " + silence + " ms");
+            previous = phi;
+        }
+        assertTrue(previous >= DEAD_PHI);
+    }
+}
@@ -0,0 +1,100 @@
+package edu.progdist.module.datacenter;
+
+import edu.progdist.connection.direct.Server.Host;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Escolha do servidor com 10 mil Dataservers: o {@link ServerRegistry}, com índices ordenados, contra a varredura
+ * da lista inteira sob um lock que o Datacenter fazia antes. Cada rodada intercala relatórios e escolhas. Fora do
+ * {@code mvn test} padrão; rode com {@code mvn test -Dgroups=benchmark -DexcludedGroups=}.
+ */
+@Tag("benchmark")
+class ServerRegistryBenchmark {
+    private static final int SERVERS = 10_000;
+    private static final int OPERATIONS = 200_000;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+
+    // o registro anterior: servidores em uma lista, a escolha percorre todos
+    private static final class ScanRegistry {
+        private final List<int[]> servers = new ArrayList<>();   // { sessões, concessões }
+
+        synchronized void report(int server, int sessions) {
+            servers.get(server)[0] = sessions;
+            servers.get(server)[1] = 0;
+        }
+
+        synchronized int leastConnections() {
+            int[] least = servers.stream().min(Comparator.comparingInt(s -> s[0] + s[1])).orElseThrow();
+            least[1]++;
+            return least[0];
+        }
+    }
+
+    @Test
+    void indexedSelectionBeatsTheScan() {
+        double indexed = Double.MAX_VALUE;
+        double scan = Double.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            double indexedNanos = indexed(new Random(round));
+            double scanNanos = scan(new Random(round));
+            if (round >= WARMUP_ROUNDS) {
+                indexed = Math.min(indexed, indexedNanos);
+                scan = Math.min(scan, scanNanos);
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "%,d servidores: registro %,8.0f ns/op, varredura %,10.0f ns/op (%.0fx)%n",
+            SERVERS, indexed, scan, scan / indexed);
+        // o relatório também custa O(log n) no registro e O(1) na lista; na mistura a diferença fica menor
+        assertTrue(scan > 3 * indexed, String.format(Locale.ROOT, "registro %.0f ns, varredura %.0f ns",
+            indexed, scan));
+    }
+
+    // metade relatórios, metade escolhas; nanossegundos por operação
+    private static double indexed(Random random) {
+        ServerRegistry registry = new ServerRegistry(600_000, 10_000);
+        for (int server = 0; server < SERVERS; server++) report(registry, server, random.nextInt(100));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            if ((i & 1) == 0) {
+                report(registry, random.nextInt(SERVERS), random.nextInt(100));
+            } else if (registry.leastConnections() == null) {
+                throw new AssertionError("Nenhum servidor escolhido");
+            }
+        }
+        return (System.nanoTime() - start) / (double) OPERATIONS;
+    }
+
+    private static double scan(Random random) {
+        ScanRegistry registry = new ScanRegistry();
+        for (int server = 0; server < SERVERS; server++) registry.servers.add(new int[] { random.nextInt(100), 0 });
+
+        // a varredura é ordens de grandeza mais lenta: um décimo das operações basta
+        int operations = OPERATIONS / 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            if ((i & 1) == 0) {
+                registry.report(random.nextInt(SERVERS), random.nextInt(100));
+            } else {
+                registry.leastConnections();
+            }
+        }
+        return (System.nanoTime() - start) / (double) operations;
+    }
+
+    private static void report(ServerRegistry registry, int server, int sessions) {
+        LoadReport report = new LoadReport("dataserver-" + server, 5000, sessions, 0.5, false, 0, 0, 1, 0, false);
+        registry.update(report.serverId(), new Host("10.0.0.1:5000"), report);
+    }
+}
@@ -0,0 +1,171 @@
+package edu.progdist.module.datacenter;
+
+import edu.progdist.connection.direct.Server.Host;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Índices do {@link ServerRegistry}: a escolha pelo menor número de conexões e pelo menor uso de recursos, a
+ * devolução das concessões e a consistência dos índices com relatórios, concessões e suspeitas chegando de várias
+ * threads ao mesmo tempo.
+ */
+class ServerRegistryTest {
+    private static final int SERVERS = 200;
+    private static final int THREADS = 4;
+    private static final int OPERATIONS = 20_000;
+
+    // concessões não expiram durante o teste
+    private final ServerRegistry registry = new ServerRegistry(600_000, 10_000);
+
+    private static String serverId(int server) {
+        return "dataserver-" + server;
+    }
+
+    private void report(int server, int sessions, double resourceUsage) {
+        LoadReport report = new LoadReport(serverId(server), 5000 + server, sessions, resourceUsage, false, 0, 0, 1,
+            0, false);
+        registry.update(report.serverId(), new Host("10.0.0.1:" + report.port()), report);
+    }
+
+    @Test
+    void selectsTheLeastLoadedServer() {
+        report(0, 5, 0.9);
+        report(1, 2, 0.1);
+        report(2, 7, 0.5);
+
+        assertEquals(serverId(1), registry.leastResourceUsage().serverId());
+        ServerRegistry.Lease lease = registry.leastConnections();
+        assertEquals(serverId(1), lease.server().serverId());
+        assertEquals(3, lease.server().getConnectionCount());
+
+        // as concessões contam: o servidor 1 recebe clientes até empatar com o 0, e o serverId desempata
+        assertEquals(serverId(1), registry.leastConnections().server().serverId());
+        assertEquals(serverId(1), registry.leastConnections().server().serverId());
+        assertEquals(serverId(0), registry.leastConnections().server().serverId());
+        assertEquals(18, registry.routableConnections());
+    }
+
+    @Test
+    void suspectServersLeaveTheIndexes() {
+        report(0, 1, 0.1);
+        report(1, 9, 0.9);
+
+        assertTrue(registry.setSuspect(serverId(0), true));
+        assertEquals(serverId(1), registry.leastConnections().server().serverId());
+        assertEquals(serverId(1), registry.leastResourceUsage().serverId());
+        assertEquals(10, registry.routableConnections());
+
+        assertTrue(registry.remove(serverId(1)));
+        assertNull(registry.leastConnections());
+        assertNull(registry.leastResourceUsage());
+        assertEquals(0, registry.routableConnections());
+    }
+
+    @Test
+    void releasedLeasesStopCountingAtOnce() {
+        report(0, 2, 0.5);
+        ServerRegistry.Lease first = registry.leastConnections();
+        ServerRegistry.Lease second = registry.leastConnections();
+        assertEquals(4, first.server().getConnectionCount());
+
+        assertTrue(registry.release(first));
+        assertFalse(registry.release(first));
+        assertTrue(registry.release(serverId(0), second.id()));
+        assertFalse(registry.release(serverId(1), second.id()));
+        assertEquals(2, first.server().getConnectionCount());
+        assertEquals(0, registry.localLeases(first.server()));
+        assertEquals(2, registry.routableConnections());
+    }
+
+    @Test
+    void drainingReleasesPendingLeases() {
+        report(0, 2, 0.5);
+        ServerAddress server = registry.leastConnections().server();
+        registry.leastConnections();
+
+        LoadReport draining = new LoadReport(serverId(0), 5000, 2, 0.5, true, 0, 0, 1, 0, false);
+        registry.update(draining.serverId(), new Host("10.0.0.1:5000"), draining);
+        assertEquals(0, registry.localLeases(server));
+        assertEquals(2, server.getConnectionCount());
+        assertNull(registry.leastConnections());
+    }
+
+    @Test
+    @Timeout(60)
+    void concurrentReportsAndSelectionsKeepTheIndexesConsistent() throws Exception {
+        for (int server = 0; server < SERVERS; server++) report(server, server % 10, 0.5);
+
+        AtomicLong leases = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        int server = random.nextInt(SERVERS);
+                        switch (random.nextInt(5)) {
+                            case 0, 1 -> report(server, random.nextInt(50), random.nextDouble());
+                            case 2 -> {
+                                if (registry.leastConnections() != null) leases.incrementAndGet();
+                            }
+                            case 3 -> {
+                                if (registry.powerOfTwoChoices() != null) leases.incrementAndGet();
+                            }
+                            default -> registry.setSuspect(serverId(server), random.nextInt(4) == 0);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) worker.get();
+        }
+        for (int server = 0; server < SERVERS; server++) registry.setSuspect(serverId(server), false);
+
+        // nenhuma concessão se perdeu, e cada contagem é o relatório mais as concessões
+        long granted = 0;
+        long connections = 0;
+        for (ServerAddress server : registry.servers()) {
+            granted += registry.localLeases(server);
+            connections += server.getConnectionCount();
+            assertEquals(server.getReportedSessions() + registry.localLeases(server), server.getConnectionCount());
+        }
+        assertEquals(leases.get(), granted);
+        assertEquals(connections, registry.routableConnections());
+
+        // cada servidor aparece uma só vez nos índices e na amostra, com a chave atual
+        List<ServerAddress> byUsage = registry.leastResourceUsage(Integer.MAX_VALUE);
+        assertEquals(SERVERS, byUsage.size());
+        assertEquals(SERVERS, new HashSet<>(byUsage).size());
+        for (int i = 1; i < byUsage.size(); i++) {
+            assertTrue(byUsage.get(i - 1).getResourceUsage() <= byUsage.get(i).getResourceUsage());
+        }
+        assertEquals(SERVERS, Set.of(registry.routableMembers()).size());
+
+        for (int i = 0; i < SERVERS; i++) {
+            int least = registry.servers().stream().mapToInt(ServerAddress::getConnectionCount).min().orElseThrow();
+            ServerRegistry.Lease lease = registry.leastConnections();
+            assertNotNull(lease);
+            assertEquals(least + 1, lease.server().getConnectionCount());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package edu.progdist.module.dataserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Histerese do {@link AdmissionController} pela profundidade da fila, com marcas de CPU e heap que a máquina não
+ * alcança: o servidor passa a descartar carga na marca e só volta ao normal abaixo da fração de recuperação.
+ */
+class AdmissionControllerTest {
+    private static final int QUEUE_MARK = 100;
+
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AdmissionController admission = new AdmissionController(
+        new AdmissionController.Watermarks(2, 2, QUEUE_MARK, 0.8, 1000), depth::get);
+
+    private boolean sample(int queueDepth) {
+        depth.set(queueDepth);
+        admission.sample();
+        assertEquals(queueDepth, admission.current().queueDepth());
+        return admission.isShedding();
+    }
+
+    @Test
+    void sheddingStartsAtTheMarkAndStopsBelowTheRecoveryFraction() {
+        assertFalse(sample(QUEUE_MARK - 1));
+        assertTrue(sample(QUEUE_MARK));
+
+        // entre a recuperação (80) e a marca o estado não muda, em nenhum dos dois sentidos
+        assertTrue(sample(90));
+        assertTrue(sample(80));
+        assertFalse(sample(79));
+        assertFalse(sample(90));
+
+        assertTrue(sample(150));
+        assertEquals(2, admission.getStats().sheddingEpisodes());
+    }
+
+    @Test
+    void sheddingRefusesSessionsAndLimitsReads() {
+        assertTrue(admission.admitSession());
+        assertTrue(admission.admitRead(1000, 4));
+
+        sample(QUEUE_MARK);
+        assertFalse(admission.admitSession());
+        assertTrue(admission.admitRead(3, 4));
+        assertFalse(admission.admitRead(4, 4));
+        assertEquals(new AdmissionController.Stats(1, 1, 1), admission.getStats());
+
+        sample(0);
+        assertTrue(admission.admitSession());
+    }
+
+    @Test
+    void retryAfterVariesBetweenOneAndTwoTimesTheBase() {
+        for (int i = 0; i < 1000; i++) {
+            long retryAfter = admission.retryAfterMillis();
+            assertTrue(retryAfter >= 1000 && retryAfter <= 2000, "espera de " + retryAfter + " ms");
+        }
+    }
+
+    @Test
+    void invalidWatermarksAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionController.Watermarks(0, 0.85, 10, 0.8, 0));
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionController.Watermarks(0.9, 0.85, 10, 1.5, 0));
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionController.Watermarks(0.9, 0.85, 0, 0.8, 0));
+    }
+}
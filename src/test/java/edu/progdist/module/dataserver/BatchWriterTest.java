@@ -0,0 +1,150 @@
+package edu.progdist.module.dataserver;
+
+import edu.progdist.connection.direct.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link BatchWriter} com um banco simulado: agrupamento das leituras, conclusão só com a confirmação do lote e
+ * recusa quando o banco para de responder e a fila enche.
+ */
+class BatchWriterTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+    private static final int MAX_IN_FLIGHT = 16;   // o mesmo limite do BatchWriter
+
+    // lotes recebidos e as respostas que o teste completa
+    private final List<Message> batches = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Message>> responses = new CopyOnWriteArrayList<>();
+    private volatile boolean autoAck = true;
+    private BatchWriter writer;
+
+    @AfterEach
+    void close() {
+        ackAll();
+        if (writer != null) writer.close();
+    }
+
+    private BatchWriter writer(BatchWriter.Settings settings) {
+        writer = new BatchWriter(batch -> {
+            batches.add(batch);
+            CompletableFuture<Message> response = new CompletableFuture<>();
+            responses.add(response);
+            if (autoAck) response.complete(new Message("SAVE_RESPONSE", Integer.toString(batches.size())));
+            return response;
+        }, settings);
+        return writer;
+    }
+
+    private void ackAll() {
+        for (CompletableFuture<Message> response : responses) response.complete(new Message("SAVE_RESPONSE", "0"));
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("Prazo esgotado esperando " + description);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void readingsAreSentInBatchesAndInOrder() throws Exception {
+        writer(new BatchWriter.Settings(10, 50, 100, 100));
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (int i = 0; i < 25; i++) done.add(writer.submit("r" + i));
+        for (CompletableFuture<Void> future : done) future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        List<String> sent = new ArrayList<>();
+        for (Message batch : batches) {
+            assertEquals("SAVE_BATCH", batch.type());
+            String[] records = batch.payload().split(" ");
+            assertTrue(records.length <= 10, "lote com " + records.length + " leituras");
+            sent.addAll(List.of(records));
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) expected.add("r" + i);
+        assertEquals(expected, sent);
+        assertTrue(batches.size() < 25, batches.size() + " lotes para 25 leituras");
+        assertEquals(new BatchWriter.Stats(25, batches.size(), 0, 0), writer.getStats());
+    }
+
+    @Test
+    void readingIsDoneOnlyWhenTheDatabaseAcksItsBatch() throws Exception {
+        autoAck = false;
+        writer(new BatchWriter.Settings(10, 0, 100, 100));
+        CompletableFuture<Void> done = writer.submit("r0");
+
+        await(() -> responses.size() == 1, "o lote ser enviado");
+        assertFalse(done.isDone());
+        responses.get(0).complete(new Message("SAVE_RESPONSE", "1"));
+        done.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void fullQueueRejectsReadingsUntilTheDatabaseCatchesUp() throws Exception {
+        autoAck = false;
+        writer(new BatchWriter.Settings(1, 0, 4, 50));
+
+        // o banco não responde: a escritora envia MAX_IN_FLIGHT lotes e para com o seguinte nas mãos
+        List<CompletableFuture<Void>> accepted = new ArrayList<>();
+        for (int i = 0; i <= MAX_IN_FLIGHT; i++) {
+            accepted.add(writer.submit("r" + i));
+            await(() -> writer.queueDepth() == 0, "a escritora tirar a leitura da fila");
+        }
+        assertEquals(MAX_IN_FLIGHT, batches.size());
+
+        for (int i = 0; i < 4; i++) accepted.add(writer.submit("fila" + i));
+        assertEquals(4, writer.queueDepth());
+
+        CompletableFuture<Void> refused = writer.submit("recusada");
+        ExecutionException error = assertThrows(ExecutionException.class, refused::get);
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+        assertEquals(1, writer.getStats().rejected());
+
+        // com as confirmações, a escritora volta a andar e todas as aceitas são gravadas
+        autoAck = true;
+        ackAll();
+        for (CompletableFuture<Void> future : accepted) future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(MAX_IN_FLIGHT + 5, writer.getStats().records());
+        writer.submit("depois").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void refusedBatchFailsItsReadings() throws Exception {
+        writer = new BatchWriter(batch -> CompletableFuture.completedFuture(
+            new Message("DATABASE_ERROR", "Dados inválidos")), new BatchWriter.Settings(10, 0, 100, 100));
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+            () -> writer.submit("lixo").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(IOException.class, error.getCause());
+        assertEquals(1, writer.getStats().failed());
+    }
+
+    @Test
+    void closeSendsQueuedReadingsAndRefusesNewOnes() throws Exception {
+        writer(new BatchWriter.Settings(100, 1000, 100, 100));
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (int i = 0; i < 10; i++) done.add(writer.submit("r" + i));
+
+        writer.close();
+        for (CompletableFuture<Void> future : done) assertTrue(future.isDone() && !future.isCompletedExceptionally());
+        assertInstanceOf(RejectedExecutionException.class,
+            assertThrows(ExecutionException.class, () -> writer.submit("tarde").get()).getCause());
+    }
+}
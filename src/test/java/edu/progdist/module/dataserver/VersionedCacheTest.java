@@ -0,0 +1,138 @@
+package edu.progdist.module.dataserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link VersionedCache} com um banco simulado: uma só consulta para requisições simultâneas, revalidação pela
+ * versão depois do prazo e descarte da cópia por {@link VersionedCache#invalidate()}, inclusive durante a leitura.
+ */
+class VersionedCacheTest {
+    private static final long FRESH_MILLIS = 60_000;
+
+    // consultas pendentes até o teste completá-las; version é a versão atual dos dados
+    private final List<CompletableFuture<VersionedCache.Entry<String>>> loads = new CopyOnWriteArrayList<>();
+    private final AtomicInteger versionQueries = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong(1);
+
+    private VersionedCache<String> cache(long maxStalenessMillis) {
+        return new VersionedCache<>(maxStalenessMillis, () -> {
+            versionQueries.incrementAndGet();
+            return CompletableFuture.completedFuture(version.get());
+        }, () -> {
+            CompletableFuture<VersionedCache.Entry<String>> load = new CompletableFuture<>();
+            loads.add(load);
+            return load;
+        });
+    }
+
+    private void completeLoad(int index) {
+        loads.get(index).complete(new VersionedCache.Entry<>(version.get(), "dados-v" + version.get()));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        VersionedCache<String> cache = cache(FRESH_MILLIS);
+        List<CompletableFuture<String>> waiting = new ArrayList<>();
+        for (int i = 0; i < 10; i++) waiting.add(cache.get());
+
+        assertEquals(1, loads.size());
+        for (CompletableFuture<String> response : waiting) assertSame(waiting.get(0), response);
+        assertFalse(waiting.get(0).isDone());
+
+        completeLoad(0);
+        for (CompletableFuture<String> response : waiting) assertEquals("dados-v1", response.get());
+        assertEquals(new VersionedCache.Stats(0, 0, 1, 9), cache.getStats());
+    }
+
+    @Test
+    void freshCopyIsServedWithoutTheDatabase() throws Exception {
+        VersionedCache<String> cache = cache(FRESH_MILLIS);
+        cache.get();
+        completeLoad(0);
+
+        assertEquals("dados-v1", cache.get().get());
+        assertEquals("dados-v1", cache.get().get());
+        assertEquals(1, loads.size());
+        assertEquals(0, versionQueries.get());
+        assertEquals(1, cache.freshVersion());
+        assertEquals(2, cache.getStats().hits());
+    }
+
+    @Test
+    void staleCopyIsReadAgainOnlyIfTheVersionChanged() throws Exception {
+        VersionedCache<String> cache = cache(0);
+        cache.get();
+        completeLoad(0);
+        assertEquals(-1, cache.freshVersion());
+
+        // a versão não mudou: uma consulta barata confirma a cópia
+        assertEquals("dados-v1", cache.get().get());
+        assertEquals(1, versionQueries.get());
+        assertEquals(1, loads.size());
+        assertEquals(1, cache.getStats().revalidations());
+
+        version.set(2);
+        CompletableFuture<String> changed = cache.get();
+        assertEquals(2, loads.size());
+        completeLoad(1);
+        assertEquals("dados-v2", changed.get());
+        assertEquals(2, cache.getStats().misses());
+    }
+
+    @Test
+    void invalidationDiscardsAFreshCopy() throws Exception {
+        VersionedCache<String> cache = cache(FRESH_MILLIS);
+        cache.get();
+        completeLoad(0);
+
+        version.set(2);
+        cache.invalidate();
+        assertEquals(-1, cache.freshVersion());
+        CompletableFuture<String> reloaded = cache.get();
+        assertEquals(2, loads.size());
+        assertEquals(0, versionQueries.get());
+        completeLoad(1);
+        assertEquals("dados-v2", reloaded.get());
+    }
+
+    @Test
+    void invalidationDuringALoadIsNotHiddenByIt() throws Exception {
+        VersionedCache<String> cache = cache(FRESH_MILLIS);
+        CompletableFuture<String> first = cache.get();
+
+        // a gravação chega enquanto a leitura está em andamento: a resposta serve a quem esperava, mas não fica
+        cache.invalidate();
+        completeLoad(0);
+        assertEquals("dados-v1", first.get());
+        assertEquals(-1, cache.freshVersion());
+
+        cache.get();
+        assertEquals(2, loads.size());
+    }
+
+    @Test
+    void failuresAreNotCached() throws Exception {
+        VersionedCache<String> cache = cache(FRESH_MILLIS);
+        CompletableFuture<String> failed = cache.get();
+        loads.get(0).completeExceptionally(new IllegalStateException("banco fora do ar"));
+        assertThrows(ExecutionException.class, failed::get);
+
+        CompletableFuture<String> retried = cache.get();
+        assertEquals(2, loads.size());
+        completeLoad(1);
+        assertEquals("dados-v1", retried.get());
+    }
+}
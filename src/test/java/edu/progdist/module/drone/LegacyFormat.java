@@ -0,0 +1,42 @@
+package edu.progdist.module.drone;
+
+/**
+ * Formatação anterior ao {@link ReadingCodec}, copiada do Gateway e do Dataserver, usada como referência nos testes
+ * de paridade e na medição. Concatena um caractere por vez e testa separadores com {@code String.matches}; a única
+ * mudança é a guarda para um {@code '-'} no primeiro caractere, que no original lançava exceção.
+ */
+final class LegacyFormat {
+
+    private LegacyFormat() {}
+
+    // Gateway.formatData: [temperatura|umidade|pressão|radiação]
+    static String gateway(String data) {
+        String[] values = split(data);
+        if (values == null) return ReadingCodec.INVALID_DATA;
+        return "[" + values[2] + "|" + values[3] + "|" + values[0] + "|" + values[1] + "]";
+    }
+
+    // Dataserver.format: [pressão//radiação//temperatura//umidade]
+    static String dataserver(String data) {
+        String[] values = split(data);
+        if (values == null) return ReadingCodec.INVALID_DATA;
+        return "[" + values[0] + "//" + values[1] + "//" + values[2] + "//" + values[3] + "]";
+    }
+
+    private static String[] split(String data) {
+        if (data == null || data.isEmpty()) return null;
+
+        char[] array = data.toCharArray();
+        String[] values = { "", "", "", "" };
+        int j = 0;
+        for (int i = 0; i < array.length; i++) {
+            if (Character.isDigit(array[i]) || array[i] == '.'
+                || (array[i] == '-' && (i == 0 || !Character.isDigit(array[i - 1])))) {
+                values[j] = values[j].concat(String.valueOf(array[i]));
+            } else if (String.valueOf(array[i]).matches("[-,;#]")) {
+                j++;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,69 @@
+package edu.progdist.module.drone;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tempo por payload do {@link ReadingCodec} contra a formatação anterior ({@link LegacyFormat}), nos quatro formatos
+ * de drone misturados. Fora do {@code mvn test} padrão; rode com
+ * {@code mvn test -Dgroups=benchmark -DexcludedGroups=}.
+ */
+@Tag("benchmark")
+class ReadingCodecBenchmark {
+    private static final int PAYLOADS = 100_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    @Test
+    void codecIsFasterThanTheLegacyFormatting() {
+        Random random = new Random(7);
+        String[] payloads = new String[PAYLOADS];
+        for (int i = 0; i < PAYLOADS; i += 4) {
+            EnviromentData data = new EnviromentData();
+            data.randomize();
+            System.arraycopy(ReadingCodecTest.payloads(data), 0, payloads, i, 4);
+        }
+        // embaralhado para que a ordem dos formatos não favoreça a previsão de desvios
+        for (int i = PAYLOADS - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String swap = payloads[i];
+            payloads[i] = payloads[j];
+            payloads[j] = swap;
+        }
+
+        double legacy = Double.MAX_VALUE;
+        double codec = Double.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String payload : payloads) sink += LegacyFormat.gateway(payload).length();
+            double legacyNanos = (double) (System.nanoTime() - start) / PAYLOADS;
+
+            start = System.nanoTime();
+            Reading reading = new Reading();
+            StringBuilder sb = new StringBuilder(32);
+            for (String payload : payloads) {
+                sb.setLength(0);
+                if (ReadingCodec.parse(payload, reading)) {
+                    sink += ReadingCodec.Format.GATEWAY.append(sb, reading).length();
+                }
+            }
+            double codecNanos = (double) (System.nanoTime() - start) / PAYLOADS;
+
+            if (round >= WARMUP_ROUNDS) {
+                legacy = Math.min(legacy, legacyNanos);
+                codec = Math.min(codec, codecNanos);
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "formatação anterior: %.0f ns/payload; ReadingCodec: %.0f ns/payload (%.1fx)%n",
+            legacy, codec, legacy / codec);
+        assertTrue(sink > 0);
+        assertTrue(codec < legacy, "ReadingCodec não ficou mais rápido: " + codec + " ns contra " + legacy + " ns");
+    }
+}
@@ -0,0 +1,106 @@
+package edu.progdist.module.drone;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Paridade do {@link ReadingCodec} com a formatação anterior ({@link LegacyFormat}) nos quatro formatos de drone,
+ * leitura de volta dos formatos de armazenamento e rejeição de payloads malformados.
+ */
+class ReadingCodecTest {
+
+    static String format(String payload, ReadingCodec.Format format) {
+        Reading reading = new Reading();
+        return ReadingCodec.parse(payload, reading) ? format.format(reading) : ReadingCodec.INVALID_DATA;
+    }
+
+    // os quatro formatos de uma mesma leitura, como o drone de cada região os publica
+    static String[] payloads(EnviromentData data) {
+        return new String[] {
+            data.toNorthFormat(), data.toSouthFormat(), data.toEastFormat(), data.toWestFormat()
+        };
+    }
+
+    @Test
+    void matchesTheLegacyFormattingForDronePayloads() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            EnviromentData data = new EnviromentData(870 + random.nextInt(214),
+                Math.round((4.5 + 2 * random.nextDouble()) * 100.0) / 100.0, -89 + random.nextInt(146),
+                15 + random.nextInt(56));
+            for (String payload : payloads(data)) {
+                assertEquals(LegacyFormat.gateway(payload), format(payload, ReadingCodec.Format.GATEWAY), payload);
+                assertEquals(LegacyFormat.dataserver(payload), format(payload, ReadingCodec.Format.DATASERVER),
+                    payload);
+            }
+        }
+    }
+
+    @Test
+    void matchesTheLegacyFormattingAtTheEdges() {
+        EnviromentData[] edges = {
+            new EnviromentData(870, 4.5, -89, 15),
+            new EnviromentData(1083, 6.5, 56, 70),
+            new EnviromentData(1000, 5.05, 0, 0),
+            new EnviromentData(0, 0.0, -1, 100),
+        };
+        for (EnviromentData data : edges) {
+            for (String payload : payloads(data)) {
+                assertEquals(LegacyFormat.gateway(payload), format(payload, ReadingCodec.Format.GATEWAY), payload);
+                assertEquals(LegacyFormat.dataserver(payload), format(payload, ReadingCodec.Format.DATASERVER),
+                    payload);
+            }
+        }
+    }
+
+    @Test
+    void storedFormatsParseBackToTheSameReading() {
+        Reading reading = new Reading(1013, 5.75, -12, 48);
+        for (ReadingCodec.Format format : ReadingCodec.Format.values()) {
+            Reading parsed = new Reading();
+            assertTrue(format.parse(format.format(reading), parsed), format.name());
+            assertEquals(1013, parsed.pressure());
+            assertEquals(5.75, parsed.radiation());
+            assertEquals(-12, parsed.temperature());
+            assertEquals(48, parsed.humidity());
+            assertEquals(format.format(reading), format.format(parsed));
+        }
+    }
+
+    @Test
+    void storedFormatsRejectTheOtherSeparator() {
+        Reading parsed = new Reading();
+        assertFalse(ReadingCodec.Format.GATEWAY.parse("[1013//5.75//-12//48]", parsed));
+        assertFalse(ReadingCodec.Format.DATASERVER.parse("[-12|48|1013|5.75]", parsed));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "",                         // vazio
+        "1000-5.5-20",              // campos a menos
+        "1000-5.5-20-40-7",         // campos a mais: o formatador antigo lançava ArrayIndexOutOfBounds
+        "(1000;;20;40)",            // campo vazio
+        "{1000.5,5.5,20,40}",       // decimal fora da radiação
+        "1000#5.5.1#20#40",         // dois pontos decimais
+        "1000#5.5#--20#40",         // sinal repetido
+        "1000#5.5#2-0#40#",         // '-' depois de dígito fora do formato norte vira separador extra
+        "99999999999#5.5#20#40",    // fora do intervalo de int
+        "1234567890123456789#5.5#20#40",
+    })
+    void malformedPayloadsAreRejected(String payload) {
+        assertEquals(ReadingCodec.INVALID_DATA, format(payload, ReadingCodec.Format.GATEWAY));
+        assertFalse(ReadingCodec.parse(payload, new Reading()));
+    }
+
+    @Test
+    void nullIsRejected() {
+        assertFalse(ReadingCodec.parse(null, new Reading()));
+    }
+}
@@ -0,0 +1,233 @@
+package edu.progdist.module.service;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Broker em memória com uma fila, no lugar do RabbitMQ, para exercitar o {@link QueueConsumer} pela API real do
+ * cliente. Só os métodos de {@link Connection} e {@link Channel} usados pelo consumidor são implementados, por
+ * proxies; os demais lançam {@link UnsupportedOperationException}.
+ * <p>
+ * Como no cliente, cada canal entrega suas mensagens uma de cada vez e em ordem, em uma thread própria, respeitando
+ * o {@code prefetch}. {@code basicAck} com {@code multiple=true} confirma todas as entregas até a tag. Uma exceção
+ * do consumidor fecha o canal, e as mensagens não confirmadas de um canal fechado voltam ao início da fila,
+ * marcadas como reentregues.
+ */
+final class FakeBroker {
+
+    private record Message(String routingKey, String messageId, byte[] body, boolean redelivered) {
+        Message redelivery() {
+            return new Message(routingKey, messageId, body, true);
+        }
+    }
+
+    private final BlockingDeque<Message> ready = new LinkedBlockingDeque<>();
+    private final List<FakeChannel> channels = new ArrayList<>();
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong ackCalls = new AtomicLong();
+    private final AtomicLong redelivered = new AtomicLong();
+    private final AtomicInteger channelNumbers = new AtomicInteger();
+
+    void publish(String routingKey, String messageId, String body) {
+        ready.addLast(new Message(routingKey, messageId, body.getBytes(StandardCharsets.UTF_8), false));
+    }
+
+    /**
+     * Mensagens confirmadas, contando cada uma coberta por uma confirmação múltipla.
+     */
+    long acked() {
+        return acked.get();
+    }
+
+    /**
+     * Chamadas a {@code basicAck}.
+     */
+    long ackCalls() {
+        return ackCalls.get();
+    }
+
+    long redelivered() {
+        return redelivered.get();
+    }
+
+    /**
+     * Espera até {@code count} mensagens confirmadas.
+     *
+     * @return {@code false} se o prazo acabou antes
+     */
+    boolean awaitAcked(long count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (acked.get() < count) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    Connection connection() {
+        return proxy(Connection.class, (method, args) -> switch (method.getName()) {
+            case "createChannel" -> {
+                FakeChannel channel = new FakeChannel(channelNumbers.incrementAndGet());
+                synchronized (channels) {
+                    channels.add(channel);
+                }
+                yield channel.proxy;
+            }
+            case "isOpen" -> true;
+            case "close" -> {
+                closeAll();
+                yield null;
+            }
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    void closeAll() {
+        synchronized (channels) {
+            for (FakeChannel channel : channels) channel.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object invoke(Method method, Object[] args) throws Exception;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler invocation = (proxy, method, args) -> switch (method.getName()) {
+            case "toString" -> type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            default -> handler.invoke(method, args);
+        };
+        return type.cast(Proxy.newProxyInstance(FakeBroker.class.getClassLoader(), new Class<?>[] { type },
+            invocation));
+    }
+
+    // um canal com um consumidor: entrega em uma thread própria enquanto houver crédito de prefetch
+    private final class FakeChannel {
+        private final int number;
+        private final Channel proxy;
+        private final ConcurrentSkipListMap<Long, Message> unacked = new ConcurrentSkipListMap<>();
+        private final Semaphore credits = new Semaphore(0);
+        private volatile boolean open = true;
+        private int prefetch;
+        private long nextTag = 1;
+
+        private FakeChannel(int number) {
+            this.number = number;
+            this.proxy = FakeBroker.proxy(Channel.class, (method, args) -> switch (method.getName()) {
+                case "basicQos" -> {
+                    prefetch = (Integer) args[0];
+                    yield null;
+                }
+                case "basicConsume" -> {
+                    if (args.length != 4 || Boolean.TRUE.equals(args[1])) {
+                        throw new UnsupportedOperationException("basicConsume sem confirmação manual");
+                    }
+                    consume((DeliverCallback) args[2]);
+                    yield "consumer-" + number;
+                }
+                case "basicAck" -> {
+                    ack((Long) args[0], (Boolean) args[1]);
+                    yield null;
+                }
+                case "isOpen" -> open;
+                case "close" -> {
+                    close();
+                    yield null;
+                }
+                case "getChannelNumber" -> number;
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+        }
+
+        private void consume(DeliverCallback callback) {
+            credits.release(prefetch > 0 ? prefetch : Integer.MAX_VALUE / 2);
+            Thread.ofPlatform().daemon().name("fake-broker-channel-" + number).start(() -> {
+                try {
+                    while (open) {
+                        if (!credits.tryAcquire(10, TimeUnit.MILLISECONDS)) continue;
+                        Message message = ready.pollFirst(10, TimeUnit.MILLISECONDS);
+                        if (message == null || !open) {
+                            if (message != null) ready.addFirst(message);
+                            credits.release();
+                            continue;
+                        }
+                        deliver(callback, message);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        private void deliver(DeliverCallback callback, Message message) {
+            long tag = nextTag++;
+            synchronized (this) {
+                // fechado enquanto esperava a mensagem: ela volta para a fila sem ser entregue
+                if (!open) {
+                    ready.addFirst(message);
+                    return;
+                }
+                unacked.put(tag, message);
+            }
+            if (message.redelivered()) redelivered.incrementAndGet();
+
+            AMQP.BasicProperties properties = message.messageId() != null
+                ? new AMQP.BasicProperties.Builder().messageId(message.messageId()).build()
+                : null;
+            Delivery delivery = new Delivery(new Envelope(tag, message.redelivered(), "drones", message.routingKey()),
+                properties, message.body());
+            try {
+                callback.handle("consumer-" + number, delivery);
+            } catch (Exception | Error e) {
+                close();    // como o cliente: erro no consumidor derruba o canal
+            }
+        }
+
+        private void ack(long tag, boolean multiple) {
+            if (!open) throw new IllegalStateException("Canal fechado.");
+            ackCalls.incrementAndGet();
+
+            int released = 0;
+            if (multiple) {
+                Map<Long, Message> covered = unacked.headMap(tag, true);
+                released = covered.size();
+                covered.clear();
+            } else if (unacked.remove(tag) != null) {
+                released = 1;
+            }
+            acked.addAndGet(released);
+            credits.release(released);
+        }
+
+        // devolve as não confirmadas ao início da fila, na ordem em que tinham sido entregues
+        private synchronized void close() {
+            if (!open) return;
+            open = false;
+            List<Message> pending = new ArrayList<>(unacked.values());
+            unacked.clear();
+            for (int i = pending.size() - 1; i >= 0; i--) ready.addFirst(pending.get(i).redelivery());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package edu.progdist.module.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * API HTTP do {@link HTTPDataService} por uma conexão real, sem o RabbitMQ: as mensagens são entregues direto ao
+ * serviço, como faria o consumidor.
+ */
+class HTTPDataServiceTest {
+    private static final Pattern NEXT = Pattern.compile("\"next\":\"([^\"]*)\",\"more\":(true|false)}$");
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private HTTPDataService service;
+    private int port;
+
+    @BeforeEach
+    void start() throws IOException {
+        service = new HTTPDataService();
+        port = service.startHttp(0);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        service.stop();
+    }
+
+    HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+            .header("If-None-Match", ifNoneMatch).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void dataGroupsMessagesByRegionInArrivalOrder() throws Exception {
+        service.receive("sul", "m3");
+        service.receive("norte", "m1");
+        service.receive("norte", "m2");
+
+        HttpResponse<String> response = get("/data");
+        assertEquals(200, response.statusCode());
+        assertEquals("application/json; charset=utf-8", response.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals("chunked", response.headers().firstValue("Transfer-Encoding").orElseThrow());
+        assertEquals("{\"norte\":[\"m1\",\"m2\"],\"sul\":[\"m3\"]}", response.body());
+
+        assertEquals("{\"sul\":[\"m3\"]}", get("/data?region=sul").body());
+        assertEquals("{\"norte\":[\"m1\",\"m2\"],\"sul\":[\"m3\"]}", get("/data?region=sul,norte,oeste").body());
+        assertEquals("{\"norte\":[],\"sul\":[]}", get("/data?from=" + Long.MAX_VALUE).body());
+    }
+
+    @Test
+    void messagesAreEscapedAndSentAsUtf8() throws Exception {
+        service.receive("leste", "São \"João\"\n\\ ☀ 🌧");
+
+        assertEquals("{\"leste\":[\"São \\\"João\\\"\\n\\\\ ☀ 🌧\"]}", get("/data").body());
+    }
+
+    @Test
+    void pagesFollowTheCursorUntilNothingIsLeft() throws Exception {
+        for (int i = 0; i < 5; i++) service.receive("norte", "n" + i);
+        for (int i = 0; i < 3; i++) service.receive("sul", "s" + i);
+
+        HttpResponse<String> first = get("/data?limit=3");
+        assertEquals("{\"data\":{\"norte\":[\"n0\",\"n1\",\"n2\"],\"sul\":[]},"
+            + "\"next\":\"norte:3,sul:0\",\"more\":true}", first.body());
+
+        // cada página tem no máximo três mensagens e continua de onde a anterior parou
+        List<String> pages = new ArrayList<>(List.of(first.body()));
+        String cursor = "norte:3,sul:0";
+        boolean more = true;
+        while (more) {
+            String body = get("/data?limit=3&cursor=" + cursor).body();
+            pages.add(body);
+            Matcher matcher = NEXT.matcher(body);
+            assertTrue(matcher.find(), body);
+            cursor = matcher.group(1);
+            more = Boolean.parseBoolean(matcher.group(2));
+        }
+        assertEquals("norte:5,sul:3", cursor);
+        assertEquals("{\"data\":{\"norte\":[\"n3\",\"n4\"],\"sul\":[\"s0\"]},\"next\":\"norte:5,sul:1\",\"more\":true}",
+            pages.get(1));
+        assertEquals("{\"data\":{\"norte\":[],\"sul\":[\"s1\",\"s2\"]},\"next\":\"norte:5,sul:3\",\"more\":false}",
+            pages.get(2));
+    }
+
+    @Test
+    void unchangedDataIsRevalidatedByETag() throws Exception {
+        service.receive("norte", "m1");
+        HttpResponse<String> first = get("/data");
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        // o ETag é do histórico inteiro: vale para qualquer consulta, fraco ou forte, sozinho ou em uma lista
+        for (String header : new String[] { etag, "W/" + etag, "\"outro\", " + etag, "*" }) {
+            HttpResponse<String> revalidated = get("/data?region=sul", header);
+            assertEquals(304, revalidated.statusCode(), header);
+            assertEquals("", revalidated.body());
+            assertEquals(etag, revalidated.headers().firstValue("ETag").orElseThrow());
+        }
+        assertEquals(200, get("/data", "\"outro\"").statusCode());
+
+        service.receive("sul", "m2");
+        HttpResponse<String> changed = get("/data", etag);
+        assertEquals(200, changed.statusCode());
+        assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+        assertEquals("{\"norte\":[\"m1\"],\"sul\":[\"m2\"]}", changed.body());
+    }
+
+    @Test
+    void sinceReturnsOnlyTheMessagesAfterTheCursor() throws Exception {
+        service.receive("norte", "m1");
+        String body = get("/data?since=").body();
+        assertEquals("{\"data\":{\"norte\":[\"m1\"]},\"next\":\"norte:1\",\"more\":false}", body);
+
+        service.receive("norte", "m2");
+        service.receive("sul", "m3");
+        assertEquals("{\"data\":{\"norte\":[\"m2\"],\"sul\":[\"m3\"]},\"next\":\"norte:2,sul:1\",\"more\":false}",
+            get("/data?since=norte:1").body());
+        assertEquals("{\"data\":{\"norte\":[],\"sul\":[]},\"next\":\"norte:2,sul:1\",\"more\":false}",
+            get("/data?since=norte:2,sul:1").body());
+    }
+
+    @Test
+    void streamSendsEachMessageOfItsRegionsAsAnEvent() throws Exception {
+        HttpResponse<InputStream> response = client.send(
+            HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/stream?region=norte")).build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(200, response.statusCode());
+        assertEquals("text/event-stream; charset=utf-8",
+            response.headers().firstValue("Content-Type").orElseThrow());
+
+        try (BufferedReader events = new BufferedReader(
+                new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            // o comentário inicial só sai depois da inscrição: daqui em diante nenhuma mensagem se perde
+            assertEquals(":", events.readLine());
+            assertEquals("", events.readLine());
+
+            service.receive("sul", "s0");
+            service.receive("norte", "n0");
+            service.receive("norte", "São \"n1\"");
+
+            assertEquals("id: norte:1", events.readLine());
+            String data = events.readLine();
+            assertTrue(data.matches("data: \\{\"region\":\"norte\",\"timestamp\":\\d+,\"message\":\"n0\"}"), data);
+            assertEquals("", events.readLine());
+            assertEquals("id: norte:2", events.readLine());
+            assertTrue(events.readLine().endsWith(",\"message\":\"São \\\"n1\\\"\"}"));
+            assertEquals("", events.readLine());
+        }
+
+        // o id do último evento serve de cursor para recuperar o que veio depois
+        service.receive("norte", "n2");
+        assertEquals("{\"data\":{\"norte\":[\"n2\"]},\"next\":\"norte:3\",\"more\":false}",
+            get("/data?region=norte&since=norte:2").body());
+    }
+
+    @Test
+    void statsSummarizeEveryReadingReceived() throws Exception {
+        assertEquals("{\"total\":0,\"invalid\":0,\"regions\":{},"
+            + "\"rankings\":{\"temperature\":[],\"humidity\":[],\"pressure\":[],\"radiation\":[]}}",
+            get("/stats").body());
+
+        service.receive("norte", "[10|40|1000|1.5]");
+        service.receive("norte", "[20|60|1000|2.5]");
+        service.receive("sul", "[-10|50|1000|0.5]");
+        service.receive("sul", "[-10|50|1000|0.5]");
+        service.receive("sul", "lixo");
+
+        HttpResponse<String> response = get("/stats");
+        assertEquals(200, response.statusCode());
+        String body = response.body();
+        assertTrue(body.startsWith("{\"total\":4,\"invalid\":1,\"regions\":{\"norte\":{\"count\":2,"
+            + "\"percentage\":50.0,\"temperature\":{\"sum\":30.0,\"min\":10.0,\"max\":20.0,"
+            + "\"mean\":15.0,\"variance\":25.0},"), body);
+        assertTrue(body.contains("\"rankings\":{\"temperature\":[{\"region\":\"norte\",\"mean\":15.0,"
+            + "\"percentage\":60.0},{\"region\":\"sul\",\"mean\":-10.0,\"percentage\":40.0}],"), body);
+        assertTrue(body.endsWith("\"pressure\":[{\"region\":\"norte\",\"mean\":1000.0,\"percentage\":50.0},"
+            + "{\"region\":\"sul\",\"mean\":1000.0,\"percentage\":50.0}],\"radiation\":[{\"region\":\"norte\","
+            + "\"mean\":2.0,\"percentage\":80.0},{\"region\":\"sul\",\"mean\":0.5,\"percentage\":20.0}]}}"), body);
+    }
+
+        @Test
+    void invalidRequestsAreRejected() throws Exception {
+        HttpResponse<String> badLimit = get("/data?limit=0");
+        assertEquals(400, badLimit.statusCode());
+        assertEquals("{\"error\":\"limit deve ser positivo: 0\"}", badLimit.body());
+
+        assertEquals(400, get("/data?cursor=norte").statusCode());
+        assertEquals(400, get("/data?from=ontem").statusCode());
+
+        HttpResponse<String> post = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/data"))
+            .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, post.statusCode());
+    }
+}
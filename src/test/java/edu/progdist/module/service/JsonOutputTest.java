@@ -0,0 +1,63 @@
+package edu.progdist.module.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link JsonOutput}: escape e UTF-8 iguais aos do JDK, inclusive com caracteres de vários bytes na divisa do
+ * buffer.
+ */
+class JsonOutputTest {
+
+    private static String write(int bufferSize, JsonWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonOutput json = new JsonOutput(bytes, bufferSize)) {
+            writer.write(json);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface JsonWriter {
+        void write(JsonOutput json) throws IOException;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 4, 5, 7, 8192 })
+    void multiByteCharactersSurviveAnyBufferSize(int bufferSize) throws IOException {
+        String text = "aé☀🌧".repeat(50);
+        assertEquals("\"" + text + "\"", write(bufferSize, json -> json.string(text)));
+        assertEquals(text, write(bufferSize, json -> json.raw(text)));
+    }
+
+    @Test
+    void controlCharactersAndQuotesAreEscaped() throws IOException {
+        assertEquals("\"a\\\"b\\\\c\\n\\r\\t\\u0001\\u001f\"",
+            write(16, json -> json.string("a\"b\\c\n\r\t\u0001\u001f")));
+    }
+
+    @Test
+    void loneSurrogatesBecomeQuestionMarks() throws IOException {
+        assertEquals("\"a?b?\"", write(16, json -> json.string("a\uD83Db\uDE00")));
+    }
+
+    @Test
+    void numbersWithoutJsonFormAreNull() throws IOException {
+        assertEquals("[1.5,null,null,-7,true]", write(16, json -> json.raw('[').number(1.5).raw(',')
+            .number(Double.NaN).raw(',').number(Double.POSITIVE_INFINITY).raw(',').number(-7L).raw(',')
+            .bool(true).raw(']')));
+    }
+
+    @Test
+    void tinyBuffersAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new JsonOutput(new ByteArrayOutputStream(), 3));
+    }
+}
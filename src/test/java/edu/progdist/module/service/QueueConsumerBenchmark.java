@@ -0,0 +1,55 @@
+package edu.progdist.module.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Vazão do {@link QueueConsumer} contra o {@link FakeBroker} com 1, 2, 4 e 8 consumidores. O tratamento de cada
+ * mensagem espera um pouco, como a escrita no SSE e no banco do serviço; com mais canais essas esperas se sobrepõem.
+ * Fora do {@code mvn test} padrão; rode com {@code mvn test -Dgroups=benchmark -DexcludedGroups=}.
+ */
+@Tag("benchmark")
+class QueueConsumerBenchmark {
+    private static final int MESSAGES = 20_000;
+    private static final long HANDLER_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int[] CONSUMERS = { 1, 2, 4, 8 };
+
+    @Test
+    void throughputGrowsWithConsumers() throws Exception {
+        run(2, MESSAGES / 4);   // aquecimento
+
+        double[] rates = new double[CONSUMERS.length];
+        for (int i = 0; i < CONSUMERS.length; i++) {
+            rates[i] = run(CONSUMERS[i], MESSAGES);
+            System.out.printf(Locale.ROOT, "%d consumidor(es): %,9.0f msgs/s (%.1fx)%n",
+                CONSUMERS[i], rates[i], rates[i] / rates[0]);
+        }
+
+        // quatro canais sobrepõem as esperas de quatro mensagens; metade disso já mostra o ganho
+        assertTrue(rates[2] > 2 * rates[0], String.format(Locale.ROOT, "1 consumidor: %.0f msgs/s, 4: %.0f msgs/s",
+            rates[0], rates[2]));
+    }
+
+    // mensagens por segundo, da primeira publicação à última confirmação
+    private static double run(int consumers, int messages) throws Exception {
+        FakeBroker broker = new FakeBroker();
+        QueueConsumer.Settings settings = new QueueConsumer.Settings(consumers, 256, 64, 20, 65_536);
+        QueueConsumer consumer = new QueueConsumer(broker.connection(), "drones", settings,
+            (region, message) -> LockSupport.parkNanos(HANDLER_NANOS));
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < messages; i++) broker.publish("norte", "id-" + i, "[" + i + "|55|1013|0.7]");
+            assertTrue(broker.awaitAcked(messages, 120_000), "confirmadas " + broker.acked() + " de " + messages);
+            return messages / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            consumer.close();
+            broker.closeAll();
+        }
+    }
+}
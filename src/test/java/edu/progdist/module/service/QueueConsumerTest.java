@@ -0,0 +1,124 @@
+package edu.progdist.module.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Consumo pelo {@link FakeBroker}: confirmação em lotes, entrega pelo menos uma vez com reentrega depois de uma
+ * falha e descarte de reentregas pelo {@code messageId}.
+ */
+class QueueConsumerTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private final FakeBroker broker = new FakeBroker();
+    private QueueConsumer consumer;
+
+    @AfterEach
+    void close() throws IOException {
+        if (consumer != null) consumer.close();
+        broker.closeAll();
+    }
+
+    private QueueConsumer consume(QueueConsumer.Settings settings, QueueConsumer.Handler handler) throws IOException {
+        consumer = new QueueConsumer(broker.connection(), "drones", settings, handler);
+        return consumer;
+    }
+
+    @Test
+    void everyMessageIsProcessedAndAckedInBatches() throws Exception {
+        int count = 10_000;
+        Map<String, Integer> received = new ConcurrentHashMap<>();
+        consume(new QueueConsumer.Settings(4, 64, 32, 50, 65_536), (region, message) -> received.merge(message, 1,
+            Integer::sum));
+
+        for (int i = 0; i < count; i++) broker.publish("norte", "id-" + i, "m" + i);
+        assertTrue(broker.awaitAcked(count, TIMEOUT_MILLIS), "confirmadas " + broker.acked() + " de " + count);
+
+        assertEquals(count, received.size());
+        assertTrue(received.values().stream().allMatch(n -> n == 1));
+        assertEquals(count, consumer.getStats().processed());
+        // uma confirmação múltipla a cada ackBatch, mais as do temporizador para as sobras de cada canal
+        assertTrue(broker.ackCalls() < count / 8, "confirmações demais: " + broker.ackCalls());
+        assertEquals(broker.ackCalls(), consumer.getStats().acks());
+    }
+
+    @Test
+    void leftoversBelowTheBatchAreAckedByTheTimer() throws Exception {
+        consume(new QueueConsumer.Settings(1, 64, 32, 20, 1024), (region, message) -> {});
+
+        for (int i = 0; i < 5; i++) broker.publish("sul", "id-" + i, "m" + i);
+        assertTrue(broker.awaitAcked(5, TIMEOUT_MILLIS));
+        assertEquals(1, broker.ackCalls());
+    }
+
+    @Test
+    void redeliveriesOfProcessedMessagesAreOnlyAcked() throws Exception {
+        List<String> processed = new CopyOnWriteArrayList<>();
+        consume(new QueueConsumer.Settings(2, 16, 1, 20, 1024), (region, message) -> processed.add(message));
+
+        broker.publish("leste", "a", "primeira");
+        broker.publish("leste", "a", "reentrega");
+        broker.publish("leste", null, "sem id");
+        broker.publish("leste", null, "sem id");
+        assertTrue(broker.awaitAcked(4, TIMEOUT_MILLIS));
+
+        assertEquals(3, processed.size());
+        assertEquals(3, consumer.getStats().processed());
+        assertEquals(1, consumer.getStats().duplicates());
+    }
+
+    @Test
+    void failedMessageIsRedeliveredAndProcessed() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> processed = new CopyOnWriteArrayList<>();
+        consume(new QueueConsumer.Settings(2, 16, 1, 20, 1024), (region, message) -> {
+            if (message.equals("falha") && attempts.getAndIncrement() == 0) {
+                throw new IllegalStateException("falha simulada");
+            }
+            processed.add(message);
+        });
+
+        broker.publish("oeste", "x", "falha");
+        assertTrue(broker.awaitAcked(1, TIMEOUT_MILLIS));
+
+        // o canal que falhou caiu; o outro recebeu a reentrega, que não pode ser tomada por duplicada
+        assertEquals(List.of("falha"), processed);
+        assertEquals(2, attempts.get());
+        assertEquals(1, broker.redelivered());
+        assertEquals(0, consumer.getStats().duplicates());
+    }
+
+    @Test
+    void idSeenAgainAfterAFailureIsNotForgottenEarly() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> processed = new CopyOnWriteArrayList<>();
+        // janela de três ids: a posição liberada pela falha é reaproveitada antes de a janela dar a volta
+        consume(new QueueConsumer.Settings(2, 16, 1, 20, 3), (region, message) -> {
+            if (message.equals("a") && attempts.getAndIncrement() == 0) {
+                throw new IllegalStateException("falha simulada");
+            }
+            processed.add(message);
+        });
+
+        broker.publish("norte", "a", "a");
+        assertTrue(broker.awaitAcked(1, TIMEOUT_MILLIS));
+
+        broker.publish("norte", "b", "b");
+        broker.publish("norte", "c", "c");
+        broker.publish("norte", "a", "a");
+        assertTrue(broker.awaitAcked(4, TIMEOUT_MILLIS));
+
+        assertEquals(List.of("a", "b", "c"), processed);
+        assertEquals(1, consumer.getStats().duplicates());
+    }
+}
@@ -0,0 +1,112 @@
+package edu.progdist.module.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Teste de resistência do histórico do HTTPDataService: milhões de entregas em quatro regiões, com um leitor
+ * acompanhando pelos cursores e a expiração rodando ao mesmo tempo, como no serviço. A cada janela mede a latência
+ * média de ingestão e o heap depois de uma coleta; com a retenção limitada, as duas devem ficar estáveis. Fora do
+ * {@code mvn test} padrão; rode com {@code mvn test -Dgroups=benchmark -DexcludedGroups=}.
+ */
+@Tag("benchmark")
+class ReadingRingSoakBenchmark {
+    private static final String[] REGIONS = { "norte", "sul", "leste", "oeste" };
+    private static final int CAPACITY = 10_000;         // padrão do HTTPDataService
+    private static final long MAX_AGE_MILLIS = 200;
+    private static final int WINDOWS = 10;
+    private static final int PER_WINDOW = 1_000_000;    // entregas por janela, somadas as regiões
+
+    @Test
+    void ingestLatencyAndHeapStayFlat() throws Exception {
+        ReadingRing[] rings = new ReadingRing[REGIONS.length];
+        for (int r = 0; r < rings.length; r++) rings[r] = new ReadingRing(CAPACITY, MAX_AGE_MILLIS);
+
+        // leitor e expiração concorrentes com a ingestão; a medição do heap o pausa para não contar as cópias dele
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong read = new AtomicLong();
+        Semaphore readerTurn = new Semaphore(1);
+        Thread reader = Thread.ofPlatform().daemon().start(() -> {
+            long[] cursors = new long[rings.length];
+            while (running.get()) {
+                readerTurn.acquireUninterruptibly();
+                long now = System.currentTimeMillis();
+                for (int r = 0; r < rings.length; r++) {
+                    ReadingRing.Snapshot snapshot = rings[r].snapshot(cursors[r], now);
+                    cursors[r] = snapshot.next();
+                    read.addAndGet(snapshot.entries().size());
+                    rings[r].expire(now);
+                }
+                readerTurn.release();
+            }
+        });
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        double[] nanosPerAppend = new double[WINDOWS];
+        long[] heapAfterGc = new long[WINDOWS];
+        int perWriter = PER_WINDOW / REGIONS.length;
+
+        try {
+            for (int window = 0; window < WINDOWS; window++) {
+                CyclicBarrier barrier = new CyclicBarrier(REGIONS.length + 1);
+                List<Thread> writers = new ArrayList<>();
+                for (int r = 0; r < rings.length; r++) {
+                    ReadingRing ring = rings[r];
+                    int base = window * perWriter;
+                    writers.add(Thread.ofPlatform().start(() -> {
+                        await(barrier);
+                        for (int i = 0; i < perWriter; i++) {
+                            ring.append(System.currentTimeMillis(), "[" + (base + i) + "|55|1013|0.7]");
+                        }
+                    }));
+                }
+
+                await(barrier);
+                long start = System.nanoTime();
+                for (Thread writer : writers) writer.join();
+                nanosPerAppend[window] = (double) (System.nanoTime() - start) / perWriter;
+
+                readerTurn.acquireUninterruptibly();
+                System.gc();
+                heapAfterGc[window] = memory.getHeapMemoryUsage().getUsed();
+                readerTurn.release();
+                System.out.printf(Locale.ROOT, "janela %2d: %6.1f ns por entrega por região, heap %6.1f MB, %d lidas%n",
+                    window, nanosPerAppend[window], heapAfterGc[window] / 1e6, read.get());
+            }
+        } finally {
+            running.set(false);
+            reader.join();
+        }
+
+        // a primeira janela inclui o aquecimento do JIT; a partir da segunda, nada deve crescer com o volume
+        double[] steady = Arrays.copyOfRange(nanosPerAppend, 1, WINDOWS);
+        double best = Arrays.stream(steady).min().orElseThrow();
+        double latest = steady[steady.length - 1];
+        assertTrue(latest < 3 * best, "ingestão ficou mais lenta: " + Arrays.toString(nanosPerAppend));
+
+        long growth = heapAfterGc[WINDOWS - 1] - heapAfterGc[1];
+        assertTrue(growth < 16_000_000, "heap cresceu " + growth / 1_000_000 + " MB: " + Arrays.toString(heapAfterGc));
+        for (ReadingRing ring : rings) assertTrue(ring.size() <= Integer.highestOneBit(CAPACITY) * 2);
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
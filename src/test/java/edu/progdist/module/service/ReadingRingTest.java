@@ -0,0 +1,142 @@
+package edu.progdist.module.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Retenção por quantidade e por idade do {@link ReadingRing}, cursores e leitura concorrente com as escritas.
+ */
+class ReadingRingTest {
+
+    private static List<Long> sequences(ReadingRing.Snapshot snapshot) {
+        List<Long> sequences = new ArrayList<>();
+        for (ReadingRing.Entry entry : snapshot.entries()) sequences.add(entry.sequence());
+        return sequences;
+    }
+
+    @Test
+    void capacityIsRoundedUpAndTheOldestAreOverwritten() {
+        ReadingRing ring = new ReadingRing(5, 0);
+        for (int i = 0; i < 20; i++) assertEquals(i, ring.append(0, "m" + i));
+
+        ReadingRing.Snapshot snapshot = ring.snapshot(0, 0);
+        assertEquals(List.of(12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L), sequences(snapshot));
+        assertEquals("m12", snapshot.entries().get(0).message());
+        assertEquals(20, snapshot.next());
+        assertEquals(8, ring.size());
+    }
+
+    @Test
+    void cursorResumesAfterTheLastEntryRead() {
+        ReadingRing ring = new ReadingRing(16, 0);
+        for (int i = 0; i < 3; i++) ring.append(0, "m" + i);
+        ReadingRing.Snapshot first = ring.snapshot(0, 0);
+        assertEquals(3, first.next());
+
+        ring.append(0, "m3");
+        ring.append(0, "m4");
+        ReadingRing.Snapshot second = ring.snapshot(first.next(), 0);
+        assertEquals(List.of(3L, 4L), sequences(second));
+        assertEquals(ring.next(), second.next());
+        assertTrue(ring.snapshot(second.next(), 0).entries().isEmpty());
+    }
+
+    @Test
+    void visitorCanStopEarly() {
+        ReadingRing ring = new ReadingRing(16, 0);
+        for (int i = 0; i < 10; i++) ring.append(0, "m" + i);
+
+        List<Long> visited = new ArrayList<>();
+        long cursor = ring.forEach(2, 0, entry -> {
+            visited.add(entry.sequence());
+            return visited.size() < 3;
+        });
+        assertEquals(List.of(2L, 3L, 4L), visited);
+        assertEquals(5, cursor);
+    }
+
+    @Test
+    void agedEntriesAreHiddenAndThenReleased() {
+        ReadingRing ring = new ReadingRing(16, 100);
+        ring.append(0, "antiga");
+        ring.append(50, "vencida");
+        ring.append(150, "recente");
+
+        assertEquals(List.of(2L), sequences(ring.snapshot(0, 160)));
+        assertEquals(2, ring.firstVisible(160));
+        assertEquals(3, ring.size());
+
+        ring.expire(160);
+        assertEquals(1, ring.size());
+        assertEquals(List.of(2L), sequences(ring.snapshot(0, 160)));
+
+        ring.expire(1000);
+        assertEquals(0, ring.size());
+        assertEquals(3, ring.firstVisible(1000));
+    }
+
+    @Test
+    void invalidRetentionIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ReadingRing(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ReadingRing(16, -1));
+    }
+
+    @Test
+    void concurrentReaderSeesEveryMessageOnceAndInOrder() throws InterruptedException {
+        int writers = 4;
+        int perWriter = 100_000;
+        ReadingRing ring = new ReadingRing(writers * perWriter, 0);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            String prefix = w + ":";
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perWriter; i++) ring.append(0, prefix + i);
+            }));
+        }
+
+        // o leitor acompanha as escritas pelo cursor, sem nunca ver buracos nem repetições
+        AtomicBoolean done = new AtomicBoolean();
+        List<String> read = new ArrayList<>();
+        long[] expected = { 0 };
+        boolean[] ordered = { true };
+        Thread reader = Thread.ofPlatform().start(() -> {
+            long cursor = 0;
+            while (true) {
+                boolean finished = done.get();
+                cursor = ring.forEach(cursor, 0, entry -> {
+                    ordered[0] &= entry.sequence() == expected[0]++;
+                    read.add(entry.message());
+                    return true;
+                });
+                if (finished && cursor == ring.next()) break;
+            }
+        });
+
+        for (Thread thread : threads) thread.join();
+        done.set(true);
+        reader.join();
+
+        assertTrue(ordered[0], "leitor viu sequências fora de ordem ou com buracos");
+        assertEquals(writers * perWriter, read.size());
+
+        // cada escritor aparece na ordem em que escreveu
+        int[] last = new int[writers];
+        Arrays.fill(last, -1);
+        for (String message : read) {
+            int separator = message.indexOf(':');
+            int writer = Integer.parseInt(message, 0, separator, 10);
+            int index = Integer.parseInt(message, separator + 1, message.length(), 10);
+            assertEquals(last[writer] + 1, index);
+            last[writer] = index;
+        }
+    }
+}
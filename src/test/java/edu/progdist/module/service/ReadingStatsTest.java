@@ -0,0 +1,89 @@
+package edu.progdist.module.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link ReadingStats}: resumo de cada métrica por região, mensagens malformadas e rankings do dashboard.
+ */
+class ReadingStatsTest {
+    private static final double DELTA = 1e-9;
+
+    private final ReadingStats stats = new ReadingStats();
+
+    @Test
+    void summariesCoverEveryMetricOfTheRegion() {
+        assertTrue(stats.add("norte", "[10|40|1000|1.5]"));
+        assertTrue(stats.add("norte", "[20|50|1010|2.5]"));
+        assertTrue(stats.add("norte", "[30|60|1020|3.5]"));
+        assertTrue(stats.add("sul", "[-10|80|990|0.5]"));
+
+        Map<String, ReadingStats.RegionSummary> snapshot = stats.snapshot();
+        assertEquals(List.of("norte", "sul"), List.copyOf(snapshot.keySet()));
+        ReadingStats.RegionSummary north = snapshot.get("norte");
+        assertEquals(3, north.count());
+        assertSummary(60, 10, 30, 20, 200.0 / 3, north.metric(ReadingStats.Metric.TEMPERATURE));
+        assertSummary(150, 40, 60, 50, 200.0 / 3, north.metric(ReadingStats.Metric.HUMIDITY));
+        assertSummary(3030, 1000, 1020, 1010, 200.0 / 3, north.metric(ReadingStats.Metric.PRESSURE));
+        assertSummary(7.5, 1.5, 3.5, 2.5, 2.0 / 3, north.metric(ReadingStats.Metric.RADIATION));
+
+        // uma só leitura: variância zero
+        assertSummary(-10, -10, -10, -10, 0, snapshot.get("sul").metric(ReadingStats.Metric.TEMPERATURE));
+    }
+
+    @Test
+    void varianceStaysExactFarFromZero() {
+        // a soma dos quadrados passaria de 2^53 e perderia as unidades; o método de Welford não
+        for (int i = 0; i < 3; i++) stats.add("norte", "[0|0|" + (2_000_000_000 + i) + "|0]");
+
+        ReadingStats.Summary pressure = stats.snapshot().get("norte").metric(ReadingStats.Metric.PRESSURE);
+        assertEquals(2_000_000_001, pressure.mean(), DELTA);
+        assertEquals(2.0 / 3, pressure.variance(), DELTA);
+    }
+
+    @Test
+    void malformedMessagesAreOnlyCounted() {
+        assertFalse(stats.add("norte", "lixo"));
+        assertFalse(stats.add("norte", "[1013//5.75//-12//48]"));
+
+        assertEquals(2, stats.invalid());
+        assertTrue(stats.snapshot().isEmpty());
+    }
+
+    @Test
+    void rankingSortsRegionsByMeanWithTheirShares() {
+        stats.add("norte", "[15|0|0|0]");
+        stats.add("sul", "[-10|0|0|0]");
+        stats.add("leste", "[5|0|0|0]");
+        stats.add("leste", "[5|0|0|0]");
+
+        List<ReadingStats.Share> ranking = ReadingStats.ranking(stats.snapshot(), ReadingStats.Metric.TEMPERATURE);
+        assertEquals(List.of("norte", "leste", "sul"), ranking.stream().map(ReadingStats.Share::region).toList());
+        assertShare(15, 50, ranking.get(0));
+        assertShare(5, 100.0 / 6, ranking.get(1));
+        assertShare(-10, 100.0 / 3, ranking.get(2));
+
+        // todas as médias zero: não há fatias a mostrar
+        assertTrue(ReadingStats.ranking(stats.snapshot(), ReadingStats.Metric.HUMIDITY).isEmpty());
+    }
+
+    private static void assertShare(double mean, double percentage, ReadingStats.Share share) {
+        assertEquals(mean, share.mean(), DELTA);
+        assertEquals(percentage, share.percentage(), DELTA);
+    }
+
+    private static void assertSummary(double sum, double min, double max, double mean, double variance,
+                                      ReadingStats.Summary summary) {
+        assertEquals(sum, summary.sum(), DELTA);
+        assertEquals(min, summary.min(), DELTA);
+        assertEquals(max, summary.max(), DELTA);
+        assertEquals(mean, summary.mean(), DELTA);
+        assertEquals(variance, summary.variance(), DELTA);
+    }
+}
@@ -0,0 +1,95 @@
+package edu.progdist.module.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link StreamHub}: entrega por região e as duas políticas para a fila cheia de um assinante lento, sem afetar os
+ * demais.
+ */
+class StreamHubTest {
+
+    private static StreamHub.Event event(String region, long sequence) {
+        return new StreamHub.Event(region, sequence, 0, region + sequence);
+    }
+
+    @Test
+    void subscribersReceiveOnlyTheirRegionsInOrder() {
+        StreamHub hub = new StreamHub(8, StreamHub.Overflow.DROP_OLDEST);
+        StreamHub.Subscriber north = hub.subscribe(Set.of("norte"));
+        StreamHub.Subscriber all = hub.subscribe(Set.of());
+
+        hub.publish(event("norte", 0));
+        hub.publish(event("sul", 0));
+        hub.publish(event("norte", 1));
+
+        assertEquals(event("norte", 0), north.poll());
+        assertEquals(event("norte", 1), north.poll());
+        assertNull(north.poll());
+        assertEquals(event("norte", 0), all.poll());
+        assertEquals(event("sul", 0), all.poll());
+        assertEquals(event("norte", 1), all.poll());
+        assertNull(all.poll());
+    }
+
+    @Test
+    void fullQueueDropsTheOldestMessages() {
+        StreamHub hub = new StreamHub(3, StreamHub.Overflow.DROP_OLDEST);
+        StreamHub.Subscriber slow = hub.subscribe(Set.of());
+        StreamHub.Subscriber fast = hub.subscribe(Set.of());
+
+        for (int i = 0; i < 5; i++) {
+            hub.publish(event("norte", i));
+            assertEquals(event("norte", i), fast.poll());
+        }
+
+        // o lento fica com as três mais recentes; o rápido não perdeu nada
+        assertEquals(2, slow.getDropped());
+        assertEquals(0, fast.getDropped());
+        for (int i = 2; i < 5; i++) assertEquals(event("norte", i), slow.poll());
+        assertFalse(slow.isClosed());
+    }
+
+    @Test
+    void fullQueueDisconnectsTheSubscriber() throws InterruptedException {
+        StreamHub hub = new StreamHub(2, StreamHub.Overflow.DISCONNECT);
+        StreamHub.Subscriber slow = hub.subscribe(Set.of());
+
+        for (int i = 0; i < 3; i++) hub.publish(event("norte", i));
+        assertTrue(slow.isClosed());
+        // a fila é descartada e quem espera acorda sem mensagem
+        assertNull(slow.poll(10_000));
+
+        hub.publish(event("norte", 3));
+        assertNull(slow.poll());
+        assertEquals(0, slow.getDropped());
+    }
+
+    @Test
+    void unsubscribedClientsStopReceiving() throws InterruptedException {
+        StreamHub hub = new StreamHub(8, StreamHub.Overflow.DROP_OLDEST);
+        StreamHub.Subscriber subscriber = hub.subscribe(Set.of());
+        assertEquals(1, hub.size());
+
+        hub.unsubscribe(subscriber);
+        assertEquals(0, hub.size());
+        assertTrue(subscriber.isClosed());
+        hub.publish(event("norte", 0));
+        assertNull(subscriber.poll(10_000));
+    }
+
+    @Test
+    void overflowPoliciesByName() {
+        assertEquals(StreamHub.Overflow.DROP_OLDEST, StreamHub.Overflow.byName("drop-oldest"));
+        assertEquals(StreamHub.Overflow.DISCONNECT, StreamHub.Overflow.byName("disconnect"));
+        assertThrows(IllegalArgumentException.class, () -> StreamHub.Overflow.byName("block"));
+        assertThrows(IllegalArgumentException.class, () -> new StreamHub(0, StreamHub.Overflow.DISCONNECT));
+    }
+}